@@ -0,0 +1,130 @@
+package fun.wswj.middleware.benchmark;
+
+import fun.wswj.middleware.db.router.DBRouterConfig;
+import fun.wswj.middleware.db.router.DBRouterJoinPoint;
+import fun.wswj.middleware.db.router.annotation.DBRouter;
+import fun.wswj.middleware.db.router.annotation.RouterKey;
+import fun.wswj.middleware.db.router.strategy.impl.DBRouterStrategyHashCode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  DBRouterJoinPoint.getAttrValue 从入参读取路由值的耗时，按入参形式与路由键长度组合
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AttrValueBenchmark {
+
+    public static class User {
+        private final String userId;
+
+        public User(String userId) {
+            this.userId = userId;
+        }
+
+        public String getUserId() {
+            return userId;
+        }
+    }
+
+    public static class Order {
+        private final User user;
+
+        public Order(User user) {
+            this.user = user;
+        }
+
+        public User getUser() {
+            return user;
+        }
+    }
+
+    public static class UserService {
+
+        @DBRouter
+        public void queryByKey(String name, @RouterKey String userId) {
+        }
+
+        @DBRouter
+        public void queryByBean(String name, User user) {
+        }
+
+        @DBRouter(key = "user.userId")
+        public void queryByNested(Order order) {
+        }
+    }
+
+    /**
+     * key：@RouterKey 参数；bean：对象属性；nested：嵌套路径
+     */
+    @Param({"key", "bean", "nested"})
+    public String argType;
+
+    @Param({"numeric", "uuid"})
+    public String keyType;
+
+    private DBRouterJoinPoint joinPoint;
+
+    private Method method;
+
+    private String attr;
+
+    private Object[][] args;
+
+    private int idx;
+
+    @Setup
+    public void setup() throws NoSuchMethodException {
+        DBRouterConfig config = new DBRouterConfig(16, 64, "userId");
+        joinPoint = new DBRouterJoinPoint(config, new DBRouterStrategyHashCode(config));
+        String[] keys = BenchmarkKeys.generate(keyType, 0);
+        args = new Object[BenchmarkKeys.SIZE][];
+        for (int i = 0; i < keys.length; i++) {
+            switch (argType) {
+                case "key":
+                    args[i] = new Object[]{"sws", keys[i]};
+                    break;
+                case "bean":
+                    args[i] = new Object[]{"sws", new User(keys[i])};
+                    break;
+                default:
+                    args[i] = new Object[]{new Order(new User(keys[i]))};
+            }
+        }
+        switch (argType) {
+            case "key":
+                method = UserService.class.getMethod("queryByKey", String.class, String.class);
+                attr = "userId";
+                break;
+            case "bean":
+                method = UserService.class.getMethod("queryByBean", String.class, User.class);
+                attr = "userId";
+                break;
+            default:
+                method = UserService.class.getMethod("queryByNested", Order.class);
+                attr = "user.userId";
+        }
+    }
+
+    @Benchmark
+    public String getAttrValue() {
+        return joinPoint.getAttrValue(attr, args[idx++ & BenchmarkKeys.MASK], method);
+    }
+
+}
@@ -0,0 +1,62 @@
+package fun.wswj.middleware.benchmark;
+
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ *  基准测试的路由键，固定种子生成，保证每次运行输入一致
+ */
+public final class BenchmarkKeys {
+
+    /**
+     * 键数量为 2 的幂，按位与取下一个键
+     */
+    public static final int SIZE = 1 << 12;
+
+    public static final int MASK = SIZE - 1;
+
+    private BenchmarkKeys() {
+    }
+
+    /**
+     * 类似雪花 ID 的 long 路由键
+     */
+    public static long[] generateLongs() {
+        Random random = new Random(20241017L);
+        long[] keys = new long[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            keys[i] = 1_700_000_000_000_000_000L + (random.nextLong() >>> 6);
+        }
+        return keys;
+    }
+
+    /**
+     * @param keyType numeric：10 位以内数字；uuid：36 位；long：指定长度的字母数字
+     * @param length  keyType 为 long 时的长度
+     */
+    public static String[] generate(String keyType, int length) {
+        Random random = new Random(20241017L);
+        String[] keys = new String[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            switch (keyType) {
+                case "numeric":
+                    keys[i] = String.valueOf(random.nextInt(Integer.MAX_VALUE));
+                    break;
+                case "uuid":
+                    keys[i] = new UUID(random.nextLong(), random.nextLong()).toString();
+                    break;
+                case "long":
+                    StringBuilder sb = new StringBuilder(length);
+                    for (int j = 0; j < length; j++) {
+                        sb.append(Character.forDigit(random.nextInt(36), 36));
+                    }
+                    keys[i] = sb.toString();
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown key type: " + keyType);
+            }
+        }
+        return keys;
+    }
+
+}
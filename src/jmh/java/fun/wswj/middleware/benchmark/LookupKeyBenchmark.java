@@ -0,0 +1,74 @@
+package fun.wswj.middleware.benchmark;
+
+import fun.wswj.middleware.db.router.DBContextHolder;
+import fun.wswj.middleware.db.router.RouteTarget;
+import fun.wswj.middleware.db.router.dynamic.DynamicDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  DynamicDataSource.determineCurrentLookupKey 的耗时，按是否已设置路由与分库数量组合
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LookupKeyBenchmark {
+
+    /**
+     * determineCurrentLookupKey 是 protected 方法
+     */
+    public static class BenchmarkDataSource extends DynamicDataSource {
+        public Object lookupKey() {
+            return determineCurrentLookupKey();
+        }
+    }
+
+    @Param({"true", "false"})
+    public boolean routed;
+
+    @Param({"2", "16", "64"})
+    public int dbCount;
+
+    private final BenchmarkDataSource dataSource = new BenchmarkDataSource();
+
+    private RouteTarget[] targets;
+
+    private int idx;
+
+    @Setup
+    public void setup() {
+        targets = new RouteTarget[dbCount];
+        for (int i = 0; i < dbCount; i++) {
+            targets[i] = RouteTarget.of(i + 1, 0);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        DBContextHolder.clearRouteTarget();
+    }
+
+    @Benchmark
+    public Object determineCurrentLookupKey() {
+        if (routed) {
+            DBContextHolder.setRouteTarget(targets[idx++ % dbCount]);
+        }
+        return dataSource.lookupKey();
+    }
+
+}
@@ -0,0 +1,115 @@
+package fun.wswj.middleware.benchmark;
+
+import fun.wswj.middleware.db.router.DBContextHolder;
+import fun.wswj.middleware.db.router.DBRouterConfig;
+import fun.wswj.middleware.db.router.RouteTarget;
+import fun.wswj.middleware.db.router.annotation.DBRouterStrategy;
+import fun.wswj.middleware.db.router.dynamic.DynamicMybatisPlugin;
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.executor.statement.RoutingStatementHandler;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.RowBounds;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  DynamicMybatisPlugin.intercept 的耗时，按 SQL 形态、是否分表与分表数量组合；
+ *  Invocation 调用 getBoundSql 代替 prepare，只测拦截器本身
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MybatisPluginBenchmark {
+
+    @DBRouterStrategy(splitTable = true)
+    public interface SplitMapper {
+        void query();
+    }
+
+    public interface PlainMapper {
+        void query();
+    }
+
+    @Param({"simple", "join"})
+    public String sqlType;
+
+    @Param({"true", "false"})
+    public boolean splitTable;
+
+    @Param({"4", "256"})
+    public int tbCount;
+
+    private DynamicMybatisPlugin plugin;
+
+    private Invocation invocation;
+
+    private BoundSql boundSql;
+
+    private Field sqlField;
+
+    private String sql;
+
+    private RouteTarget[] targets;
+
+    private int idx;
+
+    @Setup
+    public void setup() throws Exception {
+        DBRouterConfig config = new DBRouterConfig(2, tbCount, "userId");
+        config.setLogicalTables(Collections.singleton("user"));
+        plugin = new DynamicMybatisPlugin(config);
+        sql = "simple".equals(sqlType)
+                ? "select id, user_id, user_name from user where user_id = ?"
+                : "select u.id, u.user_name, o.amount from user u left join user_order o on u.id = o.user_id where u.user_id = ? and o.status in (?, ?, ?) order by o.create_time desc limit 20";
+
+        Configuration configuration = new Configuration();
+        String id = (splitTable ? SplitMapper.class : PlainMapper.class).getName() + ".query";
+        MappedStatement mappedStatement = new MappedStatement.Builder(configuration, id, new StaticSqlSource(configuration, sql), SqlCommandType.SELECT).build();
+        boundSql = mappedStatement.getBoundSql(null);
+        StatementHandler handler = new RoutingStatementHandler(null, mappedStatement, null, RowBounds.DEFAULT, null, boundSql);
+        invocation = new Invocation(handler, StatementHandler.class.getMethod("getBoundSql"), new Object[0]);
+
+        sqlField = BoundSql.class.getDeclaredField("sql");
+        sqlField.setAccessible(true);
+        targets = new RouteTarget[tbCount];
+        for (int i = 0; i < tbCount; i++) {
+            targets[i] = RouteTarget.of(1, i);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        DBContextHolder.clearRouteTarget();
+    }
+
+    @Benchmark
+    public Object intercept() throws Throwable {
+        // 拦截器会改写 BoundSql，每次还原为原始 SQL
+        sqlField.set(boundSql, sql);
+        DBContextHolder.setRouteTarget(targets[idx++ % tbCount]);
+        return plugin.intercept(invocation);
+    }
+
+}
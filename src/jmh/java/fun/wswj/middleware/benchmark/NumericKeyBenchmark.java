@@ -0,0 +1,88 @@
+package fun.wswj.middleware.benchmark;
+
+import fun.wswj.middleware.db.router.DBContextHolder;
+import fun.wswj.middleware.db.router.DBRouterConfig;
+import fun.wswj.middleware.db.router.RouteTarget;
+import fun.wswj.middleware.db.router.strategy.IDBRouterStrategy;
+import fun.wswj.middleware.db.router.strategy.impl.DBRouterStrategyConsistentHash;
+import fun.wswj.middleware.db.router.strategy.impl.DBRouterStrategyFastRange;
+import fun.wswj.middleware.db.router.strategy.impl.DBRouterStrategyHashCode;
+import fun.wswj.middleware.db.router.strategy.impl.DBRouterStrategyJumpHash;
+import fun.wswj.middleware.db.router.strategy.impl.DBRouterStrategyRendezvous;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  long 路由键：转字符串后路由 与 doRouter(long) 直接路由的对比
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NumericKeyBenchmark {
+
+    @Param({"hashCode", "fastRange", "consistentHash", "jumpHash", "rendezvous"})
+    public String routerType;
+
+    @Param({"compatible", "fast"})
+    public String numericKeyMode;
+
+    private IDBRouterStrategy strategy;
+
+    private long[] keys;
+
+    private int idx;
+
+    @Setup
+    public void setup() {
+        DBRouterConfig config = new DBRouterConfig(16, 64, "userId", routerType);
+        config.setNumericKeyMode(numericKeyMode);
+        switch (routerType) {
+            case "consistentHash":
+                strategy = new DBRouterStrategyConsistentHash(config);
+                break;
+            case "jumpHash":
+                strategy = new DBRouterStrategyJumpHash(config);
+                break;
+            case "rendezvous":
+                strategy = new DBRouterStrategyRendezvous(config);
+                break;
+            case "fastRange":
+                strategy = new DBRouterStrategyFastRange(config);
+                break;
+            default:
+                strategy = new DBRouterStrategyHashCode(config);
+        }
+        keys = BenchmarkKeys.generateLongs();
+    }
+
+    @Benchmark
+    public RouteTarget toStringKey() {
+        strategy.doRouter(Long.toString(keys[idx++ & BenchmarkKeys.MASK]));
+        RouteTarget target = DBContextHolder.getRouteTarget();
+        strategy.clear();
+        return target;
+    }
+
+    @Benchmark
+    public RouteTarget longKey() {
+        strategy.doRouter(keys[idx++ & BenchmarkKeys.MASK]);
+        RouteTarget target = DBContextHolder.getRouteTarget();
+        strategy.clear();
+        return target;
+    }
+
+}
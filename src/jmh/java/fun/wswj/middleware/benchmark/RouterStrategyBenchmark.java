@@ -0,0 +1,89 @@
+package fun.wswj.middleware.benchmark;
+
+import fun.wswj.middleware.db.router.DBContextHolder;
+import fun.wswj.middleware.db.router.DBRouterConfig;
+import fun.wswj.middleware.db.router.RouteTarget;
+import fun.wswj.middleware.db.router.strategy.IDBRouterStrategy;
+import fun.wswj.middleware.db.router.strategy.impl.DBRouterStrategyConsistentHash;
+import fun.wswj.middleware.db.router.strategy.impl.DBRouterStrategyFastRange;
+import fun.wswj.middleware.db.router.strategy.impl.DBRouterStrategyHashCode;
+import fun.wswj.middleware.db.router.strategy.impl.DBRouterStrategyJumpHash;
+import fun.wswj.middleware.db.router.strategy.impl.DBRouterStrategyRendezvous;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  路由策略 doRouter 单次耗时，按策略、路由键类型与库表规模组合
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RouterStrategyBenchmark {
+
+    @Param({"hashCode", "fastRange", "consistentHash", "jumpHash", "rendezvous"})
+    public String routerType;
+
+    @Param({"numeric", "uuid", "long"})
+    public String keyType;
+
+    @Param({"64"})
+    public int keyLength;
+
+    /**
+     * 库数x表数
+     */
+    @Param({"2x4", "16x64", "64x256"})
+    public String topology;
+
+    private IDBRouterStrategy strategy;
+
+    private String[] keys;
+
+    private int idx;
+
+    @Setup
+    public void setup() {
+        String[] size = topology.split("x");
+        DBRouterConfig config = new DBRouterConfig(Integer.parseInt(size[0]), Integer.parseInt(size[1]), "userId", routerType);
+        switch (routerType) {
+            case "consistentHash":
+                strategy = new DBRouterStrategyConsistentHash(config);
+                break;
+            case "jumpHash":
+                strategy = new DBRouterStrategyJumpHash(config);
+                break;
+            case "rendezvous":
+                strategy = new DBRouterStrategyRendezvous(config);
+                break;
+            case "fastRange":
+                strategy = new DBRouterStrategyFastRange(config);
+                break;
+            default:
+                strategy = new DBRouterStrategyHashCode(config);
+        }
+        keys = BenchmarkKeys.generate(keyType, keyLength);
+    }
+
+    @Benchmark
+    public RouteTarget doRouter() {
+        strategy.doRouter(keys[idx++ & BenchmarkKeys.MASK]);
+        RouteTarget target = DBContextHolder.getRouteTarget();
+        strategy.clear();
+        return target;
+    }
+
+}
@@ -5,31 +5,267 @@ package fun.wswj.middleware.db.router;
  */
 public class DBContextHolder {
 
-    private static final ThreadLocal<String> dbKey = new ThreadLocal<String>();
-    private static final ThreadLocal<String> tbKey = new ThreadLocal<String>();
+    /**
+     * 库表路由结果共用一个 ThreadLocal，RouteTarget 不可变且按下标复用
+     */
+    private static final ThreadLocal<RouteTarget> routeTarget = new ThreadLocal<RouteTarget>();
+
+    /**
+     * 扩缩容双写期间，写入还需同步到的新位置；与当前路由相同时为空
+     */
+    private static final ThreadLocal<RouteTarget> shadowTarget = new ThreadLocal<RouteTarget>();
+
+    /**
+     * 当前 @DBRouter 作用域，嵌套调用时栈由切面方法的调用栈保存，这里只存栈顶
+     */
+    private static final ThreadLocal<RouteScope> routeScope = new ThreadLocal<RouteScope>();
+
+    /**
+     * 没有写入记录
+     */
+    static final long NOT_WRITTEN = Long.MIN_VALUE;
+
+    /**
+     * 读写分离状态，只在配置了从库时使用；恢复为初始状态时移除，不在线程池线程上残留
+     */
+    private static final ThreadLocal<ReadWriteState> readWriteState = new ThreadLocal<ReadWriteState>();
+
+    public static void setRouteTarget(RouteTarget target) {
+        if (null == target || target.isEmpty()) {
+            routeTarget.remove();
+        } else {
+            routeTarget.set(target);
+        }
+    }
+
+    public static RouteTarget getRouteTarget() {
+        return routeTarget.get();
+    }
+
+    public static void clearRouteTarget() {
+        routeTarget.remove();
+    }
+
+    public static void setShadowTarget(RouteTarget target) {
+        if (null == target) {
+            shadowTarget.remove();
+        } else {
+            shadowTarget.set(target);
+        }
+    }
+
+    public static RouteTarget getShadowTarget() {
+        return shadowTarget.get();
+    }
+
+    public static void setRouteScope(RouteScope scope) {
+        if (null == scope) {
+            routeScope.remove();
+        } else {
+            routeScope.set(scope);
+        }
+    }
+
+    public static RouteScope getRouteScope() {
+        return routeScope.get();
+    }
+
+    public static void setDBIdx(int dbIdx) {
+        RouteTarget target = routeTarget.get();
+        setRouteTarget(null == target ? RouteTarget.of(dbIdx, -1) : target.withDbIdx(dbIdx));
+    }
+
+    public static void setTBIdx(int tbIdx) {
+        RouteTarget target = routeTarget.get();
+        setRouteTarget(null == target ? RouteTarget.of(-1, tbIdx) : target.withTbIdx(tbIdx));
+    }
 
     public static void setDBKey(String dbKeyIdx){
-        dbKey.set(dbKeyIdx);
+        if (null == dbKeyIdx) {
+            clearDBKey();
+        } else {
+            setDBIdx(Integer.parseInt(dbKeyIdx));
+        }
     }
 
     public static String getDBKey(){
-        return dbKey.get();
+        RouteTarget target = routeTarget.get();
+        return null == target ? null : target.getDbKey();
     }
 
     public static void setTBKey(String tbKeyIdx){
-        tbKey.set(tbKeyIdx);
+        if (null == tbKeyIdx) {
+            clearTBKey();
+        } else {
+            setTBIdx(Integer.parseInt(tbKeyIdx));
+        }
     }
 
     public static String getTBKey(){
-        return tbKey.get();
+        RouteTarget target = routeTarget.get();
+        return null == target ? null : target.getTbKey();
     }
 
     public static void clearDBKey(){
-        dbKey.remove();
+        RouteTarget target = routeTarget.get();
+        if (null != target) {
+            setRouteTarget(target.withDbIdx(-1));
+        }
     }
 
     public static void clearTBKey(){
-        tbKey.remove();
+        RouteTarget target = routeTarget.get();
+        if (null != target) {
+            setRouteTarget(target.withTbIdx(-1));
+        }
+    }
+
+    /**
+     * 标记只读方法，返回之前的值以便恢复
+     */
+    public static boolean setReadOnly(boolean readOnly) {
+        ReadWriteState state = readWriteState.get();
+        if (null == state && !readOnly) {
+            return false;
+        }
+        state = readWriteState();
+        boolean previous = state.readOnly;
+        state.readOnly = readOnly;
+        removeIfIdle(state);
+        return previous;
+    }
+
+    public static boolean isReadOnly() {
+        ReadWriteState state = readWriteState.get();
+        return null != state && state.readOnly;
+    }
+
+    /**
+     * 标记当前执行的语句为查询，返回之前的值以便恢复
+     */
+    public static boolean setReadStatement(boolean readStatement) {
+        ReadWriteState state = readWriteState.get();
+        if (null == state && !readStatement) {
+            return false;
+        }
+        state = readWriteState();
+        boolean previous = state.readStatement;
+        state.readStatement = readStatement;
+        removeIfIdle(state);
+        return previous;
+    }
+
+    public static boolean isReadStatement() {
+        ReadWriteState state = readWriteState.get();
+        return null != state && state.readStatement;
+    }
+
+    /**
+     * 记录写入。scoped 为 true 表示处于 @DBRouter 作用域或事务中，作用域结束前的查询都读主库，由最外层作用域结束时清除；
+     * 否则只记录写入时间，供配置的时间窗口使用
+     *
+     * @return 是否为作用域内的首次写入
+     */
+    public static boolean markWritten(boolean scoped) {
+        ReadWriteState state = readWriteState();
+        if (!scoped) {
+            state.writtenAt = System.nanoTime();
+            return false;
+        }
+        if (state.written) {
+            return false;
+        }
+        state.written = true;
+        return true;
+    }
+
+    /**
+     * 作用域内有写入，或最近 windowNanos 内有写入；windowNanos 小于等于 0 时只看作用域
+     */
+    public static boolean isWrittenWithin(long windowNanos) {
+        ReadWriteState state = readWriteState.get();
+        if (null == state) {
+            return false;
+        }
+        if (state.written) {
+            return true;
+        }
+        if (state.writtenAt == NOT_WRITTEN) {
+            return false;
+        }
+        if (System.nanoTime() - state.writtenAt < windowNanos) {
+            return true;
+        }
+        state.writtenAt = NOT_WRITTEN;
+        removeIfIdle(state);
+        return false;
+    }
+
+    /**
+     * 最外层 @DBRouter 作用域或事务结束时清除写入标记
+     */
+    public static void clearWritten() {
+        ReadWriteState state = readWriteState.get();
+        if (null != state) {
+            state.written = false;
+            removeIfIdle(state);
+        }
+    }
+
+    /**
+     * 作用域内是否有写入，供 RouteContext 传递到异步任务
+     */
+    static boolean isWritten() {
+        ReadWriteState state = readWriteState.get();
+        return null != state && state.written;
+    }
+
+    /**
+     * 作用域外最近一次写入的时间，没有写入时为 NOT_WRITTEN，供 RouteContext 传递到异步任务
+     */
+    static long getWrittenAt() {
+        ReadWriteState state = readWriteState.get();
+        return null == state ? NOT_WRITTEN : state.writtenAt;
+    }
+
+    static void setWritten(boolean written, long writtenAt) {
+        ReadWriteState state = readWriteState.get();
+        if (null == state && !written && writtenAt == NOT_WRITTEN) {
+            return;
+        }
+        state = readWriteState();
+        state.written = written;
+        state.writtenAt = writtenAt;
+        removeIfIdle(state);
+    }
+
+    /**
+     * 清理读写分离状态
+     */
+    public static void clearReadWrite() {
+        readWriteState.remove();
+    }
+
+    private static ReadWriteState readWriteState() {
+        ReadWriteState state = readWriteState.get();
+        if (null == state) {
+            state = new ReadWriteState();
+            readWriteState.set(state);
+        }
+        return state;
+    }
+
+    private static void removeIfIdle(ReadWriteState state) {
+        if (!state.readOnly && !state.readStatement && !state.written && state.writtenAt == NOT_WRITTEN) {
+            readWriteState.remove();
+        }
+    }
+
+    private static final class ReadWriteState {
+        private boolean readOnly;
+        private boolean readStatement;
+        private boolean written;
+        private long writtenAt = NOT_WRITTEN;
     }
 
 }
@@ -1,10 +1,23 @@
 package fun.wswj.middleware.db.router;
 
+import java.util.Collections;
+import java.util.Set;
+
 /**
  *  数据路由配置
  */
 public class DBRouterConfig {
 
+    /**
+     * 数值路由键按十进制字符串的哈希计算，与字符串路由结果一致
+     */
+    public static final String NUMERIC_KEY_COMPATIBLE = "compatible";
+
+    /**
+     * 数值路由键直接做 64 位混淆，路由结果与字符串路由不同，仅用于新部署的数据
+     */
+    public static final String NUMERIC_KEY_FAST = "fast";
+
     /**
      * 分库数量
      */
@@ -25,6 +38,36 @@ public class DBRouterConfig {
      */
     private String routerType = "hashCode";
 
+    /**
+     * 各库权重，下标 0 对应 db01；为空时各库权重相同
+     */
+    private int[] dbWeights;
+
+    /**
+     * 各表权重，下标对应表下标，对每个库相同；为空时各表权重相同
+     */
+    private int[] tbWeights;
+
+    /**
+     * 数值路由键的哈希方式，compatible（默认）或 fast
+     */
+    private String numericKeyMode = NUMERIC_KEY_COMPATIBLE;
+
+    /**
+     * 分表的逻辑表名，为空时改写 SQL 中所有表名
+     */
+    private Set<String> logicalTables = Collections.emptySet();
+
+    /**
+     * 广播查询最大并发分片数
+     */
+    private int broadcastParallelism = 16;
+
+    /**
+     * 广播查询超时时间（毫秒），小于等于 0 不限制
+     */
+    private long broadcastTimeout = 30000;
+
     public DBRouterConfig() {
     }
 
@@ -72,4 +115,56 @@ public class DBRouterConfig {
     public void setRouterType(String routerType) {
         this.routerType = routerType;
     }
+
+    public Set<String> getLogicalTables() {
+        return logicalTables;
+    }
+
+    public void setLogicalTables(Set<String> logicalTables) {
+        this.logicalTables = null == logicalTables ? Collections.<String>emptySet() : logicalTables;
+    }
+    public int getBroadcastParallelism() {
+        return broadcastParallelism;
+    }
+
+    public void setBroadcastParallelism(int broadcastParallelism) {
+        this.broadcastParallelism = broadcastParallelism;
+    }
+
+    public long getBroadcastTimeout() {
+        return broadcastTimeout;
+    }
+
+    public void setBroadcastTimeout(long broadcastTimeout) {
+        this.broadcastTimeout = broadcastTimeout;
+    }
+
+    public int[] getDbWeights() {
+        return dbWeights;
+    }
+
+    public void setDbWeights(int[] dbWeights) {
+        this.dbWeights = dbWeights;
+    }
+
+    public String getNumericKeyMode() {
+        return numericKeyMode;
+    }
+
+    public void setNumericKeyMode(String numericKeyMode) {
+        this.numericKeyMode = numericKeyMode;
+    }
+
+    public boolean isNumericKeyFast() {
+        return NUMERIC_KEY_FAST.equals(numericKeyMode);
+    }
+
+    public int[] getTbWeights() {
+        return tbWeights;
+    }
+
+    public void setTbWeights(int[] tbWeights) {
+        this.tbWeights = tbWeights;
+    }
+
 }
@@ -1,22 +1,29 @@
 package fun.wswj.middleware.db.router;
 
-import fun.wswj.middleware.db.router.annotation.DBRouter;
 import fun.wswj.middleware.db.router.annotation.RouterKey;
+import fun.wswj.middleware.db.router.broadcast.DBRouterBroadcast;
+import fun.wswj.middleware.db.router.dynamic.PinnedConnectionHolder;
+import fun.wswj.middleware.db.router.index.GlobalIndex;
+import fun.wswj.middleware.db.router.metrics.DBRouterMetrics;
 import fun.wswj.middleware.db.router.strategy.IDBRouterStrategy;
+import fun.wswj.middleware.db.router.topology.RoutingSnapshot;
+import fun.wswj.middleware.db.router.topology.RoutingTopology;
 import org.apache.commons.lang.StringUtils;
-import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.ProceedingJoinPoint;
-import org.aspectj.lang.Signature;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Pointcut;
 import org.aspectj.lang.reflect.MethodSignature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.MethodClassKey;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import javax.sql.DataSource;
 import java.lang.annotation.Annotation;
-import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  *  数据路由切面，通过自定义注解的方式，拦截被切面的方法，进行数据库路由
@@ -30,118 +37,280 @@ public class DBRouterJoinPoint {
 
     private IDBRouterStrategy dbRouterStrategy;
 
+    private DBRouterBroadcast dbRouterBroadcast;
+
+    private DBRouterMetrics dbRouterMetrics;
+
+    private DataSource dataSource;
+
+    private IDBRouterStrategy geneRouterStrategy;
+
+    private GlobalIndex globalIndex;
+
+    private RoutingTopology routingTopology;
+
+    /**
+     * 路由计划缓存，按方法解析一次；同一接口方法存在多个实现类时，其余实现类落到 targetRoutePlans
+     */
+    private final Map<Method, RoutePlan> routePlans = new ConcurrentHashMap<>();
+
+    private final Map<MethodClassKey, RoutePlan> targetRoutePlans = new ConcurrentHashMap<>();
+
+    /**
+     * getAttrValue 按方法与路由字段缓存的解析结果，与路由计划分开缓存，不影响 @DBRouter 的路由
+     */
+    private final Map<Method, Map<String, RoutePlan>> attrPlans = new ConcurrentHashMap<>();
+
     public DBRouterJoinPoint(DBRouterConfig dbRouterConfig, IDBRouterStrategy dbRouterStrategy) {
         this.dbRouterConfig = dbRouterConfig;
         this.dbRouterStrategy = dbRouterStrategy;
     }
 
-    @Pointcut("@annotation(fun.wswj.middleware.db.router.annotation.DBRouter)")
+    public DBRouterJoinPoint(DBRouterConfig dbRouterConfig, IDBRouterStrategy dbRouterStrategy, DBRouterBroadcast dbRouterBroadcast) {
+        this(dbRouterConfig, dbRouterStrategy);
+        this.dbRouterBroadcast = dbRouterBroadcast;
+    }
+
+    /**
+     * 路由指标，未启用时为空
+     */
+    public void setDbRouterMetrics(DBRouterMetrics dbRouterMetrics) {
+        this.dbRouterMetrics = dbRouterMetrics;
+    }
+
+    /**
+     * 拓扑热更新，设置后最外层作用域捕获当前快照，作用域内的路由字段、路由策略与数据源都取自该快照
+     */
+    public void setRoutingTopology(RoutingTopology routingTopology) {
+        this.routingTopology = routingTopology;
+    }
+
+    /**
+     * 路由数据源，用于 @DBRouter(pinConnection = true) 绑定固定连接；未设置时不固定连接
+     */
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * 基因路由策略，用于 @DBRouter(geneKey = true)；未设置时这类方法调用失败
+     */
+    public void setGeneRouterStrategy(IDBRouterStrategy geneRouterStrategy) {
+        this.geneRouterStrategy = geneRouterStrategy;
+    }
+
+    /**
+     * 全局二级索引，用于 @DBRouter(index = "...")；未设置时这类方法调用失败
+     */
+    public void setGlobalIndex(GlobalIndex globalIndex) {
+        this.globalIndex = globalIndex;
+    }
+
+    @Pointcut("@annotation(fun.wswj.middleware.db.router.annotation.DBRouter) || @within(fun.wswj.middleware.db.router.annotation.DBRouter)")
     public void aopPoint() {
     }
 
     /**
      * 所有需要分库分表的操作，都需要使用自定义注解进行拦截，拦截后读取方法中的入参字段，根据字段进行路由操作。
-     * 1. dbRouter.key() 确定根据哪个字段进行路由
-     * 2. getAttrValue 根据数据库路由字段，从入参中读取出对应的值。比如路由 key 是 uId，那么就从入参对象 Obj 中获取到 uId 的值。
-     * 3. dbRouterStrategy.doRouter(dbKeyAttr) 路由策略根据具体的路由值进行处理
+     * 1. getRoutePlan 按方法解析并缓存路由计划，方法注解优先，其次类注解；dbRouter.key() 为空时使用全局配置的路由字段
+     * 2. routePlan.extract 根据数据库路由字段，从入参中读取出对应的值。比如路由 key 是 uId，那么就从入参对象 Obj 中获取到 uId 的值。
+     * 3. dbRouterStrategy.doRouter(dbKeyAttr) 路由策略根据具体的路由值进行处理，long/int 等整数路由值直接按数值路由，不转字符串
      * 4. 路由处理完成比，就是放行。 jp.proceed();
      * 5. 最后 dbRouterStrategy 需要执行 clear 因为这里用到了 ThreadLocal 需要手动清空。关于 ThreadLocal 内存泄漏介绍 https://t.zsxq.com/027QF2fae
+     *    嵌套调用时不清空：路由键相同直接沿用外层路由，不同则按新路由键路由，返回后恢复外层路由
+     * 6. @DBRouter(broadcast = true) 的方法不做路由计算，交给 dbRouterBroadcast 在全部库表上并行执行并合并结果
+     * 7. @DBRouter(readOnly = true) 的方法在执行期间标记只读，配置了从库时查询走从库；最外层作用域内发生写入后查询读主库，作用域结束时清除
+     * 8. @DBRouter(geneKey = true) 的路由键是生成的分片 ID，交给 geneRouterStrategy 按 ID 中的库表下标路由
+     * 9. @DBRouter(index = "...") 的路由键是索引值，经 globalIndex 查到路由字段的值后再路由，映射不存在时退回广播
+     * 10. @DBRouter(pinConnection = true) 的方法在作用域内固定一个分片连接；嵌套调用切换到其他分片时暂时解绑外层的固定连接
      */
-    @Around("aopPoint() && @annotation(dbRouter)")
-    public Object doRouter(ProceedingJoinPoint jp, DBRouter dbRouter) throws Throwable {
-        String dbKey = dbRouter.key();
-        if (StringUtils.isBlank(dbKey) && StringUtils.isBlank(dbRouterConfig.getRouterKey())) {
-            throw new RuntimeException("annotation DBRouter key is null！");
-        }
-        dbKey = StringUtils.isNotBlank(dbKey) ? dbKey : dbRouterConfig.getRouterKey();
+    @Around("aopPoint()")
+    public Object doRouter(ProceedingJoinPoint jp) throws Throwable {
         // 路由属性
-        Method method = getMethod(jp);
-        String dbKeyAttr = getAttrValue(dbKey, jp.getArgs(), method);
-        // 路由策略
-        dbRouterStrategy.doRouter(dbKeyAttr);
-        // 返回结果
+        RoutePlan routePlan = getRoutePlan(jp);
+        // 只读方法在未发生写入时查询走从库
+        boolean readOnly = routePlan.isReadOnly();
+        boolean previousReadOnly = readOnly && DBContextHolder.setReadOnly(true);
         try {
-            return jp.proceed();
+            if (routePlan.isBroadcast()) {
+                return broadcast(jp, routePlan);
+            }
+            DBRouterMetrics metrics = dbRouterMetrics;
+            long start = null == metrics ? 0L : System.nanoTime();
+            Object value = routePlan.extract(jp.getArgs());
+            if (null == value) {
+                throw new RuntimeException("获取路由属性值失败 attr：" + routePlan.getRouterKey());
+            }
+            // 二级索引：索引值换成路由字段的值，映射不存在时在全部库表上查询
+            String index = routePlan.getIndex();
+            if (null != index) {
+                value = globalIndex(index).lookup(index, value);
+                if (null == value) {
+                    return broadcast(jp, routePlan);
+                }
+            }
+            // 外层作用域路由键相同，沿用外层路由
+            RouteScope outer = DBContextHolder.getRouteScope();
+            RouteTarget previous = DBContextHolder.getRouteTarget();
+            if (null != outer && outer.matches(value, previous)) {
+                return jp.proceed();
+            }
+            RouteTarget previousShadow = DBContextHolder.getShadowTarget();
+            // 拓扑快照在最外层作用域捕获一次并计数，嵌套作用域沿用
+            RoutingTopology topology = routingTopology;
+            RoutingSnapshot inherited = null == outer ? null : outer.getSnapshot();
+            RoutingSnapshot acquired = null == topology || null != inherited ? null : topology.acquire();
+            RoutingSnapshot snapshot = null != inherited ? inherited : acquired;
+            try {
+                // 路由策略
+                route(routePlan.isGeneKey() ? geneRouterStrategy() : null == snapshot ? dbRouterStrategy : snapshot.getDbRouterStrategy(), value);
+                RouteTarget target = DBContextHolder.getRouteTarget();
+                DBContextHolder.setRouteScope(new RouteScope(value, target, snapshot));
+                if (null != metrics) {
+                    long routed = System.nanoTime();
+                    metrics.recordRouting(target, routed - start);
+                    start = routed;
+                }
+                // 固定连接只对应一个分片，切换分片时暂时解绑外层的固定连接
+                DataSource pinDataSource = dataSource;
+                PinnedConnectionHolder suspended = null == pinDataSource ? null : PinnedConnectionHolder.suspend(pinDataSource);
+                PinnedConnectionHolder pinned = null != pinDataSource && routePlan.isPinConnection() ? PinnedConnectionHolder.bind(pinDataSource, readOnly) : null;
+                // 返回结果
+                try {
+                    return jp.proceed();
+                } finally {
+                    if (null != pinned) {
+                        pinned.release();
+                    }
+                    if (null != suspended) {
+                        suspended.resume();
+                    }
+                    if (null == previous && null == previousShadow) {
+                        dbRouterStrategy.clear();
+                    } else {
+                        // 恢复外层路由，包括调用前手动设置的路由
+                        DBContextHolder.setRouteTarget(previous);
+                        DBContextHolder.setShadowTarget(previousShadow);
+                    }
+                    DBContextHolder.setRouteScope(outer);
+                    // 外层还有事务时由事务结束时清除
+                    if (null == outer && !TransactionSynchronizationManager.isSynchronizationActive()) {
+                        DBContextHolder.clearWritten();
+                    }
+                    if (null != metrics) {
+                        metrics.recordExecution(target, System.nanoTime() - start);
+                    }
+                }
+            } finally {
+                if (null != acquired) {
+                    topology.release(acquired);
+                }
+            }
         } finally {
-           dbRouterStrategy.clear();
+            if (readOnly) {
+                DBContextHolder.setReadOnly(previousReadOnly);
+            }
         }
     }
 
-    private Method getMethod(JoinPoint jp) throws NoSuchMethodException {
-        Signature sig = jp.getSignature();
-        MethodSignature methodSignature = (MethodSignature) sig;
-        return methodSignature.getMethod();
+    private Object broadcast(ProceedingJoinPoint jp, RoutePlan routePlan) throws Throwable {
+        if (null == dbRouterBroadcast) {
+            throw new RuntimeException("DBRouterBroadcast is not configured！");
+        }
+        // 调用线程也会执行分片任务，固定连接作用域内需先解绑，否则这些分片复用外层分片的连接
+        PinnedConnectionHolder suspended = null == dataSource ? null : PinnedConnectionHolder.suspend(dataSource);
+        try {
+            return dbRouterBroadcast.invoke(jp, ((MethodSignature) jp.getSignature()).getMethod(), routePlan.getDbRouter());
+        } finally {
+            if (null != suspended) {
+                suspended.resume();
+            }
+        }
     }
 
-    public String getAttrValue(String attr, Object[] args, Method method) {
-        Annotation[][] parameterAnnotations = method.getParameterAnnotations();
-        // 若入参是基本类型
-        for (int i = 0; i < parameterAnnotations.length; i++) {
-            for (Annotation annotation : parameterAnnotations[i]) {
-                // 检查是否是RouterKey注解
-                if (annotation instanceof RouterKey) {
-                    return args[i] != null ? args[i].toString() : null;
-                }
+    private RoutePlan getRoutePlan(ProceedingJoinPoint jp) {
+        Method method = ((MethodSignature) jp.getSignature()).getMethod();
+        Object target = jp.getTarget();
+        Class<?> targetClass = null == target ? method.getDeclaringClass() : target.getClass();
+        String defaultKey = routerConfig().getRouterKey();
+        RoutePlan routePlan = routePlans.get(method);
+        if (null == routePlan || routePlan.getTargetClass() != targetClass || routePlan.isStale(defaultKey)) {
+            MethodClassKey key = new MethodClassKey(method, targetClass);
+            routePlan = targetRoutePlans.get(key);
+            // 拓扑切换后全局路由字段变化时重新解析
+            if (null == routePlan || routePlan.isStale(defaultKey)) {
+                routePlan = RoutePlan.build(method, targetClass, defaultKey);
+                targetRoutePlans.put(key, routePlan);
             }
-        }
-        // 入参是对象，获取对象中属性名称为attr的属性值
-        String filedValue = null;
-        for (Object arg : args) {
-            try {
-                if (StringUtils.isNotBlank(filedValue)) {
-                    break;
-                }
-                filedValue = String.valueOf(this.getValueByName(arg, attr));
-            } catch (Exception e) {
-                logger.error("获取路由属性值失败 attr：{}", attr, e);
+            RoutePlan cached = routePlans.get(method);
+            if (null == cached || cached.getTargetClass() == targetClass) {
+                routePlans.put(method, routePlan);
             }
         }
-        return filedValue;
+        return routePlan;
     }
 
     /**
-     * 获取对象的特定属性值
-     *
-     * @author tang
-     * @param item 对象
-     * @param name 属性名
-     * @return 属性值
+     * 读取入参中路由字段的值，未找到或值为空时返回 null；路由字段为空时只读取 @RouterKey 参数
      */
-    private Object getValueByName(Object item, String name) {
-        try {
-            Field field = getFieldByName(item, name);
-            if (field == null) {
+    public String getAttrValue(String attr, Object[] args, Method method) {
+        String key = StringUtils.isBlank(attr) ? "" : attr;
+        Map<String, RoutePlan> plans = attrPlans.get(method);
+        if (null == plans) {
+            plans = attrPlans.computeIfAbsent(method, m -> new ConcurrentHashMap<>());
+        }
+        RoutePlan routePlan = plans.get(key);
+        if (null == routePlan) {
+            if (key.isEmpty() && !hasRouterKey(method)) {
                 return null;
             }
-            field.setAccessible(true);
-            Object o = field.get(item);
-            field.setAccessible(false);
-            return o;
-        } catch (IllegalAccessException e) {
-            return null;
+            routePlan = plans.computeIfAbsent(key, k -> RoutePlan.build(method, method.getDeclaringClass(), null, attr));
+        }
+        Object value = routePlan.extract(args);
+        return null == value ? null : value.toString();
+    }
+
+    private static boolean hasRouterKey(Method method) {
+        for (Annotation[] annotations : method.getParameterAnnotations()) {
+            for (Annotation annotation : annotations) {
+                if (annotation instanceof RouterKey) {
+                    return true;
+                }
+            }
         }
+        return false;
     }
 
     /**
-     * 根据名称获取方法，该方法同时兼顾继承类获取父类的属性
-     *
-     * @author tang
-     * @param item 对象
-     * @param name 属性名
-     * @return 该属性对应方法
+     * 当前请求使用的配置，开启拓扑热更新时取自快照
      */
-    private Field getFieldByName(Object item, String name) {
-        try {
-            Field field;
-            try {
-                field = item.getClass().getDeclaredField(name);
-            } catch (NoSuchFieldException e) {
-                field = item.getClass().getSuperclass().getDeclaredField(name);
-            }
-            return field;
-        } catch (NoSuchFieldException e) {
-            return null;
+    private DBRouterConfig routerConfig() {
+        RoutingTopology topology = routingTopology;
+        return null == topology ? dbRouterConfig : topology.active().getDbRouterConfig();
+    }
+
+    private static void route(IDBRouterStrategy strategy, Object value) {
+        if (value instanceof Long) {
+            strategy.doRouter(((Long) value).longValue());
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            strategy.doRouter(((Number) value).intValue());
+        } else {
+            strategy.doRouter(value.toString());
+        }
+    }
+
+    private GlobalIndex globalIndex(String index) {
+        if (null == globalIndex) {
+            throw new RuntimeException("GlobalIndex is not configured, set mini-db-router.jdbc.datasource.globalIndex: true！index：" + index);
+        }
+        return globalIndex;
+    }
+
+    private IDBRouterStrategy geneRouterStrategy() {
+        if (null == geneRouterStrategy) {
+            throw new RuntimeException("ShardIdGenerator is not configured, set mini-db-router.jdbc.datasource.idWorkerId！");
         }
+        return geneRouterStrategy;
     }
 
 }
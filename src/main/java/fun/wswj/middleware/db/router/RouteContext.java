@@ -0,0 +1,148 @@
+package fun.wswj.middleware.db.router;
+
+import fun.wswj.middleware.db.router.async.RouteContextExecutorService;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+
+/**
+ *  路由上下文快照：路由结果、注解路由作用域、双写影子路由与读写分离状态。
+ *  DBContextHolder 基于 ThreadLocal，异步任务在提交时捕获快照、执行时恢复，执行结束后还原执行线程原有的上下文，
+ *  线程池饱和由调用线程执行、ForkJoinPool 等场景也不会互相影响；虚拟线程执行器同样适用。
+ */
+public final class RouteContext {
+
+    private static final RouteContext EMPTY = new RouteContext(null, null, null, false, false, DBContextHolder.NOT_WRITTEN);
+
+    private final RouteTarget routeTarget;
+
+    private final RouteScope routeScope;
+
+    private final RouteTarget shadowTarget;
+
+    private final boolean readOnly;
+
+    private final boolean written;
+
+    private final long writtenAt;
+
+    private RouteContext(RouteTarget routeTarget, RouteScope routeScope, RouteTarget shadowTarget, boolean readOnly, boolean written, long writtenAt) {
+        this.routeTarget = routeTarget;
+        this.routeScope = routeScope;
+        this.shadowTarget = shadowTarget;
+        this.readOnly = readOnly;
+        this.written = written;
+        this.writtenAt = writtenAt;
+    }
+
+    /**
+     * 捕获当前线程的路由上下文
+     */
+    public static RouteContext capture() {
+        RouteTarget routeTarget = DBContextHolder.getRouteTarget();
+        RouteScope routeScope = DBContextHolder.getRouteScope();
+        RouteTarget shadowTarget = DBContextHolder.getShadowTarget();
+        boolean readOnly = DBContextHolder.isReadOnly();
+        boolean written = DBContextHolder.isWritten();
+        long writtenAt = DBContextHolder.getWrittenAt();
+        if (null == routeTarget && null == routeScope && null == shadowTarget && !readOnly && !written && writtenAt == DBContextHolder.NOT_WRITTEN) {
+            return EMPTY;
+        }
+        return new RouteContext(routeTarget, routeScope, shadowTarget, readOnly, written, writtenAt);
+    }
+
+    /**
+     * 在本上下文中执行，结束后恢复当前线程原有的上下文
+     */
+    public void run(Runnable task) {
+        RouteContext previous = attach();
+        try {
+            task.run();
+        } finally {
+            previous.attach();
+        }
+    }
+
+    public <V> V call(Callable<V> task) throws Exception {
+        RouteContext previous = attach();
+        try {
+            return task.call();
+        } finally {
+            previous.attach();
+        }
+    }
+
+    public <T> T get(Supplier<T> task) {
+        RouteContext previous = attach();
+        try {
+            return task.get();
+        } finally {
+            previous.attach();
+        }
+    }
+
+    /**
+     * 写入当前线程，返回原有上下文
+     */
+    private RouteContext attach() {
+        RouteContext previous = capture();
+        DBContextHolder.setRouteTarget(routeTarget);
+        DBContextHolder.setRouteScope(routeScope);
+        DBContextHolder.setShadowTarget(shadowTarget);
+        DBContextHolder.setReadOnly(readOnly);
+        DBContextHolder.setWritten(written, writtenAt);
+        return previous;
+    }
+
+    public static Runnable wrap(Runnable task) {
+        RouteContext context = capture();
+        return () -> context.run(task);
+    }
+
+    public static <V> Callable<V> wrap(Callable<V> task) {
+        RouteContext context = capture();
+        return () -> context.call(task);
+    }
+
+    /**
+     * 用于 CompletableFuture.supplyAsync(RouteContext.wrapSupplier(() -> ...), executor)；与 Callable 重载区分，避免 lambda 二义性
+     */
+    public static <T> Supplier<T> wrapSupplier(Supplier<T> task) {
+        RouteContext context = capture();
+        return () -> context.get(task);
+    }
+
+    /**
+     * 包装执行器，提交的任务自动携带提交线程的路由上下文，可用于 CompletableFuture.runAsync(task, executor)
+     */
+    public static Executor wrap(Executor executor) {
+        if (executor instanceof ExecutorService) {
+            return wrap((ExecutorService) executor);
+        }
+        return task -> executor.execute(wrap(task));
+    }
+
+    public static ExecutorService wrap(ExecutorService executor) {
+        return executor instanceof RouteContextExecutorService ? executor : new RouteContextExecutorService(executor);
+    }
+
+    public RouteTarget getRouteTarget() {
+        return routeTarget;
+    }
+
+    public RouteTarget getShadowTarget() {
+        return shadowTarget;
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    @Override
+    public String toString() {
+        return "RouteContext{route=" + routeTarget + ", shadow=" + shadowTarget + ", readOnly=" + readOnly + "}";
+    }
+
+}
@@ -0,0 +1,234 @@
+package fun.wswj.middleware.db.router;
+
+import fun.wswj.middleware.db.router.annotation.DBRouter;
+import fun.wswj.middleware.db.router.annotation.RouterKey;
+import fun.wswj.middleware.db.router.util.PropertyAccessor;
+import org.apache.commons.lang.StringUtils;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.util.ClassUtils;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Parameter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ *  路由执行计划，每个被拦截的方法只解析一次：路由注解、路由字段所在参数以及编译好的取值器
+ */
+public class RoutePlan {
+
+    private final Class<?> targetClass;
+
+    private final DBRouter dbRouter;
+
+    /**
+     * 路由字段，支持 order.user.id 形式的嵌套路径
+     */
+    private final String routerKey;
+
+    /**
+     * 路由值来源，按参数顺序取第一个非空值
+     */
+    private final ArgumentSource[] sources;
+
+    /**
+     * 无法静态解析时，按运行时类型查找路由字段
+     */
+    private final boolean dynamic;
+
+    private RoutePlan(Class<?> targetClass, DBRouter dbRouter, String routerKey, ArgumentSource[] sources, boolean dynamic) {
+        this.targetClass = targetClass;
+        this.dbRouter = dbRouter;
+        this.routerKey = routerKey;
+        this.sources = sources;
+        this.dynamic = dynamic;
+    }
+
+    /**
+     * 解析方法的路由计划
+     *
+     * @param method       被拦截的方法
+     * @param targetClass  目标对象类型，用于读取类级别的 @DBRouter
+     * @param defaultKey   全局配置的路由字段
+     * @return 路由计划
+     */
+    public static RoutePlan build(Method method, Class<?> targetClass, String defaultKey) {
+        // JDK 代理拦截到的是接口方法，取实现类上的方法解析，注解写在实现类方法及其参数上时同样生效
+        Method specificMethod = null == targetClass ? method : ClassUtils.getMostSpecificMethod(method, targetClass);
+        DBRouter dbRouter = findDBRouter(specificMethod, targetClass);
+        String routerKey = null != dbRouter && StringUtils.isNotBlank(dbRouter.key()) ? dbRouter.key() : defaultKey;
+        return build(specificMethod, targetClass, dbRouter, routerKey);
+    }
+
+    /**
+     * 按指定的路由字段解析方法的路由计划
+     *
+     * @param method       被拦截的方法
+     * @param targetClass  目标对象类型
+     * @param dbRouter     路由注解，可为空
+     * @param routerKey    路由字段
+     * @return 路由计划
+     */
+    public static RoutePlan build(Method method, Class<?> targetClass, DBRouter dbRouter, String routerKey) {
+        // 广播到全部库表，不需要路由字段
+        if (null != dbRouter && dbRouter.broadcast()) {
+            return new RoutePlan(targetClass, dbRouter, routerKey, new ArgumentSource[0], false);
+        }
+
+        // 1. @RouterKey 标记的参数，直接取参数值
+        Annotation[][] parameterAnnotations = method.getParameterAnnotations();
+        for (int i = 0; i < parameterAnnotations.length; i++) {
+            for (Annotation annotation : parameterAnnotations[i]) {
+                if (annotation instanceof RouterKey) {
+                    return new RoutePlan(targetClass, dbRouter, routerKey, new ArgumentSource[]{new ArgumentSource(i, null)}, false);
+                }
+            }
+        }
+
+        if (StringUtils.isBlank(routerKey)) {
+            throw new RuntimeException("annotation DBRouter key is null！");
+        }
+        String[] path = routerKey.split("\\.");
+
+        // 2. 路由字段首段与参数名一致（编译参数 -parameters），取该参数及其剩余路径
+        Parameter[] parameters = method.getParameters();
+        for (int i = 0; i < parameters.length; i++) {
+            if (parameters[i].isNamePresent() && parameters[i].getName().equals(path[0])) {
+                PropertyAccessor accessor = path.length == 1 ? null : PropertyAccessor.compile(parameters[i].getType(), path, 1);
+                if (path.length == 1 || null != accessor) {
+                    return new RoutePlan(targetClass, dbRouter, routerKey, new ArgumentSource[]{new ArgumentSource(i, accessor)}, false);
+                }
+            }
+        }
+
+        // 3. 入参对象中名称为 routerKey 的属性，按声明类型编译访问器
+        List<ArgumentSource> sources = new ArrayList<>();
+        boolean dynamic = false;
+        for (int i = 0; i < parameters.length; i++) {
+            Class<?> type = parameters[i].getType();
+            if (isValueType(type)) {
+                continue;
+            }
+            PropertyAccessor accessor = PropertyAccessor.compile(type, path, 0);
+            if (null != accessor) {
+                sources.add(new ArgumentSource(i, accessor));
+            } else if (!Modifier.isFinal(type.getModifiers())) {
+                // 声明类型没有该属性，但运行时子类可能有
+                dynamic = true;
+            }
+        }
+        return new RoutePlan(targetClass, dbRouter, routerKey, sources.toArray(new ArgumentSource[0]), dynamic);
+    }
+
+    private static DBRouter findDBRouter(Method method, Class<?> targetClass) {
+        DBRouter dbRouter = AnnotatedElementUtils.findMergedAnnotation(method, DBRouter.class);
+        if (null == dbRouter && null != targetClass) {
+            dbRouter = AnnotatedElementUtils.findMergedAnnotation(targetClass, DBRouter.class);
+        }
+        if (null == dbRouter) {
+            dbRouter = AnnotatedElementUtils.findMergedAnnotation(method.getDeclaringClass(), DBRouter.class);
+        }
+        return dbRouter;
+    }
+
+    /**
+     * 从入参中提取路由值
+     *
+     * @param args 方法入参
+     * @return 路由值，未找到时返回 null
+     */
+    public Object extract(Object[] args) {
+        for (ArgumentSource source : sources) {
+            Object value = source.read(args);
+            if (null != value) {
+                return value;
+            }
+        }
+        if (dynamic) {
+            for (Object arg : args) {
+                if (null == arg || isValueType(arg.getClass())) {
+                    continue;
+                }
+                // 同一类型在不同方法上可能使用不同的路由字段，按 routerKey 区分
+                PropertyAccessor accessor = PropertyAccessor.of(arg.getClass(), routerKey);
+                Object value = accessor == PropertyAccessor.ABSENT ? null : accessor.read(arg);
+                if (null != value) {
+                    return value;
+                }
+            }
+        }
+        return null;
+    }
+
+    public Class<?> getTargetClass() {
+        return targetClass;
+    }
+
+    public DBRouter getDbRouter() {
+        return dbRouter;
+    }
+
+    public boolean isBroadcast() {
+        return null != dbRouter && dbRouter.broadcast();
+    }
+
+    public boolean isReadOnly() {
+        return null != dbRouter && dbRouter.readOnly();
+    }
+
+    public boolean isPinConnection() {
+        return null != dbRouter && dbRouter.pinConnection();
+    }
+
+    public boolean isGeneKey() {
+        return null != dbRouter && dbRouter.geneKey();
+    }
+
+    /**
+     * 全局二级索引名，未声明时为空
+     */
+    public String getIndex() {
+        return null == dbRouter || StringUtils.isBlank(dbRouter.index()) ? null : dbRouter.index();
+    }
+
+    public String getRouterKey() {
+        return routerKey;
+    }
+
+    /**
+     * 未在注解上声明路由字段，且全局配置的路由字段已变化
+     */
+    public boolean isStale(String defaultKey) {
+        return (null == dbRouter || StringUtils.isBlank(dbRouter.key())) && !Objects.equals(routerKey, defaultKey);
+    }
+
+    private static boolean isValueType(Class<?> type) {
+        return type != Object.class && (type.isPrimitive() || type.isArray() || type.getName().startsWith("java."));
+    }
+
+    /**
+     * 路由值来源：参数下标 + 可选的属性访问器
+     */
+    private static final class ArgumentSource {
+
+        private final int index;
+        private final PropertyAccessor accessor;
+
+        ArgumentSource(int index, PropertyAccessor accessor) {
+            this.index = index;
+            this.accessor = accessor;
+        }
+
+        Object read(Object[] args) {
+            Object arg = args[index];
+            if (null == arg || null == accessor) {
+                return arg;
+            }
+            return accessor.read(arg);
+        }
+    }
+
+}
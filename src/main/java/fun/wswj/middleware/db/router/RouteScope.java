@@ -0,0 +1,49 @@
+package fun.wswj.middleware.db.router;
+
+import fun.wswj.middleware.db.router.topology.RoutingSnapshot;
+
+/**
+ *  注解路由作用域：路由键的值与按它计算出的路由结果。嵌套的 @DBRouter 调用路由键相同时直接沿用，不再重新计算。
+ *  开启拓扑热更新时还记录进入最外层作用域时的快照，作用域内的路由、配置与数据源都取自该快照
+ */
+public final class RouteScope {
+
+    private final Object key;
+
+    private final RouteTarget target;
+
+    private final RoutingSnapshot snapshot;
+
+    public RouteScope(Object key, RouteTarget target) {
+        this(key, target, null);
+    }
+
+    public RouteScope(Object key, RouteTarget target, RoutingSnapshot snapshot) {
+        this.key = key;
+        this.target = target;
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * 路由键相同，且路由结果未被手动修改
+     */
+    public boolean matches(Object key, RouteTarget current) {
+        return null != current && current == target && this.key.equals(key);
+    }
+
+    public Object getKey() {
+        return key;
+    }
+
+    public RouteTarget getTarget() {
+        return target;
+    }
+
+    /**
+     * 作用域使用的拓扑快照，未开启拓扑热更新时为空
+     */
+    public RoutingSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+}
@@ -0,0 +1,142 @@
+package fun.wswj.middleware.db.router;
+
+/**
+ *  路由结果，库表下标及其派生的库标识、数据源键、表后缀均在创建时确定，实例按下标缓存复用
+ */
+public final class RouteTarget {
+
+    /**
+     * 预生成字符串的范围，超出范围时按需格式化
+     */
+    private static final int CACHED_DB_COUNT = 100;
+    private static final int CACHED_TB_COUNT = 1000;
+
+    private static final String[] DB_KEYS = new String[CACHED_DB_COUNT];
+    private static final String[] LOOKUP_KEYS = new String[CACHED_DB_COUNT];
+    private static final String[] TB_KEYS = new String[CACHED_TB_COUNT];
+    private static final String[] TABLE_SUFFIXES = new String[CACHED_TB_COUNT];
+
+    /**
+     * 实例缓存，下标为 [dbIdx + 1][tbIdx + 1]，-1 表示未设置
+     */
+    private static final RouteTarget[][] TARGETS = new RouteTarget[CACHED_DB_COUNT + 1][];
+
+    static {
+        for (int i = 0; i < CACHED_DB_COUNT; i++) {
+            DB_KEYS[i] = String.format("%02d", i).intern();
+            LOOKUP_KEYS[i] = ("db" + DB_KEYS[i]).intern();
+        }
+        for (int i = 0; i < CACHED_TB_COUNT; i++) {
+            TB_KEYS[i] = String.format("%03d", i).intern();
+            TABLE_SUFFIXES[i] = ("_" + TB_KEYS[i]).intern();
+        }
+    }
+
+    private final int dbIdx;
+    private final int tbIdx;
+
+    /** 库标识，如 01 */
+    private final String dbKey;
+    /** 数据源键，如 db01 */
+    private final String lookupKey;
+    /** 表标识，如 003 */
+    private final String tbKey;
+    /** 表后缀，如 _003 */
+    private final String tableSuffix;
+
+    private RouteTarget(int dbIdx, int tbIdx) {
+        this.dbIdx = dbIdx;
+        this.tbIdx = tbIdx;
+        this.dbKey = dbIdx < 0 ? null : dbIdx < CACHED_DB_COUNT ? DB_KEYS[dbIdx] : String.format("%02d", dbIdx);
+        this.lookupKey = null == dbKey ? null : dbIdx < CACHED_DB_COUNT ? LOOKUP_KEYS[dbIdx] : "db" + dbKey;
+        this.tbKey = tbIdx < 0 ? null : tbIdx < CACHED_TB_COUNT ? TB_KEYS[tbIdx] : String.format("%03d", tbIdx);
+        this.tableSuffix = null == tbKey ? null : tbIdx < CACHED_TB_COUNT ? TABLE_SUFFIXES[tbIdx] : "_" + tbKey;
+    }
+
+    /**
+     * 获取路由结果
+     *
+     * @param dbIdx 库下标，-1 表示未设置
+     * @param tbIdx 表下标，-1 表示未设置
+     * @return 缓存范围内返回共享实例
+     */
+    public static RouteTarget of(int dbIdx, int tbIdx) {
+        if (dbIdx < -1 || tbIdx < -1) {
+            throw new IllegalArgumentException("route index out of range dbIdx：" + dbIdx + " tbIdx：" + tbIdx);
+        }
+        if (dbIdx >= CACHED_DB_COUNT || tbIdx >= CACHED_TB_COUNT) {
+            return new RouteTarget(dbIdx, tbIdx);
+        }
+        RouteTarget[] row = TARGETS[dbIdx + 1];
+        if (null == row) {
+            row = new RouteTarget[CACHED_TB_COUNT + 1];
+            TARGETS[dbIdx + 1] = row;
+        }
+        RouteTarget target = row[tbIdx + 1];
+        if (null == target) {
+            // 并发下可能重复创建，实例不可变，任取其一即可
+            target = new RouteTarget(dbIdx, tbIdx);
+            row[tbIdx + 1] = target;
+        }
+        return target;
+    }
+
+    public RouteTarget withDbIdx(int dbIdx) {
+        return of(dbIdx, tbIdx);
+    }
+
+    public RouteTarget withTbIdx(int tbIdx) {
+        return of(dbIdx, tbIdx);
+    }
+
+    public int getDbIdx() {
+        return dbIdx;
+    }
+
+    public int getTbIdx() {
+        return tbIdx;
+    }
+
+    public String getDbKey() {
+        return dbKey;
+    }
+
+    public String getLookupKey() {
+        return lookupKey;
+    }
+
+    public String getTbKey() {
+        return tbKey;
+    }
+
+    public String getTableSuffix() {
+        return tableSuffix;
+    }
+
+    public boolean isEmpty() {
+        return dbIdx < 0 && tbIdx < 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RouteTarget)) {
+            return false;
+        }
+        RouteTarget that = (RouteTarget) o;
+        return dbIdx == that.dbIdx && tbIdx == that.tbIdx;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * dbIdx + tbIdx;
+    }
+
+    @Override
+    public String toString() {
+        return "RouteTarget{db=" + dbKey + ", tb=" + tbKey + "}";
+    }
+
+}
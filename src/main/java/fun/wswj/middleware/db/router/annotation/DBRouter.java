@@ -14,4 +14,25 @@ public @interface DBRouter {
     /** 分库分表字段 */
     String key() default "";
 
+    /** 只读方法，未发生写入时查询走从库 */
+    boolean readOnly() default false;
+
+    /** 广播到全部库表并行执行，用于没有路由字段的查询 */
+    boolean broadcast() default false;
+
+    /** 广播结果的归并排序字段，如 "createTime desc"，各分片 SQL 需按相同字段排序 */
+    String orderBy() default "";
+
+    /** 广播结果条数上限，小于 0 不限制；为 1 时任一分片返回结果即取消其余分片 */
+    int limit() default -1;
+
+    /** 作用域内固定一个分片连接，多次 mapper 调用复用同一连接，不开启事务；已在事务中时不生效 */
+    boolean pinConnection() default false;
+
+    /** 路由键是 ShardIdGenerator 生成的 ID，直接按 ID 中的库表下标路由，不做哈希 */
+    boolean geneKey() default false;
+
+    /** 全局二级索引名，路由键是索引值（如邮箱），先查索引映射得到路由字段的值再路由；映射不存在时广播查询 */
+    String index() default "";
+
 }
@@ -0,0 +1,28 @@
+package fun.wswj.middleware.db.router.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ *  全局二级索引，标注在 Mapper 的 insert/update/delete 方法上，执行成功后维护索引值到路由键的映射：
+ *  insert/update 写入新映射，update 配置了 previousKey 且值变化时删除旧映射，delete 删除入参中索引值的映射；
+ *  按索引值查询时使用 @DBRouter(key = "email", index = "idx_user_email")
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+@Repeatable(SecondaryIndexes.class)
+public @interface SecondaryIndex {
+
+    /** 索引名，即映射表的逻辑表名，映射表按索引值分库分表 */
+    String name();
+
+    /** 索引字段，入参中的属性路径，如 email、user.email */
+    String key();
+
+    /** 路由字段，入参中的属性路径，默认使用全局配置的路由字段 */
+    String routerKey() default "";
+
+    /** 更新前的索引值，入参中的属性路径，如 oldEmail；与新值不同时删除旧值的映射，不配置时旧映射保留 */
+    String previousKey() default "";
+
+}
@@ -0,0 +1,15 @@
+package fun.wswj.middleware.db.router.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ *  同一方法上的多个全局二级索引
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface SecondaryIndexes {
+
+    SecondaryIndex[] value();
+
+}
@@ -0,0 +1,16 @@
+package fun.wswj.middleware.db.router.async;
+
+import fun.wswj.middleware.db.router.RouteContext;
+import org.springframework.core.task.TaskDecorator;
+
+/**
+ *  Spring TaskDecorator，@Async 与 ThreadPoolTaskExecutor 执行的任务携带提交线程的路由上下文
+ */
+public class RouteContextTaskDecorator implements TaskDecorator {
+
+    @Override
+    public Runnable decorate(Runnable runnable) {
+        return RouteContext.wrap(runnable);
+    }
+
+}
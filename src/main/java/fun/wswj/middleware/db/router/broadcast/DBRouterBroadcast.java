@@ -0,0 +1,423 @@
+package fun.wswj.middleware.db.router.broadcast;
+
+import fun.wswj.middleware.db.router.DBContextHolder;
+import fun.wswj.middleware.db.router.RouteScope;
+import fun.wswj.middleware.db.router.RouteTarget;
+import fun.wswj.middleware.db.router.annotation.DBRouter;
+import fun.wswj.middleware.db.router.strategy.IDBRouterStrategy;
+import fun.wswj.middleware.db.router.topology.RoutingSnapshot;
+import fun.wswj.middleware.db.router.topology.RoutingTopology;
+import fun.wswj.middleware.db.router.util.PropertyAccessor;
+import org.apache.commons.lang.StringUtils;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ *  广播查询，在全部库表上并行执行并合并结果。
+ *  每个分片任务在执行线程中设置自己的路由，执行完毕恢复原路由；JDK 支持虚拟线程时优先使用虚拟线程，并发数由 parallelism 限制。
+ */
+public class DBRouterBroadcast implements Closeable {
+
+    private final Logger logger = LoggerFactory.getLogger(DBRouterBroadcast.class);
+
+    private final IDBRouterStrategy dbRouterStrategy;
+
+    private final ExecutorService executor;
+
+    /**
+     * 虚拟线程没有线程数上限，用信号量限制同时访问数据库的分片数
+     */
+    private final Semaphore permits;
+
+    private final long timeoutMillis;
+
+    private RoutingTopology routingTopology;
+
+    /**
+     * @param dbRouterStrategy 路由策略，提供全部库表
+     * @param parallelism      最大并发分片数
+     * @param timeoutMillis    单次广播超时时间，小于等于 0 不限制
+     */
+    public DBRouterBroadcast(IDBRouterStrategy dbRouterStrategy, int parallelism, long timeoutMillis) {
+        this.dbRouterStrategy = dbRouterStrategy;
+        this.timeoutMillis = timeoutMillis;
+        this.permits = new Semaphore(Math.max(1, parallelism));
+        ExecutorService virtualExecutor = newVirtualThreadExecutor();
+        if (null != virtualExecutor) {
+            this.executor = virtualExecutor;
+            logger.info("db-router broadcast executor: virtual threads, parallelism: {}", parallelism);
+        } else {
+            this.executor = newPlatformThreadExecutor(Math.max(1, parallelism));
+            logger.info("db-router broadcast executor: platform threads, parallelism: {}", parallelism);
+        }
+    }
+
+    /**
+     * 拓扑热更新，设置后一次广播的库表与各分片任务的数据源取自同一个快照
+     */
+    public void setRoutingTopology(RoutingTopology routingTopology) {
+        this.routingTopology = routingTopology;
+    }
+
+    /**
+     * 在全部库表上执行，结果按路由顺序返回
+     *
+     * @param task 分片任务，执行时已设置好对应路由
+     * @return 各分片结果
+     */
+    public <T> List<T> scatter(Function<RouteTarget, T> task) {
+        return fanOut(task, null);
+    }
+
+    /**
+     * 在全部库表上执行查询并拼接结果
+     */
+    public <T> List<T> queryList(Function<RouteTarget, ? extends List<T>> query) {
+        return queryList(query, null, -1);
+    }
+
+    /**
+     * 在全部库表上执行查询，各分片结果需已按 comparator 排序，k 路归并后截取前 limit 条。
+     * 各分片 SQL 应自带 ORDER BY 与 LIMIT (offset + limit)。
+     *
+     * @param query      分片查询
+     * @param comparator 排序规则，为空时按路由顺序拼接
+     * @param limit      条数上限，小于 0 不限制
+     * @return 合并结果
+     */
+    public <T> List<T> queryList(Function<RouteTarget, ? extends List<T>> query, Comparator<? super T> comparator, int limit) {
+        Predicate<List<T>> stopWhen = null;
+        if (null == comparator && limit == 1) {
+            stopWhen = list -> null != list && !list.isEmpty();
+        }
+        List<List<T>> results = fanOut(query, stopWhen);
+        return null == comparator ? concat(results, limit) : merge(results, comparator, limit);
+    }
+
+    /**
+     * 任一分片返回非空结果即取消其余分片，适用于 LIMIT 1 查询
+     *
+     * @return 首个非空结果，均为空时返回 null
+     */
+    public <T> T findAny(Function<RouteTarget, T> query) {
+        for (T result : fanOut(query, result -> null != result)) {
+            if (null != result) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 任一分片存在即返回 true 并取消其余分片
+     */
+    public boolean exists(Function<RouteTarget, Boolean> query) {
+        return Boolean.TRUE.equals(findAny(target -> Boolean.TRUE.equals(query.apply(target)) ? Boolean.TRUE : null));
+    }
+
+    /**
+     * 汇总全部分片的计数
+     */
+    public long count(Function<RouteTarget, ? extends Number> query) {
+        long total = 0;
+        for (Number count : fanOut(query, null)) {
+            total += null == count ? 0 : count.longValue();
+        }
+        return total;
+    }
+
+    /**
+     * 注解方式广播：在全部库表上执行被拦截的方法，并按返回类型合并结果。
+     * List/Collection 按 orderBy/limit 归并，Set 归并后去重，int/long 求和（int 溢出时抛出 ArithmeticException），布尔值任一为真，void 全部执行，其余对象取首个非空结果；
+     * Map、数组、Optional 及其他集合类型无法合并，直接抛出 IllegalStateException。
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public Object invoke(ProceedingJoinPoint jp, Method method, DBRouter dbRouter) throws Throwable {
+        Class<?> returnType = method.getReturnType();
+        // 只有集合类型按列表归并，Object、Serializable、Iterable 等泛型擦除后的返回类型取首个非空结果
+        boolean collection = Collection.class.isAssignableFrom(returnType);
+        boolean list = collection && returnType.isAssignableFrom(ArrayList.class);
+        boolean set = collection && !list && returnType.isAssignableFrom(LinkedHashSet.class);
+        if (Map.class.isAssignableFrom(returnType) || returnType.isArray() || returnType == Optional.class
+                || (collection && !list && !set)) {
+            throw new IllegalStateException("广播查询不支持的返回类型：" + returnType.getName() + " method：" + method);
+        }
+        Function<RouteTarget, Object> task = target -> {
+            try {
+                return jp.proceed();
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new ProceedException(e);
+            }
+        };
+        try {
+            if (list || set) {
+                Comparator<Object> comparator = StringUtils.isBlank(dbRouter.orderBy()) ? null : orderBy(dbRouter.orderBy());
+                List<Object> rows = queryList(target -> toList(task.apply(target)), comparator, dbRouter.limit());
+                return list ? rows : new LinkedHashSet<>(rows);
+            }
+            if (returnType == int.class || returnType == Integer.class) {
+                return Math.toIntExact(count((Function) task));
+            }
+            if (returnType == long.class || returnType == Long.class) {
+                return count((Function) task);
+            }
+            if (returnType == boolean.class || returnType == Boolean.class) {
+                return exists((Function) task);
+            }
+            if (returnType == void.class) {
+                scatter(task);
+                return null;
+            }
+            return findAny(task);
+        } catch (ProceedException e) {
+            throw e.getCause();
+        }
+    }
+
+    private <T> List<T> fanOut(Function<RouteTarget, ? extends T> task, Predicate<? super T> stopWhen) {
+        RoutingTopology topology = routingTopology;
+        // 作用域外的广播自行捕获快照并计数，分片任务结束后释放
+        RouteScope scope = DBContextHolder.getRouteScope();
+        RoutingSnapshot inherited = null == scope ? null : scope.getSnapshot();
+        RoutingSnapshot acquired = null == topology || null != inherited ? null : topology.acquire();
+        try {
+            return fanOut(task, stopWhen, null != inherited ? inherited : acquired);
+        } finally {
+            if (null != acquired) {
+                topology.release(acquired);
+            }
+        }
+    }
+
+    private <T> List<T> fanOut(Function<RouteTarget, ? extends T> task, Predicate<? super T> stopWhen, RoutingSnapshot snapshot) {
+        List<RouteTarget> targets = null == snapshot ? dbRouterStrategy.routeTargets() : snapshot.getDbRouterStrategy().routeTargets();
+        List<T> results = new ArrayList<>(Collections.<T>nCopies(targets.size(), null));
+        CompletionService<Void> completionService = new ExecutorCompletionService<>(executor);
+        List<Future<Void>> futures = new ArrayList<>(targets.size());
+        // 只读标记随分片任务传递，读写分离时广播查询可以走从库
+        boolean readOnly = DBContextHolder.isReadOnly();
+        for (int i = 0; i < targets.size(); i++) {
+            final int idx = i;
+            final RouteTarget target = targets.get(i);
+            futures.add(completionService.submit(() -> {
+                results.set(idx, runOnTarget(task, target, readOnly, snapshot));
+                return null;
+            }));
+        }
+
+        long deadline = timeoutMillis > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis) : Long.MAX_VALUE;
+        try {
+            for (int done = 0; done < futures.size(); done++) {
+                Future<Void> future = timeoutMillis > 0
+                        ? completionService.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)
+                        : completionService.take();
+                if (null == future) {
+                    throw new TimeoutException("广播查询超时 timeout：" + timeoutMillis + "ms");
+                }
+                future.get();
+                if (null != stopWhen && anyMatch(results, stopWhen)) {
+                    // 已拿到结果，取消未完成的分片
+                    break;
+                }
+            }
+        } catch (ExecutionException e) {
+            throw propagate(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("广播查询被中断", e);
+        } catch (TimeoutException e) {
+            throw new RuntimeException(e.getMessage(), e);
+        } finally {
+            for (Future<Void> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return results;
+    }
+
+    private <T> T runOnTarget(Function<RouteTarget, ? extends T> task, RouteTarget target, boolean readOnly, RoutingSnapshot snapshot) throws InterruptedException {
+        permits.acquire();
+        // 线程池饱和时由调用线程执行，需要恢复调用线程原有的路由
+        RouteTarget previous = DBContextHolder.getRouteTarget();
+        RouteScope previousScope = DBContextHolder.getRouteScope();
+        boolean previousReadOnly = DBContextHolder.setReadOnly(readOnly);
+        try {
+            DBContextHolder.setRouteTarget(target);
+            if (null != snapshot) {
+                // 分片任务按广播时的快照取数据源
+                DBContextHolder.setRouteScope(new RouteScope(target, target, snapshot));
+            }
+            return task.apply(target);
+        } finally {
+            DBContextHolder.setRouteTarget(previous);
+            DBContextHolder.setRouteScope(previousScope);
+            DBContextHolder.setReadOnly(previousReadOnly);
+            permits.release();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> toList(Object result) {
+        if (null == result || result instanceof List) {
+            return (List<Object>) result;
+        }
+        return new ArrayList<>((Collection<Object>) result);
+    }
+
+    private static <T> boolean anyMatch(List<T> results, Predicate<? super T> predicate) {
+        for (T result : results) {
+            if (null != result && predicate.test(result)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static <T> List<T> concat(List<List<T>> results, int limit) {
+        List<T> merged = new ArrayList<>();
+        for (List<T> result : results) {
+            if (null == result) {
+                continue;
+            }
+            for (T row : result) {
+                if (limit >= 0 && merged.size() >= limit) {
+                    return merged;
+                }
+                merged.add(row);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * k 路归并，每个分片结果视为一个有序队列
+     */
+    private static <T> List<T> merge(List<List<T>> results, Comparator<? super T> comparator, int limit) {
+        PriorityQueue<int[]> heap = new PriorityQueue<>(Math.max(1, results.size()),
+                (a, b) -> comparator.compare(results.get(a[0]).get(a[1]), results.get(b[0]).get(b[1])));
+        int total = 0;
+        for (int i = 0; i < results.size(); i++) {
+            List<T> result = results.get(i);
+            if (null != result && !result.isEmpty()) {
+                heap.add(new int[]{i, 0});
+                total += result.size();
+            }
+        }
+        int size = limit >= 0 ? Math.min(limit, total) : total;
+        List<T> merged = new ArrayList<>(size);
+        while (merged.size() < size && !heap.isEmpty()) {
+            int[] cursor = heap.poll();
+            List<T> result = results.get(cursor[0]);
+            merged.add(result.get(cursor[1]));
+            if (++cursor[1] < result.size()) {
+                heap.add(cursor);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * 解析 "field desc" 形式的排序字段，支持嵌套属性
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Comparator<Object> orderBy(String orderBy) {
+        String[] parts = orderBy.trim().split("\\s+");
+        String path = parts[0];
+        boolean desc = parts.length > 1 && "desc".equalsIgnoreCase(parts[1]);
+        Comparator<Object> comparator = (a, b) -> {
+            Comparable va = (Comparable) PropertyAccessor.of(a.getClass(), path).read(a);
+            Comparable vb = (Comparable) PropertyAccessor.of(b.getClass(), path).read(b);
+            if (va == vb) {
+                return 0;
+            }
+            if (null == va) {
+                return -1;
+            }
+            if (null == vb) {
+                return 1;
+            }
+            return va.compareTo(vb);
+        };
+        return desc ? comparator.reversed() : comparator;
+    }
+
+    private static RuntimeException propagate(Throwable cause) {
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new RuntimeException(cause);
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static ExecutorService newPlatformThreadExecutor(int parallelism) {
+        AtomicInteger counter = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(parallelism, parallelism, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(parallelism * 64),
+                r -> {
+                    Thread thread = new Thread(r, "db-router-broadcast-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 透传被拦截方法抛出的受检异常
+     */
+    private static class ProceedException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        ProceedException(Throwable cause) {
+            super(cause);
+        }
+    }
+
+}
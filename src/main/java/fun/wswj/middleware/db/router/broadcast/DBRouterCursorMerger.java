@@ -0,0 +1,122 @@
+package fun.wswj.middleware.db.router.broadcast;
+
+import fun.wswj.middleware.db.router.DBContextHolder;
+import fun.wswj.middleware.db.router.RouteTarget;
+import fun.wswj.middleware.db.router.dynamic.PinnedConnectionHolder;
+import fun.wswj.middleware.db.router.strategy.IDBRouterStrategy;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ *  跨库表流式查询，为每个库表打开一个 MyBatis 游标，合并成一个惰性迭代的 MergedCursor。
+ *  每个游标持有自己分片的 SqlSession 与连接，内存占用约为 fetchSize × 分片数，与结果总量无关。
+ *  MySQL 需在 Mapper 上设置 fetchSize = Integer.MIN_VALUE（或开启 useCursorFetch）才会真正流式读取。
+ */
+public class DBRouterCursorMerger {
+
+    private final ObjectProvider<SqlSessionFactory> sqlSessionFactoryProvider;
+
+    private final IDBRouterStrategy dbRouterStrategy;
+
+    private volatile SqlSessionFactory sqlSessionFactory;
+
+    private DataSource dataSource;
+
+    public DBRouterCursorMerger(SqlSessionFactory sqlSessionFactory, IDBRouterStrategy dbRouterStrategy) {
+        this.sqlSessionFactoryProvider = null;
+        this.sqlSessionFactory = sqlSessionFactory;
+        this.dbRouterStrategy = dbRouterStrategy;
+    }
+
+    public DBRouterCursorMerger(ObjectProvider<SqlSessionFactory> sqlSessionFactoryProvider, IDBRouterStrategy dbRouterStrategy) {
+        this.sqlSessionFactoryProvider = sqlSessionFactoryProvider;
+        this.dbRouterStrategy = dbRouterStrategy;
+    }
+
+    /**
+     * 设置后在 @DBRouter(pinConnection = true) 作用域内打开游标时暂时解绑固定连接，各分片各自借出连接
+     */
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * 按 statement 在全部库表上打开游标
+     *
+     * @param statement  Mapper 语句 id
+     * @param parameter  查询参数
+     * @param comparator 排序规则，各分片 SQL 需按相同规则 ORDER BY；为空时按路由顺序拼接
+     * @return 合并游标，使用完毕需要关闭
+     */
+    public <T> MergedCursor<T> open(String statement, Object parameter, Comparator<? super T> comparator) {
+        return open(session -> session.<T>selectCursor(statement, parameter), comparator);
+    }
+
+    /**
+     * 通过 Mapper 方法在全部库表上打开游标
+     *
+     * @param mapperType Mapper 接口
+     * @param opener     返回 Cursor 的 Mapper 方法调用
+     * @param comparator 排序规则，为空时按路由顺序拼接
+     * @return 合并游标，使用完毕需要关闭
+     */
+    public <T, M> MergedCursor<T> open(Class<M> mapperType, Function<M, Cursor<T>> opener, Comparator<? super T> comparator) {
+        return open(session -> opener.apply(session.getMapper(mapperType)), comparator);
+    }
+
+    private <T> MergedCursor<T> open(Function<SqlSession, Cursor<T>> opener, Comparator<? super T> comparator) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // 事务中 Spring 会把连接绑定到线程，各分片会复用同一个连接
+            throw new IllegalStateException("DBRouterCursorMerger can not be used inside a transaction");
+        }
+        SqlSessionFactory factory = getSqlSessionFactory();
+        List<RouteTarget> targets = dbRouterStrategy.routeTargets();
+        List<MergedCursor.ShardCursor<T>> cursors = new ArrayList<>(targets.size());
+        RouteTarget previous = DBContextHolder.getRouteTarget();
+        // 固定连接作用域内 DataSourceUtils 会把各分片的语句都交给固定连接执行
+        PinnedConnectionHolder suspended = null == dataSource ? null : PinnedConnectionHolder.suspend(dataSource);
+        try {
+            for (RouteTarget target : targets) {
+                // 连接在执行语句时获取，此时路由已指向当前分片；之后游标持有该连接直到关闭
+                DBContextHolder.setRouteTarget(target);
+                SqlSession session = factory.openSession();
+                try {
+                    cursors.add(new MergedCursor.ShardCursor<>(target, session, opener.apply(session)));
+                } catch (RuntimeException e) {
+                    session.close();
+                    throw e;
+                }
+            }
+        } catch (RuntimeException e) {
+            for (MergedCursor.ShardCursor<T> cursor : cursors) {
+                cursor.close();
+            }
+            throw e;
+        } finally {
+            if (null != suspended) {
+                suspended.resume();
+            }
+            DBContextHolder.setRouteTarget(previous);
+        }
+        return new MergedCursor<>(cursors, comparator);
+    }
+
+    private SqlSessionFactory getSqlSessionFactory() {
+        SqlSessionFactory factory = sqlSessionFactory;
+        if (null == factory) {
+            factory = sqlSessionFactoryProvider.getObject();
+            sqlSessionFactory = factory;
+        }
+        return factory;
+    }
+
+}
@@ -0,0 +1,221 @@
+package fun.wswj.middleware.db.router.broadcast;
+
+import fun.wswj.middleware.db.router.RouteTarget;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.session.SqlSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ *  跨库表合并游标，只能迭代一次；有排序规则时按 k 路归并，否则按路由顺序依次读取各分片。
+ *  同一时刻每个分片只保留一条待比较记录，关闭时释放全部游标与连接。
+ */
+public class MergedCursor<T> implements Closeable, Iterable<T> {
+
+    private final List<ShardCursor<T>> cursors;
+
+    private final Comparator<? super T> comparator;
+
+    private boolean iterated;
+
+    private boolean closed;
+
+    MergedCursor(List<ShardCursor<T>> cursors, Comparator<? super T> comparator) {
+        this.cursors = cursors;
+        this.comparator = comparator;
+    }
+
+    @Override
+    public synchronized Iterator<T> iterator() {
+        if (closed) {
+            throw new IllegalStateException("MergedCursor is closed");
+        }
+        if (iterated) {
+            throw new IllegalStateException("MergedCursor can only be iterated once");
+        }
+        iterated = true;
+        return null == comparator ? new ConcatIterator() : new SortedIterator();
+    }
+
+    /**
+     * 分片数
+     */
+    public int getShardCount() {
+        return cursors.size();
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (ShardCursor<T> cursor : cursors) {
+            cursor.close();
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("MergedCursor is closed");
+        }
+    }
+
+    /**
+     * 无序拼接，逐个分片读完
+     */
+    private class ConcatIterator implements Iterator<T> {
+
+        private int index;
+
+        @Override
+        public boolean hasNext() {
+            checkOpen();
+            while (index < cursors.size()) {
+                ShardCursor<T> cursor = cursors.get(index);
+                if (cursor.advance()) {
+                    return true;
+                }
+                // 读完立即释放该分片连接
+                cursor.close();
+                index++;
+            }
+            return false;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return cursors.get(index).take();
+        }
+
+    }
+
+    /**
+     * 有序归并，各分片需已按同一规则排序
+     */
+    private class SortedIterator implements Iterator<T> {
+
+        private final PriorityQueue<ShardCursor<T>> heads;
+
+        private SortedIterator() {
+            heads = new PriorityQueue<>(Math.max(1, cursors.size()), (a, b) -> comparator.compare(a.head, b.head));
+            for (ShardCursor<T> cursor : cursors) {
+                offer(cursor);
+            }
+        }
+
+        private void offer(ShardCursor<T> cursor) {
+            if (cursor.advance()) {
+                heads.offer(cursor);
+            } else {
+                cursor.close();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            checkOpen();
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            ShardCursor<T> cursor = heads.poll();
+            T value = cursor.take();
+            offer(cursor);
+            return value;
+        }
+
+    }
+
+    /**
+     * 单个分片的游标与会话
+     */
+    static final class ShardCursor<T> {
+
+        private final Logger logger = LoggerFactory.getLogger(MergedCursor.class);
+
+        private final RouteTarget target;
+
+        private final SqlSession session;
+
+        private final Cursor<T> cursor;
+
+        private Iterator<T> iterator;
+
+        private T head;
+
+        private boolean hasHead;
+
+        private boolean closed;
+
+        ShardCursor(RouteTarget target, SqlSession session, Cursor<T> cursor) {
+            this.target = target;
+            this.session = session;
+            this.cursor = cursor;
+        }
+
+        /**
+         * 预读一条记录作为当前头部，已有头部时直接返回
+         */
+        boolean advance() {
+            if (hasHead) {
+                return true;
+            }
+            if (closed) {
+                return false;
+            }
+            if (null == iterator) {
+                iterator = cursor.iterator();
+            }
+            if (!iterator.hasNext()) {
+                return false;
+            }
+            head = iterator.next();
+            hasHead = true;
+            return true;
+        }
+
+        T take() {
+            T value = head;
+            head = null;
+            hasHead = false;
+            return value;
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            head = null;
+            hasHead = false;
+            try {
+                cursor.close();
+            } catch (Exception e) {
+                logger.warn("关闭游标失败 target：{}", target, e);
+            } finally {
+                session.close();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,40 @@
+package fun.wswj.middleware.db.router.config;
+
+import fun.wswj.middleware.db.router.DBRouterConfig;
+import fun.wswj.middleware.db.router.limit.ShardLimiters;
+import fun.wswj.middleware.db.router.metrics.DBRouterMeterBinder;
+import fun.wswj.middleware.db.router.metrics.DBRouterMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+/**
+ *  路由指标配置，classpath 中有 Micrometer 时生效，可通过 metricsEnabled=false 关闭
+ */
+@Configuration
+@ConditionalOnClass(MeterRegistry.class)
+@ConditionalOnProperty(prefix = "mini-db-router.jdbc.datasource", name = "metricsEnabled", havingValue = "true", matchIfMissing = true)
+public class DBRouterMetricsAutoConfig {
+
+    @Bean
+    @ConditionalOnMissingBean
+    public DBRouterMetrics dbRouterMetrics(DBRouterConfig dbRouterConfig) {
+        return new DBRouterMetrics(dbRouterConfig.getDbCount(), dbRouterConfig.getTbCount());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public DBRouterMeterBinder dbRouterMeterBinder(DBRouterMetrics dbRouterMetrics, Environment environment, ObjectProvider<ShardLimiters> shardLimiters) {
+        // 分表维度指标数量为 库数 × 表数，规模大时可关闭只保留分库维度
+        boolean tableLevel = environment.getProperty("mini-db-router.jdbc.datasource.metricsTableLevel", Boolean.class, true);
+        DBRouterMeterBinder binder = new DBRouterMeterBinder(dbRouterMetrics, tableLevel);
+        binder.setShardLimiters(shardLimiters.getIfAvailable());
+        return binder;
+    }
+
+}
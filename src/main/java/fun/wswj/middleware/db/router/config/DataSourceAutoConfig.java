@@ -2,30 +2,75 @@ package fun.wswj.middleware.db.router.config;
 
 import fun.wswj.middleware.db.router.DBRouterConfig;
 import fun.wswj.middleware.db.router.DBRouterJoinPoint;
+import fun.wswj.middleware.db.router.async.RouteContextTaskDecorator;
+import fun.wswj.middleware.db.router.broadcast.DBRouterBroadcast;
+import fun.wswj.middleware.db.router.broadcast.DBRouterCursorMerger;
 import fun.wswj.middleware.db.router.dynamic.DynamicDataSource;
 import fun.wswj.middleware.db.router.dynamic.DynamicMybatisPlugin;
+import fun.wswj.middleware.db.router.dynamic.LazyDataSource;
+import fun.wswj.middleware.db.router.dynamic.ReadWriteSplitPlugin;
+import fun.wswj.middleware.db.router.dynamic.ShardDataSource;
+import fun.wswj.middleware.db.router.hotkey.HotKeyDetector;
+import fun.wswj.middleware.db.router.id.ShardIdGenerator;
+import fun.wswj.middleware.db.router.index.GlobalIndex;
+import fun.wswj.middleware.db.router.index.GlobalIndexPlugin;
+import fun.wswj.middleware.db.router.limit.ShardLimiters;
+import fun.wswj.middleware.db.router.hotkey.HotKeyListener;
+import fun.wswj.middleware.db.router.metrics.DBRouterMetrics;
+import fun.wswj.middleware.db.router.reshard.DualWritePlugin;
+import fun.wswj.middleware.db.router.reshard.ReshardPhase;
+import fun.wswj.middleware.db.router.strategy.AbstractDBRouterStrategy;
 import fun.wswj.middleware.db.router.strategy.IDBRouterStrategy;
 import fun.wswj.middleware.db.router.strategy.impl.DBRouterStrategyConsistentHash;
+import fun.wswj.middleware.db.router.strategy.impl.DBRouterStrategyDirectory;
+import fun.wswj.middleware.db.router.strategy.impl.DBRouterStrategyFastRange;
+import fun.wswj.middleware.db.router.strategy.impl.DBRouterStrategyGene;
 import fun.wswj.middleware.db.router.strategy.impl.DBRouterStrategyHashCode;
+import fun.wswj.middleware.db.router.strategy.impl.DBRouterStrategyJumpHash;
+import fun.wswj.middleware.db.router.strategy.impl.DBRouterStrategyRefreshable;
+import fun.wswj.middleware.db.router.strategy.impl.DBRouterStrategyRendezvous;
+import fun.wswj.middleware.db.router.strategy.impl.DBRouterStrategyReshard;
+import fun.wswj.middleware.db.router.topology.RoutingSnapshot;
+import fun.wswj.middleware.db.router.topology.RoutingTopology;
 import fun.wswj.middleware.db.router.util.PropertyUtil;
 import fun.wswj.middleware.db.router.util.StringUtils;
 import org.apache.ibatis.plugin.Interceptor;
 import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.reflection.SystemMetaObject;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
 import org.springframework.context.EnvironmentAware;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.env.Environment;
+import org.springframework.core.task.TaskDecorator;
 import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.sql.DataSource;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  *  数据源配置解析。
@@ -33,6 +78,8 @@ import java.util.Objects;
 @Configuration
 public class DataSourceAutoConfig implements EnvironmentAware {
 
+    private final Logger logger = LoggerFactory.getLogger(DataSourceAutoConfig.class);
+
     /**
      * 分库全局属性
      */
@@ -43,6 +90,16 @@ public class DataSourceAutoConfig implements EnvironmentAware {
      */
     private static final String TAG_POOL = "pool";
 
+    /**
+     * 从库配置，如 db01.replicas.r1.url
+     */
+    private static final String TAG_REPLICAS = "replicas";
+
+    /**
+     * 库权重属性名，从库也使用同名属性表示读权重，不从主库继承
+     */
+    private static final String TAG_WEIGHT = "weight";
+
 
     /**
      * 数据源配置组
@@ -54,6 +111,17 @@ public class DataSourceAutoConfig implements EnvironmentAware {
      */
     private Map<String, Object> defaultDataSourceConfig;
 
+    private String defaultDataSourceName;
+
+    /**
+     * 连接池创建方式：首次路由时创建，或启动时按并行度创建并可选预热
+     */
+    private boolean lazyInit;
+
+    private int initParallelism;
+
+    private boolean warmUp;
+
     /**
      * 分库数量
      */
@@ -74,20 +142,212 @@ public class DataSourceAutoConfig implements EnvironmentAware {
      */
     private String routerType;
 
+    /**
+     * 各库权重
+     */
+    private int[] dbWeights;
+
+    /**
+     * 各表权重
+     */
+    private int[] tbWeights;
+
+    /**
+     * 数值路由键的哈希方式
+     */
+    private String numericKeyMode;
+
+    /**
+     * 路由目录文件及检查间隔
+     */
+    private String directoryFile;
+
+    private long directoryReloadInterval;
+
+    /**
+     * 扩缩容目标库表数量与阶段，未配置 reshardDbCount 时不启用双路由
+     */
+    private Integer reshardDbCount;
+
+    private int reshardTbCount;
+
+    private ReshardPhase reshardPhase;
+
+    /**
+     * 分表的逻辑表名
+     */
+    private Set<String> logicalTables = Collections.emptySet();
+
+    /**
+     * 广播查询并发数与超时时间
+     */
+    private Integer broadcastParallelism;
+
+    private Long broadcastTimeout;
+
+    /**
+     * 从库选择方式与写后读主库的时间窗口
+     */
+    private String readLoadBalance;
+
+    private long readAfterWriteWindow;
+
+    /**
+     * 热点路由键检测参数
+     */
+    private int hotKeyCapacity;
+
+    private int hotKeySampleInterval;
+
+    private long hotKeyDecayInterval;
+
+    private double hotKeyShare;
+
+    /**
+     * 分片 ID：节点编号、节点编号位数与库表下标位数
+     */
+    private long idWorkerId;
+
+    private int idWorkerBits;
+
+    private int idGeneDbBits;
+
+    private int idGeneTbBits;
+
+    /**
+     * 全局二级索引本地缓存条数与有效期
+     */
+    private int indexCacheSize;
+
+    private long indexCacheTtl;
+
+    /**
+     * 分库并发限制：初始、最小、最大并发上限，耗时阈值，下调比例与最长等待
+     */
+    private int limitInitial;
+
+    private int limitMin;
+
+    private int limitMax;
+
+    private long limitLatency;
+
+    private double limitBackoff;
+
+    private long limitMaxWait;
+
+    /**
+     * 是否有分库配置了从库
+     */
+    private boolean hasReplicas;
+
+    /**
+     * 拓扑热更新：配置文件、检查间隔与旧快照保留时间
+     */
+    private String topologyFile;
+
+    private long topologyReloadInterval;
+
+    private long topologyGracePeriod;
+
+    private Environment environment;
+
     @Bean(name = "db-router-point")
     @ConditionalOnMissingBean
-    public DBRouterJoinPoint point(DBRouterConfig dbRouterConfig, IDBRouterStrategy dbRouterStrategy) {
-        return new DBRouterJoinPoint(dbRouterConfig, dbRouterStrategy);
+    public DBRouterJoinPoint point(DBRouterConfig dbRouterConfig, IDBRouterStrategy dbRouterStrategy, DBRouterBroadcast dbRouterBroadcast, ObjectProvider<DBRouterMetrics> dbRouterMetrics,
+                                   @Qualifier("mysqlDataSource") ObjectProvider<DataSource> mysqlDataSource, ObjectProvider<ShardIdGenerator> shardIdGenerator,
+                                   ObjectProvider<GlobalIndex> globalIndex, ObjectProvider<RoutingTopology> routingTopology) {
+        DBRouterJoinPoint point = new DBRouterJoinPoint(dbRouterConfig, dbRouterStrategy, dbRouterBroadcast);
+        point.setDbRouterMetrics(dbRouterMetrics.getIfAvailable());
+        point.setRoutingTopology(routingTopology.getIfAvailable());
+        point.setDataSource(mysqlDataSource.getIfAvailable());
+        point.setGlobalIndex(globalIndex.getIfAvailable());
+        ShardIdGenerator generator = shardIdGenerator.getIfAvailable();
+        if (null != generator) {
+            point.setGeneRouterStrategy(new DBRouterStrategyGene(dbRouterConfig, generator));
+        }
+        return point;
     }
 
     @Bean
-    public DBRouterConfig dbRouterConfig() {
-        return new DBRouterConfig(dbCount, tbCount, routerKey, routerType);
+    @ConditionalOnMissingBean
+    public DBRouterBroadcast dbRouterBroadcast(DBRouterConfig dbRouterConfig, IDBRouterStrategy dbRouterStrategy, ObjectProvider<RoutingTopology> routingTopology) {
+        DBRouterBroadcast broadcast = new DBRouterBroadcast(dbRouterStrategy, dbRouterConfig.getBroadcastParallelism(), dbRouterConfig.getBroadcastTimeout());
+        broadcast.setRoutingTopology(routingTopology.getIfAvailable());
+        return broadcast;
+    }
+
+    /**
+     * SqlSessionFactory 由 mybatis 自动配置创建，首次打开游标时再获取
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public DBRouterCursorMerger dbRouterCursorMerger(ObjectProvider<SqlSessionFactory> sqlSessionFactory, IDBRouterStrategy dbRouterStrategy,
+                                                     @Qualifier("mysqlDataSource") ObjectProvider<DataSource> mysqlDataSource) {
+        DBRouterCursorMerger merger = new DBRouterCursorMerger(sqlSessionFactory, dbRouterStrategy);
+        merger.setDataSource(mysqlDataSource.getIfAvailable());
+        return merger;
+    }
+
+    /**
+     * 开启拓扑热更新时为启动快照的配置，只用于创建组件；请求路径上的组件经 RoutingTopology.active() 读取当前请求使用的配置
+     */
+    @Bean
+    public DBRouterConfig dbRouterConfig(ObjectProvider<RoutingTopology> routingTopology) {
+        RoutingTopology topology = routingTopology.getIfAvailable();
+        return null == topology ? createRouterConfig() : topology.get().getDbRouterConfig();
+    }
+
+    private DBRouterConfig createRouterConfig() {
+        DBRouterConfig dbRouterConfig = new DBRouterConfig(dbCount, tbCount, routerKey, routerType);
+        dbRouterConfig.setLogicalTables(logicalTables);
+        dbRouterConfig.setDbWeights(dbWeights);
+        dbRouterConfig.setTbWeights(tbWeights);
+        dbRouterConfig.setNumericKeyMode(numericKeyMode);
+        if (null != broadcastParallelism) {
+            dbRouterConfig.setBroadcastParallelism(broadcastParallelism);
+        }
+        if (null != broadcastTimeout) {
+            dbRouterConfig.setBroadcastTimeout(broadcastTimeout);
+        }
+        return dbRouterConfig;
     }
 
     @Bean("dbRouterDynamicMybatisPlugin")
-    public Interceptor plugin() {
-        return new DynamicMybatisPlugin();
+    public Interceptor plugin(DBRouterConfig dbRouterConfig, ObjectProvider<DBRouterMetrics> dbRouterMetrics, ObjectProvider<RoutingTopology> routingTopology) {
+        DynamicMybatisPlugin plugin = new DynamicMybatisPlugin(dbRouterConfig, dbRouterMetrics.getIfAvailable());
+        plugin.setRoutingTopology(routingTopology.getIfAvailable());
+        return plugin;
+    }
+
+    /**
+     * 扩缩容双写，配置 reshardDbCount 时启用
+     */
+    @Bean("dbRouterDualWritePlugin")
+    @ConditionalOnProperty(prefix = "mini-db-router.jdbc.datasource", name = "reshardDbCount")
+    public Interceptor dualWritePlugin(Environment environment) {
+        return new DualWritePlugin(environment.getProperty("mini-db-router.jdbc.datasource.reshardFailOnError", Boolean.class, false));
+    }
+
+    /**
+     * 全局二级索引，配置 globalIndex: true 时启用，映射表与业务表使用同一路由策略
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "mini-db-router.jdbc.datasource", name = "globalIndex", havingValue = "true")
+    public GlobalIndex globalIndex(IDBRouterStrategy dbRouterStrategy, @Qualifier("mysqlDataSource") DataSource mysqlDataSource) {
+        return new GlobalIndex(dbRouterStrategy, mysqlDataSource, indexCacheSize, indexCacheTtl);
+    }
+
+    @Bean("dbRouterGlobalIndexPlugin")
+    @ConditionalOnProperty(prefix = "mini-db-router.jdbc.datasource", name = "globalIndex", havingValue = "true")
+    public Interceptor globalIndexPlugin(GlobalIndex globalIndex, DBRouterConfig dbRouterConfig) {
+        return new GlobalIndexPlugin(globalIndex, dbRouterConfig.getRouterKey());
+    }
+
+    @Bean("dbRouterReadWriteSplitPlugin")
+    public Interceptor readWriteSplitPlugin() {
+        return new ReadWriteSplitPlugin(hasReplicas);
     }
 
     // 可参考 README 配置连接池；https://gitcode.net/KnowledgePlanet/db-router-spring-boot-starter/-/blob/master/README.md
@@ -119,33 +379,288 @@ public class DataSourceAutoConfig implements EnvironmentAware {
         }
     }
 
+    /**
+     * 配置了从库时包装为主从数据源，否则直接使用主库连接池
+     */
+    @SuppressWarnings("unchecked")
+    private DataSource createShardDataSource(String name, Map<String, Object> attributes) {
+        DataSource primary = createDataSource(attributes);
+        Object replicaConfig = attributes.get(TAG_REPLICAS);
+        if (!(replicaConfig instanceof Map) || ((Map<String, Object>) replicaConfig).isEmpty()) {
+            return primary;
+        }
+        List<DataSource> replicas = new ArrayList<>();
+        List<Integer> weights = new ArrayList<>();
+        for (Map.Entry<String, Object> entry : ((Map<String, Object>) replicaConfig).entrySet()) {
+            // 从库未配置的属性沿用主库配置，连接池属性复制一份避免互相修改
+            Map<String, Object> replica = new HashMap<>((Map<String, Object>) entry.getValue());
+            Map<String, Object> pool = new HashMap<>((Map<String, Object>) attributes.getOrDefault(TAG_POOL, Collections.emptyMap()));
+            pool.putAll((Map<String, Object>) replica.getOrDefault(TAG_POOL, Collections.emptyMap()));
+            if (pool.containsKey("pool-name")) {
+                pool.put("pool-name", pool.get("pool-name") + "-" + entry.getKey());
+            }
+            replica.put(TAG_POOL, pool);
+            for (Map.Entry<String, Object> attr : attributes.entrySet()) {
+                if (!TAG_REPLICAS.equals(attr.getKey()) && !TAG_WEIGHT.equals(attr.getKey())) {
+                    replica.putIfAbsent(attr.getKey(), attr.getValue());
+                }
+            }
+            replicas.add(createDataSource(replica));
+            weights.add(null == replica.get("weight") ? 1 : Integer.parseInt(replica.get("weight").toString()));
+        }
+        return new ShardDataSource(name, primary, replicas, weights, readLoadBalance, readAfterWriteWindow);
+    }
+
     @Bean("mysqlDataSource")
-    public DataSource createDataSource() {
-        // 创建数据源
+    public DataSource createDataSource(ObjectProvider<DBRouterMetrics> dbRouterMetrics, ObjectProvider<RoutingTopology> routingTopology, ObjectProvider<ShardLimiters> shardLimiters) {
+        // 创建数据源，开启拓扑热更新时使用快照中已创建的数据源
+        RoutingTopology topology = routingTopology.getIfAvailable();
+        Map<String, DataSource> dataSources = null == topology ? createDataSources(dataSourceConfigs(), null) : topology.get().getDataSources();
         Map<Object, Object> targetDataSources = new HashMap<>();
         for (String dbInfo : dataSourceMap.keySet()) {
-            Map<String, Object> objMap = dataSourceMap.get(dbInfo);
-            // 根据objMap创建DataSourceProperties,遍历objMap根据属性反射创建DataSourceProperties
-            DataSource ds = createDataSource(objMap);
-            targetDataSources.put(dbInfo, ds);
-
+            targetDataSources.put(dbInfo, dataSources.get(dbInfo));
         }
 
         // 设置数据源
         DynamicDataSource dynamicDataSource = new DynamicDataSource();
         dynamicDataSource.setTargetDataSources(targetDataSources);
         // db0为默认数据源
-        dynamicDataSource.setDefaultTargetDataSource(createDataSource(defaultDataSourceConfig));
+        dynamicDataSource.setDefaultTargetDataSource(dataSources.get(defaultDataSourceName));
+        dynamicDataSource.setDbRouterMetrics(dbRouterMetrics.getIfAvailable());
+        dynamicDataSource.setRoutingTopology(topology);
+        dynamicDataSource.setShardLimiters(shardLimiters.getIfAvailable());
 
         return dynamicDataSource;
     }
 
+    /**
+     * 分库隔离与自适应并发限制，limitEnabled=true 时开启
+     */
     @Bean
-    public IDBRouterStrategy dbRouterStrategy(DBRouterConfig dbRouterConfig) {
-        if("consistentHash".equals(dbRouterConfig.getRouterType())){
-            return new DBRouterStrategyConsistentHash(dbRouterConfig);
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "mini-db-router.jdbc.datasource", name = "limitEnabled", havingValue = "true")
+    public ShardLimiters shardLimiters() {
+        return new ShardLimiters(limitInitial, limitMin, limitMax, limitLatency, limitBackoff, limitMaxWait);
+    }
+
+    /**
+     * 拓扑热更新，topologyReload=true 时开启；配置文件或配置中心变化后在后台构建新快照并原子替换
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "mini-db-router.jdbc.datasource", name = "topologyReload", havingValue = "true")
+    public RoutingTopology routingTopology(ObjectProvider<HotKeyDetector> hotKeyDetector) {
+        HotKeyDetector detector = hotKeyDetector.getIfAvailable();
+        RoutingTopology topology = new RoutingTopology(createSnapshot(1L, null, detector), (env, previous) -> {
+            // 新配置由新的实例解析，不修改启动时的配置
+            DataSourceAutoConfig config = new DataSourceAutoConfig();
+            config.setEnvironment(env);
+            return config.createSnapshot(previous.getVersion() + 1, previous, detector);
+        }, environment, topologyGracePeriod);
+        if (null != topologyFile) {
+            topology.watch(Paths.get(topologyFile), topologyReloadInterval);
+        }
+        return topology;
+    }
+
+    /**
+     * @param previous 上一个快照，配置未变化的连接池直接复用，新建的连接池在替换前预热
+     */
+    private RoutingSnapshot createSnapshot(long version, RoutingSnapshot previous, HotKeyDetector hotKeyDetector) {
+        DBRouterConfig dbRouterConfig = createRouterConfig();
+        IDBRouterStrategy dbRouterStrategy = createStrategy(dbRouterConfig, hotKeyDetector);
+        Map<String, Map<String, Object>> configs = dataSourceConfigs();
+        return new RoutingSnapshot(version, dbRouterConfig, dbRouterStrategy, createDataSources(configs, previous), configs, defaultDataSourceName);
+    }
+
+    /**
+     * 默认数据源在分库集合中时复用同一个连接池
+     */
+    private Map<String, Map<String, Object>> dataSourceConfigs() {
+        Map<String, Map<String, Object>> configs = new LinkedHashMap<>(dataSourceMap);
+        configs.putIfAbsent(defaultDataSourceName, defaultDataSourceConfig);
+        return configs;
+    }
+
+    private Map<String, DataSource> createDataSources(Map<String, Map<String, Object>> configs, RoutingSnapshot previous) {
+        if (null == previous) {
+            return lazyInit ? createLazyDataSources(configs) : createDataSources(configs, warmUp);
+        }
+        Map<String, DataSource> dataSources = new HashMap<>();
+        Map<String, Map<String, Object>> created = new LinkedHashMap<>();
+        for (Map.Entry<String, Map<String, Object>> entry : configs.entrySet()) {
+            DataSource reused = previous.getDataSource(entry.getKey());
+            if (null != reused && entry.getValue().equals(previous.getDataSourceConfig(entry.getKey()))) {
+                dataSources.put(entry.getKey(), reused);
+            } else {
+                created.put(entry.getKey(), entry.getValue());
+            }
+        }
+        if (!created.isEmpty()) {
+            dataSources.putAll(createDataSources(created, true));
+        }
+        logger.info("db-router 拓扑数据源 复用：{} 新建：{}", dataSources.size() - created.size(), created.keySet());
+        return dataSources;
+    }
+
+    private Map<String, DataSource> createLazyDataSources(Map<String, Map<String, Object>> configs) {
+        Map<String, DataSource> dataSources = new HashMap<>();
+        for (Map.Entry<String, Map<String, Object>> entry : configs.entrySet()) {
+            dataSources.put(entry.getKey(), new LazyDataSource(entry.getKey(), () -> createShardDataSource(entry.getKey(), entry.getValue())));
+        }
+        return dataSources;
+    }
+
+    /**
+     * 并行创建各分库连接池，开启预热时同时建立首个连接
+     */
+    private Map<String, DataSource> createDataSources(Map<String, Map<String, Object>> configs, boolean warmUp) {
+        long start = System.currentTimeMillis();
+        int threads = Math.max(1, Math.min(initParallelism, configs.size()));
+        AtomicInteger threadIdx = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "db-router-init-" + threadIdx.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            Map<String, Future<DataSource>> futures = new LinkedHashMap<>();
+            for (Map.Entry<String, Map<String, Object>> entry : configs.entrySet()) {
+                futures.put(entry.getKey(), executor.submit(() -> {
+                    DataSource ds = createShardDataSource(entry.getKey(), entry.getValue());
+                    if (warmUp) {
+                        warmUp(entry.getKey(), ds);
+                    }
+                    return ds;
+                }));
+            }
+            Map<String, DataSource> dataSources = new HashMap<>();
+            for (Map.Entry<String, Future<DataSource>> entry : futures.entrySet()) {
+                dataSources.put(entry.getKey(), entry.getValue().get());
+            }
+            logger.info("db-router 数据源创建完成 数量：{} 并行度：{} 预热：{} 耗时(ms)：{}", configs.size(), threads, warmUp, System.currentTimeMillis() - start);
+            return dataSources;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException("create datasource failed", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("create datasource interrupted", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 获取并归还一个连接，触发连接池初始化；失败只记录日志，不影响启动
+     */
+    private void warmUp(String name, DataSource ds) {
+        List<DataSource> pools = new ArrayList<>();
+        if (ds instanceof ShardDataSource) {
+            ShardDataSource shardDataSource = (ShardDataSource) ds;
+            pools.add(shardDataSource.getPrimary());
+            for (int i = 0; i < shardDataSource.getReplicaCount(); i++) {
+                pools.add(shardDataSource.getReplica(i));
+            }
+        } else {
+            pools.add(ds);
+        }
+        for (DataSource pool : pools) {
+            try {
+                pool.getConnection().close();
+                logger.debug("db-router 数据源预热完成 db：{}", name);
+            } catch (SQLException e) {
+                logger.warn("db-router 数据源预热失败 db：{}", name, e);
+            }
+        }
+    }
+
+    @Bean
+    public IDBRouterStrategy dbRouterStrategy(DBRouterConfig dbRouterConfig, ObjectProvider<HotKeyDetector> hotKeyDetector, ObjectProvider<RoutingTopology> routingTopology) {
+        RoutingTopology topology = routingTopology.getIfAvailable();
+        if (null != topology) {
+            return new DBRouterStrategyRefreshable(dbRouterConfig, topology);
+        }
+        return createStrategy(dbRouterConfig, hotKeyDetector.getIfAvailable());
+    }
+
+    private AbstractDBRouterStrategy createStrategy(DBRouterConfig dbRouterConfig, HotKeyDetector hotKeyDetector) {
+        AbstractDBRouterStrategy dbRouterStrategy = createStrategy(dbRouterConfig);
+        // 扩缩容期间新旧配置双路由
+        if (null != reshardDbCount) {
+            DBRouterConfig targetConfig = new DBRouterConfig(reshardDbCount, reshardTbCount, dbRouterConfig.getRouterKey(), dbRouterConfig.getRouterType());
+            targetConfig.setLogicalTables(dbRouterConfig.getLogicalTables());
+            targetConfig.setNumericKeyMode(dbRouterConfig.getNumericKeyMode());
+            dbRouterStrategy = new DBRouterStrategyReshard(dbRouterConfig, dbRouterStrategy, createStrategy(targetConfig), reshardPhase);
+            logger.info("db-router 扩缩容双路由 {}x{} -> {}x{} 阶段：{}", dbCount, tbCount, reshardDbCount, reshardTbCount, reshardPhase);
+        }
+        // 路由目录覆盖项优先
+        if (null != directoryFile) {
+            dbRouterStrategy = new DBRouterStrategyDirectory(dbRouterConfig, dbRouterStrategy, Paths.get(directoryFile), directoryReloadInterval);
+        }
+        dbRouterStrategy.setHotKeyDetector(hotKeyDetector);
+        return dbRouterStrategy;
+    }
+
+    private AbstractDBRouterStrategy createStrategy(DBRouterConfig dbRouterConfig) {
+        AbstractDBRouterStrategy dbRouterStrategy;
+        String routerType = null == dbRouterConfig.getRouterType() ? "hashCode" : dbRouterConfig.getRouterType();
+        switch (routerType) {
+            case "consistentHash":
+                dbRouterStrategy = new DBRouterStrategyConsistentHash(dbRouterConfig);
+                break;
+            case "jumpHash":
+                dbRouterStrategy = new DBRouterStrategyJumpHash(dbRouterConfig);
+                break;
+            case "rendezvous":
+                dbRouterStrategy = new DBRouterStrategyRendezvous(dbRouterConfig);
+                break;
+            case "fastRange":
+                dbRouterStrategy = new DBRouterStrategyFastRange(dbRouterConfig);
+                break;
+            default:
+                dbRouterStrategy = new DBRouterStrategyHashCode(dbRouterConfig);
+        }
+        if ((null != dbWeights || null != tbWeights) && !"consistentHash".equals(routerType) && !"rendezvous".equals(routerType)) {
+            logger.warn("db-router 路由策略 {} 不支持权重，dbWeights/tbWeights/weight 配置被忽略", routerType);
+        }
+        return dbRouterStrategy;
+    }
+
+    /**
+     * 热点路由键检测，hotKeyDetect=true 时开启；存在 HotKeyListener Bean 时由其接收上报，否则输出告警日志
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "mini-db-router.jdbc.datasource", name = "hotKeyDetect", havingValue = "true")
+    public HotKeyDetector hotKeyDetector(ObjectProvider<HotKeyListener> hotKeyListener) {
+        HotKeyDetector hotKeyDetector = new HotKeyDetector(4096, hotKeyCapacity, hotKeySampleInterval, hotKeyDecayInterval, hotKeyShare);
+        hotKeyDetector.setListener(hotKeyListener.getIfAvailable());
+        return hotKeyDetector;
+    }
+
+    /**
+     * @Async 默认线程池的任务携带路由上下文；已有 TaskDecorator 时不覆盖，可用 RouteContext.wrap 组合
+     */
+    @Bean
+    @ConditionalOnMissingBean(TaskDecorator.class)
+    @ConditionalOnProperty(prefix = "mini-db-router.jdbc.datasource", name = "routeContextPropagation", havingValue = "true", matchIfMissing = true)
+    public TaskDecorator dbRouterTaskDecorator() {
+        return new RouteContextTaskDecorator();
+    }
+
+    /**
+     * 携带分片基因的 ID 生成器，显式配置 idWorkerId 后开启，多节点部署时每个节点的 idWorkerId 需不同
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "mini-db-router.jdbc.datasource", name = "idWorkerId")
+    public ShardIdGenerator shardIdGenerator(IDBRouterStrategy dbRouterStrategy) {
+        try {
+            return new ShardIdGenerator(dbRouterStrategy, idWorkerId, idWorkerBits, 2, idGeneDbBits, idGeneTbBits, ShardIdGenerator.DEFAULT_EPOCH);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("分片 ID 生成器配置无效，请调整 mini-db-router.jdbc.datasource.idWorkerBits/idGeneDbBits/idGeneTbBits，"
+                    + "或去掉 idWorkerId 关闭 ID 生成器：" + e.getMessage(), e);
         }
-        return new DBRouterStrategyHashCode(dbRouterConfig);
     }
 
     @Bean
@@ -161,6 +676,7 @@ public class DataSourceAutoConfig implements EnvironmentAware {
 
     @Override
     public void setEnvironment(Environment environment) {
+        this.environment = environment;
         String prefix = "mini-db-router.jdbc.datasource.";
 
         dbCount = Integer.parseInt(Objects.requireNonNull(environment.getProperty(prefix + "dbCount")));
@@ -168,20 +684,113 @@ public class DataSourceAutoConfig implements EnvironmentAware {
         routerKey = environment.getProperty(prefix + "routerKey");
         // 获取路由策略类型
         routerType = environment.getProperty(prefix + "routerType");
+        // 分表的逻辑表名，如 user,user_order
+        String tables = environment.getProperty(prefix + "logicalTables");
+        if (null != tables && !tables.trim().isEmpty()) {
+            logicalTables = new LinkedHashSet<>();
+            for (String table : tables.split(",")) {
+                if (!table.trim().isEmpty()) {
+                    logicalTables.add(table.trim());
+                }
+            }
+        }
+        // 各库权重，如 1,1,2，按 list 顺序；各库也可单独配置 weight
+        dbWeights = parseWeights(environment.getProperty(prefix + "dbWeights"));
+        tbWeights = parseWeights(environment.getProperty(prefix + "tbWeights"));
+        // 数值路由键：compatible 与字符串路由结果一致，fast 直接混淆数值
+        numericKeyMode = environment.getProperty(prefix + "numericKeyMode", DBRouterConfig.NUMERIC_KEY_COMPATIBLE);
+        if (!DBRouterConfig.NUMERIC_KEY_COMPATIBLE.equals(numericKeyMode) && !DBRouterConfig.NUMERIC_KEY_FAST.equals(numericKeyMode)) {
+            throw new IllegalArgumentException("numericKeyMode must be compatible or fast: " + numericKeyMode);
+        }
+        broadcastParallelism = environment.getProperty(prefix + "broadcastParallelism", Integer.class);
+        broadcastTimeout = environment.getProperty(prefix + "broadcastTimeout", Long.class);
+        // 读写分离
+        readLoadBalance = environment.getProperty(prefix + "readLoadBalance", ShardDataSource.LEAST_IN_FLIGHT);
+        readAfterWriteWindow = environment.getProperty(prefix + "readAfterWriteWindow", Long.class, 0L);
+        // 路由目录
+        directoryFile = environment.getProperty(prefix + "directoryFile");
+        directoryReloadInterval = environment.getProperty(prefix + "directoryReloadInterval", Long.class, 5000L);
+        // 扩缩容双路由：dualWrite 读旧位置、写新旧两处，cutover 全部按新配置
+        reshardDbCount = environment.getProperty(prefix + "reshardDbCount", Integer.class);
+        reshardTbCount = environment.getProperty(prefix + "reshardTbCount", Integer.class, tbCount);
+        String phase = environment.getProperty(prefix + "reshardPhase", "dualWrite");
+        if ("dualWrite".equals(phase)) {
+            reshardPhase = ReshardPhase.DUAL_WRITE;
+        } else if ("cutover".equals(phase)) {
+            reshardPhase = ReshardPhase.CUTOVER;
+        } else {
+            throw new IllegalArgumentException("reshardPhase must be dualWrite or cutover: " + phase);
+        }
+        // 分片 ID，库表下标位数默认容纳扩容后的库表数
+        idWorkerId = environment.getProperty(prefix + "idWorkerId", Long.class, 0L);
+        idWorkerBits = environment.getProperty(prefix + "idWorkerBits", Integer.class, 5);
+        idGeneDbBits = environment.getProperty(prefix + "idGeneDbBits", Integer.class, ShardIdGenerator.bitsFor(Math.max(dbCount, null == reshardDbCount ? 0 : reshardDbCount)));
+        idGeneTbBits = environment.getProperty(prefix + "idGeneTbBits", Integer.class, ShardIdGenerator.bitsFor(Math.max(tbCount, reshardTbCount)));
+        // 全局二级索引
+        indexCacheSize = environment.getProperty(prefix + "indexCacheSize", Integer.class, 10000);
+        indexCacheTtl = environment.getProperty(prefix + "indexCacheTtl", Long.class, 60000L);
+        // 分库并发限制
+        limitInitial = environment.getProperty(prefix + "limitInitial", Integer.class, 20);
+        limitMin = environment.getProperty(prefix + "limitMin", Integer.class, 2);
+        limitMax = environment.getProperty(prefix + "limitMax", Integer.class, 100);
+        limitLatency = environment.getProperty(prefix + "limitLatency", Long.class, 500L);
+        limitBackoff = environment.getProperty(prefix + "limitBackoff", Double.class, 0.9);
+        limitMaxWait = environment.getProperty(prefix + "limitMaxWait", Long.class, 0L);
+        // 拓扑热更新
+        topologyFile = environment.getProperty(prefix + "topologyFile");
+        topologyReloadInterval = environment.getProperty(prefix + "topologyReloadInterval", Long.class, 5000L);
+        topologyGracePeriod = environment.getProperty(prefix + "topologyGracePeriod", Long.class, 30000L);
+        // 热点路由键检测
+        hotKeyCapacity = environment.getProperty(prefix + "hotKeyCapacity", Integer.class, 64);
+        hotKeySampleInterval = environment.getProperty(prefix + "hotKeySampleInterval", Integer.class, 8);
+        hotKeyDecayInterval = environment.getProperty(prefix + "hotKeyDecayInterval", Long.class, 60000L);
+        hotKeyShare = environment.getProperty(prefix + "hotKeyShare", Double.class, 0.01);
+        // 连接池创建
+        lazyInit = environment.getProperty(prefix + "lazyInit", Boolean.class, false);
+        initParallelism = environment.getProperty(prefix + "initParallelism", Integer.class, 8);
+        warmUp = environment.getProperty(prefix + "warmUp", Boolean.class, false);
         // 分库分表数据源
         String dataSources = environment.getProperty(prefix + "list");
         Map<String, Object> globalInfo = getGlobalProps(environment, prefix + TAG_GLOBAL);
-        for (String dbInfo : dataSources.split(",")) {
+        String[] dbInfos = dataSources.split(",");
+        for (int i = 0; i < dbInfos.length; i++) {
+            String dbInfo = dbInfos[i];
             final String dbPrefix = prefix + dbInfo;
             Map<String, Object> dataSourceProps = PropertyUtil.handle(environment, dbPrefix, Map.class);
             injectGlobal(dataSourceProps, globalInfo);
             dataSourceMap.put(dbInfo, dataSourceProps);
+            hasReplicas |= dataSourceProps.get(TAG_REPLICAS) instanceof Map;
+            // 单库 weight 优先于 dbWeights
+            Object weight = dataSourceProps.get(TAG_WEIGHT);
+            if (null != weight) {
+                if (null == dbWeights) {
+                    dbWeights = new int[dbInfos.length];
+                    Arrays.fill(dbWeights, 1);
+                }
+                if (i < dbWeights.length) {
+                    dbWeights[i] = Integer.parseInt(weight.toString().trim());
+                }
+            }
         }
 
         // 默认数据源
         String defaultData = environment.getProperty(prefix + "default");
+        defaultDataSourceName = defaultData;
         defaultDataSourceConfig = PropertyUtil.handle(environment, prefix + defaultData, Map.class);
         injectGlobal(defaultDataSourceConfig, globalInfo);
+        hasReplicas |= defaultDataSourceConfig.get(TAG_REPLICAS) instanceof Map;
+    }
+
+    private int[] parseWeights(String weights) {
+        if (null == weights || weights.trim().isEmpty()) {
+            return null;
+        }
+        String[] items = weights.split(",");
+        int[] result = new int[items.length];
+        for (int i = 0; i < items.length; i++) {
+            result[i] = Integer.parseInt(items[i].trim());
+        }
+        return result;
     }
 
     private Map<String, Object> getGlobalProps(Environment environment, String key) {
@@ -0,0 +1,118 @@
+package fun.wswj.middleware.db.router.directory;
+
+import fun.wswj.middleware.db.router.RouteTarget;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ *  路由目录：内存映射的只读覆盖表，路由键指纹 -> 库表下标，不占用堆内存。
+ *  <p>
+ *  文件格式（大端）：
+ *  <pre>
+ *  header  magic(int) format(int) version(long) count(int) reserved(int)   24 字节
+ *  entry   fingerprint(long) dbIdx(short) tbIdx(short)                      12 字节 * count，按 fingerprint 有符号升序
+ *  </pre>
+ *  fingerprint 为 HashUtil.hash64(key)，数值路由键按十进制字符串计算；64 位指纹在千万级条目下误命中概率可以忽略。
+ *  文件由 {@link RouteDirectoryWriter} 生成。
+ */
+public class RouteDirectory {
+
+    static final int MAGIC = 0x44425244;
+
+    static final int FORMAT = 1;
+
+    static final int HEADER_SIZE = 24;
+
+    static final int ENTRY_SIZE = 12;
+
+    private final ByteBuffer buffer;
+
+    private final long version;
+
+    private final int count;
+
+    private RouteDirectory(ByteBuffer buffer, long version, int count) {
+        this.buffer = buffer;
+        this.version = version;
+        this.count = count;
+    }
+
+    /**
+     * 映射并校验目录文件，库表下标需在 dbCount、tbCount 范围内
+     *
+     * @param path    目录文件
+     * @param dbCount 分库数量
+     * @param tbCount 分表数量
+     * @return 路由目录
+     */
+    public static RouteDirectory open(Path path, int dbCount, int tbCount) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("route directory size out of range: " + path + " " + size);
+            }
+            // 映射在通道关闭后仍然有效
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT) {
+            throw new IllegalArgumentException("not a route directory file: " + path);
+        }
+        long version = buffer.getLong(8);
+        int count = buffer.getInt(16);
+        if ((long) HEADER_SIZE + (long) count * ENTRY_SIZE != buffer.capacity()) {
+            throw new IllegalArgumentException("route directory truncated: " + path + " count " + count);
+        }
+        long previous = Long.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            int offset = HEADER_SIZE + i * ENTRY_SIZE;
+            long fingerprint = buffer.getLong(offset);
+            if (i > 0 && fingerprint <= previous) {
+                throw new IllegalArgumentException("route directory not sorted at entry " + i + ": " + path);
+            }
+            int dbIdx = buffer.getShort(offset + 8);
+            int tbIdx = buffer.getShort(offset + 10);
+            if (dbIdx < 1 || dbIdx > dbCount || tbIdx < 0 || tbIdx >= tbCount) {
+                throw new IllegalArgumentException("route directory entry " + i + " out of range dbIdx：" + dbIdx + " tbIdx：" + tbIdx);
+            }
+            previous = fingerprint;
+        }
+        return new RouteDirectory(buffer, version, count);
+    }
+
+    /**
+     * @param fingerprint 路由键指纹
+     * @return 覆盖的路由结果，不存在时返回 null
+     */
+    public RouteTarget lookup(long fingerprint) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int offset = HEADER_SIZE + mid * ENTRY_SIZE;
+            long value = buffer.getLong(offset);
+            if (value < fingerprint) {
+                low = mid + 1;
+            } else if (value > fingerprint) {
+                high = mid - 1;
+            } else {
+                return RouteTarget.of(buffer.getShort(offset + 8), buffer.getShort(offset + 10));
+            }
+        }
+        return null;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int size() {
+        return count;
+    }
+
+}
@@ -0,0 +1,70 @@
+package fun.wswj.middleware.db.router.directory;
+
+import fun.wswj.middleware.db.router.RouteTarget;
+import fun.wswj.middleware.db.router.util.HashUtil;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ *  生成路由目录文件。先写临时文件再原子替换，正在使用旧文件映射的进程不受影响，随后按新版本重新加载。
+ */
+public class RouteDirectoryWriter {
+
+    private RouteDirectoryWriter() {
+    }
+
+    /**
+     * @param path      目录文件
+     * @param version   文件版本，如生成时间戳
+     * @param overrides 路由键 -> 库表下标，数值路由键使用十进制字符串
+     */
+    public static void write(Path path, long version, Map<String, RouteTarget> overrides) throws IOException {
+        Map<Long, RouteTarget> entries = new HashMap<>(overrides.size() * 2);
+        for (Map.Entry<String, RouteTarget> override : overrides.entrySet()) {
+            RouteTarget target = override.getValue();
+            if (target.getDbIdx() < 1 || target.getDbIdx() > Short.MAX_VALUE || target.getTbIdx() < 0 || target.getTbIdx() > Short.MAX_VALUE) {
+                throw new IllegalArgumentException("route directory target out of range: " + override.getKey() + " " + target);
+            }
+            RouteTarget previous = entries.put(HashUtil.hash64(override.getKey()), target);
+            if (null != previous && !previous.equals(target)) {
+                throw new IllegalArgumentException("route directory fingerprint collision: " + override.getKey());
+            }
+        }
+        long[] fingerprints = new long[entries.size()];
+        int i = 0;
+        for (Long fingerprint : entries.keySet()) {
+            fingerprints[i++] = fingerprint;
+        }
+        Arrays.parallelSort(fingerprints);
+
+        Path parent = path.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+                out.writeInt(RouteDirectory.MAGIC);
+                out.writeInt(RouteDirectory.FORMAT);
+                out.writeLong(version);
+                out.writeInt(fingerprints.length);
+                out.writeInt(0);
+                for (long fingerprint : fingerprints) {
+                    RouteTarget target = entries.get(fingerprint);
+                    out.writeLong(fingerprint);
+                    out.writeShort(target.getDbIdx());
+                    out.writeShort(target.getTbIdx());
+                }
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+}
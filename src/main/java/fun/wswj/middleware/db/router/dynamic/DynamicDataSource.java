@@ -1,9 +1,18 @@
 package fun.wswj.middleware.db.router.dynamic;
 
 import fun.wswj.middleware.db.router.DBContextHolder;
+import fun.wswj.middleware.db.router.RouteTarget;
+import fun.wswj.middleware.db.router.limit.ShardLimiters;
+import fun.wswj.middleware.db.router.metrics.DBRouterMetrics;
+import fun.wswj.middleware.db.router.topology.RoutingSnapshot;
+import fun.wswj.middleware.db.router.topology.RoutingTopology;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
 
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
 /**
  *  动态数据源获取，每当切换数据源，都要从这个里面进行获取
  */
@@ -12,12 +21,90 @@ public class DynamicDataSource extends AbstractRoutingDataSource {
     @Value("${mini-db-router.jdbc.datasource.default}")
     private String defaultDataSource;
 
+    /**
+     * 路由指标，未启用时为空
+     */
+    private DBRouterMetrics dbRouterMetrics;
+
+    /**
+     * 拓扑热更新，未开启时为空
+     */
+    private volatile RoutingTopology routingTopology;
+
+    /**
+     * 分库并发限制，未开启时为空
+     */
+    private ShardLimiters shardLimiters;
+
+    public void setDbRouterMetrics(DBRouterMetrics dbRouterMetrics) {
+        this.dbRouterMetrics = dbRouterMetrics;
+    }
+
+    public void setShardLimiters(ShardLimiters shardLimiters) {
+        this.shardLimiters = shardLimiters;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        ShardLimiters limiters = shardLimiters;
+        if (null == limiters) {
+            return checkout();
+        }
+        // 先取路由分库的并发许可，分库变慢时只影响路由到该库的请求
+        return limiters.getConnection(DBContextHolder.getRouteTarget(), this::checkout);
+    }
+
+    private Connection checkout() throws SQLException {
+        DBRouterMetrics metrics = dbRouterMetrics;
+        if (null == metrics) {
+            return super.getConnection();
+        }
+        // 记录各库从连接池获取连接的等待时间
+        long start = System.nanoTime();
+        try {
+            return super.getConnection();
+        } finally {
+            metrics.recordCheckout(DBContextHolder.getRouteTarget(), System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 开启拓扑热更新时从当前请求使用的快照取数据源，不使用启动时解析的数据源集合
+     */
+    public void setRoutingTopology(RoutingTopology routingTopology) {
+        this.routingTopology = routingTopology;
+    }
+
+    @Override
+    protected DataSource determineTargetDataSource() {
+        RoutingTopology topology = routingTopology;
+        if (null == topology) {
+            return super.determineTargetDataSource();
+        }
+        // @DBRouter 作用域内使用作用域捕获的快照，与计算路由的策略属于同一拓扑
+        RoutingSnapshot snapshot = topology.active();
+        RouteTarget target = DBContextHolder.getRouteTarget();
+        if (null == target || null == target.getLookupKey()) {
+            return snapshot.getDefaultDataSource();
+        }
+        DataSource dataSource = snapshot.getDataSource(target.getLookupKey());
+        if (null == dataSource) {
+            dataSource = topology.getDataSource(target.getLookupKey());
+        }
+        if (null == dataSource) {
+            throw new IllegalStateException("Cannot determine target DataSource for lookup key [" + target.getLookupKey() + "]");
+        }
+        return dataSource;
+    }
+
     @Override
     protected Object determineCurrentLookupKey() {
-        if (null == DBContextHolder.getDBKey()) {
+        // 数据源键在 RouteTarget 中预先生成，这里不再拼接字符串
+        RouteTarget target = DBContextHolder.getRouteTarget();
+        if (null == target || null == target.getLookupKey()) {
             return defaultDataSource;
         } else {
-            return "db" + DBContextHolder.getDBKey();
+            return target.getLookupKey();
         }
     }
 
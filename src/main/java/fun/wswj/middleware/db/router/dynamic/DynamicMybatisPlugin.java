@@ -1,22 +1,35 @@
 package fun.wswj.middleware.db.router.dynamic;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import fun.wswj.middleware.db.router.DBContextHolder;
+import fun.wswj.middleware.db.router.DBRouterConfig;
+import fun.wswj.middleware.db.router.RouteTarget;
 import fun.wswj.middleware.db.router.annotation.DBRouterStrategy;
+import fun.wswj.middleware.db.router.metrics.DBRouterMetrics;
+import fun.wswj.middleware.db.router.topology.RoutingTopology;
+import org.apache.ibatis.executor.statement.BaseStatementHandler;
+import org.apache.ibatis.executor.statement.RoutingStatementHandler;
 import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.io.Resources;
 import org.apache.ibatis.mapping.BoundSql;
 import org.apache.ibatis.mapping.MappedStatement;
 import org.apache.ibatis.plugin.Interceptor;
 import org.apache.ibatis.plugin.Intercepts;
 import org.apache.ibatis.plugin.Invocation;
 import org.apache.ibatis.plugin.Signature;
-import org.apache.ibatis.reflection.DefaultReflectorFactory;
 import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.reflection.SystemMetaObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.sql.Connection;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  *  Mybatis 拦截器，通过对 SQL 语句的拦截处理，修改分表信息
@@ -24,21 +37,79 @@ import java.util.regex.Pattern;
 @Intercepts({@Signature(type = StatementHandler.class, method = "prepare", args = {Connection.class, Integer.class})})
 public class DynamicMybatisPlugin implements Interceptor {
 
-    private final Pattern pattern = Pattern.compile("(from|into|update)[\\s]{1,}(\\w{1,})", Pattern.CASE_INSENSITIVE);
+    private final Logger logger = LoggerFactory.getLogger(DynamicMybatisPlugin.class);
+
+    /**
+     * 改写 SQL 缓存的原始 SQL 条数上限
+     */
+    private static final int SQL_CACHE_SIZE = 2048;
+
+    private static final Field DELEGATE_FIELD = accessibleField(RoutingStatementHandler.class, "delegate");
+    private static final Field MAPPED_STATEMENT_FIELD = accessibleField(BaseStatementHandler.class, "mappedStatement");
+    private static final Field SQL_FIELD = accessibleField(BoundSql.class, "sql");
+
+    /**
+     * 表名改写及其结果缓存，开启拓扑热更新时随快照中的逻辑表配置更换
+     */
+    private volatile TableRewriting tableRewriting;
+
+    /**
+     * 拓扑热更新，未开启时为空
+     */
+    private RoutingTopology routingTopology;
+
+    /**
+     * MappedStatement 是否分表，按 id 解析一次
+     */
+    private final Map<String, Boolean> splitTables = new ConcurrentHashMap<>();
+
+    /**
+     * 路由指标，未启用时为空
+     */
+    private final DBRouterMetrics dbRouterMetrics;
+
+    private final LongAdder rewriteHits = new LongAdder();
+
+    private final LongAdder rewrites = new LongAdder();
+
+    public DynamicMybatisPlugin() {
+        this.tableRewriting = new TableRewriting(null, new SqlTableRewriter());
+        this.dbRouterMetrics = null;
+    }
+
+    public DynamicMybatisPlugin(DBRouterConfig dbRouterConfig) {
+        this(dbRouterConfig, null);
+    }
+
+    public DynamicMybatisPlugin(DBRouterConfig dbRouterConfig, DBRouterMetrics dbRouterMetrics) {
+        this.tableRewriting = new TableRewriting(dbRouterConfig.getLogicalTables(), new SqlTableRewriter(dbRouterConfig.getLogicalTables()));
+        this.dbRouterMetrics = dbRouterMetrics;
+    }
+
+    /**
+     * 开启拓扑热更新时按当前请求使用的快照读取逻辑表配置
+     */
+    public void setRoutingTopology(RoutingTopology routingTopology) {
+        this.routingTopology = routingTopology;
+    }
 
     @Override
     public Object intercept(Invocation invocation) throws Throwable {
         // 获取StatementHandler
         StatementHandler statementHandler = (StatementHandler) invocation.getTarget();
-        MetaObject metaObject = MetaObject.forObject(statementHandler, SystemMetaObject.DEFAULT_OBJECT_FACTORY, SystemMetaObject.DEFAULT_OBJECT_WRAPPER_FACTORY, new DefaultReflectorFactory());
-        MappedStatement mappedStatement = (MappedStatement) metaObject.getValue("delegate.mappedStatement");
+        MappedStatement mappedStatement = getMappedStatement(statementHandler);
 
         // 获取自定义注解判断是否进行分表操作
-        String id = mappedStatement.getId();
-        String className = id.substring(0, id.lastIndexOf("."));
-        Class<?> clazz = Class.forName(className);
-        DBRouterStrategy dbRouterStrategy = clazz.getAnnotation(DBRouterStrategy.class);
-        if (null == dbRouterStrategy || !dbRouterStrategy.splitTable()){
+        Boolean splitTable = splitTables.get(mappedStatement.getId());
+        if (null == splitTable) {
+            splitTable = splitTables.computeIfAbsent(mappedStatement.getId(), this::resolveSplitTable);
+        }
+        RouteTarget routeTarget = DBContextHolder.getRouteTarget();
+        DBRouterMetrics metrics = dbRouterMetrics;
+        if (null != metrics) {
+            metrics.recordStatement(routeTarget);
+        }
+        if (!splitTable || null == routeTarget || null == routeTarget.getTableSuffix()) {
             return invocation.proceed();
         }
 
@@ -46,22 +117,157 @@ public class DynamicMybatisPlugin implements Interceptor {
         BoundSql boundSql = statementHandler.getBoundSql();
         String sql = boundSql.getSql();
 
-        // 替换SQL表名 USER 为 USER_03
-        Matcher matcher = pattern.matcher(sql);
-        String tableName = null;
-        if (matcher.find()) {
-            tableName = matcher.group().trim();
+        // 替换SQL表名 USER 为 USER_003，相同 SQL 与表下标直接复用改写结果
+        long start = null == metrics ? 0L : System.nanoTime();
+        String replaceSql = rewriteSql(tableRewriting(), sql, routeTarget);
+        if (null != metrics) {
+            metrics.recordRewrite(System.nanoTime() - start);
         }
-        assert null != tableName;
-        String replaceSql = matcher.replaceAll(tableName + "_" + DBContextHolder.getTBKey());
 
-        // 通过反射修改SQL语句
-        Field field = boundSql.getClass().getDeclaredField("sql");
-        field.setAccessible(true);
-        field.set(boundSql, replaceSql);
-        field.setAccessible(false);
+        // 修改SQL语句
+        SQL_FIELD.set(boundSql, replaceSql);
 
         return invocation.proceed();
     }
 
+    private TableRewriting tableRewriting() {
+        TableRewriting rewriting = tableRewriting;
+        RoutingTopology topology = routingTopology;
+        if (null == topology) {
+            return rewriting;
+        }
+        Set<String> logicalTables = topology.active().getDbRouterConfig().getLogicalTables();
+        if (!logicalTables.equals(rewriting.logicalTables)) {
+            rewriting = new TableRewriting(logicalTables, new SqlTableRewriter(logicalTables));
+            tableRewriting = rewriting;
+        }
+        return rewriting;
+    }
+
+    private String rewriteSql(TableRewriting rewriting, String sql, RouteTarget routeTarget) {
+        Cache<String, String[]> rewrittenSqls = rewriting.rewrittenSqls;
+        int tbIdx = routeTarget.getTbIdx();
+        String[] slots = rewrittenSqls.getIfPresent(sql);
+        if (null == slots || tbIdx >= slots.length) {
+            String[] grown = new String[Math.max(tbIdx + 1, null == slots ? 0 : slots.length)];
+            if (null != slots) {
+                System.arraycopy(slots, 0, grown, 0, slots.length);
+            }
+            rewrittenSqls.put(sql, grown);
+            slots = grown;
+        }
+        String replaceSql = slots[tbIdx];
+        if (null == replaceSql) {
+            // 并发下可能重复计算，结果一致
+            replaceSql = rewriting.sqlTableRewriter.rewrite(sql, routeTarget.getTableSuffix());
+            slots[tbIdx] = replaceSql;
+            rewrites.increment();
+        } else {
+            rewriteHits.increment();
+        }
+        return replaceSql;
+    }
+
+    /**
+     * 解析是否分表：Mapper 方法上的注解优先，其次 Mapper 接口上的注解
+     */
+    private Boolean resolveSplitTable(String id) {
+        String className = id.substring(0, id.lastIndexOf("."));
+        String methodName = id.substring(id.lastIndexOf(".") + 1);
+        // selectKey 等内部语句 id 形如 insert!selectKey
+        int bang = methodName.indexOf('!');
+        if (bang > 0) {
+            methodName = methodName.substring(0, bang);
+        }
+        Class<?> clazz;
+        try {
+            clazz = Resources.classForName(className);
+        } catch (ClassNotFoundException e) {
+            logger.debug("mapper 命名空间不是接口，不进行分表 id：{}", id);
+            return Boolean.FALSE;
+        }
+        DBRouterStrategy dbRouterStrategy = null;
+        for (Method method : clazz.getMethods()) {
+            if (method.getName().equals(methodName) && method.isAnnotationPresent(DBRouterStrategy.class)) {
+                dbRouterStrategy = method.getAnnotation(DBRouterStrategy.class);
+                break;
+            }
+        }
+        if (null == dbRouterStrategy) {
+            dbRouterStrategy = clazz.getAnnotation(DBRouterStrategy.class);
+        }
+        return null != dbRouterStrategy && dbRouterStrategy.splitTable();
+    }
+
+    private MappedStatement getMappedStatement(StatementHandler statementHandler) throws IllegalAccessException {
+        StatementHandler handler = statementHandler;
+        if (handler instanceof RoutingStatementHandler && null != DELEGATE_FIELD) {
+            handler = (StatementHandler) DELEGATE_FIELD.get(handler);
+        }
+        if (handler instanceof BaseStatementHandler && null != MAPPED_STATEMENT_FIELD) {
+            return (MappedStatement) MAPPED_STATEMENT_FIELD.get(handler);
+        }
+        // 被其他插件代理时退回 MetaObject
+        MetaObject metaObject = SystemMetaObject.forObject(statementHandler);
+        while (metaObject.hasGetter("h")) {
+            metaObject = SystemMetaObject.forObject(metaObject.getValue("h.target"));
+        }
+        return (MappedStatement) metaObject.getValue("delegate.mappedStatement");
+    }
+
+    private static final class TableRewriting {
+
+        /**
+         * 逻辑表配置，为空时改写全部表名
+         */
+        private final Set<String> logicalTables;
+
+        /**
+         * 表名改写，单遍扫描 SQL
+         */
+        private final SqlTableRewriter sqlTableRewriter;
+
+        /**
+         * 改写后的 SQL，key 为原始 SQL，value 按表下标存放改写结果；超出上限时淘汰最久未使用的 SQL，避免动态 SQL 无限增长
+         */
+        private final Cache<String, String[]> rewrittenSqls = CacheBuilder.newBuilder().maximumSize(SQL_CACHE_SIZE).build();
+
+        TableRewriting(Set<String> logicalTables, SqlTableRewriter sqlTableRewriter) {
+            this.logicalTables = logicalTables;
+            this.sqlTableRewriter = sqlTableRewriter;
+        }
+
+    }
+
+    /**
+     * 复用缓存改写结果的次数
+     */
+    public long getRewriteHits() {
+        return rewriteHits.sum();
+    }
+
+    /**
+     * 实际改写 SQL 的次数
+     */
+    public long getRewrites() {
+        return rewrites.sum();
+    }
+
+    /**
+     * 缓存的原始 SQL 条数
+     */
+    public int getCacheSize() {
+        return (int) tableRewriting.rewrittenSqls.size();
+    }
+
+    private static Field accessibleField(Class<?> clazz, String name) {
+        try {
+            Field field = clazz.getDeclaredField(name);
+            field.setAccessible(true);
+            return field;
+        } catch (NoSuchFieldException | RuntimeException e) {
+            return null;
+        }
+    }
+
 }
@@ -0,0 +1,63 @@
+package fun.wswj.middleware.db.router.dynamic;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.function.Supplier;
+
+/**
+ *  延迟创建的数据源，首次路由到该分库时才创建连接池
+ */
+public class LazyDataSource extends AbstractDataSource {
+
+    private final Logger logger = LoggerFactory.getLogger(LazyDataSource.class);
+
+    private final String name;
+
+    private final Supplier<DataSource> factory;
+
+    private volatile DataSource target;
+
+    public LazyDataSource(String name, Supplier<DataSource> factory) {
+        this.name = name;
+        this.factory = factory;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return getTarget().getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return getTarget().getConnection(username, password);
+    }
+
+    /**
+     * 是否已创建连接池
+     */
+    public boolean isInitialized() {
+        return null != target;
+    }
+
+    public DataSource getTarget() {
+        DataSource ds = target;
+        if (null == ds) {
+            synchronized (this) {
+                ds = target;
+                if (null == ds) {
+                    long start = System.currentTimeMillis();
+                    ds = factory.get();
+                    target = ds;
+                    logger.info("db-router 延迟创建数据源 db：{} 耗时(ms)：{}", name, System.currentTimeMillis() - start);
+                }
+            }
+        }
+        return ds;
+    }
+
+}
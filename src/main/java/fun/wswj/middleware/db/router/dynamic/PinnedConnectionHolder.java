@@ -0,0 +1,121 @@
+package fun.wswj.middleware.db.router.dynamic;
+
+import fun.wswj.middleware.db.router.DBContextHolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.jdbc.datasource.ConnectionHandle;
+import org.springframework.jdbc.datasource.ConnectionHolder;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ *  @DBRouter(pinConnection = true) 作用域内固定的连接。以 ConnectionHolder 绑定到 TransactionSynchronizationManager，
+ *  mybatis-spring 经 DataSourceUtils 获取连接时复用同一连接，不开启事务、不改变自动提交；首次使用时才从连接池借出，作用域结束时归还。
+ */
+public final class PinnedConnectionHolder extends ConnectionHolder {
+
+    private final DataSource dataSource;
+
+    private final PinnedConnectionHandle handle;
+
+    private PinnedConnectionHolder(DataSource dataSource, PinnedConnectionHandle handle) {
+        super(handle);
+        this.dataSource = dataSource;
+        this.handle = handle;
+    }
+
+    /**
+     * 绑定固定连接；已处于事务中或已绑定连接时不处理，返回 null
+     */
+    public static PinnedConnectionHolder bind(DataSource dataSource, boolean readOnly) {
+        if (TransactionSynchronizationManager.isActualTransactionActive() || TransactionSynchronizationManager.hasResource(dataSource)) {
+            return null;
+        }
+        PinnedConnectionHolder holder = new PinnedConnectionHolder(dataSource, new PinnedConnectionHandle(dataSource, readOnly));
+        TransactionSynchronizationManager.bindResource(dataSource, holder);
+        return holder;
+    }
+
+    /**
+     * 切换到其他分片前暂时解绑外层的固定连接；事务接管了该连接时不解绑，返回 null
+     */
+    public static PinnedConnectionHolder suspend(DataSource dataSource) {
+        Object resource = TransactionSynchronizationManager.getResource(dataSource);
+        if (!(resource instanceof PinnedConnectionHolder) || ((PinnedConnectionHolder) resource).isSynchronizedWithTransaction()) {
+            return null;
+        }
+        TransactionSynchronizationManager.unbindResource(dataSource);
+        return (PinnedConnectionHolder) resource;
+    }
+
+    public void resume() {
+        TransactionSynchronizationManager.bindResource(dataSource, this);
+    }
+
+    /**
+     * 解绑并把连接归还连接池
+     */
+    public void release() {
+        if (TransactionSynchronizationManager.getResource(dataSource) == this) {
+            TransactionSynchronizationManager.unbindResource(dataSource);
+        }
+        handle.close();
+    }
+
+    private static final class PinnedConnectionHandle implements ConnectionHandle {
+
+        private final Logger logger = LoggerFactory.getLogger(PinnedConnectionHolder.class);
+
+        private final DataSource dataSource;
+
+        private final boolean readOnly;
+
+        private Connection connection;
+
+        PinnedConnectionHandle(DataSource dataSource, boolean readOnly) {
+            this.dataSource = dataSource;
+            this.readOnly = readOnly;
+        }
+
+        @Override
+        public Connection getConnection() {
+            if (null != connection) {
+                return connection;
+            }
+            // 连接在整个作用域内复用，非只读方法不按首条查询语句借从库连接
+            boolean previous = DBContextHolder.setReadStatement(readOnly && DBContextHolder.isReadStatement());
+            try {
+                connection = dataSource.getConnection();
+            } catch (SQLException e) {
+                throw new CannotGetJdbcConnectionException("Failed to obtain pinned JDBC Connection", e);
+            } finally {
+                DBContextHolder.setReadStatement(previous);
+            }
+            return connection;
+        }
+
+        @Override
+        public void releaseConnection(Connection con) {
+            // 引用计数归零时不归还，作用域结束时统一归还
+        }
+
+        void close() {
+            if (null == connection) {
+                return;
+            }
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                logger.warn("归还固定连接失败", e);
+            } finally {
+                connection = null;
+            }
+        }
+
+    }
+
+}
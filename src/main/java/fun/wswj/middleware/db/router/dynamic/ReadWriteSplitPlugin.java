@@ -0,0 +1,78 @@
+package fun.wswj.middleware.db.router.dynamic;
+
+import fun.wswj.middleware.db.router.DBContextHolder;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Plugin;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ *  Mybatis 拦截器，在获取连接之前标记语句的读写类型，供 ShardDataSource 选择主库或从库
+ */
+@Intercepts({
+        @Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class}),
+        @Signature(type = Executor.class, method = "query", args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class}),
+        @Signature(type = Executor.class, method = "query", args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class, CacheKey.class, BoundSql.class}),
+        @Signature(type = Executor.class, method = "queryCursor", args = {MappedStatement.class, Object.class, RowBounds.class})})
+public class ReadWriteSplitPlugin implements Interceptor {
+
+    /**
+     * 事务结束时清除写入标记；事务外层还有 @DBRouter 作用域时由作用域结束时清除
+     */
+    private static final TransactionSynchronization CLEAR_WRITTEN = new TransactionSynchronization() {
+        @Override
+        public void afterCompletion(int status) {
+            if (null == DBContextHolder.getRouteScope()) {
+                DBContextHolder.clearWritten();
+            }
+        }
+    };
+
+    /**
+     * 没有配置从库时不包装 Executor
+     */
+    private final boolean enabled;
+
+    public ReadWriteSplitPlugin() {
+        this(true);
+    }
+
+    public ReadWriteSplitPlugin(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public Object plugin(Object target) {
+        return enabled ? Plugin.wrap(target, this) : target;
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        MappedStatement mappedStatement = (MappedStatement) invocation.getArgs()[0];
+        if (mappedStatement.getSqlCommandType() != SqlCommandType.SELECT) {
+            // 写入后 @DBRouter 作用域或事务内的查询读主库
+            boolean transactional = TransactionSynchronizationManager.isSynchronizationActive();
+            if (DBContextHolder.markWritten(transactional || null != DBContextHolder.getRouteScope()) && transactional) {
+                TransactionSynchronizationManager.registerSynchronization(CLEAR_WRITTEN);
+            }
+            return invocation.proceed();
+        }
+        boolean previous = DBContextHolder.setReadStatement(true);
+        try {
+            return invocation.proceed();
+        } finally {
+            DBContextHolder.setReadStatement(previous);
+        }
+    }
+
+}
@@ -0,0 +1,231 @@
+package fun.wswj.middleware.db.router.dynamic;
+
+import fun.wswj.middleware.db.router.DBContextHolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *  单个分库的主从数据源，写入与事务走主库，查询按负载均衡方式选择从库
+ */
+public class ShardDataSource extends AbstractDataSource {
+
+    /**
+     * 从库选择方式：最少进行中连接
+     */
+    public static final String LEAST_IN_FLIGHT = "leastInFlight";
+
+    /**
+     * 从库选择方式：加权轮询
+     */
+    public static final String ROUND_ROBIN = "roundRobin";
+
+    private final Logger logger = LoggerFactory.getLogger(ShardDataSource.class);
+
+    private final String name;
+
+    private final DataSource primary;
+
+    private final DataSource[] replicas;
+
+    private final int[] weights;
+
+    private final boolean leastInFlight;
+
+    /**
+     * 每个从库借出未归还的连接数
+     */
+    private final AtomicInteger[] inFlight;
+
+    /**
+     * 平滑加权轮询预先展开的从库下标序列
+     */
+    private final int[] schedule;
+
+    private final AtomicInteger sequence = new AtomicInteger();
+
+    /**
+     * 写入后读主库的时间窗口
+     */
+    private final long readAfterWriteNanos;
+
+    public ShardDataSource(String name, DataSource primary, List<DataSource> replicas, List<Integer> weights, String loadBalance, long readAfterWriteMillis) {
+        if (replicas.size() != weights.size()) {
+            throw new IllegalArgumentException("replicas and weights size mismatch: " + name);
+        }
+        this.name = name;
+        this.primary = primary;
+        this.replicas = replicas.toArray(new DataSource[0]);
+        this.weights = new int[weights.size()];
+        for (int i = 0; i < this.weights.length; i++) {
+            if (weights.get(i) <= 0) {
+                throw new IllegalArgumentException("replica weight must be positive: " + name);
+            }
+            this.weights[i] = weights.get(i);
+        }
+        this.leastInFlight = null == loadBalance || LEAST_IN_FLIGHT.equals(loadBalance);
+        if (!leastInFlight && !ROUND_ROBIN.equals(loadBalance)) {
+            throw new IllegalArgumentException("unknown replica load balance: " + loadBalance);
+        }
+        this.inFlight = new AtomicInteger[this.replicas.length];
+        for (int i = 0; i < inFlight.length; i++) {
+            inFlight[i] = new AtomicInteger();
+        }
+        this.schedule = smoothWeightedSchedule(this.weights);
+        this.readAfterWriteNanos = TimeUnit.MILLISECONDS.toNanos(readAfterWriteMillis);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (!isReadRoute()) {
+            return primary.getConnection();
+        }
+        int idx = chooseReplica();
+        try {
+            return acquire(idx, replicas[idx].getConnection());
+        } catch (SQLException e) {
+            logger.warn("从库获取连接失败，改用主库 db：{} replica：{}", name, idx, e);
+            return primary.getConnection();
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        if (!isReadRoute()) {
+            return primary.getConnection(username, password);
+        }
+        int idx = chooseReplica();
+        try {
+            return acquire(idx, replicas[idx].getConnection(username, password));
+        } catch (SQLException e) {
+            logger.warn("从库获取连接失败，改用主库 db：{} replica：{}", name, idx, e);
+            return primary.getConnection(username, password);
+        }
+    }
+
+    public DataSource getPrimary() {
+        return primary;
+    }
+
+    public DataSource getReplica(int replicaIdx) {
+        return replicas[replicaIdx];
+    }
+
+    public int getReplicaCount() {
+        return replicas.length;
+    }
+
+    public int getInFlight(int replicaIdx) {
+        return inFlight[replicaIdx].get();
+    }
+
+    /**
+     * 只读方法，或事务外的查询，且作用域内（或配置的时间窗口内）没有写入
+     */
+    private boolean isReadRoute() {
+        if (replicas.length == 0) {
+            return false;
+        }
+        boolean read = DBContextHolder.isReadOnly()
+                // 事务同步期间连接会被后续写语句复用，只有只读方法才能走从库
+                || (DBContextHolder.isReadStatement() && !TransactionSynchronizationManager.isSynchronizationActive());
+        return read && !DBContextHolder.isWrittenWithin(readAfterWriteNanos);
+    }
+
+    private int chooseReplica() {
+        if (replicas.length == 1) {
+            return 0;
+        }
+        int next = sequence.getAndIncrement() & Integer.MAX_VALUE;
+        if (!leastInFlight) {
+            return schedule[next % schedule.length];
+        }
+        // inFlight / weight 最小者，从轮转位置开始比较以打散并列
+        int best = next % replicas.length;
+        for (int k = 1; k < replicas.length; k++) {
+            int i = (best + k) % replicas.length;
+            if ((long) inFlight[i].get() * weights[best] < (long) inFlight[best].get() * weights[i]) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private Connection acquire(int idx, Connection connection) {
+        if (!leastInFlight) {
+            return connection;
+        }
+        AtomicInteger counter = inFlight[idx];
+        counter.incrementAndGet();
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, new InFlightHandler(connection, counter));
+    }
+
+    private static int[] smoothWeightedSchedule(int[] weights) {
+        int total = 0;
+        for (int weight : weights) {
+            total += weight;
+        }
+        int[] schedule = new int[Math.max(1, total)];
+        int[] current = new int[weights.length];
+        for (int n = 0; n < total; n++) {
+            int best = 0;
+            for (int i = 0; i < weights.length; i++) {
+                current[i] += weights[i];
+                if (current[i] > current[best]) {
+                    best = i;
+                }
+            }
+            current[best] -= total;
+            schedule[n] = best;
+        }
+        return schedule;
+    }
+
+    /**
+     * 连接关闭时归还进行中计数
+     */
+    private static final class InFlightHandler implements InvocationHandler {
+
+        private final Connection target;
+
+        private final AtomicInteger counter;
+
+        private boolean closed;
+
+        private InFlightHandler(Connection target, AtomicInteger counter) {
+            this.target = target;
+            this.counter = counter;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if ("close".equals(method.getName()) && null == args) {
+                synchronized (this) {
+                    if (!closed) {
+                        closed = true;
+                        counter.decrementAndGet();
+                    }
+                }
+            }
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+
+    }
+
+}
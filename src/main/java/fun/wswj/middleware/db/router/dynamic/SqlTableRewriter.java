@@ -0,0 +1,356 @@
+package fun.wswj.middleware.db.router.dynamic;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ *  SQL 表名改写，单遍扫描 SQL，将表位置上的逻辑表名改写为带后缀的物理表名。
+ *  识别字符串、注释、反引号/双引号标识符、JOIN、逗号分隔的多表以及子查询，不使用正则，耗时与 SQL 长度线性相关。
+ */
+public class SqlTableRewriter {
+
+    /**
+     * 逻辑表名，为空时表位置上的所有表名都会改写
+     */
+    private final String[] logicalTables;
+
+    public SqlTableRewriter() {
+        this(null);
+    }
+
+    public SqlTableRewriter(Collection<String> logicalTables) {
+        Set<String> tables = new LinkedHashSet<>();
+        if (null != logicalTables) {
+            for (String table : logicalTables) {
+                if (null != table && !table.trim().isEmpty()) {
+                    tables.add(table.trim());
+                }
+            }
+        }
+        this.logicalTables = tables.toArray(new String[0]);
+    }
+
+    /**
+     * 改写 SQL 中的表名
+     *
+     * @param sql         原始 SQL
+     * @param tableSuffix 表后缀，如 _003
+     * @return 改写后的 SQL，没有需要改写的表名时返回原 SQL
+     */
+    public String rewrite(String sql, String tableSuffix) {
+        int length = sql.length();
+        StringBuilder out = null;
+        int copied = 0;
+
+        int depth = 0;
+        // 每层括号是否处于 FROM/UPDATE/DELETE 的表列表中
+        boolean[] inTableList = new boolean[8];
+        // 每层括号是否为查询语句，用于区分 EXTRACT(YEAR FROM col) 等函数中的 FROM
+        boolean[] inQuery = new boolean[8];
+        boolean expectTable = false;
+        // 多表 DELETE 在 DELETE 与 FROM 之间的目标列表，可能是别名，只改写显式配置的逻辑表
+        boolean deleteTargets = false;
+        int prevStart = 0;
+        int prevEnd = 0;
+
+        int i = 0;
+        while (i < length) {
+            char c = sql.charAt(i);
+
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+            // 注释
+            if (c == '#' || (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-')) {
+                while (i < length && sql.charAt(i) != '\n') {
+                    i++;
+                }
+                continue;
+            }
+            if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? length : end + 2;
+                continue;
+            }
+            // 字符串
+            if (c == '\'' || (c == '"' && !expectTable)) {
+                i = skipQuoted(sql, i, c);
+                continue;
+            }
+            // 引号标识符
+            if (c == '`' || c == '"') {
+                int end = skipQuoted(sql, i, c);
+                if (expectTable) {
+                    if (end < length && sql.charAt(end) == '.') {
+                        // schema.table，继续等待表名
+                        i = end + 1;
+                        continue;
+                    }
+                    int closing = end - 1;
+                    if (closing > i && isLogicalTable(sql, i + 1, closing)) {
+                        out = append(out, sql, copied, closing, tableSuffix);
+                        copied = closing;
+                    }
+                    expectTable = false;
+                } else if ((deleteTargets || (end < length && sql.charAt(end) == '.')) && end - 1 > i && isQualifier(sql, i + 1, end - 1)) {
+                    out = append(out, sql, copied, end - 1, tableSuffix);
+                    copied = end - 1;
+                }
+                i = end;
+                continue;
+            }
+            if (c == '(') {
+                depth++;
+                if (depth >= inTableList.length) {
+                    inTableList = Arrays.copyOf(inTableList, inTableList.length * 2);
+                    inQuery = Arrays.copyOf(inQuery, inQuery.length * 2);
+                }
+                inTableList[depth] = false;
+                inQuery[depth] = false;
+                // 派生表、子查询
+                expectTable = false;
+                i++;
+                continue;
+            }
+            if (c == ')') {
+                inTableList[depth] = false;
+                if (depth > 0) {
+                    depth--;
+                }
+                i++;
+                continue;
+            }
+            if (c == ',') {
+                if (inTableList[depth]) {
+                    expectTable = true;
+                }
+                i++;
+                continue;
+            }
+            if (isIdentifierStart(c)) {
+                int start = i;
+                while (i < length && isIdentifierPart(sql.charAt(i))) {
+                    i++;
+                }
+                int end = i;
+                boolean qualified = end < length && sql.charAt(end) == '.';
+                int prevWordStart = prevStart;
+                int prevWordEnd = prevEnd;
+                prevStart = start;
+                prevEnd = end;
+
+                if (deleteTargets && !isReserved(sql, start, end)) {
+                    if (isQualifier(sql, start, end)) {
+                        out = append(out, sql, copied, end, tableSuffix);
+                        copied = end;
+                    }
+                    continue;
+                }
+                if (expectTable && !isReserved(sql, start, end)) {
+                    if (isModifier(sql, start, end)) {
+                        continue;
+                    }
+                    if (qualified) {
+                        // schema.table，继续等待表名
+                        i = end + 1;
+                        continue;
+                    }
+                    if (isLogicalTable(sql, start, end)) {
+                        out = append(out, sql, copied, end, tableSuffix);
+                        copied = end;
+                    }
+                    expectTable = false;
+                    continue;
+                }
+
+                switch (keyword(sql, start, end)) {
+                    case FROM:
+                        deleteTargets = false;
+                        if (depth == 0 || inQuery[depth]) {
+                            expectTable = true;
+                            inTableList[depth] = true;
+                        }
+                        break;
+                    case UPDATE:
+                        // ON DUPLICATE KEY UPDATE、FOR UPDATE 后不是表名
+                        if (!is(sql, prevWordStart, prevWordEnd, "KEY") && !is(sql, prevWordStart, prevWordEnd, "FOR")) {
+                            expectTable = true;
+                            inTableList[depth] = true;
+                        }
+                        break;
+                    case DELETE:
+                        deleteTargets = true;
+                        inQuery[depth] = true;
+                        break;
+                    case SELECT:
+                        expectTable = false;
+                        inTableList[depth] = false;
+                        inQuery[depth] = true;
+                        break;
+                    case JOIN:
+                    case INTO:
+                    case TABLE:
+                        expectTable = true;
+                        break;
+                    case CLAUSE:
+                        expectTable = false;
+                        inTableList[depth] = false;
+                        break;
+                    default:
+                        // 列引用中的表名限定符，如 user.id
+                        if (qualified && isQualifier(sql, start, end)) {
+                            out = append(out, sql, copied, end, tableSuffix);
+                            copied = end;
+                        }
+                        break;
+                }
+                continue;
+            }
+            if (c >= '0' && c <= '9') {
+                while (i < length && (isIdentifierPart(sql.charAt(i)) || sql.charAt(i) == '.')) {
+                    i++;
+                }
+                continue;
+            }
+            i++;
+        }
+
+        if (null == out) {
+            return sql;
+        }
+        return out.append(sql, copied, length).toString();
+    }
+
+    private StringBuilder append(StringBuilder out, String sql, int copied, int insertAt, String tableSuffix) {
+        if (null == out) {
+            out = new StringBuilder(sql.length() + 32);
+        }
+        return out.append(sql, copied, insertAt).append(tableSuffix);
+    }
+
+    private boolean isLogicalTable(String sql, int start, int end) {
+        if (logicalTables.length == 0) {
+            return true;
+        }
+        return isConfiguredTable(sql, start, end);
+    }
+
+    /**
+     * 只有显式配置了逻辑表时才改写列引用中的限定符，避免把 schema 或别名误当作表名
+     */
+    private boolean isQualifier(String sql, int start, int end) {
+        return logicalTables.length != 0 && isConfiguredTable(sql, start, end);
+    }
+
+    private boolean isConfiguredTable(String sql, int start, int end) {
+        int len = end - start;
+        for (String table : logicalTables) {
+            if (table.length() == len && sql.regionMatches(true, start, table, 0, len)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int skipQuoted(String sql, int start, char quote) {
+        int i = start + 1;
+        int length = sql.length();
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (c == '\\' && quote != '`') {
+                i += 2;
+                continue;
+            }
+            if (c == quote) {
+                // 连续两个引号为转义
+                if (i + 1 < length && sql.charAt(i + 1) == quote) {
+                    i += 2;
+                    continue;
+                }
+                return i + 1;
+            }
+            i++;
+        }
+        return length;
+    }
+
+    private static boolean isIdentifierStart(char c) {
+        return Character.isLetter(c) || c == '_' || c == '$';
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+
+    private static final int OTHER = 0;
+    private static final int FROM = 1;
+    private static final int UPDATE = 2;
+    private static final int DELETE = 3;
+    private static final int JOIN = 4;
+    private static final int INTO = 5;
+    private static final int TABLE = 6;
+    private static final int CLAUSE = 7;
+    private static final int SELECT = 8;
+
+    /**
+     * 结束表列表的子句关键字
+     */
+    private static final String[] CLAUSE_KEYWORDS = {"WHERE", "SET", "GROUP", "ORDER", "HAVING", "LIMIT", "UNION",
+            "EXCEPT", "INTERSECT", "WINDOW", "VALUES", "VALUE", "FOR", "RETURNING", "PARTITION"};
+
+    /**
+     * 表名前可能出现的修饰词
+     */
+    private static final String[] MODIFIERS = {"LOW_PRIORITY", "IGNORE", "QUICK", "ONLY", "LATERAL", "IF", "NOT", "EXISTS"};
+
+    private static int keyword(String sql, int start, int end) {
+        if (is(sql, start, end, "FROM")) {
+            return FROM;
+        }
+        if (is(sql, start, end, "JOIN") || is(sql, start, end, "STRAIGHT_JOIN")) {
+            return JOIN;
+        }
+        if (is(sql, start, end, "INTO")) {
+            return INTO;
+        }
+        if (is(sql, start, end, "UPDATE")) {
+            return UPDATE;
+        }
+        if (is(sql, start, end, "DELETE")) {
+            return DELETE;
+        }
+        if (is(sql, start, end, "TABLE")) {
+            return TABLE;
+        }
+        if (is(sql, start, end, "SELECT")) {
+            return SELECT;
+        }
+        for (String keyword : CLAUSE_KEYWORDS) {
+            if (is(sql, start, end, keyword)) {
+                return CLAUSE;
+            }
+        }
+        return OTHER;
+    }
+
+    private static boolean isReserved(String sql, int start, int end) {
+        return keyword(sql, start, end) != OTHER;
+    }
+
+    private static boolean isModifier(String sql, int start, int end) {
+        for (String modifier : MODIFIERS) {
+            if (is(sql, start, end, modifier)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean is(String sql, int start, int end, String word) {
+        return end - start == word.length() && sql.regionMatches(true, start, word, 0, word.length());
+    }
+
+}
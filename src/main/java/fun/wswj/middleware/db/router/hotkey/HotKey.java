@@ -0,0 +1,55 @@
+package fun.wswj.middleware.db.router.hotkey;
+
+import fun.wswj.middleware.db.router.RouteTarget;
+
+/**
+ *  热点路由键的统计快照
+ */
+public class HotKey {
+
+    private final String key;
+
+    private final RouteTarget target;
+
+    private final long count;
+
+    private final double share;
+
+    public HotKey(String key, RouteTarget target, long count, double share) {
+        this.key = key;
+        this.target = target;
+        this.count = count;
+        this.share = share;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * 最近一次路由到的库表
+     */
+    public RouteTarget getTarget() {
+        return target;
+    }
+
+    /**
+     * 估算的请求次数，已按采样率换算并随时间衰减
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * 占全部请求的比例
+     */
+    public double getShare() {
+        return share;
+    }
+
+    @Override
+    public String toString() {
+        return key + "@" + target + " count=" + count + " share=" + String.format("%.2f%%", share * 100);
+    }
+
+}
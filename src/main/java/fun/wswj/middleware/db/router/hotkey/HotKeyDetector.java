@@ -0,0 +1,362 @@
+package fun.wswj.middleware.db.router.hotkey;
+
+import fun.wswj.middleware.db.router.RouteTarget;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ *  热点路由键检测：采样后写入 Count-Min Sketch 估算频次，频次较高的键进入固定容量的候选集，
+ *  全局一个候选集，每个库表另有一个同样容量的候选集，按库表查询时不受其他库表热点挤占。
+ *  计数器为 AtomicLongArray，记录路径无锁；候选集满时的淘汰用 tryLock，抢不到锁直接放弃本次。
+ *  每个衰减周期结束时在后台线程回调 HotKeyListener，然后全部计数减半，旧热点逐渐退出。
+ */
+public class HotKeyDetector {
+
+    private final Logger logger = LoggerFactory.getLogger(HotKeyDetector.class);
+
+    private static final int DEPTH = 4;
+
+    private final int width;
+
+    private final int mask;
+
+    private final AtomicLongArray sketch;
+
+    /**
+     * 候选集容量
+     */
+    private final int capacity;
+
+    private final CandidateSet candidates;
+
+    private final Map<RouteTarget, CandidateSet> shardCandidates = new ConcurrentHashMap<>();
+
+    /**
+     * 每 sampleInterval 个请求采样一个
+     */
+    private final int sampleInterval;
+
+    private final LongAdder total = new LongAdder();
+
+    private final long decayNanos;
+
+    private volatile long nextDecay;
+
+    private final AtomicBoolean decaying = new AtomicBoolean();
+
+    /**
+     * 占全部请求比例达到该值的键视为热点
+     */
+    private final double hotShare;
+
+    private volatile HotKeyListener listener;
+
+    /**
+     * 回调在单个后台线程执行，不占用触发衰减的请求线程；上一次回调未结束时最多排队一次，其余丢弃
+     */
+    private final ThreadPoolExecutor reporter;
+
+    /**
+     * @param width           每行计数器数量，向上取 2 的幂
+     * @param capacity        候选集容量
+     * @param sampleInterval  采样间隔，1 表示记录全部请求
+     * @param decayMillis     衰减周期
+     * @param hotShare        热点占比阈值
+     */
+    public HotKeyDetector(int width, int capacity, int sampleInterval, long decayMillis, double hotShare) {
+        if (width <= 0 || capacity <= 0 || sampleInterval <= 0 || decayMillis <= 0) {
+            throw new IllegalArgumentException("width, capacity, sampleInterval and decayMillis must be positive");
+        }
+        int w = 1;
+        while (w < width) {
+            w <<= 1;
+        }
+        this.width = w;
+        this.mask = this.width - 1;
+        this.sketch = new AtomicLongArray(DEPTH * this.width);
+        this.capacity = capacity;
+        this.candidates = new CandidateSet(capacity);
+        this.sampleInterval = sampleInterval;
+        this.decayNanos = TimeUnit.MILLISECONDS.toNanos(decayMillis);
+        this.nextDecay = System.nanoTime() + decayNanos;
+        this.hotShare = hotShare;
+        this.reporter = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(1), r -> {
+            Thread thread = new Thread(r, "db-router-hotkey-report");
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.DiscardPolicy());
+        this.reporter.allowCoreThreadTimeOut(true);
+    }
+
+    public HotKeyDetector() {
+        this(4096, 64, 8, 60000, 0.01);
+    }
+
+    public void setListener(HotKeyListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 记录一次路由
+     */
+    public void record(String key, RouteTarget target) {
+        if (null == key) {
+            return;
+        }
+        if (sampleInterval > 1 && ThreadLocalRandom.current().nextInt(sampleInterval) != 0) {
+            return;
+        }
+        recordSampled(key, target);
+    }
+
+    /**
+     * 记录一次数值路由键的路由，采样命中后才转成字符串
+     */
+    public void record(long key, RouteTarget target) {
+        if (sampleInterval > 1 && ThreadLocalRandom.current().nextInt(sampleInterval) != 0) {
+            return;
+        }
+        recordSampled(Long.toString(key), target);
+    }
+
+    private void recordSampled(String key, RouteTarget target) {
+        total.increment();
+        long estimate = increment(key);
+        candidates.offer(key, target, estimate);
+        if (null != target) {
+            CandidateSet shard = shardCandidates.get(target);
+            if (null == shard) {
+                shard = shardCandidates.computeIfAbsent(target, t -> new CandidateSet(capacity));
+            }
+            shard.offer(key, target, estimate);
+        }
+        if (System.nanoTime() - nextDecay >= 0) {
+            decay();
+        }
+    }
+
+    /**
+     * 当前计数最高的键
+     */
+    public List<HotKey> getTopKeys(int n) {
+        return topKeys(candidates, n);
+    }
+
+    /**
+     * 按库表分组的热点键，每个库表最多 n 个，取自该库表自己的候选集；占比仍相对全部请求
+     */
+    public Map<RouteTarget, List<HotKey>> getTopKeysByShard(int n) {
+        Map<RouteTarget, List<HotKey>> byShard = new LinkedHashMap<>();
+        for (Map.Entry<RouteTarget, CandidateSet> entry : shardCandidates.entrySet()) {
+            List<HotKey> keys = topKeys(entry.getValue(), n);
+            if (!keys.isEmpty()) {
+                byShard.put(entry.getKey(), keys);
+            }
+        }
+        return byShard;
+    }
+
+    private List<HotKey> topKeys(CandidateSet set, int n) {
+        List<Candidate> snapshot = new ArrayList<>(set.candidates.values());
+        snapshot.sort(Comparator.comparingLong((Candidate c) -> c.count).reversed());
+        long sampled = Math.max(1, total.sum());
+        List<HotKey> hotKeys = new ArrayList<>(Math.min(n, snapshot.size()));
+        for (int i = 0; i < snapshot.size() && i < n; i++) {
+            Candidate c = snapshot.get(i);
+            hotKeys.add(new HotKey(c.key, c.target, c.count * sampleInterval, Math.min(1.0, (double) c.count / sampled)));
+        }
+        return hotKeys;
+    }
+
+    /**
+     * 占比超过阈值的热点键
+     */
+    public List<HotKey> getHotKeys() {
+        List<HotKey> hotKeys = new ArrayList<>();
+        for (HotKey hotKey : getTopKeys(capacity)) {
+            if (hotKey.getShare() >= hotShare) {
+                hotKeys.add(hotKey);
+            }
+        }
+        return hotKeys;
+    }
+
+    private long increment(String key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        h ^= h >>> 16;
+        int step = (h >>> 15) | 1;
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            int idx = row * width + ((h + row * step) & mask);
+            min = Math.min(min, sketch.incrementAndGet(idx));
+        }
+        return min;
+    }
+
+    /**
+     * 把本周期热点交给后台线程上报，然后全部计数减半；并发减半可能丢失少量计数，不影响估算。
+     * 到期后由记录路径触发，也可以由定时任务主动调用
+     */
+    public void decay() {
+        if (!decaying.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            nextDecay = System.nanoTime() + decayNanos;
+            report(getHotKeys());
+            for (int i = 0; i < sketch.length(); i++) {
+                long value = sketch.get(i);
+                if (value != 0) {
+                    sketch.set(i, value >> 1);
+                }
+            }
+            long sampled = total.sumThenReset();
+            total.add(sampled >> 1);
+            candidates.decay();
+            for (CandidateSet shard : shardCandidates.values()) {
+                shard.decay();
+            }
+        } finally {
+            decaying.set(false);
+        }
+    }
+
+    private void report(List<HotKey> hotKeys) {
+        if (hotKeys.isEmpty()) {
+            return;
+        }
+        reporter.execute(() -> notify(hotKeys));
+    }
+
+    private void notify(List<HotKey> hotKeys) {
+        HotKeyListener current = listener;
+        if (null != current) {
+            try {
+                current.onHotKeys(hotKeys);
+            } catch (RuntimeException e) {
+                logger.warn("热点路由键回调失败", e);
+            }
+            return;
+        }
+        logger.warn("热点路由键 {}", hotKeys);
+    }
+
+    /**
+     * 固定容量的候选集
+     */
+    private static final class CandidateSet {
+
+        private final int capacity;
+
+        private final Map<String, Candidate> candidates = new ConcurrentHashMap<>();
+
+        /**
+         * 候选集已满时的准入门槛，即当前候选集中的最小计数
+         */
+        private volatile long admission;
+
+        private final ReentrantLock evictLock = new ReentrantLock();
+
+        private CandidateSet(int capacity) {
+            this.capacity = capacity;
+        }
+
+        private void offer(String key, RouteTarget target, long estimate) {
+            Candidate candidate = candidates.get(key);
+            if (null != candidate) {
+                candidate.count = estimate;
+                candidate.target = target;
+            } else if (estimate > admission) {
+                admit(key, target, estimate);
+            }
+        }
+
+        private void admit(String key, RouteTarget target, long estimate) {
+            if (candidates.size() < capacity) {
+                candidates.putIfAbsent(key, new Candidate(key, target, estimate));
+                if (candidates.size() >= capacity) {
+                    refreshAdmission();
+                }
+                return;
+            }
+            if (!evictLock.tryLock()) {
+                return;
+            }
+            try {
+                Candidate min = null;
+                for (Candidate c : candidates.values()) {
+                    if (null == min || c.count < min.count) {
+                        min = c;
+                    }
+                }
+                if (null != min && min.count < estimate) {
+                    candidates.remove(min.key);
+                    candidates.put(key, new Candidate(key, target, estimate));
+                }
+                refreshAdmission();
+            } finally {
+                evictLock.unlock();
+            }
+        }
+
+        private void refreshAdmission() {
+            if (candidates.size() < capacity) {
+                admission = 0;
+                return;
+            }
+            long min = Long.MAX_VALUE;
+            for (Candidate c : candidates.values()) {
+                min = Math.min(min, c.count);
+            }
+            admission = min == Long.MAX_VALUE ? 0 : min;
+        }
+
+        private void decay() {
+            for (Candidate c : candidates.values()) {
+                c.count >>= 1;
+                if (c.count == 0) {
+                    candidates.remove(c.key);
+                }
+            }
+            evictLock.lock();
+            try {
+                refreshAdmission();
+            } finally {
+                evictLock.unlock();
+            }
+        }
+
+    }
+
+    private static final class Candidate {
+
+        private final String key;
+
+        private volatile RouteTarget target;
+
+        private volatile long count;
+
+        private Candidate(String key, RouteTarget target, long count) {
+            this.key = key;
+            this.target = target;
+            this.count = count;
+        }
+
+    }
+
+}
@@ -0,0 +1,13 @@
+package fun.wswj.middleware.db.router.hotkey;
+
+import java.util.List;
+
+/**
+ *  热点路由键回调，每个衰减周期结束时调用一次，参数按次数从高到低排列
+ */
+@FunctionalInterface
+public interface HotKeyListener {
+
+    void onHotKeys(List<HotKey> hotKeys);
+
+}
@@ -0,0 +1,174 @@
+package fun.wswj.middleware.db.router.id;
+
+import fun.wswj.middleware.db.router.DBContextHolder;
+import fun.wswj.middleware.db.router.RouteTarget;
+import fun.wswj.middleware.db.router.strategy.IDBRouterStrategy;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ *  携带分片基因的 ID 生成器，类似 Snowflake，低位写入路由键的库表下标，按 ID 查询时直接定位分片，不再广播或查映射表。
+ *  位布局（高位到低位）：符号位 0 | 41 位毫秒时间戳 | workerBits 位节点 | stripeBits 位条带 | 序列号 | 库下标 | 表下标。
+ *  序列号按线程分散到多个条带，每个条带的时间戳与序列号合并在一个 long 中 CAS 递增，无锁；同一毫秒内序列号用尽或时钟回拨时沿用上一时间戳继续递增。
+ */
+public class ShardIdGenerator {
+
+    /** 时间戳起点 2024-01-01 00:00:00 UTC */
+    public static final long DEFAULT_EPOCH = 1704067200000L;
+
+    private static final int TIMESTAMP_BITS = 41;
+
+    private static final int LOW_BITS = 63 - TIMESTAMP_BITS;
+
+    /** 序列号最少位数，每毫秒每条带 16 个 */
+    private static final int MIN_SEQUENCE_BITS = 4;
+
+    /** 条带状态间隔 8 个 long（64 字节），避免伪共享 */
+    private static final int PADDING_SHIFT = 3;
+
+    private final IDBRouterStrategy dbRouterStrategy;
+
+    private final long epoch;
+
+    private final long workerId;
+
+    private final int dbBits;
+
+    private final int tbBits;
+
+    private final int geneBits;
+
+    private final int sequenceBits;
+
+    private final int stripeShift;
+
+    private final int workerShift;
+
+    private final int stripeMask;
+
+    private final AtomicLongArray states;
+
+    /**
+     * @param dbRouterStrategy 计算路由键基因的路由策略
+     * @param workerId         节点编号，集群内唯一
+     * @param workerBits       节点编号位数
+     * @param stripeBits       条带位数，条带数为 2^stripeBits
+     * @param dbBits           库下标位数，需容纳扩容后的分库数
+     * @param tbBits           表下标位数，需容纳扩容后的分表数
+     * @param epoch            时间戳起点
+     */
+    public ShardIdGenerator(IDBRouterStrategy dbRouterStrategy, long workerId, int workerBits, int stripeBits, int dbBits, int tbBits, long epoch) {
+        if (workerBits < 0 || stripeBits < 0 || dbBits < 0 || tbBits < 0) {
+            throw new IllegalArgumentException("ID 位数不能小于 0");
+        }
+        this.sequenceBits = LOW_BITS - workerBits - stripeBits - dbBits - tbBits;
+        if (sequenceBits < MIN_SEQUENCE_BITS) {
+            throw new IllegalArgumentException("ID 序列号位数不足 " + MIN_SEQUENCE_BITS + "，请减少 workerBits/stripeBits 或库表下标位数："
+                    + "workerBits=" + workerBits + " stripeBits=" + stripeBits + " dbBits=" + dbBits + " tbBits=" + tbBits);
+        }
+        if (workerId < 0 || workerId >= 1L << workerBits) {
+            throw new IllegalArgumentException("workerId 超出范围 [0, " + (1L << workerBits) + ")：" + workerId);
+        }
+        if (1L << dbBits < dbRouterStrategy.dbCount() || 1L << tbBits < dbRouterStrategy.tbCount()) {
+            throw new IllegalArgumentException("库表下标位数不足以容纳 dbCount：" + dbRouterStrategy.dbCount() + " tbCount：" + dbRouterStrategy.tbCount());
+        }
+        this.dbRouterStrategy = dbRouterStrategy;
+        this.epoch = epoch;
+        this.workerId = workerId;
+        this.dbBits = dbBits;
+        this.tbBits = tbBits;
+        this.geneBits = dbBits + tbBits;
+        this.stripeShift = geneBits + sequenceBits;
+        this.workerShift = stripeShift + stripeBits;
+        this.stripeMask = (1 << stripeBits) - 1;
+        this.states = new AtomicLongArray((stripeMask + 1) << PADDING_SHIFT);
+    }
+
+    /**
+     * 按当前路由策略的库表数确定基因位数
+     */
+    public ShardIdGenerator(IDBRouterStrategy dbRouterStrategy, long workerId) {
+        this(dbRouterStrategy, workerId, 5, 2, bitsFor(dbRouterStrategy.dbCount()), bitsFor(dbRouterStrategy.tbCount()), DEFAULT_EPOCH);
+    }
+
+    /**
+     * 按当前路由生成 ID，需在 @DBRouter 方法或手动路由后调用
+     */
+    public long nextId() {
+        RouteTarget target = DBContextHolder.getRouteTarget();
+        if (null == target) {
+            throw new IllegalStateException("当前线程没有路由，无法生成分片 ID");
+        }
+        return nextId(target);
+    }
+
+    /**
+     * 按路由键计算所属分片并生成 ID，不影响当前线程的路由
+     */
+    public long nextId(String ownerKey) {
+        return nextId(dbRouterStrategy.locate(ownerKey));
+    }
+
+    public long nextId(long ownerKey) {
+        return nextId(dbRouterStrategy.locate(ownerKey));
+    }
+
+    public long nextId(RouteTarget target) {
+        return next(gene(target.getDbIdx(), target.getTbIdx()));
+    }
+
+    private long next(long gene) {
+        int stripe = (int) Thread.currentThread().getId() & stripeMask;
+        int index = stripe << PADDING_SHIFT;
+        long state;
+        long next;
+        do {
+            state = states.get(index);
+            next = Math.max((System.currentTimeMillis() - epoch) << sequenceBits, state + 1);
+        } while (!states.compareAndSet(index, state, next));
+        long timestamp = next >>> sequenceBits;
+        if (timestamp >>> TIMESTAMP_BITS != 0) {
+            throw new IllegalStateException("ID 时间戳超出 " + TIMESTAMP_BITS + " 位，请调整 epoch");
+        }
+        return timestamp << LOW_BITS
+                | workerId << workerShift
+                | (long) stripe << stripeShift
+                | (next & ((1L << sequenceBits) - 1)) << geneBits
+                | gene;
+    }
+
+    private long gene(int dbIdx, int tbIdx) {
+        if (dbIdx < 1 || dbIdx > 1 << dbBits || tbIdx < 0 || tbIdx >= 1 << tbBits) {
+            throw new IllegalArgumentException("路由超出 ID 基因范围 dbIdx：" + dbIdx + " tbIdx：" + tbIdx);
+        }
+        return (long) (dbIdx - 1) << tbBits | tbIdx;
+    }
+
+    /**
+     * 从 ID 中解析库表下标
+     */
+    public RouteTarget route(long id) {
+        int tbIdx = (int) (id & ((1L << tbBits) - 1));
+        int dbIdx = (int) ((id >>> tbBits) & ((1L << dbBits) - 1)) + 1;
+        return RouteTarget.of(dbIdx, tbIdx);
+    }
+
+    /**
+     * 从 ID 中解析生成时间（毫秒）
+     */
+    public long timestamp(long id) {
+        return (id >>> LOW_BITS) + epoch;
+    }
+
+    public int getSequenceBits() {
+        return sequenceBits;
+    }
+
+    /**
+     * 容纳 [0, count) 所需的位数
+     */
+    public static int bitsFor(int count) {
+        return count <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(count - 1);
+    }
+
+}
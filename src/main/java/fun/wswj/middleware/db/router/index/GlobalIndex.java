@@ -0,0 +1,176 @@
+package fun.wswj.middleware.db.router.index;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import fun.wswj.middleware.db.router.DBContextHolder;
+import fun.wswj.middleware.db.router.RouteTarget;
+import fun.wswj.middleware.db.router.strategy.IDBRouterStrategy;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ *  全局二级索引：按邮箱、手机号等非路由字段查询时，先查索引值到路由键的映射，再按路由键路由到单个分片。
+ *  映射表以索引名为逻辑表名，按索引值经同一路由策略分库分表，表结构为 (index_value 主键, router_key)；
+ *  查询结果缓存在本地，命中时不访问数据库，未命中缓存时只多一次单分片查询。
+ */
+public class GlobalIndex {
+
+    private static final Pattern TABLE_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    private final IDBRouterStrategy dbRouterStrategy;
+
+    private final DataSource dataSource;
+
+    /**
+     * 本地缓存，按条数上限淘汰、写入后超过有效期失效；不缓存时为空
+     */
+    private final Cache<String, String> cache;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder loads = new LongAdder();
+
+    /**
+     * @param dbRouterStrategy 映射表的路由策略，与业务表相同
+     * @param dataSource       路由数据源
+     * @param cacheSize        本地缓存条数上限，小于等于 0 时不缓存
+     * @param cacheTtl         本地缓存有效期（毫秒），小于等于 0 时不缓存
+     */
+    public GlobalIndex(IDBRouterStrategy dbRouterStrategy, DataSource dataSource, int cacheSize, long cacheTtl) {
+        this.dbRouterStrategy = dbRouterStrategy;
+        this.dataSource = dataSource;
+        this.cache = cacheSize <= 0 || cacheTtl <= 0 ? null
+                : CacheBuilder.newBuilder().maximumSize(cacheSize).expireAfterWrite(cacheTtl, TimeUnit.MILLISECONDS).build();
+    }
+
+    /**
+     * 查询索引值对应的路由键，不存在时返回 null；不影响当前线程的路由
+     */
+    public String lookup(String name, Object value) {
+        String indexValue = value.toString();
+        String cacheKey = cacheKey(name, indexValue);
+        String routerKey = null == cache ? null : cache.getIfPresent(cacheKey);
+        if (null != routerKey) {
+            hits.increment();
+            return routerKey;
+        }
+        loads.increment();
+        routerKey = onIndexShard(name, indexValue, false, (connection, table) -> {
+            try (PreparedStatement statement = connection.prepareStatement("SELECT router_key FROM " + table + " WHERE index_value = ?")) {
+                statement.setString(1, indexValue);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    return resultSet.next() ? resultSet.getString(1) : null;
+                }
+            }
+        });
+        // 不缓存未命中，其他节点新写入的映射可以立即查到
+        if (null != routerKey && null != cache) {
+            cache.put(cacheKey, routerKey);
+        }
+        return routerKey;
+    }
+
+    /**
+     * 写入或覆盖映射，使用独立连接自动提交
+     */
+    public void put(String name, Object value, Object routerKey) {
+        String indexValue = value.toString();
+        String key = routerKey.toString();
+        onIndexShard(name, indexValue, true, (connection, table) -> {
+            try (PreparedStatement statement = connection.prepareStatement("REPLACE INTO " + table + " (index_value, router_key) VALUES (?, ?)")) {
+                statement.setString(1, indexValue);
+                statement.setString(2, key);
+                return statement.executeUpdate();
+            }
+        });
+        if (null != cache) {
+            cache.put(cacheKey(name, indexValue), key);
+        }
+    }
+
+    /**
+     * 删除映射
+     */
+    public void remove(String name, Object value) {
+        String indexValue = value.toString();
+        onIndexShard(name, indexValue, true, (connection, table) -> {
+            try (PreparedStatement statement = connection.prepareStatement("DELETE FROM " + table + " WHERE index_value = ?")) {
+                statement.setString(1, indexValue);
+                return statement.executeUpdate();
+            }
+        });
+        invalidate(name, value);
+    }
+
+    /**
+     * 只清除本地缓存
+     */
+    public void invalidate(String name, Object value) {
+        if (null != cache) {
+            cache.invalidate(cacheKey(name, value.toString()));
+        }
+    }
+
+    /**
+     * 临时按索引值路由，在映射表所在分片上执行，完成后恢复当前线程的路由
+     */
+    private <T> T onIndexShard(String name, String indexValue, boolean write, ShardCallback<T> callback) {
+        if (!TABLE_NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("二级索引名不是合法的表名：" + name);
+        }
+        RouteTarget route = DBContextHolder.getRouteTarget();
+        RouteTarget shadow = DBContextHolder.getShadowTarget();
+        // 写入映射走主库
+        boolean previousReadOnly = write && DBContextHolder.setReadOnly(false);
+        boolean previousReadStatement = DBContextHolder.setReadStatement(!write);
+        DBContextHolder.setShadowTarget(null);
+        try {
+            // 只计算映射表位置，不计入热点统计
+            RouteTarget target = dbRouterStrategy.locate(indexValue);
+            DBContextHolder.setRouteTarget(target);
+            String table = null == target.getTableSuffix() ? name : name + target.getTableSuffix();
+            try (Connection connection = dataSource.getConnection()) {
+                return callback.apply(connection, table);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("二级索引" + (write ? "写入" : "查询") + "失败 index：" + name + " value：" + indexValue, e);
+        } finally {
+            DBContextHolder.setRouteTarget(route);
+            DBContextHolder.setShadowTarget(shadow);
+            DBContextHolder.setReadStatement(previousReadStatement);
+            if (write) {
+                DBContextHolder.setReadOnly(previousReadOnly);
+            }
+        }
+    }
+
+    private static String cacheKey(String name, String indexValue) {
+        return name + '\u0000' + indexValue;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getLoads() {
+        return loads.sum();
+    }
+
+    public int getCacheSize() {
+        return null == cache ? 0 : (int) cache.size();
+    }
+
+    private interface ShardCallback<T> {
+
+        T apply(Connection connection, String table) throws SQLException;
+
+    }
+
+}
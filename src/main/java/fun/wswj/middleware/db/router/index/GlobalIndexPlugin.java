@@ -0,0 +1,194 @@
+package fun.wswj.middleware.db.router.index;
+
+import fun.wswj.middleware.db.router.annotation.SecondaryIndex;
+import org.apache.commons.lang.StringUtils;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.reflection.MetaObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *  Mybatis 拦截器，@SecondaryIndex 标注的 insert/update 执行成功后写入索引映射，delete 与索引值变化的 update 删除旧映射。
+ *  映射使用独立连接自动提交；处于事务中时在事务提交后写入，回滚则不写。写入失败只记录日志与计数，按索引查询未命中时退回广播查询。
+ */
+@Intercepts({@Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class})})
+public class GlobalIndexPlugin implements Interceptor {
+
+    private final Logger logger = LoggerFactory.getLogger(GlobalIndexPlugin.class);
+
+    private static final SecondaryIndex[] NONE = new SecondaryIndex[0];
+
+    private final GlobalIndex globalIndex;
+
+    /**
+     * 全局配置的路由字段
+     */
+    private final String routerKey;
+
+    /**
+     * MappedStatement 上的索引声明，按 id 解析一次
+     */
+    private final Map<String, SecondaryIndex[]> statementIndexes = new ConcurrentHashMap<>();
+
+    private final LongAdder indexWrites = new LongAdder();
+
+    private final LongAdder indexFailures = new LongAdder();
+
+    public GlobalIndexPlugin(GlobalIndex globalIndex, String routerKey) {
+        this.globalIndex = globalIndex;
+        this.routerKey = routerKey;
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        Object result = invocation.proceed();
+        MappedStatement mappedStatement = (MappedStatement) invocation.getArgs()[0];
+        SqlCommandType commandType = mappedStatement.getSqlCommandType();
+        if (commandType != SqlCommandType.INSERT && commandType != SqlCommandType.UPDATE && commandType != SqlCommandType.DELETE) {
+            return result;
+        }
+        SecondaryIndex[] indexes = statementIndexes.get(mappedStatement.getId());
+        if (null == indexes) {
+            indexes = statementIndexes.computeIfAbsent(mappedStatement.getId(), this::resolveIndexes);
+        }
+        if (indexes.length == 0 || (result instanceof Integer && (Integer) result == 0)) {
+            return result;
+        }
+        List<IndexEntry> entries = entries(mappedStatement, commandType, invocation.getArgs()[1], indexes);
+        if (entries.isEmpty()) {
+            return result;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    write(mappedStatement, entries);
+                }
+            });
+        } else {
+            write(mappedStatement, entries);
+        }
+        return result;
+    }
+
+    /**
+     * 从入参中读取索引值与路由键，写入前取值，避免事务提交前入参对象被修改
+     */
+    private List<IndexEntry> entries(MappedStatement mappedStatement, SqlCommandType commandType, Object parameter, SecondaryIndex[] indexes) {
+        List<IndexEntry> entries = new ArrayList<>(indexes.length);
+        MetaObject metaObject = mappedStatement.getConfiguration().newMetaObject(parameter);
+        for (SecondaryIndex index : indexes) {
+            Object value = getValue(metaObject, index.key());
+            if (commandType == SqlCommandType.DELETE) {
+                if (null == value) {
+                    logger.debug("二级索引字段为空，不删除映射 statement：{} index：{}", mappedStatement.getId(), index.name());
+                } else {
+                    entries.add(new IndexEntry(index.name(), value, null));
+                }
+                continue;
+            }
+            if (commandType == SqlCommandType.UPDATE && StringUtils.isNotBlank(index.previousKey())) {
+                Object previous = getValue(metaObject, index.previousKey());
+                if (null != previous && !previous.equals(value)) {
+                    entries.add(new IndexEntry(index.name(), previous, null));
+                }
+            }
+            Object key = getValue(metaObject, StringUtils.isBlank(index.routerKey()) ? routerKey : index.routerKey());
+            if (null == value || null == key) {
+                logger.debug("二级索引字段为空，不写入映射 statement：{} index：{}", mappedStatement.getId(), index.name());
+                continue;
+            }
+            entries.add(new IndexEntry(index.name(), value, key));
+        }
+        return entries;
+    }
+
+    private void write(MappedStatement mappedStatement, List<IndexEntry> entries) {
+        for (IndexEntry entry : entries) {
+            try {
+                if (null == entry.routerKey) {
+                    globalIndex.remove(entry.name, entry.value);
+                } else {
+                    globalIndex.put(entry.name, entry.value, entry.routerKey);
+                }
+                indexWrites.increment();
+            } catch (Exception e) {
+                indexFailures.increment();
+                logger.error("db-router 二级索引写入失败 statement：{} index：{} value：{}", mappedStatement.getId(), entry.name, entry.value, e);
+            }
+        }
+    }
+
+    private Object getValue(MetaObject metaObject, String path) {
+        try {
+            return metaObject.getValue(path);
+        } catch (RuntimeException e) {
+            // 入参没有该属性，或 @Param 参数名不匹配
+            return null;
+        }
+    }
+
+    private SecondaryIndex[] resolveIndexes(String id) {
+        String className = id.substring(0, id.lastIndexOf("."));
+        String methodName = id.substring(id.lastIndexOf(".") + 1);
+        Class<?> clazz;
+        try {
+            clazz = Resources.classForName(className);
+        } catch (ClassNotFoundException e) {
+            return NONE;
+        }
+        for (Method method : clazz.getMethods()) {
+            if (method.getName().equals(methodName)) {
+                SecondaryIndex[] indexes = method.getAnnotationsByType(SecondaryIndex.class);
+                if (indexes.length > 0) {
+                    return indexes;
+                }
+            }
+        }
+        return NONE;
+    }
+
+    public long getIndexWrites() {
+        return indexWrites.sum();
+    }
+
+    public long getIndexFailures() {
+        return indexFailures.sum();
+    }
+
+    /**
+     * 一次映射变更，routerKey 为空时删除映射
+     */
+    private static final class IndexEntry {
+
+        private final String name;
+
+        private final Object value;
+
+        private final Object routerKey;
+
+        private IndexEntry(String name, Object value, Object routerKey) {
+            this.name = name;
+            this.value = value;
+            this.routerKey = routerKey;
+        }
+
+    }
+
+}
@@ -0,0 +1,116 @@
+package fun.wswj.middleware.db.router.limit;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+
+/**
+ *  持有分库并发许可的连接，关闭时归还许可。耗时样本为连接池等待加上单条语句的最长执行时间，
+ *  同一连接上执行多少条语句、业务代码在两条语句之间耗时多久都不影响样本，长事务不会被误判为过载；语句执行超时视为过载。
+ */
+final class LimitedConnection implements InvocationHandler {
+
+    private final Connection target;
+
+    private final ShardLimiter limiter;
+
+    private final long checkoutNanos;
+
+    private long maxStatementNanos;
+
+    private boolean dropped;
+
+    private boolean released;
+
+    private LimitedConnection(Connection target, ShardLimiter limiter, long checkoutNanos) {
+        this.target = target;
+        this.limiter = limiter;
+        this.checkoutNanos = checkoutNanos;
+    }
+
+    static Connection wrap(Connection target, ShardLimiter limiter, long checkoutNanos) {
+        return (Connection) Proxy.newProxyInstance(LimitedConnection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                new LimitedConnection(target, limiter, checkoutNanos));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "LimitedConnection{" + limiter.getName() + ", " + target + "}";
+            case "close":
+                try {
+                    return method.invoke(target, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getTargetException();
+                } finally {
+                    release();
+                }
+            default:
+                break;
+        }
+        Object result;
+        try {
+            result = method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+        if (result instanceof CallableStatement) {
+            return statement(result, CallableStatement.class);
+        }
+        if (result instanceof PreparedStatement) {
+            return statement(result, PreparedStatement.class);
+        }
+        if (result instanceof Statement && method.getName().equals("createStatement")) {
+            return statement(result, Statement.class);
+        }
+        return result;
+    }
+
+    private synchronized void release() {
+        if (!released) {
+            released = true;
+            limiter.release(checkoutNanos + maxStatementNanos, dropped);
+        }
+    }
+
+    private synchronized void record(long nanos, boolean timeout) {
+        maxStatementNanos = Math.max(maxStatementNanos, nanos);
+        dropped |= timeout;
+    }
+
+    private Object statement(Object statement, Class<?> type) {
+        return Proxy.newProxyInstance(LimitedConnection.class.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if (!method.getName().startsWith("execute")) {
+                try {
+                    return method.invoke(statement, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getTargetException();
+                }
+            }
+            long start = System.nanoTime();
+            boolean timeout = false;
+            try {
+                return method.invoke(statement, args);
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getTargetException();
+                timeout = cause instanceof SQLTimeoutException || cause instanceof SQLTransientConnectionException;
+                throw cause;
+            } finally {
+                record(System.nanoTime() - start, timeout);
+            }
+        });
+    }
+
+}
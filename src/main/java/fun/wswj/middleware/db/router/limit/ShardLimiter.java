@@ -0,0 +1,169 @@
+package fun.wswj.middleware.db.router.limit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ *  单个分库的自适应并发限制，AIMD：请求耗时正常且并发接近上限时上限加 1，耗时超过阈值或出错时按比例下调。
+ *  未达上限时以 CAS 获取许可；等待许可的线程挂在 Condition 上，释放许可时只在有等待者时加锁唤醒。
+ */
+public class ShardLimiter {
+
+    private final String name;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final long latencyThresholdNanos;
+
+    private final double backoffRatio;
+
+    private final AtomicInteger limit;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final AtomicInteger waiters = new AtomicInteger();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition available = lock.newCondition();
+
+    private final LongAdder rejected = new LongAdder();
+
+    private final LongAdder drops = new LongAdder();
+
+    /**
+     * @param name             分库名称
+     * @param initialLimit     初始并发上限
+     * @param minLimit         并发上限下限
+     * @param maxLimit         并发上限上限
+     * @param latencyThreshold 耗时阈值（毫秒），超过时视为过载
+     * @param backoffRatio     过载时上限的下调比例，(0, 1)
+     */
+    public ShardLimiter(String name, int initialLimit, int minLimit, int maxLimit, long latencyThreshold, double backoffRatio) {
+        if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("并发上限配置错误 min：" + minLimit + " initial：" + initialLimit + " max：" + maxLimit);
+        }
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("backoffRatio must be in (0, 1): " + backoffRatio);
+        }
+        this.name = name;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(latencyThreshold);
+        this.backoffRatio = backoffRatio;
+        this.limit = new AtomicInteger(initialLimit);
+    }
+
+    /**
+     * 获取许可，达到上限时最多等待 timeoutNanos，小于等于 0 时直接失败
+     */
+    public boolean tryAcquire(long timeoutNanos) throws InterruptedException {
+        if (tryIncrement()) {
+            return true;
+        }
+        if (timeoutNanos <= 0) {
+            rejected.increment();
+            return false;
+        }
+        long deadline = System.nanoTime() + timeoutNanos;
+        // 先登记等待者再重试，释放许可的线程要么看到等待者并唤醒，要么本线程看到释放后的并发数
+        waiters.incrementAndGet();
+        lock.lock();
+        try {
+            while (!tryIncrement()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    rejected.increment();
+                    return false;
+                }
+                available.awaitNanos(remaining);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+            waiters.decrementAndGet();
+        }
+    }
+
+    /**
+     * 归还许可，并按本次耗时调整并发上限
+     *
+     * @param latencyNanos 本次耗时
+     * @param dropped      是否超时或出错
+     */
+    public void release(long latencyNanos, boolean dropped) {
+        int current = inFlight.getAndDecrement();
+        if (dropped || latencyNanos > latencyThresholdNanos) {
+            drops.increment();
+            decrease();
+        } else if (current * 2 >= limit.get()) {
+            // 只有并发接近上限时才说明上限不够用
+            increase();
+        }
+        if (waiters.get() > 0) {
+            lock.lock();
+            try {
+                available.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private boolean tryIncrement() {
+        for (;;) {
+            int current = inFlight.get();
+            if (current >= limit.get()) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void increase() {
+        for (;;) {
+            int current = limit.get();
+            if (current >= maxLimit || limit.compareAndSet(current, current + 1)) {
+                return;
+            }
+        }
+    }
+
+    private void decrease() {
+        for (;;) {
+            int current = limit.get();
+            int next = Math.max(minLimit, Math.min(current - 1, (int) (current * backoffRatio)));
+            if (next == current || limit.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getLimit() {
+        return limit.get();
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public long getDrops() {
+        return drops.sum();
+    }
+
+}
@@ -0,0 +1,99 @@
+package fun.wswj.middleware.db.router.limit;
+
+import fun.wswj.middleware.db.router.RouteTarget;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  分库隔离：每个分库一个自适应并发限制，在获取连接前取许可、连接关闭时归还。
+ *  某个分库变慢时只有路由到该库的请求排队或快速失败，不会占满调用线程拖垮其他分库。
+ */
+public class ShardLimiters {
+
+    /** 未路由时使用默认数据源的限制 */
+    public static final String DEFAULT_KEY = "default";
+
+    private final Map<Object, ShardLimiter> limiters = new ConcurrentHashMap<>();
+
+    private final int initialLimit;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final long latencyThreshold;
+
+    private final double backoffRatio;
+
+    private final long maxWaitNanos;
+
+    /**
+     * @param initialLimit     每个分库的初始并发上限
+     * @param minLimit         并发上限下限
+     * @param maxLimit         并发上限上限，一般不超过连接池大小
+     * @param latencyThreshold 耗时阈值（毫秒），连接池等待与单条语句最长耗时之和超过时下调上限
+     * @param backoffRatio     过载时上限的下调比例
+     * @param maxWait          达到上限时的最长等待（毫秒），0 为快速失败
+     */
+    public ShardLimiters(int initialLimit, int minLimit, int maxLimit, long latencyThreshold, double backoffRatio, long maxWait) {
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyThreshold = latencyThreshold;
+        this.backoffRatio = backoffRatio;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWait);
+        // 启动时校验配置
+        get(DEFAULT_KEY);
+    }
+
+    /**
+     * 按数据源键获取分库的限制，拓扑热更新新增的分库在首次使用时创建
+     */
+    public ShardLimiter get(Object lookupKey) {
+        ShardLimiter limiter = limiters.get(lookupKey);
+        if (null == limiter) {
+            limiter = limiters.computeIfAbsent(lookupKey, key -> new ShardLimiter(key.toString(), initialLimit, minLimit, maxLimit, latencyThreshold, backoffRatio));
+        }
+        return limiter;
+    }
+
+    /**
+     * 取得路由分库的许可后获取连接，连接关闭时归还许可；达到上限且等待超时时抛出 SQLTransientConnectionException
+     */
+    public Connection getConnection(RouteTarget target, ConnectionSource source) throws SQLException {
+        Object key = null == target || null == target.getLookupKey() ? DEFAULT_KEY : target.getLookupKey();
+        ShardLimiter limiter = get(key);
+        boolean acquired;
+        try {
+            acquired = limiter.tryAcquire(maxWaitNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("db-router 等待分库并发许可被中断 db：" + key, e);
+        }
+        if (!acquired) {
+            throw new SQLTransientConnectionException("db-router 分库并发已达上限 db：" + key + " limit：" + limiter.getLimit());
+        }
+        // 耗时从取得许可后开始计算，排队等待许可的时间不计入，避免排队放大过载判断
+        long start = System.nanoTime();
+        Connection connection;
+        try {
+            connection = source.getConnection();
+        } catch (SQLException | RuntimeException | Error e) {
+            limiter.release(System.nanoTime() - start, true);
+            throw e;
+        }
+        return LimitedConnection.wrap(connection, limiter, System.nanoTime() - start);
+    }
+
+    public interface ConnectionSource {
+
+        Connection getConnection() throws SQLException;
+
+    }
+
+}
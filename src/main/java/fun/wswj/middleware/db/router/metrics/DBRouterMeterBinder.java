@@ -0,0 +1,95 @@
+package fun.wswj.middleware.db.router.metrics;
+
+import fun.wswj.middleware.db.router.limit.ShardLimiter;
+import fun.wswj.middleware.db.router.limit.ShardLimiters;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  将 DBRouterMetrics 注册到 Micrometer，指标在采集时读取，不占用请求路径
+ */
+public class DBRouterMeterBinder implements MeterBinder {
+
+    private final DBRouterMetrics metrics;
+
+    /**
+     * 是否注册分表维度的指标，库表数量很多时可以关闭以减少指标数量
+     */
+    private final boolean tableLevel;
+
+    /**
+     * 分库并发限制，未开启时为空
+     */
+    private ShardLimiters shardLimiters;
+
+    public DBRouterMeterBinder(DBRouterMetrics metrics, boolean tableLevel) {
+        this.metrics = metrics;
+        this.tableLevel = tableLevel;
+    }
+
+    public void setShardLimiters(ShardLimiters shardLimiters) {
+        this.shardLimiters = shardLimiters;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (int db = 0; db <= metrics.getDbCount(); db++) {
+            final int dbIdx = db;
+            String dbTag = dbTag(db);
+            if (tableLevel) {
+                for (int tb = 0; tb < metrics.getTbCount(); tb++) {
+                    final int tbIdx = tb;
+                    String tbTag = String.format("%03d", tb);
+                    FunctionCounter.builder("db.router.route.requests", metrics, m -> m.getRouteCount(dbIdx, tbIdx))
+                            .description("路由到该库表的请求数").tag("db", dbTag).tag("tb", tbTag).register(registry);
+                    FunctionCounter.builder("db.router.sql.statements", metrics, m -> m.getStatementCount(dbIdx, tbIdx))
+                            .description("在该库表执行的 SQL 条数").tag("db", dbTag).tag("tb", tbTag).register(registry);
+                }
+            } else {
+                FunctionCounter.builder("db.router.route.requests", metrics, m -> sumRoutes(m, dbIdx))
+                        .description("路由到该库的请求数").tag("db", dbTag).register(registry);
+            }
+            FunctionTimer.builder("db.router.shard.execution", metrics, m -> m.getExecutionCount(dbIdx), m -> m.getExecutionNanos(dbIdx), TimeUnit.NANOSECONDS)
+                    .description("被路由方法在该库上的执行耗时").tag("db", dbTag).register(registry);
+            FunctionTimer.builder("db.router.pool.checkout", metrics, m -> m.getCheckoutCount(dbIdx), m -> m.getCheckoutNanos(dbIdx), TimeUnit.NANOSECONDS)
+                    .description("从该库连接池获取连接的等待耗时").tag("db", dbTag).register(registry);
+            if (null != shardLimiters) {
+                ShardLimiter limiter = shardLimiters.get(db == 0 ? ShardLimiters.DEFAULT_KEY : "db" + dbTag);
+                Gauge.builder("db.router.limit", limiter, ShardLimiter::getLimit)
+                        .description("该库当前的并发上限").tag("db", dbTag).register(registry);
+                Gauge.builder("db.router.limit.inflight", limiter, ShardLimiter::getInFlight)
+                        .description("该库正在使用的并发许可").tag("db", dbTag).register(registry);
+                FunctionCounter.builder("db.router.limit.rejected", limiter, ShardLimiter::getRejected)
+                        .description("该库并发已满被拒绝的请求数").tag("db", dbTag).register(registry);
+                FunctionCounter.builder("db.router.limit.drops", limiter, ShardLimiter::getDrops)
+                        .description("该库超时或出错触发下调上限的次数").tag("db", dbTag).register(registry);
+            }
+        }
+        FunctionTimer.builder("db.router.routing", metrics, DBRouterMetrics::getRoutingCount, DBRouterMetrics::getRoutingNanos, TimeUnit.NANOSECONDS)
+                .description("读取路由值与路由策略计算耗时").register(registry);
+        FunctionTimer.builder("db.router.sql.rewrite", metrics, DBRouterMetrics::getRewriteCount, DBRouterMetrics::getRewriteNanos, TimeUnit.NANOSECONDS)
+                .description("SQL 表名改写耗时").register(registry);
+        Gauge.builder("db.router.skew", metrics, DBRouterMetrics::getDbSkew)
+                .description("路由最多的库 / 各库平均值").tag("level", "db").register(registry);
+        Gauge.builder("db.router.skew", metrics, DBRouterMetrics::getTableSkew)
+                .description("路由最多的库表 / 各库表平均值").tag("level", "table").register(registry);
+    }
+
+    private static long sumRoutes(DBRouterMetrics metrics, int dbIdx) {
+        long sum = 0;
+        for (int tb = 0; tb < metrics.getTbCount(); tb++) {
+            sum += metrics.getRouteCount(dbIdx, tb);
+        }
+        return sum;
+    }
+
+    private static String dbTag(int dbIdx) {
+        return dbIdx == 0 ? "default" : String.format("%02d", dbIdx);
+    }
+
+}
@@ -0,0 +1,193 @@
+package fun.wswj.middleware.db.router.metrics;
+
+import fun.wswj.middleware.db.router.RouteTarget;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *  路由指标，按库表下标存放在 LongAdder 数组中，记录时只做一次分段累加，不加锁也不分配对象。
+ *  下标 0 的库统计未路由（默认数据源）的请求，超出配置范围的手动路由同样计入默认。
+ */
+public class DBRouterMetrics {
+
+    private final int dbCount;
+
+    private final int tbCount;
+
+    /**
+     * 每个库表的路由次数，下标 dbIdx * tbCount + tbIdx
+     */
+    private final LongAdder[] routeCounts;
+
+    /**
+     * 每个库表执行的 SQL 条数
+     */
+    private final LongAdder[] statementCounts;
+
+    /**
+     * 每个库被路由方法的执行次数与耗时
+     */
+    private final LongAdder[] executionCounts;
+
+    private final LongAdder[] executionNanos;
+
+    /**
+     * 每个库获取连接的次数与等待耗时
+     */
+    private final LongAdder[] checkoutCounts;
+
+    private final LongAdder[] checkoutNanos;
+
+    /**
+     * 路由计算（取路由值 + 策略计算）与 SQL 改写耗时
+     */
+    private final LongAdder routingCount = new LongAdder();
+
+    private final LongAdder routingNanos = new LongAdder();
+
+    private final LongAdder rewriteCount = new LongAdder();
+
+    private final LongAdder rewriteNanos = new LongAdder();
+
+    public DBRouterMetrics(int dbCount, int tbCount) {
+        this.dbCount = dbCount;
+        this.tbCount = tbCount;
+        this.routeCounts = adders((dbCount + 1) * tbCount);
+        this.statementCounts = adders((dbCount + 1) * tbCount);
+        this.executionCounts = adders(dbCount + 1);
+        this.executionNanos = adders(dbCount + 1);
+        this.checkoutCounts = adders(dbCount + 1);
+        this.checkoutNanos = adders(dbCount + 1);
+    }
+
+    public void recordRouting(RouteTarget target, long nanos) {
+        routingCount.increment();
+        routingNanos.add(nanos);
+        routeCounts[tableSlot(target)].increment();
+    }
+
+    public void recordExecution(RouteTarget target, long nanos) {
+        int db = dbSlot(target);
+        executionCounts[db].increment();
+        executionNanos[db].add(nanos);
+    }
+
+    public void recordStatement(RouteTarget target) {
+        statementCounts[tableSlot(target)].increment();
+    }
+
+    public void recordRewrite(long nanos) {
+        rewriteCount.increment();
+        rewriteNanos.add(nanos);
+    }
+
+    public void recordCheckout(RouteTarget target, long nanos) {
+        int db = dbSlot(target);
+        checkoutCounts[db].increment();
+        checkoutNanos[db].add(nanos);
+    }
+
+    public int getDbCount() {
+        return dbCount;
+    }
+
+    public int getTbCount() {
+        return tbCount;
+    }
+
+    public long getRouteCount(int dbIdx, int tbIdx) {
+        return routeCounts[dbIdx * tbCount + tbIdx].sum();
+    }
+
+    public long getStatementCount(int dbIdx, int tbIdx) {
+        return statementCounts[dbIdx * tbCount + tbIdx].sum();
+    }
+
+    public long getExecutionCount(int dbIdx) {
+        return executionCounts[dbIdx].sum();
+    }
+
+    public long getExecutionNanos(int dbIdx) {
+        return executionNanos[dbIdx].sum();
+    }
+
+    public long getCheckoutCount(int dbIdx) {
+        return checkoutCounts[dbIdx].sum();
+    }
+
+    public long getCheckoutNanos(int dbIdx) {
+        return checkoutNanos[dbIdx].sum();
+    }
+
+    public long getRoutingCount() {
+        return routingCount.sum();
+    }
+
+    public long getRoutingNanos() {
+        return routingNanos.sum();
+    }
+
+    public long getRewriteCount() {
+        return rewriteCount.sum();
+    }
+
+    public long getRewriteNanos() {
+        return rewriteNanos.sum();
+    }
+
+    /**
+     * 分库倾斜度：路由次数最多的库 / 各库平均值，1 表示完全均匀；没有流量时为 0
+     */
+    public double getDbSkew() {
+        long[] counts = new long[dbCount];
+        for (int db = 1; db <= dbCount; db++) {
+            for (int tb = 0; tb < tbCount; tb++) {
+                counts[db - 1] += getRouteCount(db, tb);
+            }
+        }
+        return skew(counts);
+    }
+
+    /**
+     * 分表倾斜度：路由次数最多的库表 / 全部库表平均值
+     */
+    public double getTableSkew() {
+        long[] counts = new long[dbCount * tbCount];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = routeCounts[tbCount + i].sum();
+        }
+        return skew(counts);
+    }
+
+    private static double skew(long[] counts) {
+        long max = 0;
+        long total = 0;
+        for (long count : counts) {
+            max = Math.max(max, count);
+            total += count;
+        }
+        return total == 0 ? 0 : (double) max * counts.length / total;
+    }
+
+    private int dbSlot(RouteTarget target) {
+        if (null == target) {
+            return 0;
+        }
+        int db = target.getDbIdx();
+        return db >= 1 && db <= dbCount ? db : 0;
+    }
+
+    private int tableSlot(RouteTarget target) {
+        int tb = null == target ? 0 : target.getTbIdx();
+        return dbSlot(target) * tbCount + (tb >= 0 && tb < tbCount ? tb : 0);
+    }
+
+    private static LongAdder[] adders(int size) {
+        LongAdder[] adders = new LongAdder[size];
+        for (int i = 0; i < size; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+}
@@ -0,0 +1,253 @@
+package fun.wswj.middleware.db.router.reshard;
+
+import fun.wswj.middleware.db.router.DBContextHolder;
+import fun.wswj.middleware.db.router.RouteTarget;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.executor.keygen.KeyGenerator;
+import org.apache.ibatis.executor.keygen.NoKeyGenerator;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.SqlSource;
+import org.apache.ibatis.reflection.property.PropertyTokenizer;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.transaction.jdbc.JdbcTransaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ *  Mybatis 拦截器，扩缩容双写阶段把写入语句再执行一次到新位置。
+ *  新位置使用独立连接自动提交；处于事务中时在事务提交后执行，回滚则不同步。双写失败默认只记录日志与计数，由迁移任务重新复制兜底。
+ *  带主键生成的语句在新位置不再生成主键，而是写入原位置生成的主键；只支持单行 INSERT ... VALUES，多行插入视为双写失败。
+ */
+@Intercepts({@Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class})})
+public class DualWritePlugin implements Interceptor {
+
+    private final Logger logger = LoggerFactory.getLogger(DualWritePlugin.class);
+
+    /**
+     * 双写失败时是否抛出异常
+     */
+    private final boolean failOnShadowError;
+
+    private static final Pattern INSERT_VALUES = Pattern.compile("^(\\s*INSERT\\s+(?:IGNORE\\s+)?INTO\\s+[^\\s(]+\\s*\\()([^)]*\\)\\s*VALUES\\s*\\()",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    /**
+     * 去掉主键生成后的 MappedStatement，按原 MappedStatement 缓存
+     */
+    private final Map<MappedStatement, MappedStatement> shadowStatements = new ConcurrentHashMap<>();
+
+    private final LongAdder shadowWrites = new LongAdder();
+
+    private final LongAdder shadowFailures = new LongAdder();
+
+    public DualWritePlugin() {
+        this(false);
+    }
+
+    public DualWritePlugin(boolean failOnShadowError) {
+        this.failOnShadowError = failOnShadowError;
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        Object result = invocation.proceed();
+        RouteTarget shadow = DBContextHolder.getShadowTarget();
+        if (null == shadow) {
+            return result;
+        }
+        MappedStatement mappedStatement = (MappedStatement) invocation.getArgs()[0];
+        Object parameter = invocation.getArgs()[1];
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    shadowWrite(mappedStatement, parameter, shadow, false);
+                }
+            });
+        } else {
+            shadowWrite(mappedStatement, parameter, shadow, failOnShadowError);
+        }
+        return result;
+    }
+
+    /**
+     * 临时切换路由到新位置执行同一语句，完成后恢复原路由
+     */
+    private void shadowWrite(MappedStatement mappedStatement, Object parameter, RouteTarget shadow, boolean rethrow) {
+        RouteTarget route = DBContextHolder.getRouteTarget();
+        RouteTarget previousShadow = DBContextHolder.getShadowTarget();
+        DBContextHolder.setShadowTarget(null);
+        DBContextHolder.setRouteTarget(shadow);
+        Configuration configuration = mappedStatement.getConfiguration();
+        try (Connection connection = configuration.getEnvironment().getDataSource().getConnection()) {
+            connection.setAutoCommit(true);
+            Executor executor = configuration.newExecutor(new JdbcTransaction(connection), ExecutorType.SIMPLE);
+            try {
+                executor.update(shadowStatement(mappedStatement), parameter);
+            } finally {
+                executor.close(false);
+            }
+            shadowWrites.increment();
+        } catch (Exception e) {
+            shadowFailures.increment();
+            logger.error("db-router 扩缩容双写失败 statement：{} 新位置：{}", mappedStatement.getId(), shadow, e);
+            if (rethrow) {
+                throw new IllegalStateException("dual write to " + shadow + " failed: " + mappedStatement.getId(), e);
+            }
+        } finally {
+            DBContextHolder.setRouteTarget(route);
+            DBContextHolder.setShadowTarget(previousShadow);
+        }
+    }
+
+    /**
+     * 新位置重放时去掉主键生成，否则新位置生成的主键会覆盖实体上原位置的主键，两边数据的主键也不一致
+     */
+    private MappedStatement shadowStatement(MappedStatement mappedStatement) {
+        KeyGenerator keyGenerator = mappedStatement.getKeyGenerator();
+        if (null == keyGenerator || keyGenerator instanceof NoKeyGenerator) {
+            return mappedStatement;
+        }
+        return shadowStatements.computeIfAbsent(mappedStatement, DualWritePlugin::withoutKeyGenerator);
+    }
+
+    private static MappedStatement withoutKeyGenerator(MappedStatement ms) {
+        String[] keyProperties = ms.getKeyProperties();
+        SqlSource sqlSource = null == keyProperties ? ms.getSqlSource() : new KeyBindingSqlSource(ms, keyProperties);
+        return new MappedStatement.Builder(ms.getConfiguration(), ms.getId(), sqlSource, ms.getSqlCommandType())
+                .resource(ms.getResource())
+                .fetchSize(ms.getFetchSize())
+                .timeout(ms.getTimeout())
+                .statementType(ms.getStatementType())
+                .resultSetType(ms.getResultSetType())
+                .parameterMap(ms.getParameterMap())
+                .resultMaps(ms.getResultMaps())
+                .cache(ms.getCache())
+                .flushCacheRequired(ms.isFlushCacheRequired())
+                .useCache(ms.isUseCache())
+                .resultOrdered(ms.isResultOrdered())
+                .databaseId(ms.getDatabaseId())
+                .lang(ms.getLang())
+                .keyGenerator(NoKeyGenerator.INSTANCE)
+                .build();
+    }
+
+    /**
+     * SQL 未绑定主键属性时（自增主键、AFTER 的 selectKey），在列清单与 VALUES 开头补上主键列，值取原位置生成后回填到参数上的主键
+     */
+    private static final class KeyBindingSqlSource implements SqlSource {
+
+        private final MappedStatement mappedStatement;
+
+        private final String[] keyProperties;
+
+        private final String[] keyColumns;
+
+        KeyBindingSqlSource(MappedStatement mappedStatement, String[] keyProperties) {
+            this.mappedStatement = mappedStatement;
+            this.keyProperties = keyProperties;
+            String[] columns = mappedStatement.getKeyColumns();
+            this.keyColumns = null != columns && columns.length == keyProperties.length ? columns : null;
+        }
+
+        @Override
+        public BoundSql getBoundSql(Object parameterObject) {
+            BoundSql boundSql = mappedStatement.getSqlSource().getBoundSql(parameterObject);
+            List<String> bound = new ArrayList<>();
+            for (ParameterMapping mapping : boundSql.getParameterMappings()) {
+                bound.add(mapping.getProperty());
+            }
+            Configuration configuration = mappedStatement.getConfiguration();
+            List<String> columns = new ArrayList<>();
+            List<ParameterMapping> mappings = new ArrayList<>();
+            for (int i = 0; i < keyProperties.length; i++) {
+                String property = keyProperties[i];
+                if (bound.contains(property)) {
+                    continue;
+                }
+                if (null == parameterObject || null == configuration.newMetaObject(parameterObject).getValue(property)) {
+                    throw new IllegalStateException("primary key " + property + " is not generated: " + mappedStatement.getId());
+                }
+                columns.add(null == keyColumns ? property.substring(property.lastIndexOf('.') + 1) : keyColumns[i]);
+                mappings.add(new ParameterMapping.Builder(configuration, property, Object.class).build());
+            }
+            if (columns.isEmpty()) {
+                return boundSql;
+            }
+            mappings.addAll(boundSql.getParameterMappings());
+            BoundSql keyBound = new BoundSql(configuration, bindKeys(boundSql.getSql(), columns), mappings, parameterObject);
+            for (ParameterMapping mapping : boundSql.getParameterMappings()) {
+                String name = new PropertyTokenizer(mapping.getProperty()).getName();
+                if (boundSql.hasAdditionalParameter(name)) {
+                    keyBound.setAdditionalParameter(name, boundSql.getAdditionalParameter(name));
+                }
+            }
+            return keyBound;
+        }
+
+        private String bindKeys(String sql, List<String> columns) {
+            Matcher matcher = INSERT_VALUES.matcher(sql);
+            if (!matcher.lookingAt() || !singleRow(sql, matcher.end())) {
+                throw new IllegalStateException("dual write with generated keys only supports single row INSERT ... VALUES: " + mappedStatement.getId());
+            }
+            StringBuilder rewritten = new StringBuilder(sql.length() + columns.size() * 32)
+                    .append(matcher.group(1)).append(String.join(", ", columns)).append(", ").append(matcher.group(2));
+            for (int i = 0; i < columns.size(); i++) {
+                rewritten.append("?, ");
+            }
+            return rewritten.append(sql, matcher.end(), sql.length()).toString();
+        }
+
+        /**
+         * VALUES 后只有一组值
+         */
+        private static boolean singleRow(String sql, int start) {
+            int depth = 1;
+            char quote = 0;
+            for (int i = start; i < sql.length(); i++) {
+                char c = sql.charAt(i);
+                if (0 != quote) {
+                    if (c == quote) {
+                        quote = 0;
+                    }
+                } else if (c == '\'' || c == '"' || c == '`') {
+                    quote = c;
+                } else if (c == '(') {
+                    depth++;
+                } else if (c == ')' && --depth == 0) {
+                    String rest = sql.substring(i + 1).trim();
+                    return !rest.startsWith(",");
+                }
+            }
+            return false;
+        }
+
+    }
+
+    public long getShadowWrites() {
+        return shadowWrites.sum();
+    }
+
+    public long getShadowFailures() {
+        return shadowFailures.sum();
+    }
+
+}
@@ -0,0 +1,63 @@
+package fun.wswj.middleware.db.router.reshard;
+
+import fun.wswj.middleware.db.router.RouteTarget;
+
+/**
+ *  扩缩容时归属发生变化的一段哈希环区间 (start, end]，哈希为无符号 32 位
+ */
+public final class MovedRange {
+
+    /**
+     * 区间起点（不含），-1 表示从 0 开始
+     */
+    private final long start;
+
+    /**
+     * 区间终点（含）
+     */
+    private final long end;
+
+    private final RouteTarget from;
+
+    private final RouteTarget to;
+
+    MovedRange(long start, long end, RouteTarget from, RouteTarget to) {
+        this.start = start;
+        this.end = end;
+        this.from = from;
+        this.to = to;
+    }
+
+    public boolean contains(long hash) {
+        return hash > start && hash <= end;
+    }
+
+    /**
+     * 区间占整个哈希环的比例
+     */
+    public double getShare() {
+        return (end - start) / (double) (1L << 32);
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    public RouteTarget getFrom() {
+        return from;
+    }
+
+    public RouteTarget getTo() {
+        return to;
+    }
+
+    @Override
+    public String toString() {
+        return "MovedRange{(" + start + ", " + end + "] " + from + " -> " + to + "}";
+    }
+
+}
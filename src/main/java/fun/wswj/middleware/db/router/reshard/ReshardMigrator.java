@@ -0,0 +1,290 @@
+package fun.wswj.middleware.db.router.reshard;
+
+import com.google.common.util.concurrent.RateLimiter;
+import fun.wswj.middleware.db.router.RouteTarget;
+import fun.wswj.middleware.db.router.strategy.impl.DBRouterStrategyConsistentHash;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+/**
+ *  按扩缩容计划复制一张逻辑表的数据：逐个扫描有数据迁出的分表，按主键分批读取，路由键落在迁移区间内的行写入新分片。
+ *  <ul>
+ *      <li>限速：按每秒扫描行数限流，避免影响线上延迟；</li>
+ *      <li>断点续传：每批完成后把主键位置写入 checkpoint 文件，重启后从上次位置继续；</li>
+ *      <li>幂等：默认以 INSERT IGNORE INTO 写入，新分片已有的行保持不变，双写期间可重复执行，不会用复制读到的旧值覆盖双写写入的新值，
+ *      也不会重新写入已被双写删除的行；复制读取与写入之间发生的双写更新仍可能丢失，切换前需按业务比对。</li>
+ *  </ul>
+ *  只复制不删除，切换完成后由业务自行清理旧分片数据。主键需为整数且单调可比较。
+ */
+public class ReshardMigrator {
+
+    private final Logger logger = LoggerFactory.getLogger(ReshardMigrator.class);
+
+    private static final String DONE = "done";
+
+    private final ReshardPlan plan;
+
+    /**
+     * 库下标 -> 该库的数据源，需包含新增的库
+     */
+    private final IntFunction<DataSource> shards;
+
+    private final String table;
+
+    private final String keyColumn;
+
+    private final String idColumn;
+
+    private int batchSize = 500;
+
+    private double rowsPerSecond = 1000;
+
+    private String insertVerb = "INSERT IGNORE INTO";
+
+    private Path checkpointFile;
+
+    private final Properties checkpoint = new Properties();
+
+    private final AtomicLong scannedRows = new AtomicLong();
+
+    private final AtomicLong copiedRows = new AtomicLong();
+
+    private volatile boolean stopped;
+
+    /**
+     * @param plan      扩缩容计划
+     * @param shards    库下标 -> 数据源
+     * @param table     逻辑表名，物理表为 表名_XXX
+     * @param keyColumn 路由字段对应的列
+     * @param idColumn  整数主键列，用于分批扫描与断点续传
+     */
+    public ReshardMigrator(ReshardPlan plan, IntFunction<DataSource> shards, String table, String keyColumn, String idColumn) {
+        this.plan = plan;
+        this.shards = shards;
+        this.table = table;
+        this.keyColumn = keyColumn;
+        this.idColumn = idColumn;
+    }
+
+    /**
+     * 在后台线程执行复制
+     */
+    public CompletableFuture<Void> start() {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        Thread thread = new Thread(() -> {
+            try {
+                run();
+                future.complete(null);
+            } catch (Throwable e) {
+                logger.error("db-router 数据迁移失败 table：{}", table, e);
+                future.completeExceptionally(e);
+            }
+        }, "db-router-reshard-" + table);
+        thread.setDaemon(true);
+        thread.start();
+        return future;
+    }
+
+    /**
+     * 在当前线程执行复制，已完成的分表跳过
+     */
+    public void run() throws SQLException {
+        stopped = false;
+        loadCheckpoint();
+        RateLimiter limiter = rowsPerSecond > 0 ? RateLimiter.create(rowsPerSecond) : null;
+        for (RouteTarget source : plan.getOutgoingShares().keySet()) {
+            String task = table + source.getTableSuffix() + "@" + source.getLookupKey();
+            String position = checkpoint.getProperty(task);
+            if (DONE.equals(position)) {
+                continue;
+            }
+            long lastId = null == position ? Long.MIN_VALUE : Long.parseLong(position);
+            logger.info("db-router 数据迁移开始 分表：{} 起始主键：{}", task, null == position ? "-" : position);
+            while (!stopped) {
+                List<Object[]> rows = new ArrayList<>(batchSize);
+                String[] columns = select(source, lastId, rows);
+                if (rows.isEmpty()) {
+                    checkpoint.setProperty(task, DONE);
+                    saveCheckpoint();
+                    logger.info("db-router 数据迁移完成 分表：{}", task);
+                    break;
+                }
+                if (null != limiter) {
+                    limiter.acquire(rows.size());
+                }
+                copy(columns, rows);
+                lastId = ((Number) rows.get(rows.size() - 1)[idIndex(columns)]).longValue();
+                scannedRows.addAndGet(rows.size());
+                checkpoint.setProperty(task, Long.toString(lastId));
+                saveCheckpoint();
+            }
+            if (stopped) {
+                logger.info("db-router 数据迁移暂停 分表：{} 主键：{}", task, lastId);
+                return;
+            }
+        }
+    }
+
+    /**
+     * 暂停复制，当前批次完成后退出，再次执行时从断点继续
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    private String[] select(RouteTarget source, long lastId, List<Object[]> rows) throws SQLException {
+        String sql = "SELECT * FROM " + table + source.getTableSuffix() + " WHERE " + idColumn + " > ? ORDER BY " + idColumn + " LIMIT ?";
+        try (Connection connection = shards.apply(source.getDbIdx()).getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setLong(1, lastId);
+            statement.setInt(2, batchSize);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                ResultSetMetaData metaData = resultSet.getMetaData();
+                String[] columns = new String[metaData.getColumnCount()];
+                for (int i = 0; i < columns.length; i++) {
+                    columns[i] = metaData.getColumnLabel(i + 1);
+                }
+                while (resultSet.next()) {
+                    Object[] row = new Object[columns.length];
+                    for (int i = 0; i < columns.length; i++) {
+                        row[i] = resultSet.getObject(i + 1);
+                    }
+                    rows.add(row);
+                }
+                return columns;
+            }
+        }
+    }
+
+    private void copy(String[] columns, List<Object[]> rows) throws SQLException {
+        int keyIndex = indexOf(columns, keyColumn);
+        Map<RouteTarget, List<Object[]>> moved = new LinkedHashMap<>();
+        for (Object[] row : rows) {
+            Object key = row[keyIndex];
+            MovedRange range = null == key ? null : plan.find(DBRouterStrategyConsistentHash.hash(key.toString()));
+            if (null != range) {
+                moved.computeIfAbsent(range.getTo(), k -> new ArrayList<>()).add(row);
+            }
+        }
+        for (Map.Entry<RouteTarget, List<Object[]>> entry : moved.entrySet()) {
+            insert(entry.getKey(), columns, entry.getValue());
+            copiedRows.addAndGet(entry.getValue().size());
+        }
+    }
+
+    private void insert(RouteTarget target, String[] columns, List<Object[]> rows) throws SQLException {
+        StringBuilder sql = new StringBuilder(insertVerb).append(' ').append(table).append(target.getTableSuffix()).append(" (");
+        StringBuilder values = new StringBuilder();
+        for (int i = 0; i < columns.length; i++) {
+            sql.append(i == 0 ? "" : ", ").append(columns[i]);
+            values.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(") VALUES (").append(values).append(')');
+        try (Connection connection = shards.apply(target.getDbIdx()).getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+            for (Object[] row : rows) {
+                for (int i = 0; i < row.length; i++) {
+                    statement.setObject(i + 1, row[i]);
+                }
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    private int idIndex(String[] columns) {
+        return indexOf(columns, idColumn);
+    }
+
+    private static int indexOf(String[] columns, String column) {
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i].equalsIgnoreCase(column)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("column not found: " + column);
+    }
+
+    private void loadCheckpoint() {
+        checkpoint.clear();
+        if (null == checkpointFile || !Files.exists(checkpointFile)) {
+            return;
+        }
+        try (InputStream in = Files.newInputStream(checkpointFile)) {
+            checkpoint.load(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException("load reshard checkpoint failed: " + checkpointFile, e);
+        }
+    }
+
+    private void saveCheckpoint() {
+        if (null == checkpointFile) {
+            return;
+        }
+        try {
+            Path tmp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                checkpoint.store(out, "db-router reshard " + table);
+            }
+            Files.move(tmp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("save reshard checkpoint failed: " + checkpointFile, e);
+        }
+    }
+
+    public long getScannedRows() {
+        return scannedRows.get();
+    }
+
+    public long getCopiedRows() {
+        return copiedRows.get();
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param rowsPerSecond 每秒扫描行数上限，小于等于 0 不限速
+     */
+    public void setRowsPerSecond(double rowsPerSecond) {
+        this.rowsPerSecond = rowsPerSecond;
+    }
+
+    /**
+     * @param insertVerb 写入语句，默认 INSERT IGNORE INTO；REPLACE INTO 会覆盖双写的新数据，只应在停止双写后使用
+     */
+    public void setInsertVerb(String insertVerb) {
+        this.insertVerb = insertVerb;
+    }
+
+    /**
+     * @param checkpointFile 断点文件，为空时不保存断点
+     */
+    public void setCheckpointFile(Path checkpointFile) {
+        this.checkpointFile = checkpointFile;
+    }
+
+}
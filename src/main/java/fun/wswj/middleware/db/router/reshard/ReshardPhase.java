@@ -0,0 +1,18 @@
+package fun.wswj.middleware.db.router.reshard;
+
+/**
+ *  扩缩容阶段
+ */
+public enum ReshardPhase {
+
+    /**
+     * 读写按旧配置路由，写入同时同步到新位置
+     */
+    DUAL_WRITE,
+
+    /**
+     * 已切换，读写全部按新配置路由
+     */
+    CUTOVER
+
+}
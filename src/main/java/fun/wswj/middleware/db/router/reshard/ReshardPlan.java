@@ -0,0 +1,94 @@
+package fun.wswj.middleware.db.router.reshard;
+
+import fun.wswj.middleware.db.router.DBRouterConfig;
+import fun.wswj.middleware.db.router.RouteTarget;
+import fun.wswj.middleware.db.router.strategy.impl.DBRouterStrategyConsistentHash;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ *  扩缩容计划：新旧哈希环对比得出的全部迁移区间，按区间起点升序
+ */
+public class ReshardPlan {
+
+    private final DBRouterConfig source;
+
+    private final DBRouterConfig target;
+
+    private final List<MovedRange> ranges;
+
+    ReshardPlan(DBRouterConfig source, DBRouterConfig target, List<MovedRange> ranges) {
+        this.source = source;
+        this.target = target;
+        this.ranges = Collections.unmodifiableList(ranges);
+    }
+
+    /**
+     * @param hash 无符号 32 位哈希
+     * @return 哈希所在的迁移区间，不需要迁移时返回 null
+     */
+    public MovedRange find(long hash) {
+        int low = 0;
+        int high = ranges.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            MovedRange range = ranges.get(mid);
+            if (hash <= range.getStart()) {
+                high = mid - 1;
+            } else if (hash > range.getEnd()) {
+                low = mid + 1;
+            } else {
+                return range;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param key 路由键
+     * @return 路由键的迁移目标，不需要迁移时返回 null
+     */
+    public RouteTarget moveTarget(String key) {
+        MovedRange range = find(DBRouterStrategyConsistentHash.hash(key));
+        return null == range ? null : range.getTo();
+    }
+
+    /**
+     * 需要迁移的数据占比
+     */
+    public double getMovedShare() {
+        double share = 0;
+        for (MovedRange range : ranges) {
+            share += range.getShare();
+        }
+        return share;
+    }
+
+    /**
+     * 有数据迁出的分片及其迁出占比，按库表顺序
+     */
+    public Map<RouteTarget, Double> getOutgoingShares() {
+        Map<RouteTarget, Double> shares = new TreeMap<>((a, b) -> a.getDbIdx() != b.getDbIdx() ? Integer.compare(a.getDbIdx(), b.getDbIdx()) : Integer.compare(a.getTbIdx(), b.getTbIdx()));
+        for (MovedRange range : ranges) {
+            shares.merge(range.getFrom(), range.getShare(), Double::sum);
+        }
+        return new LinkedHashMap<>(shares);
+    }
+
+    public List<MovedRange> getRanges() {
+        return ranges;
+    }
+
+    public DBRouterConfig getSource() {
+        return source;
+    }
+
+    public DBRouterConfig getTarget() {
+        return target;
+    }
+
+}
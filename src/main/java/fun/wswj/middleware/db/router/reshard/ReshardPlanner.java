@@ -0,0 +1,88 @@
+package fun.wswj.middleware.db.router.reshard;
+
+import fun.wswj.middleware.db.router.DBRouterConfig;
+import fun.wswj.middleware.db.router.RouteTarget;
+import fun.wswj.middleware.db.router.strategy.impl.DBRouterStrategyConsistentHash;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *  对比新旧一致性哈希环，计算扩缩容时归属变化的区间。
+ *  新旧两个环的虚拟节点合并后把哈希空间切成若干段，每段在两个环上各自只属于一个分片，归属不同的段即为迁移区间。
+ */
+public class ReshardPlanner {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReshardPlanner.class);
+
+    private static final long MAX_HASH = 0xFFFFFFFFL;
+
+    private ReshardPlanner() {
+    }
+
+    /**
+     * @param source 当前配置
+     * @param target 目标配置，如 dbCount 4 -> 6
+     * @return 迁移计划
+     */
+    public static ReshardPlan plan(DBRouterConfig source, DBRouterConfig target) {
+        check(source);
+        check(target);
+        DBRouterStrategyConsistentHash from = new DBRouterStrategyConsistentHash(source);
+        DBRouterStrategyConsistentHash to = new DBRouterStrategyConsistentHash(target);
+        long[] a = from.getRingHashes();
+        long[] b = to.getRingHashes();
+
+        List<MovedRange> ranges = new ArrayList<>();
+        long previous = -1;
+        int i = 0;
+        int j = 0;
+        // 归并两个有序环，最后补上哈希空间终点，使环尾区间不跨越 0
+        while (previous < MAX_HASH) {
+            long point = Math.min(i < a.length ? a[i] : MAX_HASH, j < b.length ? b[j] : MAX_HASH);
+            if (i < a.length && a[i] == point) {
+                i++;
+            }
+            if (j < b.length && b[j] == point) {
+                j++;
+            }
+            if (point == previous) {
+                continue;
+            }
+            RouteTarget oldTarget = from.locateHash(point);
+            RouteTarget newTarget = to.locateHash(point);
+            if (!oldTarget.equals(newTarget)) {
+                MovedRange last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+                if (null != last && last.getEnd() == previous && last.getFrom().equals(oldTarget) && last.getTo().equals(newTarget)) {
+                    ranges.set(ranges.size() - 1, new MovedRange(last.getStart(), point, oldTarget, newTarget));
+                } else {
+                    ranges.add(new MovedRange(previous, point, oldTarget, newTarget));
+                }
+            }
+            previous = point;
+        }
+
+        ReshardPlan plan = new ReshardPlan(source, target, ranges);
+        logger.info("db-router 扩缩容计划 {}x{} -> {}x{} 迁移区间：{} 迁移占比：{}", source.getDbCount(), source.getTbCount(),
+                target.getDbCount(), target.getTbCount(), ranges.size(), String.format("%.2f%%", plan.getMovedShare() * 100));
+        if (logger.isDebugEnabled()) {
+            for (Map.Entry<RouteTarget, Double> entry : plan.getOutgoingShares().entrySet()) {
+                logger.debug("db-router 扩缩容计划 迁出分片：{} 占比：{}", entry.getKey(), String.format("%.4f%%", entry.getValue() * 100));
+            }
+        }
+        return plan;
+    }
+
+    private static void check(DBRouterConfig config) {
+        if (!"consistentHash".equals(config.getRouterType())) {
+            throw new IllegalArgumentException("reshard plan requires routerType consistentHash: " + config.getRouterType());
+        }
+        if (config.isNumericKeyFast()) {
+            throw new IllegalArgumentException("reshard plan requires numericKeyMode compatible");
+        }
+    }
+
+}
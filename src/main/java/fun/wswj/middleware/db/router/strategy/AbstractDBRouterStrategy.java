@@ -0,0 +1,101 @@
+package fun.wswj.middleware.db.router.strategy;
+
+import fun.wswj.middleware.db.router.DBContextHolder;
+import fun.wswj.middleware.db.router.DBRouterConfig;
+import fun.wswj.middleware.db.router.RouteTarget;
+import fun.wswj.middleware.db.router.hotkey.HotKeyDetector;
+
+/**
+ *  路由策略基类，路由结果以 RouteTarget 写入上下文，手动路由与清理逻辑各策略共用
+ */
+public abstract class AbstractDBRouterStrategy implements IDBRouterStrategy {
+
+    protected final DBRouterConfig dbRouterConfig;
+
+    /**
+     * 数值路由键直接做 64 位混淆，否则按十进制字符串的哈希计算
+     */
+    protected final boolean numericKeyFast;
+
+    /**
+     * 热点路由键检测，未开启时为空
+     */
+    private volatile HotKeyDetector hotKeyDetector;
+
+    protected AbstractDBRouterStrategy(DBRouterConfig dbRouterConfig) {
+        this.dbRouterConfig = dbRouterConfig;
+        this.numericKeyFast = dbRouterConfig.isNumericKeyFast();
+    }
+
+    public void setHotKeyDetector(HotKeyDetector hotKeyDetector) {
+        this.hotKeyDetector = hotKeyDetector;
+    }
+
+    public HotKeyDetector getHotKeyDetector() {
+        return hotKeyDetector;
+    }
+
+    /**
+     * 写入路由计算结果，并记录路由键
+     *
+     * @param dbKeyAttr 路由字段
+     * @param target    路由结果
+     */
+    protected void route(String dbKeyAttr, RouteTarget target) {
+        DBContextHolder.setRouteTarget(target);
+        HotKeyDetector detector = hotKeyDetector;
+        if (null != detector) {
+            detector.record(dbKeyAttr, target);
+        }
+    }
+
+    /**
+     * 写入数值路由键的计算结果，并记录路由键
+     *
+     * @param dbKeyAttr 路由字段
+     * @param target    路由结果
+     */
+    protected void route(long dbKeyAttr, RouteTarget target) {
+        DBContextHolder.setRouteTarget(target);
+        HotKeyDetector detector = hotKeyDetector;
+        if (null != detector) {
+            detector.record(dbKeyAttr, target);
+        }
+    }
+
+    /**
+     * 写入路由结果
+     *
+     * @param dbIdx 库下标，从 1 开始
+     * @param tbIdx 表下标，从 0 开始
+     */
+    protected void route(int dbIdx, int tbIdx) {
+        DBContextHolder.setRouteTarget(RouteTarget.of(dbIdx, tbIdx));
+    }
+
+    @Override
+    public void setDBKey(int dbIdx) {
+        DBContextHolder.setDBIdx(dbIdx);
+    }
+
+    @Override
+    public void setTBKey(int tbIdx) {
+        DBContextHolder.setTBIdx(tbIdx);
+    }
+
+    @Override
+    public int dbCount() {
+        return dbRouterConfig.getDbCount();
+    }
+
+    @Override
+    public int tbCount() {
+        return dbRouterConfig.getTbCount();
+    }
+
+    @Override
+    public void clear(){
+        DBContextHolder.clearRouteTarget();
+    }
+
+}
@@ -1,5 +1,11 @@
 package fun.wswj.middleware.db.router.strategy;
 
+import fun.wswj.middleware.db.router.DBContextHolder;
+import fun.wswj.middleware.db.router.RouteTarget;
+
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  *  路由策略
  */
@@ -12,6 +18,53 @@ public interface IDBRouterStrategy {
      */
     void doRouter(String dbKeyAttr);
 
+    /**
+     * 数值路由键的路由计算，默认转成字符串路由；内置策略按 numericKeyMode 直接计算，不生成字符串
+     *
+     * @param dbKeyAttr 路由字段
+     */
+    default void doRouter(long dbKeyAttr) {
+        doRouter(Long.toString(dbKeyAttr));
+    }
+
+    /**
+     * 数值路由键的路由计算，与 doRouter((long) dbKeyAttr) 相同
+     *
+     * @param dbKeyAttr 路由字段
+     */
+    default void doRouter(int dbKeyAttr) {
+        doRouter((long) dbKeyAttr);
+    }
+
+    /**
+     * 只计算路由键所属库表，不写入路由上下文、不记录热点；内置策略直接计算，
+     * 默认实现借用 doRouter 并恢复当前线程的路由与影子路由
+     *
+     * @param dbKeyAttr 路由字段
+     * @return 路由结果
+     */
+    default RouteTarget locate(String dbKeyAttr) {
+        RouteTarget route = DBContextHolder.getRouteTarget();
+        RouteTarget shadow = DBContextHolder.getShadowTarget();
+        try {
+            doRouter(dbKeyAttr);
+            return DBContextHolder.getRouteTarget();
+        } finally {
+            DBContextHolder.setRouteTarget(route);
+            DBContextHolder.setShadowTarget(shadow);
+        }
+    }
+
+    /**
+     * 数值路由键的 locate，默认转成字符串计算
+     *
+     * @param dbKeyAttr 路由字段
+     * @return 路由结果
+     */
+    default RouteTarget locate(long dbKeyAttr) {
+        return locate(Long.toString(dbKeyAttr));
+    }
+
     /**
      * 手动设置分库路由
      *
@@ -45,4 +98,19 @@ public interface IDBRouterStrategy {
      */
     void clear();
 
+    /**
+     * 获取全部库表路由，库下标从 1 开始，表下标从 0 开始
+     *
+     * @return 路由集合
+     */
+    default List<RouteTarget> routeTargets() {
+        List<RouteTarget> targets = new ArrayList<>(dbCount() * tbCount());
+        for (int dbIdx = 1; dbIdx <= dbCount(); dbIdx++) {
+            for (int tbIdx = 0; tbIdx < tbCount(); tbIdx++) {
+                targets.add(RouteTarget.of(dbIdx, tbIdx));
+            }
+        }
+        return targets;
+    }
+
 }
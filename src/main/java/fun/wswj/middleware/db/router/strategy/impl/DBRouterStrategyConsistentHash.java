@@ -1,77 +1,252 @@
 package fun.wswj.middleware.db.router.strategy.impl;
 
 import com.google.common.hash.Hashing;
-import fun.wswj.middleware.db.router.DBContextHolder;
 import fun.wswj.middleware.db.router.DBRouterConfig;
-import fun.wswj.middleware.db.router.strategy.IDBRouterStrategy;
+import fun.wswj.middleware.db.router.RouteTarget;
+import fun.wswj.middleware.db.router.strategy.AbstractDBRouterStrategy;
+import fun.wswj.middleware.db.router.util.HashUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.stream.IntStream;
 
 /**
  * 一致性哈希路由策略
+ * <p>
+ * 哈希环存放在一个有序 long 数组中，高 32 位为虚拟节点哈希，低 32 位为物理节点编号 (dbIdx - 1) * tbCount + tbIdx，
+ * 每个虚拟节点占 8 字节，查找只需一次二分。
  */
-public class DBRouterStrategyConsistentHash implements IDBRouterStrategy {
+public class DBRouterStrategyConsistentHash extends AbstractDBRouterStrategy {
 
     private final Logger logger = LoggerFactory.getLogger(DBRouterStrategyConsistentHash.class);
 
-    private SortedMap<Long, PhysicalNode> virtualNodes = new TreeMap<>();
-    private final long[] hashRingKeys; // 用于二分查找的哈希键数组
-    private final DBRouterConfig dbRouterConfig;
+    private static final long LOW_MASK = 0xFFFFFFFFL;
+
+    /**
+     * 哈希环，按 ringKey(hash) | 物理节点编号 升序
+     */
+    private final long[] ring;
+
     /**
-     * 物理节点类，用于存储数据库和数据表索引
+     * 物理节点编号对应的路由结果
      */
-    private static class PhysicalNode {
-        final int dbIdx;
-        final int tbIdx;
+    private final RouteTarget[] targets;
 
-        PhysicalNode(int dbIdx, int tbIdx) {
-            this.dbIdx = dbIdx;
-            this.tbIdx = tbIdx;
+    public DBRouterStrategyConsistentHash(DBRouterConfig dbRouterConfig) {
+        super(dbRouterConfig);
+        int dbCount = dbRouterConfig.getDbCount();
+        int tbCount = dbRouterConfig.getTbCount();
+        this.targets = new RouteTarget[dbCount * tbCount];
+        for (int dbIdx = 1; dbIdx <= dbCount; dbIdx++) {
+            for (int tbIdx = 0; tbIdx < tbCount; tbIdx++) {
+                targets[(dbIdx - 1) * tbCount + tbIdx] = RouteTarget.of(dbIdx, tbIdx);
+            }
         }
+        this.ring = initializeHashRing();
+        reportExpectedShares();
     }
 
-    public DBRouterStrategyConsistentHash(DBRouterConfig dbRouterConfig) {
-        this.dbRouterConfig = dbRouterConfig;
-        this.virtualNodes = initializeHashRing();
-        this.hashRingKeys = virtualNodes.keySet().stream()
-                .mapToLong(Long::longValue)
-                .toArray();
+    private long[] initializeHashRing() {
+        long start = System.nanoTime();
+        int physicalNodeCount = targets.length;
+        int[] offsets = virtualNodeOffsets(calculateVirtualNodeCount(physicalNodeCount));
+
+        // 构建阶段低 32 位为插入序号 offsets[ordinal] + k，与逐个插入 TreeMap 的顺序一致
+        long[] entries = new long[offsets[physicalNodeCount]];
+        IntStream.range(0, physicalNodeCount).parallel().forEach(ordinal -> {
+            StringBuilder name = new StringBuilder(32);
+            for (int seq = offsets[ordinal]; seq < offsets[ordinal + 1]; seq++) {
+                name.setLength(0);
+                entries[seq] = ringKey(consistentHash(virtualNodeName(name, ordinal, seq - offsets[ordinal]))) | seq;
+            }
+        });
+        Arrays.parallelSort(entries);
+        Set<Integer> losers = new HashSet<>();
+        Map<Long, Integer> rehashed = resolveCollisions(entries, offsets, losers);
+
+        // 去掉冲突中落败的节点，补上重新计算的哈希，低 32 位换成物理节点编号
+        long[] ring = new long[entries.length];
+        int size = 0;
+        for (long entry : entries) {
+            int seq = (int) (entry & LOW_MASK);
+            if (losers.isEmpty() || !losers.contains(seq)) {
+                ring[size++] = (entry & ~LOW_MASK) | ordinalOf(offsets, seq);
+            }
+        }
+        for (Map.Entry<Long, Integer> entry : rehashed.entrySet()) {
+            ring[size++] = ringKey(entry.getKey()) | ordinalOf(offsets, entry.getValue());
+        }
+        if (!rehashed.isEmpty()) {
+            Arrays.parallelSort(ring);
+        }
+
+        logger.info("Hash ring initialized. Physical nodes: {}, Virtual nodes: {}, Collisions: {}, Memory: {} KB, Cost: {} ms",
+                physicalNodeCount, ring.length, rehashed.size(), (ring.length * 8L) >> 10, (System.nanoTime() - start) / 1_000_000);
+        return ring;
     }
 
-    private SortedMap<Long, PhysicalNode> initializeHashRing() {
-        int dbCount = dbRouterConfig.getDbCount();
+    /**
+     * 按库、表权重缩放各物理节点的虚拟节点数，权重以最小值为 1 倍，未配置权重时每个节点都是 base 个
+     *
+     * @return 各物理节点虚拟节点插入序号的起点，最后一位为总数
+     */
+    private int[] virtualNodeOffsets(int base) {
         int tbCount = dbRouterConfig.getTbCount();
+        double[] dbScale = scales(dbRouterConfig.getDbWeights(), dbRouterConfig.getDbCount(), "dbWeights");
+        double[] tbScale = scales(dbRouterConfig.getTbWeights(), tbCount, "tbWeights");
+        int[] offsets = new int[targets.length + 1];
+        long total = 0;
+        for (int ordinal = 0; ordinal < targets.length; ordinal++) {
+            offsets[ordinal] = (int) total;
+            total += Math.max(1, Math.round(base * dbScale[ordinal / tbCount] * tbScale[ordinal % tbCount]));
+            if (total > Integer.MAX_VALUE - 8) {
+                throw new IllegalArgumentException("too many virtual nodes, reduce the weight ratio: " + total);
+            }
+        }
+        offsets[targets.length] = (int) total;
+        return offsets;
+    }
 
-        int physicalNodeCount = dbRouterConfig.getDbCount() * dbRouterConfig.getTbCount();
-        int virtualNodeCount = calculateVirtualNodeCount(physicalNodeCount);
+    private static double[] scales(int[] weights, int count, String name) {
+        double[] scales = new double[count];
+        Arrays.fill(scales, 1);
+        if (null == weights) {
+            return scales;
+        }
+        if (weights.length != count) {
+            throw new IllegalArgumentException(name + " size must equal " + count + ": " + weights.length);
+        }
+        int min = Integer.MAX_VALUE;
+        for (int weight : weights) {
+            if (weight <= 0) {
+                throw new IllegalArgumentException(name + " must be positive: " + Arrays.toString(weights));
+            }
+            min = Math.min(min, weight);
+        }
+        for (int i = 0; i < count; i++) {
+            scales[i] = (double) weights[i] / min;
+        }
+        return scales;
+    }
+
+    private static int ordinalOf(int[] offsets, int seq) {
+        int pos = Arrays.binarySearch(offsets, seq);
+        return pos >= 0 ? pos : -pos - 2;
+    }
 
-        SortedMap<Long, PhysicalNode> ring = new TreeMap<>();
+    /**
+     * 按哈希环上各物理节点覆盖的区间长度计算预期的路由键占比，下标为物理节点编号 (dbIdx - 1) * tbCount + tbIdx
+     */
+    public double[] getExpectedShares() {
+        double[] shares = new double[targets.length];
+        for (int i = 0; i < ring.length; i++) {
+            // 区间 (前一个节点, 当前节点] 归当前节点，第一个节点还包含环尾；有符号右移保持顺序
+            long from = 0 == i ? (ring[ring.length - 1] >> 32) - (1L << 32) : ring[i - 1] >> 32;
+            shares[(int) (ring[i] & LOW_MASK)] += ((ring[i] >> 32) - from) / (double) (1L << 32);
+        }
+        return shares;
+    }
+
+    private void reportExpectedShares() {
+        int dbCount = dbRouterConfig.getDbCount();
+        int tbCount = dbRouterConfig.getTbCount();
+        double[] shares = getExpectedShares();
         for (int dbIdx = 1; dbIdx <= dbCount; dbIdx++) {
+            double dbShare = 0;
+            double tbMin = 1;
+            double tbMax = 0;
             for (int tbIdx = 0; tbIdx < tbCount; tbIdx++) {
-                String physicalNodeName = String.format("%02d_%03d", dbIdx, tbIdx);
-                PhysicalNode node = new PhysicalNode(dbIdx, tbIdx);
-
-                for (int k = 0; k < virtualNodeCount; k++) {
-                    String virtualNodeName = physicalNodeName + "_VN" + k;
-                    long hash = consistentHash(virtualNodeName);
-                    // 处理极小概率的哈希冲突,添加冲突解决后缀
-                    while (ring.containsKey(hash)) {
-                        virtualNodeName += "'";
-                        hash = consistentHash(virtualNodeName);
-                    }
-                    ring.put(hash, node);
+                double share = shares[(dbIdx - 1) * tbCount + tbIdx];
+                dbShare += share;
+                tbMin = Math.min(tbMin, share);
+                tbMax = Math.max(tbMax, share);
+            }
+            logger.info("Hash ring expected share. DB: {}, Share: {}, Table min: {}, Table max: {}",
+                    String.format("%02d", dbIdx), percent(dbShare), percent(tbMin), percent(tbMax));
+        }
+    }
+
+    private static String percent(double share) {
+        return String.format("%.2f%%", share * 100);
+    }
+
+    /**
+     * 处理极小概率的哈希冲突：按插入顺序先到先得，后到的虚拟节点名追加后缀 ' 重新计算，结果与逐个插入 TreeMap 相同。
+     *
+     * @param losers 输出原始哈希被占用的插入序号
+     * @return 重新计算后的哈希 -> 插入序号
+     */
+    private Map<Long, Integer> resolveCollisions(long[] entries, int[] offsets, Set<Integer> losers) {
+        Map<Long, Integer> rehashed = new HashMap<>();
+        PriorityQueue<Integer> pending = new PriorityQueue<>();
+        for (int i = 1; i < entries.length; i++) {
+            if (entries[i] >>> 32 == entries[i - 1] >>> 32) {
+                pending.add((int) (entries[i] & LOW_MASK));
+            }
+        }
+        if (pending.isEmpty()) {
+            return rehashed;
+        }
+        // 原本先到、却被更早节点的重算哈希占用的节点
+        Set<Integer> displaced = new HashSet<>();
+        losers.addAll(pending);
+        while (!pending.isEmpty()) {
+            int seq = pending.poll();
+            int ordinal = ordinalOf(offsets, seq);
+            StringBuilder name = virtualNodeName(new StringBuilder(32), ordinal, seq - offsets[ordinal]);
+            while (true) {
+                long hash = consistentHash(name.append('\''));
+                if (rehashed.containsKey(hash)) {
+                    continue;
                 }
+                int owner = firstOwner(entries, hash);
+                if (owner >= 0 && owner < seq && !displaced.contains(owner)) {
+                    continue;
+                }
+                if (owner > seq && displaced.add(owner)) {
+                    pending.add(owner);
+                }
+                rehashed.put(hash, seq);
+                break;
             }
         }
-        logger.info("Hash ring initialized. Physical nodes: {}, Virtual nodes: {}", physicalNodeCount, ring.size());
-        // 返回不可变视图（线程安全）
-        return Collections.unmodifiableSortedMap(ring);
+        losers.addAll(displaced);
+        return rehashed;
+    }
+
+    /**
+     * @return 原始哈希等于 hash 的最早插入序号，不存在时返回 -1
+     */
+    private static int firstOwner(long[] entries, long hash) {
+        int pos = lowerBound(entries, ringKey(hash));
+        if (pos < entries.length && entries[pos] >>> 32 == (ringKey(hash) >>> 32)) {
+            return (int) (entries[pos] & LOW_MASK);
+        }
+        return -1;
+    }
+
+    private StringBuilder virtualNodeName(StringBuilder name, int ordinal, int k) {
+        int tbCount = dbRouterConfig.getTbCount();
+        int dbIdx = ordinal / tbCount + 1;
+        int tbIdx = ordinal % tbCount;
+        if (dbIdx < 10) {
+            name.append('0');
+        }
+        name.append(dbIdx).append('_');
+        if (tbIdx < 100) {
+            name.append('0');
+        }
+        if (tbIdx < 10) {
+            name.append('0');
+        }
+        return name.append(tbIdx).append("_VN").append(k);
     }
 
     private int calculateVirtualNodeCount(int physicalNodeCount) {
@@ -80,65 +255,102 @@ public class DBRouterStrategyConsistentHash implements IDBRouterStrategy {
 
     @Override
     public void doRouter(String dbKeyAttr) {
-        if (virtualNodes.isEmpty()) {
-            throw new IllegalStateException("Hash ring not initialized");
+        RouteTarget node = locate(dbKeyAttr);
+
+        route(dbKeyAttr, node);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Routing complete. Key: {}, DB: {}, TB: {}", dbKeyAttr, node.getDbIdx(), node.getTbIdx());
         }
-        long dbKeyHash = consistentHash(dbKeyAttr);
-        // 数组二分查找替代TreeMap.tailMap() 查询性能从 O(log n) 提升至 O(log n) 但常数更低
-        PhysicalNode node = findNodeForHash(dbKeyHash);
+    }
 
-        // physicalNodeName 期望的格式是 "dbXX_tbYYY"，例如 "01_001"
-        DBContextHolder.setDBKey(String.format("%02d", node.dbIdx));
-        DBContextHolder.setTBKey(String.format("%03d", node.tbIdx));
-        logger.debug("Routing complete. Key: {}, DB: {}, TB: {}", dbKeyAttr, node.dbIdx, node.tbIdx);
+    @Override
+    public void doRouter(long dbKeyAttr) {
+        RouteTarget node = locate(dbKeyAttr);
+
+        route(dbKeyAttr, node);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Routing complete. Key: {}, DB: {}, TB: {}", dbKeyAttr, node.getDbIdx(), node.getTbIdx());
+        }
     }
 
-    private PhysicalNode findNodeForHash(long dbKeyHash) {
-        // 处理环尾情况
-        if (dbKeyHash > hashRingKeys[hashRingKeys.length - 1]) {
-            return virtualNodes.get(hashRingKeys[0]);
+    @Override
+    public RouteTarget locate(String dbKeyAttr) {
+        if (ring.length == 0) {
+            throw new IllegalStateException("Hash ring not initialized");
         }
+        return findNodeForHash(consistentHash(dbKeyAttr));
+    }
 
-        // 二分查找第一个 >= hash 的位置
-        int pos = Arrays.binarySearch(hashRingKeys, dbKeyHash);
-        if (pos < 0) {
-            pos = -pos - 1; // 转换为插入点
+    @Override
+    public RouteTarget locate(long dbKeyAttr) {
+        if (ring.length == 0) {
+            throw new IllegalStateException("Hash ring not initialized");
         }
+        return findNodeForHash(numericKeyFast ? HashUtil.mix64(dbKeyAttr) >>> 32 : HashUtil.decimalMurmur3(dbKeyAttr) & 0xFFFFFFFFL);
+    }
 
-        return virtualNodes.get(hashRingKeys[pos]);
+    /**
+     * 路由键哈希对应的库表，不写入路由上下文
+     *
+     * @param hash 无符号 32 位哈希，见 {@link #hash(CharSequence)}
+     */
+    public RouteTarget locateHash(long hash) {
+        return findNodeForHash(hash);
     }
 
-    private long consistentHash(String key) {
-        int hash = Hashing.murmur3_32_fixed()
-                .hashString(key, StandardCharsets.UTF_8)
-                .asInt();
-        return hash & 0xFFFFFFFFL;
+    /**
+     * 哈希环上全部虚拟节点的无符号 32 位哈希，升序
+     */
+    public long[] getRingHashes() {
+        long[] hashes = new long[ring.length];
+        for (int i = 0; i < ring.length; i++) {
+            hashes[i] = (ring[i] >>> 32) ^ 0x80000000L;
+        }
+        return hashes;
     }
 
-    @Override
-    public void setDBKey(int dbIdx) {
-        DBContextHolder.setDBKey(String.format("%02d", dbIdx));
+    /**
+     * 字符串路由键在哈希环上的位置
+     */
+    public static long hash(CharSequence key) {
+        return consistentHash(key);
     }
 
-    @Override
-    public void setTBKey(int tbIdx) {
-        DBContextHolder.setTBKey(String.format("%03d", tbIdx));
+    private RouteTarget findNodeForHash(long dbKeyHash) {
+        // 第一个 >= hash 的虚拟节点，越过环尾回到第一个
+        int pos = lowerBound(ring, ringKey(dbKeyHash));
+        if (pos == ring.length) {
+            pos = 0;
+        }
+        return targets[(int) (ring[pos] & LOW_MASK)];
     }
 
-    @Override
-    public int dbCount() {
-        return dbRouterConfig.getDbCount();
+    /**
+     * 无分支二分查找，返回第一个 >= key 的下标
+     */
+    private static int lowerBound(long[] array, long key) {
+        int base = 0;
+        int len = array.length;
+        while (len > 1) {
+            int half = len >>> 1;
+            base = array[base + half - 1] < key ? base + half : base;
+            len -= half;
+        }
+        return base + (len == 1 && array[base] < key ? 1 : 0);
     }
 
-    @Override
-    public int tbCount() {
-        return dbRouterConfig.getTbCount();
+    /**
+     * 无符号 32 位哈希放到高 32 位，翻转最高位使有符号比较与无符号顺序一致
+     */
+    private static long ringKey(long hash) {
+        return (hash ^ 0x80000000L) << 32;
     }
 
-    @Override
-    public void clear(){
-        DBContextHolder.clearDBKey();
-        DBContextHolder.clearTBKey();
+    private static long consistentHash(CharSequence key) {
+        int hash = Hashing.murmur3_32_fixed()
+                .hashString(key, StandardCharsets.UTF_8)
+                .asInt();
+        return hash & 0xFFFFFFFFL;
     }
 
 }
@@ -0,0 +1,154 @@
+package fun.wswj.middleware.db.router.strategy.impl;
+
+import fun.wswj.middleware.db.router.DBRouterConfig;
+import fun.wswj.middleware.db.router.RouteTarget;
+import fun.wswj.middleware.db.router.directory.RouteDirectory;
+import fun.wswj.middleware.db.router.hotkey.HotKeyDetector;
+import fun.wswj.middleware.db.router.strategy.AbstractDBRouterStrategy;
+import fun.wswj.middleware.db.router.strategy.IDBRouterStrategy;
+import fun.wswj.middleware.db.router.util.HashUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  目录路由：先查路由目录中的覆盖项（大租户独占分片、单个键迁移），未命中再交给被包装的哈希策略。
+ *  目录文件修改后由后台线程按 reloadInterval 检查并重新映射，加载失败时继续使用旧目录。
+ */
+public class DBRouterStrategyDirectory extends AbstractDBRouterStrategy implements Closeable {
+
+    private final Logger logger = LoggerFactory.getLogger(DBRouterStrategyDirectory.class);
+
+    private final IDBRouterStrategy delegate;
+
+    private final Path path;
+
+    private volatile RouteDirectory directory;
+
+    private volatile FileTime loadedModifiedTime;
+
+    private final ScheduledExecutorService watcher;
+
+    /**
+     * @param dbRouterConfig 路由配置
+     * @param delegate       未命中目录时使用的策略
+     * @param path           目录文件，可以暂不存在
+     * @param reloadInterval 检查文件变化的间隔（毫秒），小于等于 0 时不检查
+     */
+    public DBRouterStrategyDirectory(DBRouterConfig dbRouterConfig, IDBRouterStrategy delegate, Path path, long reloadInterval) {
+        super(dbRouterConfig);
+        this.delegate = delegate;
+        this.path = path;
+        reload();
+        if (reloadInterval > 0) {
+            this.watcher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "db-router-directory");
+                thread.setDaemon(true);
+                return thread;
+            });
+            watcher.scheduleWithFixedDelay(this::reload, reloadInterval, reloadInterval, TimeUnit.MILLISECONDS);
+        } else {
+            this.watcher = null;
+        }
+    }
+
+    @Override
+    public void doRouter(String dbKeyAttr) {
+        RouteDirectory current = directory;
+        RouteTarget target = null == current ? null : current.lookup(HashUtil.hash64(dbKeyAttr));
+        if (null == target) {
+            delegate.doRouter(dbKeyAttr);
+            return;
+        }
+        route(dbKeyAttr, target);
+        if (logger.isDebugEnabled()) {
+            logger.debug("目录路由 key：{} dbIdx：{} tbIdx：{}", dbKeyAttr, target.getDbIdx(), target.getTbIdx());
+        }
+    }
+
+    @Override
+    public void doRouter(long dbKeyAttr) {
+        RouteDirectory current = directory;
+        RouteTarget target = null == current ? null : current.lookup(HashUtil.decimalHash64(dbKeyAttr));
+        if (null == target) {
+            delegate.doRouter(dbKeyAttr);
+            return;
+        }
+        route(dbKeyAttr, target);
+        if (logger.isDebugEnabled()) {
+            logger.debug("目录路由 key：{} dbIdx：{} tbIdx：{}", dbKeyAttr, target.getDbIdx(), target.getTbIdx());
+        }
+    }
+
+    @Override
+    public RouteTarget locate(String dbKeyAttr) {
+        RouteDirectory current = directory;
+        RouteTarget target = null == current ? null : current.lookup(HashUtil.hash64(dbKeyAttr));
+        return null == target ? delegate.locate(dbKeyAttr) : target;
+    }
+
+    @Override
+    public RouteTarget locate(long dbKeyAttr) {
+        RouteDirectory current = directory;
+        RouteTarget target = null == current ? null : current.lookup(HashUtil.decimalHash64(dbKeyAttr));
+        return null == target ? delegate.locate(dbKeyAttr) : target;
+    }
+
+    /**
+     * 文件修改时间变化时重新加载目录，返回是否切换到了新目录
+     */
+    public synchronized boolean reload() {
+        try {
+            if (!Files.exists(path)) {
+                return false;
+            }
+            FileTime modifiedTime = Files.getLastModifiedTime(path);
+            if (modifiedTime.equals(loadedModifiedTime)) {
+                return false;
+            }
+            RouteDirectory loaded = RouteDirectory.open(path, dbRouterConfig.getDbCount(), dbRouterConfig.getTbCount());
+            loadedModifiedTime = modifiedTime;
+            RouteDirectory previous = directory;
+            if (null != previous && previous.getVersion() == loaded.getVersion()) {
+                return false;
+            }
+            directory = loaded;
+            logger.info("db-router 路由目录加载完成 file：{} version：{} entries：{}", path, loaded.getVersion(), loaded.size());
+            return true;
+        } catch (Exception e) {
+            logger.error("db-router 路由目录加载失败，继续使用当前目录 file：{}", path, e);
+            return false;
+        }
+    }
+
+    public RouteDirectory getDirectory() {
+        return directory;
+    }
+
+    public IDBRouterStrategy getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public void setHotKeyDetector(HotKeyDetector hotKeyDetector) {
+        super.setHotKeyDetector(hotKeyDetector);
+        if (delegate instanceof AbstractDBRouterStrategy) {
+            ((AbstractDBRouterStrategy) delegate).setHotKeyDetector(hotKeyDetector);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (null != watcher) {
+            watcher.shutdownNow();
+        }
+    }
+
+}
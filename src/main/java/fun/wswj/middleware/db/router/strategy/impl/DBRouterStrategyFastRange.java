@@ -0,0 +1,63 @@
+package fun.wswj.middleware.db.router.strategy.impl;
+
+import fun.wswj.middleware.db.router.DBRouterConfig;
+import fun.wswj.middleware.db.router.RouteTarget;
+import fun.wswj.middleware.db.router.strategy.AbstractDBRouterStrategy;
+import fun.wswj.middleware.db.router.util.HashUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *  哈希路由，库表总数不必是 2 的幂。
+ *  String.hashCode()（字符串内缓存）经 64 位混淆后取高 32 位，乘以库表总数再右移 32 位（Lemire multiply-shift）得到 [0, size) 的下标，
+ *  只有一次乘法和移位，开销与 hashCode 路由相同，任意库表数量都均匀。
+ */
+public class DBRouterStrategyFastRange extends AbstractDBRouterStrategy {
+
+    private final Logger logger = LoggerFactory.getLogger(DBRouterStrategyFastRange.class);
+
+    public DBRouterStrategyFastRange(DBRouterConfig dbRouterConfig) {
+        super(dbRouterConfig);
+    }
+
+    @Override
+    public void doRouter(String dbKeyAttr) {
+        route(dbKeyAttr, locate(dbKeyAttr));
+    }
+
+    @Override
+    public void doRouter(long dbKeyAttr) {
+        route(dbKeyAttr, locate(dbKeyAttr));
+    }
+
+    @Override
+    public RouteTarget locate(String dbKeyAttr) {
+        return target(HashUtil.mix64(dbKeyAttr.hashCode()));
+    }
+
+    @Override
+    public RouteTarget locate(long dbKeyAttr) {
+        return target(HashUtil.mix64(numericKeyFast ? dbKeyAttr : HashUtil.decimalHashCode(dbKeyAttr)));
+    }
+
+    private RouteTarget target(long hash) {
+        int tbCount = dbRouterConfig.getTbCount();
+        int idx = fastRange(hash, dbRouterConfig.getDbCount() * tbCount);
+        int dbIdx = idx / tbCount + 1;
+        int tbIdx = idx - tbCount * (dbIdx - 1);
+        if (logger.isDebugEnabled()) {
+            logger.debug("数据库路由 idx：{} dbIdx：{} tbIdx：{}", idx, dbIdx, tbIdx);
+        }
+        return RouteTarget.of(dbIdx, tbIdx);
+    }
+
+    /**
+     * @param hash 混淆后的 64 位哈希，只使用高 32 位
+     * @param size 区间大小
+     * @return [0, size) 的下标
+     */
+    public static int fastRange(long hash, int size) {
+        return (int) (((hash >>> 32) * size) >>> 32);
+    }
+
+}
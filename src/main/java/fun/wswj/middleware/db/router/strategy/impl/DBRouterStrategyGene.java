@@ -0,0 +1,65 @@
+package fun.wswj.middleware.db.router.strategy.impl;
+
+import fun.wswj.middleware.db.router.DBRouterConfig;
+import fun.wswj.middleware.db.router.RouteTarget;
+import fun.wswj.middleware.db.router.id.ShardIdGenerator;
+import fun.wswj.middleware.db.router.strategy.AbstractDBRouterStrategy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *  基因路由：路由键是 ShardIdGenerator 生成的 ID，直接取 ID 低位的库表下标，不做哈希。
+ *  用于 @DBRouter(geneKey = true)，按订单号等生成的 ID 查询时与按所属用户路由落到同一分片。
+ */
+public class DBRouterStrategyGene extends AbstractDBRouterStrategy {
+
+    private final Logger logger = LoggerFactory.getLogger(DBRouterStrategyGene.class);
+
+    private final ShardIdGenerator shardIdGenerator;
+
+    public DBRouterStrategyGene(DBRouterConfig dbRouterConfig, ShardIdGenerator shardIdGenerator) {
+        super(dbRouterConfig);
+        this.shardIdGenerator = shardIdGenerator;
+    }
+
+    @Override
+    public void doRouter(String dbKeyAttr) {
+        doRouter(parse(dbKeyAttr));
+    }
+
+    @Override
+    public void doRouter(long dbKeyAttr) {
+        RouteTarget target = locate(dbKeyAttr);
+        route(dbKeyAttr, target);
+        if (logger.isDebugEnabled()) {
+            logger.debug("基因路由 id：{} dbIdx：{} tbIdx：{}", dbKeyAttr, target.getDbIdx(), target.getTbIdx());
+        }
+    }
+
+    @Override
+    public RouteTarget locate(String dbKeyAttr) {
+        return locate(parse(dbKeyAttr));
+    }
+
+    @Override
+    public RouteTarget locate(long dbKeyAttr) {
+        RouteTarget target = shardIdGenerator.route(dbKeyAttr);
+        if (target.getDbIdx() > dbCount() || target.getTbIdx() >= tbCount()) {
+            throw new IllegalArgumentException("ID 基因超出当前库表范围 id：" + dbKeyAttr + " dbIdx：" + target.getDbIdx() + " tbIdx：" + target.getTbIdx());
+        }
+        return target;
+    }
+
+    private static long parse(String dbKeyAttr) {
+        try {
+            return Long.parseLong(dbKeyAttr);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("基因路由键不是数值 ID：" + dbKeyAttr, e);
+        }
+    }
+
+    public ShardIdGenerator getShardIdGenerator() {
+        return shardIdGenerator;
+    }
+
+}
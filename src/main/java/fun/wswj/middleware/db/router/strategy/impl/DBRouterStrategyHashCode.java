@@ -1,26 +1,39 @@
 package fun.wswj.middleware.db.router.strategy.impl;
 
-import fun.wswj.middleware.db.router.DBContextHolder;
 import fun.wswj.middleware.db.router.DBRouterConfig;
-import fun.wswj.middleware.db.router.strategy.IDBRouterStrategy;
+import fun.wswj.middleware.db.router.RouteTarget;
+import fun.wswj.middleware.db.router.strategy.AbstractDBRouterStrategy;
+import fun.wswj.middleware.db.router.util.HashUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  *  哈希路由
  */
-public class DBRouterStrategyHashCode implements IDBRouterStrategy {
+public class DBRouterStrategyHashCode extends AbstractDBRouterStrategy {
 
     private final Logger logger = LoggerFactory.getLogger(DBRouterStrategyHashCode.class);
 
-    private final DBRouterConfig dbRouterConfig;
-
     public DBRouterStrategyHashCode(DBRouterConfig dbRouterConfig) {
-        this.dbRouterConfig = dbRouterConfig;
+        super(dbRouterConfig);
+        int size = dbRouterConfig.getDbCount() * dbRouterConfig.getTbCount();
+        if (Integer.bitCount(size) != 1) {
+            logger.warn("库表总数 {} 不是 2 的幂，hashCode 路由会有部分表分不到数据，建议使用 routerType: fastRange", size);
+        }
     }
 
     @Override
     public void doRouter(String dbKeyAttr) {
+        route(dbKeyAttr, locate(dbKeyAttr));
+    }
+
+    @Override
+    public void doRouter(long dbKeyAttr) {
+        route(dbKeyAttr, locate(dbKeyAttr));
+    }
+
+    @Override
+    public RouteTarget locate(String dbKeyAttr) {
         int size = dbRouterConfig.getDbCount() * dbRouterConfig.getTbCount();
 
         // 扰动函数；在 JDK 的 HashMap 中，对于一个元素的存放，需要进行哈希散列。而为了让散列更加均匀，所以添加了扰动函数。扩展学习；https://mp.weixin.qq.com/s/CySTVqEDK9-K1MRUwBKRCg
@@ -31,36 +44,31 @@ public class DBRouterStrategyHashCode implements IDBRouterStrategy {
         int dbIdx = idx / dbRouterConfig.getTbCount() + 1;
         int tbIdx = idx - dbRouterConfig.getTbCount() * (dbIdx - 1);
 
-        // 设置到 ThreadLocal；关于 ThreadLocal 的使用场景和源码介绍；https://bugstack.cn/md/java/interview/2020-09-23-%E9%9D%A2%E7%BB%8F%E6%89%8B%E5%86%8C%20%C2%B7%20%E7%AC%AC12%E7%AF%87%E3%80%8A%E9%9D%A2%E8%AF%95%E5%AE%98%EF%BC%8CThreadLocal%20%E4%BD%A0%E8%A6%81%E8%BF%99%E4%B9%88%E9%97%AE%EF%BC%8C%E6%88%91%E5%B0%B1%E6%8C%82%E4%BA%86%EF%BC%81%E3%80%8B.html
-        DBContextHolder.setDBKey(String.format("%02d", dbIdx));
-        DBContextHolder.setTBKey(String.format("%03d", tbIdx));
-        logger.debug("数据库路由 idx：{} dbIdx：{} tbIdx：{}", idx, dbIdx, tbIdx);
-    }
-
-    @Override
-    public void setDBKey(int dbIdx) {
-        DBContextHolder.setDBKey(String.format("%02d", dbIdx));
+        // 由 doRouter 设置到 ThreadLocal；关于 ThreadLocal 的使用场景和源码介绍；https://bugstack.cn/md/java/interview/2020-09-23-%E9%9D%A2%E7%BB%8F%E6%89%8B%E5%86%8C%20%C2%B7%20%E7%AC%AC12%E7%AF%87%E3%80%8A%E9%9D%A2%E8%AF%95%E5%AE%98%EF%BC%8CThreadLocal%20%E4%BD%A0%E8%A6%81%E8%BF%99%E4%B9%88%E9%97%AE%EF%BC%8C%E6%88%91%E5%B0%B1%E6%8C%82%E4%BA%86%EF%BC%81%E3%80%8B.html
+        if (logger.isDebugEnabled()) {
+            logger.debug("数据库路由 idx：{} dbIdx：{} tbIdx：{}", idx, dbIdx, tbIdx);
+        }
+        return RouteTarget.of(dbIdx, tbIdx);
     }
 
     @Override
-    public void setTBKey(int tbIdx) {
-        DBContextHolder.setTBKey(String.format("%03d", tbIdx));
-    }
-
-    @Override
-    public int dbCount() {
-        return dbRouterConfig.getDbCount();
-    }
-
-    @Override
-    public int tbCount() {
-        return dbRouterConfig.getTbCount();
-    }
-
-    @Override
-    public void clear(){
-        DBContextHolder.clearDBKey();
-        DBContextHolder.clearTBKey();
+    public RouteTarget locate(long dbKeyAttr) {
+        int size = dbRouterConfig.getDbCount() * dbRouterConfig.getTbCount();
+        int hash;
+        if (numericKeyFast) {
+            long mixed = HashUtil.mix64(dbKeyAttr);
+            hash = (int) (mixed ^ (mixed >>> 32));
+        } else {
+            int h = HashUtil.decimalHashCode(dbKeyAttr);
+            hash = h ^ (h >>> 16);
+        }
+        int idx = (size - 1) & hash;
+        int dbIdx = idx / dbRouterConfig.getTbCount() + 1;
+        int tbIdx = idx - dbRouterConfig.getTbCount() * (dbIdx - 1);
+        if (logger.isDebugEnabled()) {
+            logger.debug("数据库路由 idx：{} dbIdx：{} tbIdx：{}", idx, dbIdx, tbIdx);
+        }
+        return RouteTarget.of(dbIdx, tbIdx);
     }
 
 }
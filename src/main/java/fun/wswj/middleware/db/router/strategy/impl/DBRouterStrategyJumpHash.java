@@ -0,0 +1,70 @@
+package fun.wswj.middleware.db.router.strategy.impl;
+
+import fun.wswj.middleware.db.router.DBRouterConfig;
+import fun.wswj.middleware.db.router.RouteTarget;
+import fun.wswj.middleware.db.router.strategy.AbstractDBRouterStrategy;
+import fun.wswj.middleware.db.router.util.HashUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *  Jump Consistent Hash 路由（Lamping & Veach），不占用额外内存，计算 O(ln n)。
+ *  库表按 (dbIdx - 1) * tbCount + tbIdx 展开成桶，追加分库时只有约 新增桶数 / 总桶数 的数据迁移；
+ *  调整分表数量会改变桶的展开方式，需要全量迁移。
+ */
+public class DBRouterStrategyJumpHash extends AbstractDBRouterStrategy {
+
+    private final Logger logger = LoggerFactory.getLogger(DBRouterStrategyJumpHash.class);
+
+    public DBRouterStrategyJumpHash(DBRouterConfig dbRouterConfig) {
+        super(dbRouterConfig);
+    }
+
+    @Override
+    public void doRouter(String dbKeyAttr) {
+        route(dbKeyAttr, locate(dbKeyAttr));
+    }
+
+    @Override
+    public void doRouter(long dbKeyAttr) {
+        route(dbKeyAttr, locate(dbKeyAttr));
+    }
+
+    @Override
+    public RouteTarget locate(String dbKeyAttr) {
+        return target(HashUtil.hash64(dbKeyAttr));
+    }
+
+    @Override
+    public RouteTarget locate(long dbKeyAttr) {
+        return target(numericKeyFast ? HashUtil.mix64(dbKeyAttr) : HashUtil.decimalHash64(dbKeyAttr));
+    }
+
+    private RouteTarget target(long hash) {
+        int tbCount = dbRouterConfig.getTbCount();
+        int bucket = jumpConsistentHash(hash, dbRouterConfig.getDbCount() * tbCount);
+        int dbIdx = bucket / tbCount + 1;
+        int tbIdx = bucket - (dbIdx - 1) * tbCount;
+        if (logger.isDebugEnabled()) {
+            logger.debug("数据库路由 bucket：{} dbIdx：{} tbIdx：{}", bucket, dbIdx, tbIdx);
+        }
+        return RouteTarget.of(dbIdx, tbIdx);
+    }
+
+    /**
+     * @param key     64 位哈希
+     * @param buckets 桶数量
+     * @return 桶下标 [0, buckets)
+     */
+    public static int jumpConsistentHash(long key, int buckets) {
+        long b = -1;
+        long j = 0;
+        while (j < buckets) {
+            b = j;
+            key = key * 2862933555777941757L + 1;
+            j = (long) ((b + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) b;
+    }
+
+}
@@ -0,0 +1,69 @@
+package fun.wswj.middleware.db.router.strategy.impl;
+
+import fun.wswj.middleware.db.router.DBRouterConfig;
+import fun.wswj.middleware.db.router.RouteTarget;
+import fun.wswj.middleware.db.router.strategy.AbstractDBRouterStrategy;
+import fun.wswj.middleware.db.router.topology.RoutingTopology;
+
+import java.util.List;
+
+/**
+ *  拓扑热更新时对外暴露的路由策略，每次调用读取当前请求使用的快照中的策略，快照替换后新请求自动按新拓扑路由
+ */
+public class DBRouterStrategyRefreshable extends AbstractDBRouterStrategy {
+
+    private final RoutingTopology topology;
+
+    public DBRouterStrategyRefreshable(DBRouterConfig dbRouterConfig, RoutingTopology topology) {
+        super(dbRouterConfig);
+        this.topology = topology;
+    }
+
+    @Override
+    public void doRouter(String dbKeyAttr) {
+        topology.active().getDbRouterStrategy().doRouter(dbKeyAttr);
+    }
+
+    @Override
+    public void doRouter(long dbKeyAttr) {
+        topology.active().getDbRouterStrategy().doRouter(dbKeyAttr);
+    }
+
+    @Override
+    public RouteTarget locate(String dbKeyAttr) {
+        return topology.active().getDbRouterStrategy().locate(dbKeyAttr);
+    }
+
+    @Override
+    public RouteTarget locate(long dbKeyAttr) {
+        return topology.active().getDbRouterStrategy().locate(dbKeyAttr);
+    }
+
+    @Override
+    public int dbCount() {
+        return topology.active().getDbRouterStrategy().dbCount();
+    }
+
+    @Override
+    public int tbCount() {
+        return topology.active().getDbRouterStrategy().tbCount();
+    }
+
+    /**
+     * 广播查询的全部库表，取同一个快照，避免库数与表数来自不同拓扑
+     */
+    @Override
+    public List<RouteTarget> routeTargets() {
+        return topology.active().getDbRouterStrategy().routeTargets();
+    }
+
+    @Override
+    public void clear() {
+        topology.active().getDbRouterStrategy().clear();
+    }
+
+    public RoutingTopology getTopology() {
+        return topology;
+    }
+
+}
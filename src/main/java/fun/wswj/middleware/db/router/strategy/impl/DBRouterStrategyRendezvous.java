@@ -0,0 +1,128 @@
+package fun.wswj.middleware.db.router.strategy.impl;
+
+import fun.wswj.middleware.db.router.DBRouterConfig;
+import fun.wswj.middleware.db.router.RouteTarget;
+import fun.wswj.middleware.db.router.strategy.AbstractDBRouterStrategy;
+import fun.wswj.middleware.db.router.util.HashUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+
+/**
+ *  Rendezvous（最高随机权重，HRW）路由，先在各库中选出得分最高的库，再在该库的表中选出得分最高的表，计算 O(dbCount + tbCount)。
+ *  库、表权重按 score = -weight / ln(u) 计算，各库、表分到的数据与权重成正比；增删一个库只影响该库上的数据。
+ */
+public class DBRouterStrategyRendezvous extends AbstractDBRouterStrategy {
+
+    private final Logger logger = LoggerFactory.getLogger(DBRouterStrategyRendezvous.class);
+
+    /**
+     * 各库、各表的哈希种子，与节点编号绑定，扩容后原节点种子不变
+     */
+    private final long[] dbSeeds;
+
+    private final long[] tbSeeds;
+
+    /**
+     * 各库、各表权重，全部相同时为空，直接比较哈希值
+     */
+    private final double[] dbWeights;
+
+    private final double[] tbWeights;
+
+    public DBRouterStrategyRendezvous(DBRouterConfig dbRouterConfig) {
+        super(dbRouterConfig);
+        int dbCount = dbRouterConfig.getDbCount();
+        int tbCount = dbRouterConfig.getTbCount();
+        this.dbSeeds = seeds(dbCount, 0x6462L);
+        this.tbSeeds = seeds(tbCount, 0x7462L);
+        this.dbWeights = weights(dbRouterConfig.getDbWeights(), dbCount, "dbWeights");
+        this.tbWeights = weights(dbRouterConfig.getTbWeights(), tbCount, "tbWeights");
+    }
+
+    @Override
+    public void doRouter(String dbKeyAttr) {
+        route(dbKeyAttr, locate(dbKeyAttr));
+    }
+
+    @Override
+    public void doRouter(long dbKeyAttr) {
+        route(dbKeyAttr, locate(dbKeyAttr));
+    }
+
+    @Override
+    public RouteTarget locate(String dbKeyAttr) {
+        return target(HashUtil.hash64(dbKeyAttr));
+    }
+
+    @Override
+    public RouteTarget locate(long dbKeyAttr) {
+        return target(numericKeyFast ? HashUtil.mix64(dbKeyAttr) : HashUtil.decimalHash64(dbKeyAttr));
+    }
+
+    private RouteTarget target(long hash) {
+        int dbIdx = (null == dbWeights ? highest(hash, dbSeeds) : highestWeighted(hash, dbSeeds, dbWeights)) + 1;
+        int tbIdx = null == tbWeights ? highest(hash, tbSeeds) : highestWeighted(hash, tbSeeds, tbWeights);
+        if (logger.isDebugEnabled()) {
+            logger.debug("数据库路由 dbIdx：{} tbIdx：{}", dbIdx, tbIdx);
+        }
+        return RouteTarget.of(dbIdx, tbIdx);
+    }
+
+    private static int highest(long hash, long[] seeds) {
+        int best = 0;
+        long bestScore = Long.MIN_VALUE;
+        for (int i = 0; i < seeds.length; i++) {
+            long score = HashUtil.mix64(hash ^ seeds[i]);
+            if (score > bestScore) {
+                bestScore = score;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private static int highestWeighted(long hash, long[] seeds, double[] weights) {
+        int best = 0;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < seeds.length; i++) {
+            // 高 53 位映射到 (0, 1)
+            double u = ((HashUtil.mix64(hash ^ seeds[i]) >>> 11) + 0.5) * 0x1.0p-53;
+            double score = -weights[i] / Math.log(u);
+            if (score > bestScore) {
+                bestScore = score;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private static long[] seeds(int count, long salt) {
+        long[] seeds = new long[count];
+        for (int i = 0; i < count; i++) {
+            seeds[i] = HashUtil.mix64(salt * 0x9E3779B97F4A7C15L + i);
+        }
+        return seeds;
+    }
+
+    private static double[] weights(int[] configured, int count, String name) {
+        if (null == configured) {
+            return null;
+        }
+        if (configured.length != count) {
+            throw new IllegalArgumentException(name + " size must equal " + count + ": " + configured.length);
+        }
+        boolean uniform = true;
+        double[] weights = new double[count];
+        for (int i = 0; i < count; i++) {
+            if (configured[i] <= 0) {
+                throw new IllegalArgumentException(name + " must be positive: " + Arrays.toString(configured));
+            }
+            weights[i] = configured[i];
+            uniform &= configured[i] == configured[0];
+        }
+        return uniform ? null : weights;
+    }
+
+}
@@ -0,0 +1,117 @@
+package fun.wswj.middleware.db.router.strategy.impl;
+
+import fun.wswj.middleware.db.router.DBContextHolder;
+import fun.wswj.middleware.db.router.DBRouterConfig;
+import fun.wswj.middleware.db.router.RouteTarget;
+import fun.wswj.middleware.db.router.hotkey.HotKeyDetector;
+import fun.wswj.middleware.db.router.reshard.ReshardPhase;
+import fun.wswj.middleware.db.router.strategy.AbstractDBRouterStrategy;
+import fun.wswj.middleware.db.router.strategy.IDBRouterStrategy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *  扩缩容双路由：DUAL_WRITE 阶段按旧配置路由，新位置不同时记为影子路由，由 DualWritePlugin 把写入同步过去；
+ *  CUTOVER 之后全部按新配置路由。分库分表数量随阶段取旧配置或新配置，广播查询在切换前只读旧分片。
+ */
+public class DBRouterStrategyReshard extends AbstractDBRouterStrategy {
+
+    private final Logger logger = LoggerFactory.getLogger(DBRouterStrategyReshard.class);
+
+    private final IDBRouterStrategy current;
+
+    private final IDBRouterStrategy target;
+
+    private volatile ReshardPhase phase;
+
+    public DBRouterStrategyReshard(DBRouterConfig dbRouterConfig, IDBRouterStrategy current, IDBRouterStrategy target, ReshardPhase phase) {
+        super(dbRouterConfig);
+        this.current = current;
+        this.target = target;
+        this.phase = phase;
+    }
+
+    @Override
+    public void doRouter(String dbKeyAttr) {
+        if (phase == ReshardPhase.CUTOVER) {
+            target.doRouter(dbKeyAttr);
+            return;
+        }
+        // 新位置只计算不路由，热点统计只按旧配置记录一次
+        RouteTarget shadow = target.locate(dbKeyAttr);
+        current.doRouter(dbKeyAttr);
+        shadow(shadow);
+    }
+
+    @Override
+    public void doRouter(long dbKeyAttr) {
+        if (phase == ReshardPhase.CUTOVER) {
+            target.doRouter(dbKeyAttr);
+            return;
+        }
+        // 新位置只计算不路由，热点统计只按旧配置记录一次
+        RouteTarget shadow = target.locate(dbKeyAttr);
+        current.doRouter(dbKeyAttr);
+        shadow(shadow);
+    }
+
+    /**
+     * 数据当前所在的库表：切换前按旧配置，切换后按新配置
+     */
+    @Override
+    public RouteTarget locate(String dbKeyAttr) {
+        return phase == ReshardPhase.CUTOVER ? target.locate(dbKeyAttr) : current.locate(dbKeyAttr);
+    }
+
+    @Override
+    public RouteTarget locate(long dbKeyAttr) {
+        return phase == ReshardPhase.CUTOVER ? target.locate(dbKeyAttr) : current.locate(dbKeyAttr);
+    }
+
+    private void shadow(RouteTarget shadow) {
+        RouteTarget routed = DBContextHolder.getRouteTarget();
+        DBContextHolder.setShadowTarget(routed.equals(shadow) ? null : shadow);
+        if (logger.isDebugEnabled()) {
+            logger.debug("扩缩容双路由 当前：{} 新位置：{}", routed, shadow);
+        }
+    }
+
+    /**
+     * 切换到新配置，之后不再双写
+     */
+    public void cutover() {
+        phase = ReshardPhase.CUTOVER;
+        logger.info("db-router 扩缩容切换完成，按新配置路由");
+    }
+
+    public ReshardPhase getPhase() {
+        return phase;
+    }
+
+    @Override
+    public int dbCount() {
+        return phase == ReshardPhase.CUTOVER ? target.dbCount() : current.dbCount();
+    }
+
+    @Override
+    public int tbCount() {
+        return phase == ReshardPhase.CUTOVER ? target.tbCount() : current.tbCount();
+    }
+
+    @Override
+    public void setHotKeyDetector(HotKeyDetector hotKeyDetector) {
+        super.setHotKeyDetector(hotKeyDetector);
+        for (IDBRouterStrategy delegate : new IDBRouterStrategy[]{current, target}) {
+            if (delegate instanceof AbstractDBRouterStrategy) {
+                ((AbstractDBRouterStrategy) delegate).setHotKeyDetector(hotKeyDetector);
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        DBContextHolder.setShadowTarget(null);
+    }
+
+}
@@ -0,0 +1,97 @@
+package fun.wswj.middleware.db.router.topology;
+
+import fun.wswj.middleware.db.router.DBRouterConfig;
+import fun.wswj.middleware.db.router.strategy.IDBRouterStrategy;
+
+import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *  路由拓扑快照：分库分表配置、路由策略与数据源集合，创建后不再修改，整体替换。
+ *  引用计数记录正在使用该快照的作用域数，由 RoutingTopology 维护
+ */
+public final class RoutingSnapshot {
+
+    private final long version;
+
+    private final DBRouterConfig dbRouterConfig;
+
+    private final IDBRouterStrategy dbRouterStrategy;
+
+    /**
+     * 数据源名称 -> 数据源，如 db01
+     */
+    private final Map<String, DataSource> dataSources;
+
+    /**
+     * 数据源名称 -> 创建时的配置，刷新时配置不变的连接池直接复用
+     */
+    private final Map<String, Map<String, Object>> dataSourceConfigs;
+
+    private final String defaultDataSourceName;
+
+    private final AtomicInteger references = new AtomicInteger();
+
+    public RoutingSnapshot(long version, DBRouterConfig dbRouterConfig, IDBRouterStrategy dbRouterStrategy, Map<String, DataSource> dataSources,
+                           Map<String, Map<String, Object>> dataSourceConfigs, String defaultDataSourceName) {
+        this.version = version;
+        this.dbRouterConfig = dbRouterConfig;
+        this.dbRouterStrategy = dbRouterStrategy;
+        this.dataSources = Collections.unmodifiableMap(new HashMap<>(dataSources));
+        this.dataSourceConfigs = Collections.unmodifiableMap(new HashMap<>(dataSourceConfigs));
+        this.defaultDataSourceName = defaultDataSourceName;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public DBRouterConfig getDbRouterConfig() {
+        return dbRouterConfig;
+    }
+
+    public IDBRouterStrategy getDbRouterStrategy() {
+        return dbRouterStrategy;
+    }
+
+    public DataSource getDataSource(String name) {
+        return dataSources.get(name);
+    }
+
+    public DataSource getDefaultDataSource() {
+        return dataSources.get(defaultDataSourceName);
+    }
+
+    public Map<String, DataSource> getDataSources() {
+        return dataSources;
+    }
+
+    public Map<String, Object> getDataSourceConfig(String name) {
+        return dataSourceConfigs.get(name);
+    }
+
+    public String getDefaultDataSourceName() {
+        return defaultDataSourceName;
+    }
+
+    int retain() {
+        return references.incrementAndGet();
+    }
+
+    int release() {
+        return references.decrementAndGet();
+    }
+
+    public int getReferences() {
+        return references.get();
+    }
+
+    @Override
+    public String toString() {
+        return "RoutingSnapshot{version=" + version + ", db=" + dbRouterConfig.getDbCount() + ", tb=" + dbRouterConfig.getTbCount() + ", dataSources=" + dataSources.keySet() + "}";
+    }
+
+}
@@ -0,0 +1,341 @@
+package fun.wswj.middleware.db.router.topology;
+
+import fun.wswj.middleware.db.router.DBContextHolder;
+import fun.wswj.middleware.db.router.RouteScope;
+import fun.wswj.middleware.db.router.dynamic.LazyDataSource;
+import fun.wswj.middleware.db.router.dynamic.ShardDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.PropertiesPropertySource;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.env.StandardEnvironment;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ *  路由拓扑热更新，RCU 方式：请求路径只读取当前快照，不加锁；配置变化时在后台线程构建新快照（新连接池预热完成），再原子替换。
+ *  @DBRouter 最外层作用域经 acquire() 捕获快照并增加引用计数，作用域内经 active() 取到的始终是同一个快照，切换发生在请求中途也不会混用新旧拓扑。
+ *  被替换的快照进入待释放集合，引用计数归零后关闭当前快照与其余待释放快照都不再使用的连接池与策略；宽限期是释放的上限，超过宽限期仍未归零时强制释放。
+ */
+public class RoutingTopology implements Closeable {
+
+    private final Logger logger = LoggerFactory.getLogger(RoutingTopology.class);
+
+    private static final String SOURCE_NAME = "db-router-topology";
+
+    /**
+     * Spring Boot 附加在 Environment 上的绑定视图，指向原 Environment，复制配置源时跳过
+     */
+    private static final String ATTACHED_SOURCE_NAME = "configurationProperties";
+
+    /**
+     * 根据新配置构建快照，previous 中配置未变化的连接池应直接复用
+     */
+    public interface SnapshotBuilder {
+
+        RoutingSnapshot build(Environment environment, RoutingSnapshot previous);
+
+    }
+
+    private final AtomicReference<RoutingSnapshot> current;
+
+    /**
+     * 已被替换、尚未释放的快照 -> 宽限期截止时间（System.nanoTime）
+     */
+    private final Map<RoutingSnapshot, Long> retiring = new ConcurrentHashMap<>();
+
+    private final SnapshotBuilder builder;
+
+    /**
+     * 启动时的配置，刷新时作为底层配置，覆盖项优先
+     */
+    private final Environment baseEnvironment;
+
+    private final long gracePeriod;
+
+    private final ScheduledExecutorService scheduler;
+
+    private Path file;
+
+    private FileTime loadedModifiedTime;
+
+    /**
+     * @param initial         启动时的快照
+     * @param builder         快照构建
+     * @param baseEnvironment 启动时的配置
+     * @param gracePeriod     旧快照最长保留时间（毫秒）
+     */
+    public RoutingTopology(RoutingSnapshot initial, SnapshotBuilder builder, Environment baseEnvironment, long gracePeriod) {
+        this.current = new AtomicReference<>(initial);
+        this.builder = builder;
+        this.baseEnvironment = baseEnvironment;
+        this.gracePeriod = gracePeriod;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "db-router-topology");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public RoutingSnapshot get() {
+        return current.get();
+    }
+
+    /**
+     * 当前请求使用的快照：@DBRouter 作用域内为作用域捕获的快照，作用域外为当前快照
+     */
+    public RoutingSnapshot active() {
+        RouteScope scope = DBContextHolder.getRouteScope();
+        RoutingSnapshot snapshot = null == scope ? null : scope.getSnapshot();
+        return null == snapshot ? current.get() : snapshot;
+    }
+
+    /**
+     * 最外层作用域进入时捕获当前快照并增加引用计数，作用域结束时需调用 release
+     */
+    public RoutingSnapshot acquire() {
+        while (true) {
+            RoutingSnapshot snapshot = current.get();
+            snapshot.retain();
+            // 计数前快照已被替换时重试，不使用可能已释放的快照
+            if (current.get() == snapshot) {
+                return snapshot;
+            }
+            release(snapshot);
+        }
+    }
+
+    /**
+     * 作用域结束时减少引用计数，待释放的快照计数归零后在后台线程释放
+     */
+    public void release(RoutingSnapshot snapshot) {
+        if (snapshot.release() <= 0 && retiring.containsKey(snapshot)) {
+            try {
+                scheduler.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                logger.debug("db-router 拓扑已关闭，不再释放旧快照 version：{}", snapshot.getVersion());
+            }
+        }
+    }
+
+    /**
+     * 先查当前快照，未找到时按版本从新到旧查尚未释放的旧快照
+     */
+    public DataSource getDataSource(String name) {
+        DataSource dataSource = current.get().getDataSource(name);
+        if (null == dataSource) {
+            long version = Long.MIN_VALUE;
+            for (RoutingSnapshot previous : retiring.keySet()) {
+                DataSource candidate = previous.getDataSource(name);
+                if (null != candidate && previous.getVersion() > version) {
+                    dataSource = candidate;
+                    version = previous.getVersion();
+                }
+            }
+        }
+        return dataSource;
+    }
+
+    /**
+     * 定时检查配置文件，修改时间变化时刷新；文件内容为 mini-db-router.jdbc.datasource.* 配置，覆盖启动配置中的同名项
+     *
+     * @param file           配置文件
+     * @param reloadInterval 检查间隔（毫秒），小于等于 0 时只在调用 reload 时检查
+     */
+    public synchronized void watch(Path file, long reloadInterval) {
+        this.file = file;
+        try {
+            this.loadedModifiedTime = Files.exists(file) ? Files.getLastModifiedTime(file) : null;
+        } catch (Exception e) {
+            logger.warn("db-router 拓扑配置文件读取失败 file：{}", file, e);
+        }
+        if (reloadInterval > 0) {
+            scheduler.scheduleWithFixedDelay(this::reload, reloadInterval, reloadInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 配置文件修改时间变化时刷新，返回是否切换到了新快照
+     */
+    public synchronized boolean reload() {
+        if (null == file) {
+            return false;
+        }
+        try {
+            if (!Files.exists(file)) {
+                return false;
+            }
+            FileTime modifiedTime = Files.getLastModifiedTime(file);
+            if (modifiedTime.equals(loadedModifiedTime)) {
+                return false;
+            }
+            Properties properties = new Properties();
+            try (InputStream in = Files.newInputStream(file)) {
+                properties.load(in);
+            }
+            loadedModifiedTime = modifiedTime;
+            return null != refresh(properties);
+        } catch (Exception e) {
+            logger.error("db-router 拓扑配置文件加载失败，继续使用当前拓扑 file：{}", file, e);
+            return false;
+        }
+    }
+
+    /**
+     * 按覆盖项刷新拓扑，可由配置中心的变更回调调用
+     *
+     * @param overrides 覆盖启动配置的属性
+     * @return 新快照，构建失败时返回 null 并继续使用当前快照
+     */
+    public synchronized RoutingSnapshot refresh(Properties overrides) {
+        return refresh(overlay(overrides));
+    }
+
+    /**
+     * 按完整配置刷新拓扑，在调用线程构建新快照，完成后原子替换
+     */
+    public synchronized RoutingSnapshot refresh(Environment environment) {
+        RoutingSnapshot previous = current.get();
+        long start = System.currentTimeMillis();
+        RoutingSnapshot next;
+        try {
+            next = builder.build(environment, previous);
+        } catch (Exception e) {
+            logger.error("db-router 拓扑构建失败，继续使用当前拓扑 version：{}", previous.getVersion(), e);
+            return null;
+        }
+        current.set(next);
+        // 先加入待释放集合再检查计数，release 先减计数再检查集合，两者交错时至少一方会触发释放
+        retiring.put(previous, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(gracePeriod));
+        logger.info("db-router 拓扑切换完成 {} -> {} 耗时(ms)：{}", previous, next, System.currentTimeMillis() - start);
+        drain();
+        if (retiring.containsKey(previous)) {
+            scheduler.schedule(this::drain, gracePeriod, TimeUnit.MILLISECONDS);
+        }
+        return next;
+    }
+
+    /**
+     * 释放引用计数归零或超过宽限期的旧快照，只关闭当前快照与其余待释放快照都不再使用的连接池与策略
+     */
+    private synchronized void drain() {
+        long now = System.nanoTime();
+        List<RoutingSnapshot> released = new ArrayList<>();
+        for (Map.Entry<RoutingSnapshot, Long> entry : retiring.entrySet()) {
+            RoutingSnapshot snapshot = entry.getKey();
+            if (snapshot.getReferences() <= 0) {
+                released.add(snapshot);
+            } else if (now - entry.getValue() >= 0) {
+                logger.warn("db-router 旧快照超过宽限期仍在使用，强制释放 version：{} 引用数：{}", snapshot.getVersion(), snapshot.getReferences());
+                released.add(snapshot);
+            }
+        }
+        if (released.isEmpty()) {
+            return;
+        }
+        for (RoutingSnapshot snapshot : released) {
+            retiring.remove(snapshot);
+        }
+        Set<DataSource> inUse = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<Object> strategiesInUse = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<RoutingSnapshot> live = new ArrayList<>(retiring.keySet());
+        live.add(current.get());
+        for (RoutingSnapshot snapshot : live) {
+            inUse.addAll(snapshot.getDataSources().values());
+            strategiesInUse.add(snapshot.getDbRouterStrategy());
+        }
+        for (RoutingSnapshot snapshot : released) {
+            for (Map.Entry<String, DataSource> entry : snapshot.getDataSources().entrySet()) {
+                // 多个快照共用的连接池只关闭一次
+                if (inUse.add(entry.getValue())) {
+                    closeQuietly(entry.getKey(), entry.getValue());
+                }
+            }
+            Object strategy = snapshot.getDbRouterStrategy();
+            if (strategiesInUse.add(strategy) && strategy instanceof Closeable) {
+                try {
+                    ((Closeable) strategy).close();
+                } catch (Exception e) {
+                    logger.warn("db-router 旧路由策略关闭失败", e);
+                }
+            }
+            logger.info("db-router 旧快照已释放 version：{}", snapshot.getVersion());
+        }
+    }
+
+    private void closeQuietly(String name, DataSource dataSource) {
+        List<DataSource> pools = new ArrayList<>();
+        if (dataSource instanceof ShardDataSource) {
+            ShardDataSource shardDataSource = (ShardDataSource) dataSource;
+            pools.add(shardDataSource.getPrimary());
+            for (int i = 0; i < shardDataSource.getReplicaCount(); i++) {
+                pools.add(shardDataSource.getReplica(i));
+            }
+        } else if (dataSource instanceof LazyDataSource) {
+            LazyDataSource lazyDataSource = (LazyDataSource) dataSource;
+            if (lazyDataSource.isInitialized()) {
+                closeQuietly(name, lazyDataSource.getTarget());
+            }
+            return;
+        } else {
+            pools.add(dataSource);
+        }
+        for (DataSource pool : pools) {
+            if (pool instanceof AutoCloseable) {
+                try {
+                    ((AutoCloseable) pool).close();
+                    logger.info("db-router 连接池已关闭 db：{}", name);
+                } catch (Exception e) {
+                    logger.warn("db-router 连接池关闭失败 db：{}", name, e);
+                }
+            }
+        }
+    }
+
+    private Environment overlay(Properties overrides) {
+        StandardEnvironment environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new PropertiesPropertySource(SOURCE_NAME, overrides));
+        if (baseEnvironment instanceof ConfigurableEnvironment) {
+            for (PropertySource<?> source : ((ConfigurableEnvironment) baseEnvironment).getPropertySources()) {
+                if (!ATTACHED_SOURCE_NAME.equals(source.getName()) && !environment.getPropertySources().contains(source.getName())) {
+                    environment.getPropertySources().addLast(source);
+                }
+            }
+        }
+        return environment;
+    }
+
+    /**
+     * 已被替换、尚未释放的快照
+     */
+    public Collection<RoutingSnapshot> getRetiring() {
+        return Collections.unmodifiableSet(retiring.keySet());
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+}
@@ -0,0 +1,174 @@
+package fun.wswj.middleware.db.router.util;
+
+/**
+ * 路由用的哈希，不分配对象。
+ * decimal* 系列按十进制字符串 Long.toString(key) 计算，与字符串路由结果一致，但不生成字符串。
+ */
+public class HashUtil {
+
+    private static final long[] POW10 = new long[19];
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
+    private HashUtil() {
+    }
+
+    /**
+     * 字符序列的 64 位哈希：逐字符累乘后做一次 64 位混淆
+     */
+    public static long hash64(CharSequence key) {
+        long h = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < key.length(); i++) {
+            h = (h ^ key.charAt(i)) * 0x100000001B3L;
+        }
+        return mix64(h);
+    }
+
+    /**
+     * splitmix64 的混淆函数，输入的每一位都会影响全部输出位
+     */
+    public static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * 等同于 hash64(Long.toString(key))
+     */
+    public static long decimalHash64(long key) {
+        long h = 0x9E3779B97F4A7C15L;
+        if (key < 0) {
+            h = (h ^ '-') * 0x100000001B3L;
+        }
+        long n = key < 0 ? key : -key;
+        int digits = digits(n);
+        long high = packHigh(n);
+        long low = packLow(n, digits);
+        for (int i = digits - 1; i >= 0; i--) {
+            h = (h ^ digitAt(high, low, i)) * 0x100000001B3L;
+        }
+        return mix64(h);
+    }
+
+    /**
+     * 等同于 Long.toString(key).hashCode()
+     */
+    public static int decimalHashCode(long key) {
+        int h = key < 0 ? '-' : 0;
+        long n = key < 0 ? key : -key;
+        int digits = digits(n);
+        long high = packHigh(n);
+        long low = packLow(n, digits);
+        for (int i = digits - 1; i >= 0; i--) {
+            h = 31 * h + digitAt(high, low, i);
+        }
+        return h;
+    }
+
+    /**
+     * 等同于 Guava murmur3_32_fixed 对 Long.toString(key) 的 UTF-8 字节求哈希
+     */
+    public static int decimalMurmur3(long key) {
+        long n = key < 0 ? key : -key;
+        int digits = digits(n);
+        long high = packHigh(n);
+        long low = packLow(n, digits);
+        int length = digits + (key < 0 ? 1 : 0);
+        int h1 = 0;
+        int k1 = 0;
+        int pos = 0;
+        if (key < 0) {
+            k1 = '-';
+            pos = 1;
+        }
+        for (int i = digits - 1; i >= 0; i--, pos++) {
+            k1 |= digitAt(high, low, i) << ((pos & 3) << 3);
+            if ((pos & 3) == 3) {
+                h1 = murmur3MixH1(h1, murmur3MixK1(k1));
+                k1 = 0;
+            }
+        }
+        if ((length & 3) != 0) {
+            h1 ^= murmur3MixK1(k1);
+        }
+        h1 ^= length;
+        h1 ^= h1 >>> 16;
+        h1 *= 0x85ebca6b;
+        h1 ^= h1 >>> 13;
+        h1 *= 0xc2b2ae35;
+        h1 ^= h1 >>> 16;
+        return h1;
+    }
+
+    /**
+     * @param n 非正数
+     * @return 十进制位数
+     */
+    private static int digits(long n) {
+        int digits = 1;
+        while (digits < 19 && n <= -POW10[digits]) {
+            digits++;
+        }
+        return digits;
+    }
+
+    /**
+     * 低 16 位十进制数字按 4 位一组打包，个位在最低位；除数为常量，JIT 编译为乘法
+     *
+     * @param n 非正数
+     */
+    private static long packLow(long n, int digits) {
+        long low = n % 10_000_000_000_000_000L;
+        long packed = 0;
+        for (int i = 0, count = Math.min(digits, 16); i < count; i++) {
+            long q = low / 10;
+            packed |= (q * 10 - low) << (i << 2);
+            low = q;
+        }
+        return packed;
+    }
+
+    /**
+     * 第 17 位起的十进制数字（最多 3 位）按 4 位一组打包
+     *
+     * @param n 非正数
+     */
+    private static long packHigh(long n) {
+        long high = n / 10_000_000_000_000_000L;
+        long packed = 0;
+        for (int i = 0; high != 0; i++) {
+            long q = high / 10;
+            packed |= (q * 10 - high) << (i << 2);
+            high = q;
+        }
+        return packed;
+    }
+
+    /**
+     * @param i 从个位起的第几位
+     * @return 该位的字符
+     */
+    private static int digitAt(long high, long low, int i) {
+        long packed = i < 16 ? low : high;
+        return '0' + (int) ((packed >>> ((i & 15) << 2)) & 0xF);
+    }
+
+    private static int murmur3MixK1(int k1) {
+        k1 *= 0xcc9e2d51;
+        k1 = Integer.rotateLeft(k1, 15);
+        return k1 * 0x1b873593;
+    }
+
+    private static int murmur3MixH1(int h1, int k1) {
+        h1 ^= k1;
+        h1 = Integer.rotateLeft(h1, 13);
+        return h1 * 5 + 0xe6546b64;
+    }
+
+}
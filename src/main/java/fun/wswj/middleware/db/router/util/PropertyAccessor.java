@@ -0,0 +1,165 @@
+package fun.wswj.middleware.db.router.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 编译好的属性访问链，优先使用 getter，其次字段，沿整个继承体系查找
+ */
+public final class PropertyAccessor {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final MethodType ACCESSOR_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    /**
+     * 属性不存在的占位
+     */
+    public static final PropertyAccessor ABSENT = new PropertyAccessor(new MethodHandle[0], "");
+
+    /**
+     * 按运行时类型缓存的访问器
+     */
+    private static final ClassValue<Map<String, PropertyAccessor>> ACCESSORS = new ClassValue<Map<String, PropertyAccessor>>() {
+        @Override
+        protected Map<String, PropertyAccessor> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    private final MethodHandle[] chain;
+    private final String path;
+
+    private PropertyAccessor(MethodHandle[] chain, String path) {
+        this.chain = chain;
+        this.path = path;
+    }
+
+    /**
+     * 读取属性值，路径中间为 null 时返回 null
+     *
+     * @param target 对象
+     * @return 属性值
+     */
+    public Object read(Object target) {
+        Object value = target;
+        try {
+            for (MethodHandle handle : chain) {
+                if (null == value) {
+                    return null;
+                }
+                value = handle.invokeExact(value);
+            }
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException("获取属性值失败 attr：" + path, e);
+        }
+        return value;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * 获取类型上指定路径的访问器，按类型缓存
+     *
+     * @param type 对象类型
+     * @param path 属性路径，如 order.user.id
+     * @return 访问器，属性不存在时返回 ABSENT
+     */
+    public static PropertyAccessor of(Class<?> type, String path) {
+        Map<String, PropertyAccessor> accessors = ACCESSORS.get(type);
+        PropertyAccessor accessor = accessors.get(path);
+        if (null == accessor) {
+            accessor = compile(type, path.split("\\."), 0);
+            accessors.putIfAbsent(path, null == accessor ? ABSENT : accessor);
+            accessor = accessors.get(path);
+        }
+        return accessor;
+    }
+
+    /**
+     * 编译属性访问链
+     *
+     * @param type 起始类型
+     * @param path 属性路径，如 order.user.id 拆分后的数组
+     * @param from 起始下标
+     * @return 访问器，路径上任一属性不存在时返回 null
+     */
+    public static PropertyAccessor compile(Class<?> type, String[] path, int from) {
+        MethodHandle[] chain = new MethodHandle[path.length - from];
+        Class<?> current = type;
+        for (int i = from; i < path.length; i++) {
+            MethodHandle handle = getterOf(current, path[i]);
+            if (null == handle) {
+                return null;
+            }
+            current = handle.type().returnType();
+            chain[i - from] = handle.asType(ACCESSOR_TYPE);
+        }
+        return new PropertyAccessor(chain, String.join(".", path));
+    }
+
+    private static MethodHandle getterOf(Class<?> type, String name) {
+        if (type.isPrimitive()) {
+            return null;
+        }
+        String suffix = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        // 公共 getter，包含父类与接口中声明的
+        for (Method m : type.getMethods()) {
+            MethodHandle handle = isGetter(m, suffix) ? unreflect(m) : null;
+            if (null != handle) {
+                return handle;
+            }
+        }
+        // 非公共 getter
+        for (Class<?> c = type; null != c && Object.class != c; c = c.getSuperclass()) {
+            for (Method m : c.getDeclaredMethods()) {
+                MethodHandle handle = isGetter(m, suffix) ? unreflect(m) : null;
+                if (null != handle) {
+                    return handle;
+                }
+            }
+        }
+        for (Class<?> c = type; null != c && Object.class != c; c = c.getSuperclass()) {
+            for (Field f : c.getDeclaredFields()) {
+                if (f.getName().equals(name) && !Modifier.isStatic(f.getModifiers())) {
+                    try {
+                        f.setAccessible(true);
+                        return LOOKUP.unreflectGetter(f);
+                    } catch (RuntimeException | IllegalAccessException e) {
+                        return null;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean isGetter(Method m, String suffix) {
+        if (m.getParameterCount() != 0 || Modifier.isStatic(m.getModifiers()) || m.getDeclaringClass() == Object.class) {
+            return false;
+        }
+        return (m.getName().equals("get" + suffix) && m.getReturnType() != void.class)
+                || (m.getName().equals("is" + suffix) && m.getReturnType() == boolean.class);
+    }
+
+    private static MethodHandle unreflect(Method m) {
+        try {
+            m.setAccessible(true);
+            return LOOKUP.unreflect(m);
+        } catch (RuntimeException | IllegalAccessException e) {
+            // 无法访问时退回字段读取
+            return null;
+        }
+    }
+
+}
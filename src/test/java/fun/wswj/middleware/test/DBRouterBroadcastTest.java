@@ -0,0 +1,215 @@
+package fun.wswj.middleware.test;
+
+import fun.wswj.middleware.db.router.DBContextHolder;
+import fun.wswj.middleware.db.router.DBRouterConfig;
+import fun.wswj.middleware.db.router.DBRouterJoinPoint;
+import fun.wswj.middleware.db.router.RouteTarget;
+import fun.wswj.middleware.db.router.annotation.DBRouter;
+import fun.wswj.middleware.db.router.broadcast.DBRouterBroadcast;
+import fun.wswj.middleware.db.router.strategy.impl.DBRouterStrategyHashCode;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DBRouterBroadcastTest {
+
+    public interface ShardService {
+
+        List<Integer> queryShards();
+
+        Set<Integer> queryDbs();
+
+        long count();
+
+        boolean exists();
+
+        Map<Integer, Integer> queryMap();
+
+        int[] queryArray();
+
+        Optional<Integer> queryOptional();
+
+        <T> T queryOwner();
+
+    }
+
+    public static class ShardServiceImpl implements ShardService {
+
+        private final AtomicInteger invoked = new AtomicInteger();
+
+        @Override
+        @DBRouter(broadcast = true, orderBy = "intValue desc", limit = 5)
+        public List<Integer> queryShards() {
+            invoked.incrementAndGet();
+            RouteTarget target = DBContextHolder.getRouteTarget();
+            return Collections.singletonList((target.getDbIdx() - 1) * 8 + target.getTbIdx());
+        }
+
+        @Override
+        @DBRouter(broadcast = true)
+        public Set<Integer> queryDbs() {
+            invoked.incrementAndGet();
+            return Collections.singleton(DBContextHolder.getRouteTarget().getDbIdx());
+        }
+
+        @Override
+        @DBRouter(broadcast = true)
+        public long count() {
+            invoked.incrementAndGet();
+            return 2;
+        }
+
+        @Override
+        @DBRouter(broadcast = true)
+        public boolean exists() {
+            invoked.incrementAndGet();
+            return RouteTarget.of(3, 7).equals(DBContextHolder.getRouteTarget());
+        }
+
+        @Override
+        @DBRouter(broadcast = true)
+        public Map<Integer, Integer> queryMap() {
+            invoked.incrementAndGet();
+            return Collections.emptyMap();
+        }
+
+        @Override
+        @DBRouter(broadcast = true)
+        public int[] queryArray() {
+            invoked.incrementAndGet();
+            return new int[0];
+        }
+
+        @Override
+        @DBRouter(broadcast = true)
+        public Optional<Integer> queryOptional() {
+            invoked.incrementAndGet();
+            return Optional.empty();
+        }
+
+        @Override
+        @DBRouter(broadcast = true)
+        @SuppressWarnings("unchecked")
+        public <T> T queryOwner() {
+            invoked.incrementAndGet();
+            RouteTarget target = DBContextHolder.getRouteTarget();
+            return RouteTarget.of(2, 5).equals(target) ? (T) target : null;
+        }
+
+    }
+
+    private final DBRouterConfig dbRouterConfig = new DBRouterConfig(4, 8, "userId");
+
+    private DBRouterBroadcast broadcast;
+
+    @Before
+    public void init() {
+        broadcast = new DBRouterBroadcast(new DBRouterStrategyHashCode(dbRouterConfig), 8, 5000);
+    }
+
+    @After
+    public void destroy() {
+        broadcast.close();
+    }
+
+    @Test
+    public void test_routeContextPerShard() {
+        List<String> keys = broadcast.scatter(target -> DBContextHolder.getDBKey() + "_" + DBContextHolder.getTBKey());
+        Assert.assertEquals(32, keys.size());
+        Assert.assertEquals("01_000", keys.get(0));
+        Assert.assertEquals("04_007", keys.get(31));
+        Assert.assertNull(DBContextHolder.getRouteTarget());
+    }
+
+    @Test
+    public void test_orderedMerge() {
+        // 每个分片返回有序的 3 条记录，值为 分片序号 + 32 * i
+        List<Integer> rows = broadcast.queryList(target -> {
+            int shard = (target.getDbIdx() - 1) * 8 + target.getTbIdx();
+            return Arrays.asList(shard, shard + 32, shard + 64);
+        }, Comparator.<Integer>naturalOrder(), 40);
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            expected.add(i);
+        }
+        Assert.assertEquals(expected, rows);
+    }
+
+    @Test
+    public void test_findAnyCancelsRemaining() {
+        AtomicInteger executed = new AtomicInteger();
+        long start = System.nanoTime();
+        RouteTarget hit = broadcast.findAny(target -> {
+            executed.incrementAndGet();
+            if (target.getDbIdx() == 1 && target.getTbIdx() == 0) {
+                return target;
+            }
+            sleep(200);
+            return null;
+        });
+        long elapsed = (System.nanoTime() - start) / 1000000;
+        Assert.assertEquals(RouteTarget.of(1, 0), hit);
+        Assert.assertTrue("elapsed: " + elapsed, elapsed < 150);
+        // 并发 8 个分片，未取消时第一批 200 毫秒后结束，第二批会继续执行
+        sleep(300);
+        Assert.assertTrue("executed: " + executed.get(), executed.get() < 16);
+    }
+
+    @Test
+    public void test_count() {
+        Assert.assertEquals(64, broadcast.count(target -> 2));
+        Assert.assertFalse(broadcast.exists(target -> false));
+        Assert.assertEquals(Collections.emptyList(), broadcast.queryList(target -> Collections.<String>emptyList()));
+    }
+
+    @Test
+    public void test_annotationInvoke() {
+        ShardServiceImpl impl = new ShardServiceImpl();
+        AspectJProxyFactory factory = new AspectJProxyFactory(impl);
+        factory.addInterface(ShardService.class);
+        factory.addAspect(new DBRouterJoinPoint(dbRouterConfig, new DBRouterStrategyHashCode(dbRouterConfig), broadcast));
+        ShardService shardService = factory.getProxy();
+
+        Assert.assertEquals(Arrays.asList(31, 30, 29, 28, 27), shardService.queryShards());
+        Assert.assertEquals(new LinkedHashSet<>(Arrays.asList(1, 2, 3, 4)), shardService.queryDbs());
+        Assert.assertEquals(64, shardService.count());
+        Assert.assertTrue(shardService.exists());
+        // 泛型擦除为 Object 的返回值不按列表归并，取首个非空结果
+        RouteTarget owner = shardService.queryOwner();
+        Assert.assertEquals(RouteTarget.of(2, 5), owner);
+        Assert.assertNull(DBContextHolder.getRouteTarget());
+
+        // 无法合并的返回类型在执行分片前失败
+        impl.invoked.set(0);
+        for (Runnable call : Arrays.<Runnable>asList(shardService::queryMap, shardService::queryArray, shardService::queryOptional)) {
+            try {
+                call.run();
+                Assert.fail();
+            } catch (IllegalStateException ignore) {
+            }
+        }
+        Assert.assertEquals(0, impl.invoked.get());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,232 @@
+package fun.wswj.middleware.test;
+
+import fun.wswj.middleware.db.router.DBContextHolder;
+import fun.wswj.middleware.db.router.DBRouterConfig;
+import fun.wswj.middleware.db.router.DBRouterJoinPoint;
+import fun.wswj.middleware.db.router.RouteTarget;
+import fun.wswj.middleware.db.router.annotation.DBRouter;
+import fun.wswj.middleware.db.router.annotation.DBRouterStrategy;
+import fun.wswj.middleware.db.router.annotation.RouterKey;
+import fun.wswj.middleware.db.router.broadcast.DBRouterCursorMerger;
+import fun.wswj.middleware.db.router.broadcast.MergedCursor;
+import fun.wswj.middleware.db.router.dynamic.DynamicDataSource;
+import fun.wswj.middleware.db.router.dynamic.DynamicMybatisPlugin;
+import fun.wswj.middleware.db.router.strategy.impl.DBRouterStrategyHashCode;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mybatis.spring.transaction.SpringManagedTransactionFactory;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DBRouterCursorMergerTest {
+
+    @DBRouterStrategy(splitTable = true)
+    public interface UserMapper {
+
+        @Select("SELECT user_id FROM user ORDER BY user_id")
+        Cursor<String> scan();
+
+    }
+
+    public interface ScanService {
+
+        List<String> scan(String userId);
+
+    }
+
+    public static class ScanServiceImpl implements ScanService {
+
+        private final DataSource dataSource;
+
+        private final DBRouterCursorMerger merger;
+
+        public ScanServiceImpl(DataSource dataSource, DBRouterCursorMerger merger) {
+            this.dataSource = dataSource;
+            this.merger = merger;
+        }
+
+        @Override
+        @DBRouter(key = "userId", pinConnection = true)
+        public List<String> scan(@RouterKey String userId) {
+            // 先在当前分片上使用固定连接
+            DataSourceUtils.releaseConnection(DataSourceUtils.getConnection(dataSource), dataSource);
+            List<String> rows = new ArrayList<>();
+            try (MergedCursor<String> cursor = merger.open(UserMapper.class, UserMapper::scan, Comparator.<String>naturalOrder())) {
+                for (String row : cursor) {
+                    rows.add(row);
+                }
+            }
+            Assert.assertTrue(TransactionSynchronizationManager.hasResource(dataSource));
+            return rows;
+        }
+
+    }
+
+    private final AtomicInteger openSessions = new AtomicInteger();
+
+    private DBRouterCursorMerger merger;
+
+    @Before
+    public void init() {
+        // 模拟每个分片返回有序的 3 条记录，值为 分片序号 + 8 * i
+        SqlSessionFactory factory = (SqlSessionFactory) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{SqlSessionFactory.class}, (proxy, method, args) -> {
+            openSessions.incrementAndGet();
+            return Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{SqlSession.class}, (session, m, a) -> {
+                if ("close".equals(m.getName())) {
+                    openSessions.decrementAndGet();
+                    return null;
+                }
+                RouteTarget target = DBContextHolder.getRouteTarget();
+                int shard = (target.getDbIdx() - 1) * 4 + target.getTbIdx();
+                return new ListCursor<>(Arrays.asList(shard, shard + 8, shard + 16));
+            });
+        });
+        merger = new DBRouterCursorMerger(factory, new DBRouterStrategyHashCode(new DBRouterConfig(2, 4, "userId")));
+    }
+
+    @Test
+    public void test_orderedMerge() {
+        List<Integer> rows = new ArrayList<>();
+        try (MergedCursor<Integer> cursor = merger.open("scan", null, Comparator.<Integer>naturalOrder())) {
+            Assert.assertEquals(8, cursor.getShardCount());
+            Assert.assertEquals(8, openSessions.get());
+            for (Integer row : cursor) {
+                rows.add(row);
+            }
+        }
+        for (int i = 0; i < 24; i++) {
+            Assert.assertEquals(Integer.valueOf(i), rows.get(i));
+        }
+        Assert.assertEquals(0, openSessions.get());
+        Assert.assertNull(DBContextHolder.getRouteTarget());
+    }
+
+    @Test
+    public void test_concatReleasesConsumedShards() {
+        try (MergedCursor<Integer> cursor = merger.open("scan", null, null)) {
+            Iterator<Integer> iterator = cursor.iterator();
+            for (int i = 0; i < 4; i++) {
+                iterator.next();
+            }
+            // 第一个分片已读完并释放
+            Assert.assertEquals(7, openSessions.get());
+        }
+        Assert.assertEquals(0, openSessions.get());
+    }
+
+    @Test
+    public void test_openInsidePinnedScope() throws SQLException {
+        DBRouterConfig config = new DBRouterConfig(2, 2, "userId");
+        DBRouterStrategyHashCode strategy = new DBRouterStrategyHashCode(config);
+        Map<Object, Object> targets = new HashMap<>();
+        for (int db = 1; db <= 2; db++) {
+            JdbcDataSource shard = new JdbcDataSource();
+            shard.setURL("jdbc:h2:mem:cursor_pin_db" + db + ";DB_CLOSE_DELAY=-1");
+            try (Connection connection = shard.getConnection(); Statement statement = connection.createStatement()) {
+                for (int tb = 0; tb < 2; tb++) {
+                    statement.execute("DROP TABLE IF EXISTS user_00" + tb);
+                    statement.execute("CREATE TABLE user_00" + tb + " (user_id VARCHAR(32) PRIMARY KEY)");
+                    statement.execute("INSERT INTO user_00" + tb + " VALUES ('db" + db + "_tb" + tb + "')");
+                }
+            }
+            targets.put(String.format("db%02d", db), shard);
+        }
+        DynamicDataSource dataSource = new DynamicDataSource();
+        dataSource.setTargetDataSources(targets);
+        dataSource.setDefaultTargetDataSource(targets.get("db01"));
+        dataSource.afterPropertiesSet();
+
+        // 与 mybatis-spring 相同，经 DataSourceUtils 获取连接
+        Configuration configuration = new Configuration(new Environment("test", new SpringManagedTransactionFactory(), dataSource));
+        configuration.addInterceptor(new DynamicMybatisPlugin(config));
+        configuration.addMapper(UserMapper.class);
+        DBRouterCursorMerger pinnedMerger = new DBRouterCursorMerger(new SqlSessionFactoryBuilder().build(configuration), strategy);
+        pinnedMerger.setDataSource(dataSource);
+
+        DBRouterJoinPoint point = new DBRouterJoinPoint(config, strategy);
+        point.setDataSource(dataSource);
+        AspectJProxyFactory factory = new AspectJProxyFactory(new ScanServiceImpl(dataSource, pinnedMerger));
+        factory.addInterface(ScanService.class);
+        factory.addAspect(point);
+        ScanService service = factory.getProxy();
+
+        // 各分片各自借出连接，不复用外层分片的固定连接
+        Assert.assertEquals(Arrays.asList("db1_tb0", "db1_tb1", "db2_tb0", "db2_tb1"), service.scan("user_1"));
+        Assert.assertFalse(TransactionSynchronizationManager.hasResource(dataSource));
+        Assert.assertNull(DBContextHolder.getRouteTarget());
+    }
+
+    private static class ListCursor<T> implements Cursor<T> {
+
+        private final List<T> rows;
+
+        private int index = -1;
+
+        private boolean open = true;
+
+        private ListCursor(List<T> rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public boolean isConsumed() {
+            return index + 1 >= rows.size();
+        }
+
+        @Override
+        public int getCurrentIndex() {
+            return index;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return new Iterator<T>() {
+                @Override
+                public boolean hasNext() {
+                    return open && index + 1 < rows.size();
+                }
+
+                @Override
+                public T next() {
+                    return rows.get(++index);
+                }
+            };
+        }
+
+    }
+
+}
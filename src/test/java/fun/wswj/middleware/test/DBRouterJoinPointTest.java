@@ -0,0 +1,315 @@
+package fun.wswj.middleware.test;
+
+import fun.wswj.middleware.db.router.DBContextHolder;
+import fun.wswj.middleware.db.router.DBRouterConfig;
+import fun.wswj.middleware.db.router.DBRouterJoinPoint;
+import fun.wswj.middleware.db.router.RouteScope;
+import fun.wswj.middleware.db.router.RouteTarget;
+import fun.wswj.middleware.db.router.annotation.DBRouter;
+import fun.wswj.middleware.db.router.annotation.RouterKey;
+import fun.wswj.middleware.db.router.dynamic.DynamicDataSource;
+import fun.wswj.middleware.db.router.strategy.impl.DBRouterStrategyHashCode;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DBRouterJoinPointTest {
+
+    public interface InnerService {
+
+        RouteTarget current(String userId);
+
+    }
+
+    public interface OuterService {
+
+        List<RouteTarget> call(String userId, String otherUserId);
+
+    }
+
+    public static class InnerServiceImpl implements InnerService {
+
+        @Override
+        @DBRouter(key = "userId")
+        public RouteTarget current(@RouterKey String userId) {
+            return DBContextHolder.getRouteTarget();
+        }
+
+    }
+
+    public static class OuterServiceImpl implements OuterService {
+
+        private final InnerService inner;
+
+        public OuterServiceImpl(InnerService inner) {
+            this.inner = inner;
+        }
+
+        @Override
+        @DBRouter(key = "userId")
+        public List<RouteTarget> call(@RouterKey String userId, String otherUserId) {
+            List<RouteTarget> targets = new ArrayList<>();
+            targets.add(DBContextHolder.getRouteTarget());
+            targets.add(inner.current(userId));
+            targets.add(DBContextHolder.getRouteTarget());
+            targets.add(inner.current(otherUserId));
+            targets.add(DBContextHolder.getRouteTarget());
+            return targets;
+        }
+
+    }
+
+    public interface ShardService {
+
+        List<Connection> connections(String userId, String otherUserId);
+
+        Connection connection(String userId);
+
+    }
+
+    public static class ShardServiceImpl implements ShardService {
+
+        private final DataSource dataSource;
+
+        private ShardService self;
+
+        public ShardServiceImpl(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        @Override
+        @DBRouter(key = "userId", pinConnection = true)
+        public List<Connection> connections(@RouterKey String userId, String otherUserId) {
+            List<Connection> connections = new ArrayList<>();
+            connections.add(connection(userId));
+            connections.add(self.connection(userId));
+            connections.add(self.connection(otherUserId));
+            connections.add(connection(userId));
+            return connections;
+        }
+
+        @Override
+        @DBRouter(key = "userId")
+        public Connection connection(@RouterKey String userId) {
+            // 与 mybatis-spring 相同，经 DataSourceUtils 获取并释放连接
+            Connection connection = DataSourceUtils.getConnection(dataSource);
+            DataSourceUtils.releaseConnection(connection, dataSource);
+            return connection;
+        }
+
+    }
+
+    public static class OrderQuery {
+
+        @DBRouter(key = "orderId")
+        public RouteTarget query(String userId, String orderId) {
+            return DBContextHolder.getRouteTarget();
+        }
+
+    }
+
+    @After
+    public void clear() {
+        DBContextHolder.clearRouteTarget();
+        DBContextHolder.setRouteScope(null);
+    }
+
+    @Test
+    public void test_nestedScopes() {
+        DBRouterConfig config = new DBRouterConfig(4, 8, "userId");
+        AtomicInteger routed = new AtomicInteger();
+        DBRouterStrategyHashCode strategy = new DBRouterStrategyHashCode(config) {
+            @Override
+            public void doRouter(String dbKeyAttr) {
+                routed.incrementAndGet();
+                super.doRouter(dbKeyAttr);
+            }
+        };
+        DBRouterJoinPoint point = new DBRouterJoinPoint(config, strategy);
+        InnerService inner = proxy(new InnerServiceImpl(), InnerService.class, point);
+        OuterService outer = proxy(new OuterServiceImpl(inner), OuterService.class, point);
+
+        String userId = "user_1";
+        String otherUserId = findKeyOnOtherTable(strategy, userId);
+        routed.set(0);
+        List<RouteTarget> targets = outer.call(userId, otherUserId);
+
+        RouteTarget outerTarget = targets.get(0);
+        Assert.assertNotNull(outerTarget);
+        // 相同路由键沿用外层路由，返回后外层路由不被清空
+        Assert.assertSame(outerTarget, targets.get(1));
+        Assert.assertSame(outerTarget, targets.get(2));
+        // 不同路由键按新路由键路由，返回后恢复外层路由
+        Assert.assertNotEquals(outerTarget, targets.get(3));
+        Assert.assertSame(outerTarget, targets.get(4));
+        Assert.assertEquals(2, routed.get());
+
+        // 最外层返回后清空
+        Assert.assertNull(DBContextHolder.getRouteTarget());
+        Assert.assertNull(DBContextHolder.getRouteScope());
+    }
+
+    @Test
+    public void test_attrValueKeepsRoutePlan() throws NoSuchMethodException {
+        DBRouterConfig config = new DBRouterConfig(4, 8, "userId");
+        DBRouterStrategyHashCode strategy = new DBRouterStrategyHashCode(config);
+        DBRouterJoinPoint point = new DBRouterJoinPoint(config, strategy);
+        Method method = OrderQuery.class.getMethod("query", String.class, String.class);
+
+        // 按不同字段交替读取，互不覆盖
+        Object[] args = {"user_1", "order_1"};
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals("user_1", point.getAttrValue("userId", args, method));
+            Assert.assertEquals("order_1", point.getAttrValue("orderId", args, method));
+        }
+
+        // 按全局路由字段读取后，@DBRouter 方法仍按注解的 key 路由
+        String orderId = findKeyOnOtherTable(strategy, "user_1");
+        AspectJProxyFactory factory = new AspectJProxyFactory(new OrderQuery());
+        factory.setProxyTargetClass(true);
+        factory.addAspect(point);
+        OrderQuery orderQuery = factory.getProxy();
+        Assert.assertEquals(strategy.locate(orderId), orderQuery.query("user_1", orderId));
+    }
+
+    @Test
+    public void test_attrValueMissing() throws NoSuchMethodException {
+        DBRouterConfig config = new DBRouterConfig(4, 8, "userId");
+        DBRouterJoinPoint point = new DBRouterJoinPoint(config, new DBRouterStrategyHashCode(config));
+        Method keyed = InnerServiceImpl.class.getMethod("current", String.class);
+        Method query = OrderQuery.class.getMethod("query", String.class, String.class);
+
+        // @RouterKey 参数为空时返回 null
+        Assert.assertNull(point.getAttrValue("userId", new Object[]{null}, keyed));
+        Assert.assertEquals("user_1", point.getAttrValue("userId", new Object[]{"user_1"}, keyed));
+
+        // 路由字段为空时只读取 @RouterKey 参数，没有时返回 null
+        Assert.assertEquals("user_1", point.getAttrValue(null, new Object[]{"user_1"}, keyed));
+        Assert.assertEquals("user_1", point.getAttrValue(" ", new Object[]{"user_1"}, keyed));
+        Assert.assertNull(point.getAttrValue(null, new Object[]{"user_1", "order_1"}, query));
+        Assert.assertNull(point.getAttrValue("", new Object[]{"user_1", "order_1"}, query));
+
+        // 入参中没有该字段或值为空时返回 null
+        Assert.assertNull(point.getAttrValue("userId", new Object[]{null, "order_1"}, query));
+        Assert.assertNull(point.getAttrValue("email", new Object[]{"user_1", "order_1"}, query));
+    }
+
+    @Test
+    public void test_manualRouteIsRestored() {
+        DBRouterConfig config = new DBRouterConfig(4, 8, "userId");
+        DBRouterStrategyHashCode strategy = new DBRouterStrategyHashCode(config);
+        InnerService inner = proxy(new InnerServiceImpl(), InnerService.class, new DBRouterJoinPoint(config, strategy));
+
+        // 调用前手动设置的路由在注解方法返回后恢复
+        DBContextHolder.setRouteTarget(RouteTarget.of(3, 5));
+        Assert.assertNotNull(inner.current("user_1"));
+        Assert.assertEquals(RouteTarget.of(3, 5), DBContextHolder.getRouteTarget());
+        DBContextHolder.clearRouteTarget();
+
+        // 外层路由被手动修改后，同一路由键的调用重新路由
+        RouteTarget routed = inner.current("user_1");
+        DBContextHolder.setRouteScope(new RouteScope("user_1", routed));
+        DBContextHolder.setRouteTarget(routed.withTbIdx(routed.getTbIdx() == 0 ? 1 : 0));
+        Assert.assertEquals(routed, inner.current("user_1"));
+    }
+
+    @Test
+    public void test_pinConnection() throws SQLException {
+        DBRouterConfig config = new DBRouterConfig(2, 4, "userId");
+        DBRouterStrategyHashCode strategy = new DBRouterStrategyHashCode(config);
+        AtomicInteger checkouts = new AtomicInteger();
+        Map<Object, Object> targets = new HashMap<>();
+        for (int i = 1; i <= 2; i++) {
+            JdbcDataSource shard = new JdbcDataSource();
+            shard.setURL("jdbc:h2:mem:pin_db" + i + ";DB_CLOSE_DELAY=-1");
+            targets.put(String.format("db%02d", i), new DelegatingDataSource(shard) {
+                @Override
+                public Connection getConnection() throws SQLException {
+                    checkouts.incrementAndGet();
+                    return super.getConnection();
+                }
+            });
+        }
+        DynamicDataSource dynamicDataSource = new DynamicDataSource();
+        dynamicDataSource.setTargetDataSources(targets);
+        dynamicDataSource.setDefaultTargetDataSource(targets.get("db01"));
+        dynamicDataSource.afterPropertiesSet();
+
+        DBRouterJoinPoint point = new DBRouterJoinPoint(config, strategy);
+        point.setDataSource(dynamicDataSource);
+        ShardServiceImpl impl = new ShardServiceImpl(dynamicDataSource);
+        ShardService service = proxy(impl, ShardService.class, point);
+        impl.self = service;
+
+        String userId = "user_1";
+        String otherUserId = findKeyOnOtherDb(strategy, userId);
+        List<Connection> connections = service.connections(userId, otherUserId);
+
+        // 同一分片的多次调用复用一个连接，切换分片时另借连接，返回后继续使用固定连接
+        Connection pinned = connections.get(0);
+        Assert.assertSame(pinned, connections.get(1));
+        Assert.assertNotSame(pinned, connections.get(2));
+        Assert.assertSame(pinned, connections.get(3));
+        Assert.assertEquals(2, checkouts.get());
+
+        // 作用域结束后解绑并归还
+        Assert.assertTrue(pinned.isClosed());
+        Assert.assertFalse(TransactionSynchronizationManager.hasResource(dynamicDataSource));
+
+        // 未开启时每次调用都借出连接
+        checkouts.set(0);
+        service.connection(userId);
+        service.connection(userId);
+        Assert.assertEquals(2, checkouts.get());
+    }
+
+    private static String findKeyOnOtherDb(DBRouterStrategyHashCode strategy, String userId) {
+        strategy.doRouter(userId);
+        int dbIdx = DBContextHolder.getRouteTarget().getDbIdx();
+        for (int i = 2; ; i++) {
+            String key = "user_" + i;
+            strategy.doRouter(key);
+            if (dbIdx != DBContextHolder.getRouteTarget().getDbIdx()) {
+                strategy.clear();
+                return key;
+            }
+        }
+    }
+
+    private static String findKeyOnOtherTable(DBRouterStrategyHashCode strategy, String userId) {
+        strategy.doRouter(userId);
+        RouteTarget target = DBContextHolder.getRouteTarget();
+        for (int i = 2; ; i++) {
+            String key = "user_" + i;
+            strategy.doRouter(key);
+            if (!target.equals(DBContextHolder.getRouteTarget())) {
+                strategy.clear();
+                return key;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(T target, Class<T> type, DBRouterJoinPoint point) {
+        AspectJProxyFactory factory = new AspectJProxyFactory(target);
+        factory.addInterface(type);
+        factory.addAspect(point);
+        return (T) factory.getProxy();
+    }
+
+}
@@ -0,0 +1,50 @@
+package fun.wswj.middleware.test;
+
+import fun.wswj.middleware.db.router.RouteTarget;
+import fun.wswj.middleware.db.router.metrics.DBRouterMeterBinder;
+import fun.wswj.middleware.db.router.metrics.DBRouterMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class DBRouterMetricsTest {
+
+    @Test
+    public void test_recordAndSkew() {
+        DBRouterMetrics metrics = new DBRouterMetrics(2, 4);
+        for (int i = 0; i < 30; i++) {
+            metrics.recordRouting(RouteTarget.of(1, i % 4), 100);
+        }
+        for (int i = 0; i < 10; i++) {
+            metrics.recordRouting(RouteTarget.of(2, i % 4), 100);
+        }
+        // 未路由与超出范围的路由计入默认
+        metrics.recordStatement(null);
+        metrics.recordStatement(RouteTarget.of(9, 0));
+
+        Assert.assertEquals(40, metrics.getRoutingCount());
+        Assert.assertEquals(4000, metrics.getRoutingNanos());
+        Assert.assertEquals(2, metrics.getStatementCount(0, 0));
+        // 库1：30 次，平均 20 次
+        Assert.assertEquals(1.5, metrics.getDbSkew(), 0.0001);
+    }
+
+    @Test
+    public void test_meterBinder() {
+        DBRouterMetrics metrics = new DBRouterMetrics(2, 4);
+        metrics.recordRouting(RouteTarget.of(2, 3), 100);
+        metrics.recordExecution(RouteTarget.of(2, 3), TimeUnit.MILLISECONDS.toNanos(5));
+        metrics.recordCheckout(RouteTarget.of(2, 3), TimeUnit.MILLISECONDS.toNanos(1));
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        new DBRouterMeterBinder(metrics, true).bindTo(registry);
+
+        Assert.assertEquals(1.0, registry.get("db.router.route.requests").tag("db", "02").tag("tb", "003").functionCounter().count(), 0.0001);
+        Assert.assertEquals(5.0, registry.get("db.router.shard.execution").tag("db", "02").functionTimer().totalTime(TimeUnit.MILLISECONDS), 0.0001);
+        Assert.assertEquals(1.0, registry.get("db.router.pool.checkout").tag("db", "02").functionTimer().totalTime(TimeUnit.MILLISECONDS), 0.0001);
+        Assert.assertEquals(8.0, registry.get("db.router.skew").tag("level", "table").gauge().value(), 0.0001);
+    }
+
+}
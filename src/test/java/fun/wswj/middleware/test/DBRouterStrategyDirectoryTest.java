@@ -0,0 +1,87 @@
+package fun.wswj.middleware.test;
+
+import fun.wswj.middleware.db.router.DBContextHolder;
+import fun.wswj.middleware.db.router.DBRouterConfig;
+import fun.wswj.middleware.db.router.RouteTarget;
+import fun.wswj.middleware.db.router.directory.RouteDirectoryWriter;
+import fun.wswj.middleware.db.router.strategy.IDBRouterStrategy;
+import fun.wswj.middleware.db.router.strategy.impl.DBRouterStrategyDirectory;
+import fun.wswj.middleware.db.router.strategy.impl.DBRouterStrategyHashCode;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Map;
+
+public class DBRouterStrategyDirectoryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void test_overrideAndFallback() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("route.dir");
+        Map<String, RouteTarget> overrides = new HashMap<>();
+        overrides.put("tenant_big", RouteTarget.of(2, 3));
+        overrides.put("10086", RouteTarget.of(1, 0));
+        for (int i = 0; i < 100000; i++) {
+            overrides.put("moved_" + i, RouteTarget.of(1 + i % 2, i % 4));
+        }
+        RouteDirectoryWriter.write(file, 1L, overrides);
+
+        DBRouterConfig config = new DBRouterConfig(2, 4, "userId");
+        DBRouterStrategyHashCode hashCode = new DBRouterStrategyHashCode(config);
+        DBRouterStrategyDirectory strategy = new DBRouterStrategyDirectory(config, hashCode, file, 0);
+        Assert.assertEquals(100002, strategy.getDirectory().size());
+
+        Assert.assertEquals(RouteTarget.of(2, 3), routeOf(strategy, "tenant_big"));
+        Assert.assertEquals(RouteTarget.of(2, 3), routeOf(strategy, "moved_99999"));
+        strategy.doRouter(10086L);
+        Assert.assertEquals(RouteTarget.of(1, 0), DBContextHolder.getRouteTarget());
+
+        // 未命中时与被包装策略一致
+        for (int i = 0; i < 1000; i++) {
+            String key = "user_" + i;
+            Assert.assertEquals(routeOf(hashCode, key), routeOf(strategy, key));
+        }
+        strategy.clear();
+    }
+
+    @Test
+    public void test_hotSwap() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("route.dir");
+        Map<String, RouteTarget> overrides = new HashMap<>();
+        overrides.put("tenant_big", RouteTarget.of(2, 3));
+        RouteDirectoryWriter.write(file, 1L, overrides);
+        DBRouterConfig config = new DBRouterConfig(2, 4, "userId");
+        DBRouterStrategyDirectory strategy = new DBRouterStrategyDirectory(config, new DBRouterStrategyHashCode(config), file, 0);
+
+        // 新版本：迁到 db01
+        overrides.put("tenant_big", RouteTarget.of(1, 1));
+        RouteDirectoryWriter.write(file, 2L, overrides);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 1000));
+        Assert.assertTrue(strategy.reload());
+        Assert.assertEquals(2L, strategy.getDirectory().getVersion());
+        Assert.assertEquals(RouteTarget.of(1, 1), routeOf(strategy, "tenant_big"));
+
+        // 超出库表范围的文件被拒绝，继续使用旧目录
+        overrides.put("tenant_big", RouteTarget.of(3, 0));
+        RouteDirectoryWriter.write(file, 3L, overrides);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 2000));
+        Assert.assertFalse(strategy.reload());
+        Assert.assertEquals(RouteTarget.of(1, 1), routeOf(strategy, "tenant_big"));
+        strategy.clear();
+        strategy.close();
+    }
+
+    private static RouteTarget routeOf(IDBRouterStrategy strategy, String key) {
+        strategy.doRouter(key);
+        return DBContextHolder.getRouteTarget();
+    }
+
+}
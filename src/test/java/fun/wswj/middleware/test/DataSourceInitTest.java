@@ -0,0 +1,249 @@
+package fun.wswj.middleware.test;
+
+import fun.wswj.middleware.db.router.DBRouterConfig;
+import fun.wswj.middleware.db.router.config.DataSourceAutoConfig;
+import fun.wswj.middleware.db.router.dynamic.DynamicDataSource;
+import fun.wswj.middleware.db.router.dynamic.LazyDataSource;
+import fun.wswj.middleware.db.router.id.ShardIdGenerator;
+import fun.wswj.middleware.db.router.limit.ShardLimiters;
+import fun.wswj.middleware.db.router.metrics.DBRouterMetrics;
+import fun.wswj.middleware.db.router.strategy.IDBRouterStrategy;
+import fun.wswj.middleware.db.router.strategy.impl.DBRouterStrategyHashCode;
+import fun.wswj.middleware.db.router.topology.RoutingTopology;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.mock.env.MockEnvironment;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DataSourceInitTest {
+
+    private static final String PREFIX = "mini-db-router.jdbc.datasource.";
+
+    /**
+     * 记录创建线程、同时创建数与获取连接次数的数据源，创建耗时 200 毫秒，模拟连接池初始化
+     */
+    public static class RecordingDataSource extends JdbcDataSource {
+
+        static final Set<String> CREATE_THREADS = ConcurrentHashMap.newKeySet();
+
+        static final AtomicInteger INSTANCES = new AtomicInteger();
+
+        static final AtomicInteger CREATING = new AtomicInteger();
+
+        static final AtomicInteger MAX_CREATING = new AtomicInteger();
+
+        static final AtomicInteger CONNECTIONS = new AtomicInteger();
+
+        public RecordingDataSource() {
+            INSTANCES.incrementAndGet();
+            CREATE_THREADS.add(Thread.currentThread().getName());
+            MAX_CREATING.accumulateAndGet(CREATING.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                CREATING.decrementAndGet();
+            }
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            CONNECTIONS.incrementAndGet();
+            return super.getConnection();
+        }
+
+    }
+
+    @Before
+    public void init() {
+        RecordingDataSource.CREATE_THREADS.clear();
+        RecordingDataSource.INSTANCES.set(0);
+        RecordingDataSource.MAX_CREATING.set(0);
+        RecordingDataSource.CONNECTIONS.set(0);
+    }
+
+    @Test
+    public void test_lazyDataSource() throws Exception {
+        AtomicInteger created = new AtomicInteger();
+        LazyDataSource lazy = new LazyDataSource("db01", () -> {
+            created.incrementAndGet();
+            JdbcDataSource ds = new JdbcDataSource();
+            ds.setURL("jdbc:h2:mem:lazy_db01;DB_CLOSE_DELAY=-1");
+            return ds;
+        });
+        Assert.assertFalse(lazy.isInitialized());
+
+        // 并发首次访问只创建一次连接池
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    try (Connection connection = lazy.getConnection()) {
+                        return connection.isValid(1);
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<Boolean> future : futures) {
+                Assert.assertTrue(future.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        Assert.assertTrue(lazy.isInitialized());
+        Assert.assertEquals(1, created.get());
+    }
+
+    @Test
+    public void test_lazyInit() throws SQLException {
+        MockEnvironment environment = environment("lazy", 4)
+                .withProperty(PREFIX + "lazyInit", "true");
+        DynamicDataSource dataSource = createDataSource(environment);
+        Map<Object, DataSource> targets = dataSource.getResolvedDataSources();
+        for (DataSource target : targets.values()) {
+            Assert.assertFalse(((LazyDataSource) target).isInitialized());
+        }
+        Assert.assertTrue(RecordingDataSource.CREATE_THREADS.isEmpty());
+
+        // 只创建用到的分库
+        try (Connection ignored = targets.get("db02").getConnection()) {
+            Assert.assertTrue(((LazyDataSource) targets.get("db02")).isInitialized());
+        }
+        Assert.assertFalse(((LazyDataSource) targets.get("db01")).isInitialized());
+    }
+
+    @Test
+    public void test_parallelCreate() {
+        MockEnvironment environment = environment("parallel", 4)
+                .withProperty(PREFIX + "initParallelism", "4");
+        DynamicDataSource dataSource = createDataSource(environment);
+
+        // 4 个分库与默认数据源在初始化线程上并行创建
+        Assert.assertEquals(4, dataSource.getResolvedDataSources().size());
+        Assert.assertEquals(5, RecordingDataSource.INSTANCES.get());
+        Assert.assertTrue(RecordingDataSource.MAX_CREATING.get() > 1);
+        for (String thread : RecordingDataSource.CREATE_THREADS) {
+            Assert.assertTrue(thread, thread.startsWith("db-router-init-"));
+        }
+        // 未开启预热时不建立连接
+        Assert.assertEquals(0, RecordingDataSource.CONNECTIONS.get());
+    }
+
+    @Test
+    public void test_warmUp() {
+        MockEnvironment environment = environment("warm", 2)
+                .withProperty(PREFIX + "warmUp", "true");
+        createDataSource(environment);
+        // db01、db02 与默认数据源 db00 各建立一次连接
+        Assert.assertEquals(3, RecordingDataSource.CONNECTIONS.get());
+    }
+
+    @Test
+    public void test_defaultReused() {
+        MockEnvironment environment = environment("reuse", 2)
+                .withProperty(PREFIX + "default", "db01");
+        DynamicDataSource dataSource = createDataSource(environment);
+        Assert.assertSame(dataSource.getResolvedDataSources().get("db01"), dataSource.getResolvedDefaultDataSource());
+        // 默认数据源在分库集合中时不另建连接池
+        Assert.assertEquals(2, RecordingDataSource.INSTANCES.get());
+    }
+
+    @Test
+    public void test_failurePropagates() {
+        MockEnvironment environment = environment("fail", 3)
+                .withProperty(PREFIX + "db02.type-class-name", "fun.wswj.middleware.test.MissingDataSource");
+        try {
+            createDataSource(environment);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getCause() instanceof ClassNotFoundException);
+        }
+    }
+
+    @Test
+    public void test_idGeneratorOptIn() throws Exception {
+        // 未显式配置 idWorkerId 时不注册 ID 生成器
+        ConditionalOnProperty condition = DataSourceAutoConfig.class.getMethod("shardIdGenerator", IDBRouterStrategy.class)
+                .getAnnotation(ConditionalOnProperty.class);
+        Assert.assertArrayEquals(new String[]{"idWorkerId"}, condition.name());
+
+        // 开启后位数不足时启动失败并提示调整配置
+        MockEnvironment environment = environment("idgen", 2)
+                .withProperty(PREFIX + "dbCount", "64")
+                .withProperty(PREFIX + "tbCount", "256")
+                .withProperty(PREFIX + "idWorkerId", "1");
+        DataSourceAutoConfig autoConfig = new DataSourceAutoConfig();
+        autoConfig.setEnvironment(environment);
+        try {
+            autoConfig.shardIdGenerator(new DBRouterStrategyHashCode(new DBRouterConfig(64, 256, "userId")));
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("idWorkerBits/idGeneDbBits/idGeneTbBits"));
+        }
+
+        // 小拓扑下正常创建
+        autoConfig.setEnvironment(environment("idgen", 2).withProperty(PREFIX + "idWorkerId", "1"));
+        ShardIdGenerator generator = autoConfig.shardIdGenerator(new DBRouterStrategyHashCode(new DBRouterConfig(2, 2, "userId")));
+        Assert.assertTrue(generator.nextId(1L) > 0);
+    }
+
+    /**
+     * dbCount 个分库加默认数据源 db00，均为 RecordingDataSource
+     */
+    private static MockEnvironment environment(String name, int dbCount) {
+        StringBuilder list = new StringBuilder();
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty(PREFIX + "dbCount", String.valueOf(dbCount))
+                .withProperty(PREFIX + "tbCount", "2")
+                .withProperty(PREFIX + "routerKey", "userId")
+                .withProperty(PREFIX + "default", "db00");
+        for (int i = 0; i <= dbCount; i++) {
+            String db = String.format("db%02d", i);
+            if (i > 0) {
+                list.append(list.length() == 0 ? "" : ",").append(db);
+            }
+            environment.withProperty(PREFIX + db + ".url", "jdbc:h2:mem:init_" + name + "_" + db + ";DB_CLOSE_DELAY=-1")
+                    .withProperty(PREFIX + db + ".username", "sa")
+                    .withProperty(PREFIX + db + ".password", "sa")
+                    .withProperty(PREFIX + db + ".driver-class-name", "org.h2.Driver")
+                    .withProperty(PREFIX + db + ".type-class-name", RecordingDataSource.class.getName());
+        }
+        return environment.withProperty(PREFIX + "list", list.toString());
+    }
+
+    private static DynamicDataSource createDataSource(MockEnvironment environment) {
+        DataSourceAutoConfig autoConfig = new DataSourceAutoConfig();
+        autoConfig.setEnvironment(environment);
+        DynamicDataSource dataSource = (DynamicDataSource) autoConfig.createDataSource(provider(DBRouterMetrics.class), provider(RoutingTopology.class), provider(ShardLimiters.class));
+        dataSource.afterPropertiesSet();
+        return dataSource;
+    }
+
+    private static <T> ObjectProvider<T> provider(Class<T> type) {
+        return new StaticListableBeanFactory().getBeanProvider(type);
+    }
+
+}
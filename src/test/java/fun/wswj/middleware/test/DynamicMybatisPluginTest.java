@@ -0,0 +1,175 @@
+package fun.wswj.middleware.test;
+
+import fun.wswj.middleware.db.router.DBContextHolder;
+import fun.wswj.middleware.db.router.DBRouterConfig;
+import fun.wswj.middleware.db.router.RouteTarget;
+import fun.wswj.middleware.db.router.annotation.DBRouterStrategy;
+import fun.wswj.middleware.db.router.dynamic.DynamicMybatisPlugin;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.SelectKey;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+public class DynamicMybatisPluginTest {
+
+    public static class Order {
+
+        private long id;
+
+        private final String userId;
+
+        public Order(String userId) {
+            this.userId = userId;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public void setId(long id) {
+            this.id = id;
+        }
+
+        public String getUserId() {
+            return userId;
+        }
+
+    }
+
+    /**
+     * 接口上声明分表，全部方法分表
+     */
+    @DBRouterStrategy(splitTable = true)
+    public interface SplitOrderMapper {
+
+        @Select("SELECT COUNT(*) FROM orders")
+        int count();
+
+        @Select("SELECT COUNT(*) FROM orders WHERE user_id = #{userId}")
+        int countByUser(@Param("userId") String userId);
+
+    }
+
+    /**
+     * 方法上声明分表，未声明的方法访问逻辑表
+     */
+    public interface OrderMapper {
+
+        @DBRouterStrategy(splitTable = true)
+        @Insert("INSERT INTO orders (id, user_id) VALUES (#{id}, #{userId})")
+        @SelectKey(statement = "SELECT COALESCE(MAX(id), 0) + 1 FROM orders", keyProperty = "id", before = true, resultType = long.class)
+        void insert(Order order);
+
+        @Select("SELECT COUNT(*) FROM orders")
+        int countLogical();
+
+    }
+
+    private JdbcDataSource dataSource;
+
+    private DynamicMybatisPlugin plugin;
+
+    private SqlSessionFactory sqlSessionFactory;
+
+    @Before
+    public void init() throws SQLException {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:mybatis_plugin;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS orders");
+            statement.execute("CREATE TABLE orders (id BIGINT PRIMARY KEY, user_id VARCHAR(32))");
+            for (int tb = 0; tb < 4; tb++) {
+                statement.execute("DROP TABLE IF EXISTS orders_00" + tb);
+                statement.execute("CREATE TABLE orders_00" + tb + " (id BIGINT PRIMARY KEY, user_id VARCHAR(32))");
+                // 各分表预置 tb 行，按行数区分实际访问的表
+                for (int i = 0; i < tb; i++) {
+                    statement.execute("INSERT INTO orders_00" + tb + " (id, user_id) VALUES (" + (tb * 100 + i) + ", 'seed')");
+                }
+            }
+        }
+        plugin = new DynamicMybatisPlugin(new DBRouterConfig(1, 4, "userId"));
+        Configuration configuration = new Configuration(new Environment("test", new JdbcTransactionFactory(), dataSource));
+        configuration.addInterceptor(plugin);
+        configuration.addMapper(SplitOrderMapper.class);
+        configuration.addMapper(OrderMapper.class);
+        sqlSessionFactory = new SqlSessionFactoryBuilder().build(configuration);
+    }
+
+    @After
+    public void clear() {
+        DBContextHolder.clearRouteTarget();
+    }
+
+    @Test
+    public void test_slotReuseAndGrowth() {
+        // 同一 SQL 与表下标只改写一次
+        Assert.assertEquals(1, count(1));
+        Assert.assertEquals(1, count(1));
+        Assert.assertEquals(1, plugin.getRewrites());
+        Assert.assertEquals(1, plugin.getRewriteHits());
+        Assert.assertEquals(1, plugin.getCacheSize());
+
+        // 更大的表下标扩容同一条缓存，已有的改写结果保留
+        Assert.assertEquals(3, count(3));
+        Assert.assertEquals(2, plugin.getRewrites());
+        Assert.assertEquals(1, plugin.getCacheSize());
+        Assert.assertEquals(1, count(1));
+        Assert.assertEquals(2, plugin.getRewrites());
+        Assert.assertEquals(2, plugin.getRewriteHits());
+
+        // 较小的表下标使用已有空位
+        Assert.assertEquals(2, count(2));
+        Assert.assertEquals(3, plugin.getRewrites());
+        Assert.assertEquals(1, plugin.getCacheSize());
+
+        // 不同 SQL 分开缓存
+        try (SqlSession session = sqlSessionFactory.openSession(true)) {
+            Assert.assertEquals(0, session.getMapper(SplitOrderMapper.class).countByUser("user_1"));
+        }
+        Assert.assertEquals(2, plugin.getCacheSize());
+    }
+
+    @Test
+    public void test_splitTableResolution() {
+        DBContextHolder.setRouteTarget(RouteTarget.of(1, 2));
+        try (SqlSession session = sqlSessionFactory.openSession(true)) {
+            // 接口上的注解作用于全部方法
+            Assert.assertEquals(2, session.getMapper(SplitOrderMapper.class).count());
+
+            // selectKey 语句 id 为 insert!selectKey，按 insert 方法上的注解分表，主键取自分表
+            OrderMapper mapper = session.getMapper(OrderMapper.class);
+            Order order = new Order("user_1");
+            mapper.insert(order);
+            Assert.assertEquals(202, order.getId());
+
+            // 未声明分表的方法访问逻辑表
+            Assert.assertEquals(0, mapper.countLogical());
+        }
+    }
+
+    /**
+     * 每次打开新的 SqlSession，不命中 MyBatis 一级缓存
+     */
+    private int count(int tbIdx) {
+        DBContextHolder.setRouteTarget(RouteTarget.of(1, tbIdx));
+        try (SqlSession session = sqlSessionFactory.openSession(true)) {
+            return session.getMapper(SplitOrderMapper.class).count();
+        }
+    }
+
+}
@@ -0,0 +1,283 @@
+package fun.wswj.middleware.test;
+
+import fun.wswj.middleware.db.router.DBContextHolder;
+import fun.wswj.middleware.db.router.DBRouterConfig;
+import fun.wswj.middleware.db.router.DBRouterJoinPoint;
+import fun.wswj.middleware.db.router.RouteTarget;
+import fun.wswj.middleware.db.router.annotation.DBRouter;
+import fun.wswj.middleware.db.router.annotation.DBRouterStrategy;
+import fun.wswj.middleware.db.router.annotation.RouterKey;
+import fun.wswj.middleware.db.router.annotation.SecondaryIndex;
+import fun.wswj.middleware.db.router.broadcast.DBRouterBroadcast;
+import fun.wswj.middleware.db.router.dynamic.DynamicDataSource;
+import fun.wswj.middleware.db.router.dynamic.DynamicMybatisPlugin;
+import fun.wswj.middleware.db.router.hotkey.HotKeyDetector;
+import fun.wswj.middleware.db.router.index.GlobalIndex;
+import fun.wswj.middleware.db.router.index.GlobalIndexPlugin;
+import fun.wswj.middleware.db.router.strategy.impl.DBRouterStrategyHashCode;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class GlobalIndexTest {
+
+    public static class User {
+
+        private final String userId;
+
+        private final String email;
+
+        public User(String userId, String email) {
+            this.userId = userId;
+            this.email = email;
+        }
+
+        public String getUserId() {
+            return userId;
+        }
+
+        public String getEmail() {
+            return email;
+        }
+
+    }
+
+    @DBRouterStrategy(splitTable = true)
+    public interface UserMapper {
+
+        @Insert("INSERT INTO user (user_id, email) VALUES (#{userId}, #{email})")
+        @SecondaryIndex(name = "idx_user_email", key = "email")
+        void insert(User user);
+
+        @Update("UPDATE user SET email = #{email} WHERE user_id = #{userId}")
+        @SecondaryIndex(name = "idx_user_email", key = "email", previousKey = "oldEmail")
+        int updateEmail(@Param("userId") String userId, @Param("email") String email, @Param("oldEmail") String oldEmail);
+
+        @Delete("DELETE FROM user WHERE user_id = #{userId}")
+        @SecondaryIndex(name = "idx_user_email", key = "email")
+        int delete(User user);
+
+        @Select("SELECT user_id FROM user WHERE email = #{email}")
+        String queryUserIdByEmail(@Param("email") String email);
+
+    }
+
+    public interface UserService {
+
+        String queryUserIdByEmail(String email);
+
+    }
+
+    public static class UserServiceImpl implements UserService {
+
+        private final SqlSessionFactory sqlSessionFactory;
+
+        public UserServiceImpl(SqlSessionFactory sqlSessionFactory) {
+            this.sqlSessionFactory = sqlSessionFactory;
+        }
+
+        @Override
+        @DBRouter(key = "email", index = "idx_user_email")
+        public String queryUserIdByEmail(@RouterKey String email) {
+            try (SqlSession session = sqlSessionFactory.openSession(true)) {
+                return session.getMapper(UserMapper.class).queryUserIdByEmail(email);
+            }
+        }
+
+    }
+
+    private final DBRouterConfig config = new DBRouterConfig(2, 2, "userId");
+
+    private final DBRouterStrategyHashCode strategy = new DBRouterStrategyHashCode(config);
+
+    private DynamicDataSource dataSource;
+
+    private JdbcDataSource[] shards;
+
+    private SqlSessionFactory sqlSessionFactory;
+
+    private GlobalIndexPlugin plugin;
+
+    @Before
+    public void init() throws SQLException {
+        shards = new JdbcDataSource[2];
+        Map<Object, Object> targets = new HashMap<>();
+        for (int db = 0; db < 2; db++) {
+            shards[db] = new JdbcDataSource();
+            shards[db].setURL("jdbc:h2:mem:index_db" + (db + 1) + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+            try (Connection connection = shards[db].getConnection(); Statement statement = connection.createStatement()) {
+                for (int tb = 0; tb < 2; tb++) {
+                    statement.execute("DROP TABLE IF EXISTS user_00" + tb);
+                    statement.execute("CREATE TABLE user_00" + tb + " (user_id VARCHAR(32) PRIMARY KEY, email VARCHAR(64))");
+                    statement.execute("DROP TABLE IF EXISTS idx_user_email_00" + tb);
+                    statement.execute("CREATE TABLE idx_user_email_00" + tb + " (index_value VARCHAR(64) PRIMARY KEY, router_key VARCHAR(32) NOT NULL)");
+                }
+            }
+            targets.put(String.format("db%02d", db + 1), shards[db]);
+        }
+        dataSource = new DynamicDataSource();
+        dataSource.setTargetDataSources(targets);
+        dataSource.setDefaultTargetDataSource(shards[0]);
+        dataSource.afterPropertiesSet();
+
+        plugin = new GlobalIndexPlugin(new GlobalIndex(strategy, dataSource, 100, 60000), config.getRouterKey());
+        Configuration configuration = new Configuration(new Environment("test", new JdbcTransactionFactory(), dataSource));
+        configuration.addInterceptor(new DynamicMybatisPlugin(config));
+        configuration.addInterceptor(plugin);
+        configuration.addMapper(UserMapper.class);
+        sqlSessionFactory = new SqlSessionFactoryBuilder().build(configuration);
+    }
+
+    @After
+    public void clear() {
+        DBContextHolder.clearRouteTarget();
+    }
+
+    @Test
+    public void test_lookupByIndex() throws SQLException {
+        for (int i = 0; i < 20; i++) {
+            String userId = "user_" + i;
+            strategy.doRouter(userId);
+            try (SqlSession session = sqlSessionFactory.openSession(true)) {
+                session.getMapper(UserMapper.class).insert(new User(userId, userId + "@example.com"));
+            }
+            strategy.clear();
+        }
+        Assert.assertEquals(20, plugin.getIndexWrites());
+        Assert.assertEquals(0, plugin.getIndexFailures());
+
+        // 另一节点的缓存为空，首次查询多查一次映射表，之后命中缓存
+        GlobalIndex globalIndex = new GlobalIndex(strategy, dataSource, 100, 60000);
+        UserService userService = userService(globalIndex);
+        for (int i = 0; i < 20; i++) {
+            Assert.assertEquals("user_" + i, userService.queryUserIdByEmail("user_" + i + "@example.com"));
+            Assert.assertEquals("user_" + i, userService.queryUserIdByEmail("user_" + i + "@example.com"));
+        }
+        Assert.assertEquals(20, globalIndex.getLoads());
+        Assert.assertEquals(20, globalIndex.getHits());
+        Assert.assertNull(DBContextHolder.getRouteTarget());
+
+        // 映射缺失时广播查询
+        strategy.doRouter("user_99");
+        RouteTarget target = DBContextHolder.getRouteTarget();
+        strategy.clear();
+        try (Connection connection = shards[target.getDbIdx() - 1].getConnection();
+             PreparedStatement statement = connection.prepareStatement("INSERT INTO user" + target.getTableSuffix() + " (user_id, email) VALUES (?, ?)")) {
+            statement.setString(1, "user_99");
+            statement.setString(2, "user_99@example.com");
+            statement.executeUpdate();
+        }
+        Assert.assertEquals("user_99", userService.queryUserIdByEmail("user_99@example.com"));
+        Assert.assertNull(userService.queryUserIdByEmail("nobody@example.com"));
+    }
+
+    @Test
+    public void test_cacheEviction() throws InterruptedException {
+        GlobalIndex writer = new GlobalIndex(strategy, dataSource, 0, 0);
+        for (int i = 0; i < 10; i++) {
+            writer.put("idx_user_email", "user_" + i + "@example.com", "user_" + i);
+        }
+        Assert.assertEquals(0, writer.getCacheSize());
+
+        // 超出条数上限淘汰最久未使用的映射
+        GlobalIndex sized = new GlobalIndex(strategy, dataSource, 16, 60000);
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals("user_" + i, sized.lookup("idx_user_email", "user_" + i + "@example.com"));
+        }
+        Assert.assertTrue(sized.getCacheSize() <= 16);
+
+        // 超过有效期重新查询
+        GlobalIndex expiring = new GlobalIndex(strategy, dataSource, 100, 50);
+        expiring.lookup("idx_user_email", "user_1@example.com");
+        expiring.lookup("idx_user_email", "user_1@example.com");
+        Assert.assertEquals(1, expiring.getLoads());
+        Thread.sleep(80);
+        Assert.assertEquals("user_1", expiring.lookup("idx_user_email", "user_1@example.com"));
+        Assert.assertEquals(2, expiring.getLoads());
+        Assert.assertNull(expiring.lookup("idx_user_email", "nobody@example.com"));
+    }
+
+    @Test
+    public void test_indexNotRecordedAsHotKey() {
+        List<String> recorded = new ArrayList<>();
+        strategy.setHotKeyDetector(new HotKeyDetector() {
+            @Override
+            public void record(String key, RouteTarget target) {
+                recorded.add(key);
+            }
+        });
+        try {
+            // 映射表只计算位置，不计入热点统计，也不改变当前路由
+            strategy.doRouter("user_1");
+            RouteTarget route = DBContextHolder.getRouteTarget();
+            GlobalIndex globalIndex = new GlobalIndex(strategy, dataSource, 0, 0);
+            globalIndex.put("idx_user_email", "hot@example.com", "user_1");
+            Assert.assertEquals("user_1", globalIndex.lookup("idx_user_email", "hot@example.com"));
+            Assert.assertEquals(Collections.singletonList("user_1"), recorded);
+            Assert.assertSame(route, DBContextHolder.getRouteTarget());
+        } finally {
+            strategy.setHotKeyDetector(null);
+            strategy.clear();
+        }
+    }
+
+    @Test
+    public void test_removeStaleMappings() {
+        strategy.doRouter("user_1");
+        try (SqlSession session = sqlSessionFactory.openSession(true)) {
+            UserMapper userMapper = session.getMapper(UserMapper.class);
+            userMapper.insert(new User("user_1", "old@example.com"));
+            // 索引值变化时删除旧映射
+            Assert.assertEquals(1, userMapper.updateEmail("user_1", "new@example.com", "old@example.com"));
+            // 值未变化时保留映射
+            Assert.assertEquals(1, userMapper.updateEmail("user_1", "new@example.com", "new@example.com"));
+        }
+        strategy.clear();
+        Assert.assertEquals(0, plugin.getIndexFailures());
+        GlobalIndex reader = new GlobalIndex(strategy, dataSource, 0, 0);
+        Assert.assertNull(reader.lookup("idx_user_email", "old@example.com"));
+        Assert.assertEquals("user_1", reader.lookup("idx_user_email", "new@example.com"));
+
+        strategy.doRouter("user_1");
+        try (SqlSession session = sqlSessionFactory.openSession(true)) {
+            Assert.assertEquals(1, session.getMapper(UserMapper.class).delete(new User("user_1", "new@example.com")));
+        }
+        strategy.clear();
+        Assert.assertNull(reader.lookup("idx_user_email", "new@example.com"));
+        Assert.assertNull(DBContextHolder.getRouteTarget());
+    }
+
+    private UserService userService(GlobalIndex globalIndex) {
+        DBRouterJoinPoint point = new DBRouterJoinPoint(config, strategy, new DBRouterBroadcast(strategy, 4, 5000));
+        point.setGlobalIndex(globalIndex);
+        AspectJProxyFactory factory = new AspectJProxyFactory(new UserServiceImpl(sqlSessionFactory));
+        factory.addInterface(UserService.class);
+        factory.addAspect(point);
+        return factory.getProxy();
+    }
+
+}
@@ -0,0 +1,106 @@
+package fun.wswj.middleware.test;
+
+import fun.wswj.middleware.db.router.DBContextHolder;
+import fun.wswj.middleware.db.router.DBRouterConfig;
+import fun.wswj.middleware.db.router.RouteTarget;
+import fun.wswj.middleware.db.router.hotkey.HotKey;
+import fun.wswj.middleware.db.router.hotkey.HotKeyDetector;
+import fun.wswj.middleware.db.router.strategy.impl.DBRouterStrategyHashCode;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class HotKeyDetectorTest {
+
+    @Test
+    public void test_detectHotKeyFromStrategy() {
+        HotKeyDetector detector = new HotKeyDetector(1024, 16, 1, 60000, 0.05);
+        DBRouterStrategyHashCode strategy = new DBRouterStrategyHashCode(new DBRouterConfig(2, 4, "userId"));
+        strategy.setHotKeyDetector(detector);
+
+        // 10 万次请求中 20% 来自同一个用户
+        for (int i = 0; i < 100000; i++) {
+            strategy.doRouter(i % 5 == 0 ? "celebrity" : "user_" + i);
+        }
+        RouteTarget celebrityTarget = routeOf(strategy, "celebrity");
+        strategy.clear();
+
+        List<HotKey> hotKeys = detector.getHotKeys();
+        Assert.assertEquals(1, hotKeys.size());
+        Assert.assertEquals("celebrity", hotKeys.get(0).getKey());
+        Assert.assertEquals(celebrityTarget, hotKeys.get(0).getTarget());
+        Assert.assertEquals(0.2, hotKeys.get(0).getShare(), 0.02);
+
+        Map<RouteTarget, List<HotKey>> byShard = detector.getTopKeysByShard(3);
+        Assert.assertEquals("celebrity", byShard.get(celebrityTarget).get(0).getKey());
+    }
+
+    @Test
+    public void test_decayAndReport() throws InterruptedException {
+        HotKeyDetector detector = new HotKeyDetector(1024, 16, 1, 60000, 0.05);
+        AtomicReference<List<HotKey>> reported = new AtomicReference<>();
+        AtomicReference<Thread> reportThread = new AtomicReference<>();
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        detector.setListener(hotKeys -> {
+            reportThread.set(Thread.currentThread());
+            reported.set(hotKeys);
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            done.countDown();
+        });
+        for (int i = 0; i < 1000; i++) {
+            detector.record("hot", RouteTarget.of(1, 0));
+        }
+        long before = detector.getTopKeys(1).get(0).getCount();
+        // 回调阻塞时衰减不等待回调
+        detector.decay();
+        Assert.assertEquals(before / 2, detector.getTopKeys(1).get(0).getCount());
+        release.countDown();
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        Assert.assertNotSame(Thread.currentThread(), reportThread.get());
+        Assert.assertEquals("hot", reported.get().get(0).getKey());
+        Assert.assertEquals(before, reported.get().get(0).getCount());
+    }
+
+    @Test
+    public void test_topKeysByShard() {
+        HotKeyDetector detector = new HotKeyDetector(4096, 4, 1, 60000, 0.05);
+        RouteTarget busy = RouteTarget.of(1, 0);
+        RouteTarget quiet = RouteTarget.of(2, 1);
+        // 全局候选集被繁忙库表的键占满，安静库表的热点仍能按库表查到
+        for (int i = 0; i < 100; i++) {
+            for (int k = 0; k < 8; k++) {
+                detector.record("busy_" + k, busy);
+            }
+            if (i % 4 == 0) {
+                detector.record("quiet_hot", quiet);
+            }
+            if (i % 20 == 0) {
+                detector.record("quiet_" + i, quiet);
+            }
+        }
+        for (HotKey hotKey : detector.getTopKeys(4)) {
+            Assert.assertEquals(busy, hotKey.getTarget());
+        }
+        Map<RouteTarget, List<HotKey>> byShard = detector.getTopKeysByShard(2);
+        Assert.assertEquals(2, byShard.get(busy).size());
+        Assert.assertEquals("quiet_hot", byShard.get(quiet).get(0).getKey());
+        Assert.assertEquals(25, byShard.get(quiet).get(0).getCount());
+        Assert.assertEquals(2, byShard.get(quiet).size());
+    }
+
+    private static RouteTarget routeOf(DBRouterStrategyHashCode strategy, String key) {
+        strategy.doRouter(key);
+        return DBContextHolder.getRouteTarget();
+    }
+
+}
@@ -0,0 +1,98 @@
+package fun.wswj.middleware.test;
+
+import com.google.common.hash.Hashing;
+import fun.wswj.middleware.db.router.DBContextHolder;
+import fun.wswj.middleware.db.router.DBRouterConfig;
+import fun.wswj.middleware.db.router.RouteTarget;
+import fun.wswj.middleware.db.router.strategy.IDBRouterStrategy;
+import fun.wswj.middleware.db.router.strategy.impl.DBRouterStrategyConsistentHash;
+import fun.wswj.middleware.db.router.strategy.impl.DBRouterStrategyFastRange;
+import fun.wswj.middleware.db.router.strategy.impl.DBRouterStrategyHashCode;
+import fun.wswj.middleware.db.router.strategy.impl.DBRouterStrategyJumpHash;
+import fun.wswj.middleware.db.router.strategy.impl.DBRouterStrategyRendezvous;
+import fun.wswj.middleware.db.router.util.HashUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+public class NumericKeyRouterTest {
+
+    @Test
+    public void test_decimalHashMatchesString() {
+        for (long key : keys()) {
+            String text = Long.toString(key);
+            Assert.assertEquals(text, text.hashCode(), HashUtil.decimalHashCode(key));
+            Assert.assertEquals(text, HashUtil.hash64(text), HashUtil.decimalHash64(key));
+            Assert.assertEquals(text, Hashing.murmur3_32_fixed().hashString(text, StandardCharsets.UTF_8).asInt(), HashUtil.decimalMurmur3(key));
+        }
+    }
+
+    @Test
+    public void test_compatibleModeRoutesLikeString() {
+        for (String type : new String[]{"hashCode", "fastRange", "consistentHash", "jumpHash", "rendezvous"}) {
+            IDBRouterStrategy strategy = create(new DBRouterConfig(4, 8, "userId", type));
+            for (long key : keys()) {
+                strategy.doRouter(Long.toString(key));
+                RouteTarget expected = DBContextHolder.getRouteTarget();
+                strategy.doRouter(key);
+                Assert.assertEquals(type + " " + key, expected, DBContextHolder.getRouteTarget());
+                if (key == (int) key) {
+                    strategy.doRouter((int) key);
+                    Assert.assertEquals(type + " " + key, expected, DBContextHolder.getRouteTarget());
+                }
+            }
+            strategy.clear();
+        }
+    }
+
+    @Test
+    public void test_fastModeDistribution() {
+        DBRouterConfig config = new DBRouterConfig(3, 8, "userId", "fastRange");
+        config.setNumericKeyMode(DBRouterConfig.NUMERIC_KEY_FAST);
+        IDBRouterStrategy strategy = create(config);
+        int[] counts = new int[24];
+        // 连续自增 ID
+        for (long key = 1; key <= 240000; key++) {
+            strategy.doRouter(key);
+            RouteTarget target = DBContextHolder.getRouteTarget();
+            counts[(target.getDbIdx() - 1) * 8 + target.getTbIdx()]++;
+        }
+        strategy.clear();
+        for (int count : counts) {
+            Assert.assertEquals(10000, count, 500);
+        }
+    }
+
+    private static long[] keys() {
+        long[] keys = new long[2000];
+        int i = 0;
+        for (long special : new long[]{0, 1, -1, 9, 10, -10, 99, 100, 1234, 12345, Integer.MAX_VALUE, Integer.MIN_VALUE,
+                999_999_999_999_999_999L, 1_000_000_000_000_000_000L, Long.MAX_VALUE, Long.MIN_VALUE}) {
+            keys[i++] = special;
+        }
+        Random random = new Random(7);
+        while (i < keys.length) {
+            // 不同位数的正负数
+            keys[i++] = random.nextLong() >> random.nextInt(64);
+        }
+        return keys;
+    }
+
+    private static IDBRouterStrategy create(DBRouterConfig config) {
+        switch (config.getRouterType()) {
+            case "consistentHash":
+                return new DBRouterStrategyConsistentHash(config);
+            case "jumpHash":
+                return new DBRouterStrategyJumpHash(config);
+            case "rendezvous":
+                return new DBRouterStrategyRendezvous(config);
+            case "fastRange":
+                return new DBRouterStrategyFastRange(config);
+            default:
+                return new DBRouterStrategyHashCode(config);
+        }
+    }
+
+}
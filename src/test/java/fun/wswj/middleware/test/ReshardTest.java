@@ -0,0 +1,390 @@
+package fun.wswj.middleware.test;
+
+import fun.wswj.middleware.db.router.DBContextHolder;
+import fun.wswj.middleware.db.router.DBRouterConfig;
+import fun.wswj.middleware.db.router.RouteTarget;
+import fun.wswj.middleware.db.router.annotation.DBRouterStrategy;
+import fun.wswj.middleware.db.router.dynamic.DynamicDataSource;
+import fun.wswj.middleware.db.router.dynamic.DynamicMybatisPlugin;
+import fun.wswj.middleware.db.router.hotkey.HotKeyDetector;
+import fun.wswj.middleware.db.router.reshard.DualWritePlugin;
+import fun.wswj.middleware.db.router.reshard.MovedRange;
+import fun.wswj.middleware.db.router.reshard.ReshardMigrator;
+import fun.wswj.middleware.db.router.reshard.ReshardPhase;
+import fun.wswj.middleware.db.router.reshard.ReshardPlan;
+import fun.wswj.middleware.db.router.reshard.ReshardPlanner;
+import fun.wswj.middleware.db.router.strategy.IDBRouterStrategy;
+import fun.wswj.middleware.db.router.strategy.impl.DBRouterStrategyConsistentHash;
+import fun.wswj.middleware.db.router.strategy.impl.DBRouterStrategyReshard;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ReshardTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void test_planMatchesRouting() {
+        DBRouterConfig source = new DBRouterConfig(4, 8, "userId", "consistentHash");
+        DBRouterConfig target = new DBRouterConfig(6, 8, "userId", "consistentHash");
+        ReshardPlan plan = ReshardPlanner.plan(source, target);
+        IDBRouterStrategy before = new DBRouterStrategyConsistentHash(source);
+        IDBRouterStrategy after = new DBRouterStrategyConsistentHash(target);
+
+        int keys = 100000;
+        int moved = 0;
+        for (int i = 0; i < keys; i++) {
+            String key = "user_" + i;
+            RouteTarget oldTarget = route(before, key);
+            RouteTarget newTarget = route(after, key);
+            MovedRange range = plan.find(DBRouterStrategyConsistentHash.hash(key));
+            if (oldTarget.equals(newTarget)) {
+                Assert.assertNull(key, range);
+            } else {
+                moved++;
+                Assert.assertNotNull(key, range);
+                Assert.assertEquals(key, oldTarget, range.getFrom());
+                Assert.assertEquals(key, newTarget, range.getTo());
+            }
+        }
+        // 区间占比与按键抽样一致；虚拟节点数随节点总数增加，迁移量略高于新增库的 1/3
+        Assert.assertEquals((double) moved / keys, plan.getMovedShare(), 0.01);
+        Assert.assertTrue(plan.getMovedShare() > 1.0 / 3 && plan.getMovedShare() < 0.5);
+    }
+
+    @Test
+    public void test_migrateAndResume() throws Exception {
+        DBRouterConfig source = new DBRouterConfig(2, 2, "userId", "consistentHash");
+        DBRouterConfig target = new DBRouterConfig(3, 2, "userId", "consistentHash");
+        ReshardPlan plan = ReshardPlanner.plan(source, target);
+        DataSource[] shards = shards("migrate", 3);
+        IDBRouterStrategy before = new DBRouterStrategyConsistentHash(source);
+        int rows = 3000;
+        for (int i = 0; i < rows; i++) {
+            insert(shards, route(before, "user_" + i), i, "user_" + i);
+        }
+
+        // 复制前已由双写写入新分片的行，复制时保持双写的值
+        IDBRouterStrategy after = new DBRouterStrategyConsistentHash(target);
+        int dualWritten = -1;
+        for (int i = 0; dualWritten < 0; i++) {
+            if (!route(after, "user_" + i).equals(route(before, "user_" + i))) {
+                dualWritten = i;
+            }
+        }
+        insert(shards, route(after, "user_" + dualWritten), dualWritten, "user_" + dualWritten + "_v2");
+
+        Path checkpoint = folder.getRoot().toPath().resolve("reshard.properties");
+        ReshardMigrator migrator = migrator(plan, shards, checkpoint);
+        migrator.run();
+        Assert.assertEquals(rows, migrator.getScannedRows());
+
+        int moved = 0;
+        for (int i = 0; i < rows; i++) {
+            String key = "user_" + i;
+            RouteTarget newTarget = route(after, key);
+            if (!newTarget.equals(route(before, key))) {
+                moved++;
+                Assert.assertEquals(key, i == dualWritten ? key + "_v2" : key, select(shards, newTarget, i));
+            }
+        }
+        Assert.assertEquals(moved, migrator.getCopiedRows());
+        Assert.assertEquals(moved, count(shards[2], 0) + count(shards[2], 1));
+
+        // 断点记录全部完成，再次执行不再扫描
+        ReshardMigrator resumed = migrator(plan, shards, checkpoint);
+        resumed.run();
+        Assert.assertEquals(0, resumed.getScannedRows());
+    }
+
+    @Test
+    public void test_dualWrite() throws Exception {
+        DBRouterConfig source = new DBRouterConfig(2, 2, "userId", "consistentHash");
+        DBRouterConfig target = new DBRouterConfig(3, 2, "userId", "consistentHash");
+        source.setLogicalTables(Collections.singleton("orders"));
+        DBRouterStrategyConsistentHash before = new DBRouterStrategyConsistentHash(source);
+        DBRouterStrategyConsistentHash after = new DBRouterStrategyConsistentHash(target);
+        DBRouterStrategyReshard strategy = new DBRouterStrategyReshard(source, before, after, ReshardPhase.DUAL_WRITE);
+        Assert.assertEquals(2, strategy.dbCount());
+
+        DataSource[] shards = shards("dual", 3);
+        Map<Object, Object> targets = new HashMap<>();
+        for (int i = 0; i < shards.length; i++) {
+            targets.put(String.format("db%02d", i + 1), shards[i]);
+        }
+        DynamicDataSource dynamicDataSource = new DynamicDataSource();
+        dynamicDataSource.setTargetDataSources(targets);
+        dynamicDataSource.setDefaultTargetDataSource(shards[0]);
+        dynamicDataSource.afterPropertiesSet();
+        Configuration configuration = new Configuration(new Environment("test", new JdbcTransactionFactory(), dynamicDataSource));
+        configuration.addInterceptor(new DynamicMybatisPlugin(source));
+        DualWritePlugin dualWritePlugin = new DualWritePlugin(true);
+        configuration.addInterceptor(dualWritePlugin);
+        configuration.addMapper(OrderMapper.class);
+        SqlSessionFactory sqlSessionFactory = new SqlSessionFactoryBuilder().build(configuration);
+
+        int moved = 0;
+        for (int i = 0; i < 200; i++) {
+            String key = "user_" + i;
+            RouteTarget oldTarget = route(before, key);
+            RouteTarget newTarget = route(after, key);
+            strategy.doRouter(key);
+            Assert.assertEquals(key, oldTarget, DBContextHolder.getRouteTarget());
+            Assert.assertEquals(key, oldTarget.equals(newTarget) ? null : newTarget, DBContextHolder.getShadowTarget());
+            // 与 Spring 非事务调用一致，每次调用打开新的 SqlSession
+            try (SqlSession session = sqlSessionFactory.openSession(true)) {
+                session.getMapper(OrderMapper.class).insert(i, key);
+            }
+            // 双写后恢复原路由
+            Assert.assertEquals(key, oldTarget, DBContextHolder.getRouteTarget());
+            strategy.clear();
+            Assert.assertNull(DBContextHolder.getShadowTarget());
+
+            Assert.assertEquals(key, select(shards, oldTarget, i));
+            if (!oldTarget.equals(newTarget)) {
+                moved++;
+                Assert.assertEquals(key, select(shards, newTarget, i));
+            }
+        }
+        Assert.assertTrue(moved > 0);
+        Assert.assertEquals(moved, dualWritePlugin.getShadowWrites());
+        Assert.assertEquals(0, dualWritePlugin.getShadowFailures());
+
+        // 切换后只按新配置路由
+        strategy.cutover();
+        Assert.assertEquals(3, strategy.dbCount());
+        for (int i = 0; i < 1000; i++) {
+            String key = "user_" + i;
+            RouteTarget expected = route(after, key);
+            strategy.doRouter(key);
+            Assert.assertNull(DBContextHolder.getShadowTarget());
+            Assert.assertEquals(key, expected, DBContextHolder.getRouteTarget());
+            strategy.clear();
+        }
+    }
+
+    @Test
+    public void test_dualWriteGeneratedKeys() throws Exception {
+        DBRouterConfig source = new DBRouterConfig(2, 2, "userId", "consistentHash");
+        DBRouterConfig target = new DBRouterConfig(3, 2, "userId", "consistentHash");
+        source.setLogicalTables(Collections.singleton("account"));
+        DBRouterStrategyConsistentHash before = new DBRouterStrategyConsistentHash(source);
+        DBRouterStrategyConsistentHash after = new DBRouterStrategyConsistentHash(target);
+        DBRouterStrategyReshard strategy = new DBRouterStrategyReshard(source, before, after, ReshardPhase.DUAL_WRITE);
+
+        Map<Object, Object> targets = new HashMap<>();
+        DataSource[] shards = new DataSource[3];
+        for (int db = 0; db < 3; db++) {
+            JdbcDataSource dataSource = new JdbcDataSource();
+            dataSource.setURL("jdbc:h2:mem:dual_key_db" + (db + 1) + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+            try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+                for (int tb = 0; tb < 2; tb++) {
+                    statement.execute("DROP TABLE IF EXISTS account_00" + tb);
+                    statement.execute("CREATE TABLE account_00" + tb + " (id BIGINT AUTO_INCREMENT PRIMARY KEY, user_id VARCHAR(32))");
+                    // 各库自增起点不同，新位置若自行生成主键必然与原位置不一致
+                    statement.execute("ALTER TABLE account_00" + tb + " ALTER COLUMN id RESTART WITH " + (db * 10000 + tb * 1000 + 1));
+                }
+            }
+            shards[db] = dataSource;
+            targets.put(String.format("db%02d", db + 1), dataSource);
+        }
+        DynamicDataSource dynamicDataSource = new DynamicDataSource();
+        dynamicDataSource.setTargetDataSources(targets);
+        dynamicDataSource.setDefaultTargetDataSource(shards[0]);
+        dynamicDataSource.afterPropertiesSet();
+        Configuration configuration = new Configuration(new Environment("test", new JdbcTransactionFactory(), dynamicDataSource));
+        configuration.addInterceptor(new DynamicMybatisPlugin(source));
+        DualWritePlugin dualWritePlugin = new DualWritePlugin(true);
+        configuration.addInterceptor(dualWritePlugin);
+        configuration.addMapper(AccountMapper.class);
+        SqlSessionFactory sqlSessionFactory = new SqlSessionFactoryBuilder().build(configuration);
+
+        int moved = 0;
+        for (int i = 0; i < 50; i++) {
+            String key = "user_" + i;
+            RouteTarget oldTarget = route(before, key);
+            RouteTarget newTarget = route(after, key);
+            Account account = new Account(key);
+            strategy.doRouter(key);
+            try (SqlSession session = sqlSessionFactory.openSession(true)) {
+                session.getMapper(AccountMapper.class).insert(account);
+            } finally {
+                strategy.clear();
+            }
+            // 实体上保留原位置生成的主键，新位置写入同一主键
+            Assert.assertEquals(key, account.getUserId(), selectAccount(shards, oldTarget, account.getId()));
+            if (!oldTarget.equals(newTarget)) {
+                moved++;
+                Assert.assertEquals(key, account.getUserId(), selectAccount(shards, newTarget, account.getId()));
+            }
+        }
+        Assert.assertTrue(moved > 0);
+        Assert.assertEquals(moved, dualWritePlugin.getShadowWrites());
+        Assert.assertEquals(0, dualWritePlugin.getShadowFailures());
+    }
+
+    @Test
+    public void test_dualWriteRecordsOnce() {
+        DBRouterConfig source = new DBRouterConfig(2, 2, "userId", "consistentHash");
+        DBRouterConfig target = new DBRouterConfig(3, 2, "userId", "consistentHash");
+        DBRouterStrategyConsistentHash before = new DBRouterStrategyConsistentHash(source);
+        DBRouterStrategyConsistentHash after = new DBRouterStrategyConsistentHash(target);
+        DBRouterStrategyReshard strategy = new DBRouterStrategyReshard(source, before, after, ReshardPhase.DUAL_WRITE);
+        List<RouteTarget> recorded = new ArrayList<>();
+        strategy.setHotKeyDetector(new HotKeyDetector() {
+            @Override
+            public void record(String key, RouteTarget routed) {
+                recorded.add(routed);
+            }
+        });
+
+        // 新位置只计算影子路由，热点统计只按当前位置记录一次
+        for (int i = 0; i < 100; i++) {
+            String key = "user_" + i;
+            RouteTarget oldTarget = route(before, key);
+            RouteTarget newTarget = route(after, key);
+            recorded.clear();
+            strategy.doRouter(key);
+            Assert.assertEquals(key, Collections.singletonList(oldTarget), recorded);
+            Assert.assertEquals(key, oldTarget, DBContextHolder.getRouteTarget());
+            Assert.assertEquals(key, oldTarget.equals(newTarget) ? null : newTarget, DBContextHolder.getShadowTarget());
+            strategy.clear();
+        }
+    }
+
+    public static class Account {
+
+        private Long id;
+
+        private final String userId;
+
+        public Account(String userId) {
+            this.userId = userId;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(Long id) {
+            this.id = id;
+        }
+
+        public String getUserId() {
+            return userId;
+        }
+
+    }
+
+    @DBRouterStrategy(splitTable = true)
+    public interface AccountMapper {
+
+        @Insert("INSERT INTO account (user_id) VALUES (#{userId})")
+        @Options(useGeneratedKeys = true, keyProperty = "id")
+        void insert(Account account);
+
+    }
+
+    @DBRouterStrategy(splitTable = true)
+    public interface OrderMapper {
+
+        @Insert("INSERT INTO orders (id, user_id) VALUES (#{id}, #{userId})")
+        void insert(@Param("id") long id, @Param("userId") String userId);
+
+    }
+
+    private static ReshardMigrator migrator(ReshardPlan plan, DataSource[] shards, Path checkpoint) {
+        ReshardMigrator migrator = new ReshardMigrator(plan, dbIdx -> shards[dbIdx - 1], "orders", "user_id", "id");
+        migrator.setBatchSize(128);
+        migrator.setRowsPerSecond(0);
+        migrator.setCheckpointFile(checkpoint);
+        return migrator;
+    }
+
+    private static DataSource[] shards(String name, int dbCount) throws SQLException {
+        DataSource[] shards = new DataSource[dbCount];
+        for (int db = 0; db < dbCount; db++) {
+            JdbcDataSource dataSource = new JdbcDataSource();
+            dataSource.setURL("jdbc:h2:mem:" + name + "_db" + (db + 1) + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+            try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+                for (int tb = 0; tb < 2; tb++) {
+                    statement.execute("DROP TABLE IF EXISTS orders_00" + tb);
+                    statement.execute("CREATE TABLE orders_00" + tb + " (id BIGINT PRIMARY KEY, user_id VARCHAR(32))");
+                }
+            }
+            shards[db] = dataSource;
+        }
+        return shards;
+    }
+
+    private static void insert(DataSource[] shards, RouteTarget target, long id, String userId) throws SQLException {
+        try (Connection connection = shards[target.getDbIdx() - 1].getConnection();
+             PreparedStatement statement = connection.prepareStatement("INSERT INTO orders" + target.getTableSuffix() + " (id, user_id) VALUES (?, ?)")) {
+            statement.setLong(1, id);
+            statement.setString(2, userId);
+            statement.executeUpdate();
+        }
+    }
+
+    private static String select(DataSource[] shards, RouteTarget target, long id) throws SQLException {
+        try (Connection connection = shards[target.getDbIdx() - 1].getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT user_id FROM orders" + target.getTableSuffix() + " WHERE id = ?")) {
+            statement.setLong(1, id);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getString(1) : null;
+            }
+        }
+    }
+
+    private static String selectAccount(DataSource[] shards, RouteTarget target, long id) throws SQLException {
+        try (Connection connection = shards[target.getDbIdx() - 1].getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT user_id FROM account" + target.getTableSuffix() + " WHERE id = ?")) {
+            statement.setLong(1, id);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getString(1) : null;
+            }
+        }
+    }
+
+    private static int count(DataSource shard, int tbIdx) throws SQLException {
+        try (Connection connection = shard.getConnection(); Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM orders_00" + tbIdx)) {
+            resultSet.next();
+            return resultSet.getInt(1);
+        }
+    }
+
+    private static RouteTarget route(IDBRouterStrategy strategy, String key) {
+        strategy.doRouter(key);
+        RouteTarget target = DBContextHolder.getRouteTarget();
+        strategy.clear();
+        return target;
+    }
+
+}
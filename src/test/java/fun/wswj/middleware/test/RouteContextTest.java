@@ -0,0 +1,110 @@
+package fun.wswj.middleware.test;
+
+import fun.wswj.middleware.db.router.DBContextHolder;
+import fun.wswj.middleware.db.router.RouteContext;
+import fun.wswj.middleware.db.router.RouteTarget;
+import fun.wswj.middleware.db.router.async.RouteContextTaskDecorator;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class RouteContextTest {
+
+    @After
+    public void clear() {
+        DBContextHolder.clearRouteTarget();
+        DBContextHolder.setShadowTarget(null);
+        DBContextHolder.clearReadWrite();
+    }
+
+    @Test
+    public void test_wrap() throws Exception {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            DBContextHolder.setRouteTarget(RouteTarget.of(2, 3));
+            DBContextHolder.setShadowTarget(RouteTarget.of(5, 3));
+            DBContextHolder.setReadOnly(true);
+
+            // 未包装时子任务拿不到路由
+            Assert.assertNull(pool.submit(DBContextHolder::getRouteTarget).get());
+
+            Assert.assertEquals(RouteTarget.of(2, 3), pool.submit(RouteContext.wrap(DBContextHolder::getRouteTarget)).get());
+            Assert.assertEquals(RouteTarget.of(5, 3), CompletableFuture.supplyAsync(RouteContext.wrapSupplier(DBContextHolder::getShadowTarget), pool).get());
+            Assert.assertTrue(CompletableFuture.supplyAsync(RouteContext.wrapSupplier(DBContextHolder::isReadOnly), pool).get());
+
+            // 执行结束后还原线程池线程的上下文
+            Assert.assertNull(pool.submit(DBContextHolder::getRouteTarget).get());
+            Assert.assertFalse(pool.submit(DBContextHolder::isReadOnly).get());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void test_executorFanOut() throws Exception {
+        ExecutorService pool = RouteContext.wrap(Executors.newFixedThreadPool(4));
+        try {
+            List<Callable<String>> tasks = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                tasks.add(DBContextHolder::getDBKey);
+            }
+            DBContextHolder.setRouteTarget(RouteTarget.of(3, 1));
+            for (Future<String> future : pool.invokeAll(tasks)) {
+                Assert.assertEquals("03", future.get());
+            }
+            Assert.assertEquals(RouteTarget.of(3, 1), CompletableFuture.supplyAsync(DBContextHolder::getRouteTarget, pool).get());
+
+            // 调用线程执行其他上下文的任务后恢复原路由
+            RouteContext other = pool.submit(() -> {
+                DBContextHolder.setRouteTarget(RouteTarget.of(1, 0));
+                return RouteContext.capture();
+            }).get();
+            other.run(() -> Assert.assertEquals(RouteTarget.of(1, 0), DBContextHolder.getRouteTarget()));
+            Assert.assertEquals(RouteTarget.of(3, 1), DBContextHolder.getRouteTarget());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void test_taskDecorator() throws Exception {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setTaskDecorator(new RouteContextTaskDecorator());
+        executor.initialize();
+        try {
+            DBContextHolder.setRouteTarget(RouteTarget.of(4, 7));
+            Assert.assertEquals(RouteTarget.of(4, 7), executor.submit(DBContextHolder::getRouteTarget).get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void test_virtualThreads() throws Exception {
+        ExecutorService virtual;
+        try {
+            virtual = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            virtual = null;
+        }
+        Assume.assumeNotNull(virtual);
+        ExecutorService pool = RouteContext.wrap(virtual);
+        try {
+            DBContextHolder.setRouteTarget(RouteTarget.of(2, 5));
+            Assert.assertEquals(RouteTarget.of(2, 5), pool.submit(DBContextHolder::getRouteTarget).get());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+}
@@ -0,0 +1,92 @@
+package fun.wswj.middleware.test;
+
+import fun.wswj.middleware.db.router.RoutePlan;
+import fun.wswj.middleware.db.router.annotation.DBRouter;
+import fun.wswj.middleware.db.router.annotation.RouterKey;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+
+public class RoutePlanTest {
+
+    public static class BaseReq {
+        private String userId;
+
+        public BaseReq(String userId) {
+            this.userId = userId;
+        }
+    }
+
+    public static class OrderReq extends BaseReq {
+        private final BaseReq owner;
+
+        public OrderReq(String userId, BaseReq owner) {
+            super(userId);
+            this.owner = owner;
+        }
+
+        public BaseReq getOwner() {
+            return owner;
+        }
+    }
+
+    @DBRouter(key = "userId")
+    public static class UserService {
+
+        public void queryByKey(String name, @RouterKey Long id) {
+        }
+
+        public void queryByParamName(String userId) {
+        }
+
+        public void queryByObject(String name, OrderReq req) {
+        }
+
+        @DBRouter(key = "owner.userId")
+        public void queryByNestedPath(OrderReq req) {
+        }
+
+        public void queryByRuntimeType(Object req) {
+        }
+    }
+
+    @Test
+    public void test_routerKey() throws NoSuchMethodException {
+        RoutePlan plan = plan("queryByKey", String.class, Long.class);
+        Assert.assertEquals(10001L, plan.extract(new Object[]{"sws", 10001L}));
+    }
+
+    @Test
+    public void test_classLevelRouter() throws NoSuchMethodException {
+        RoutePlan plan = plan("queryByObject", String.class, OrderReq.class);
+        Assert.assertEquals("userId", plan.getRouterKey());
+        Assert.assertEquals("u01", plan.extract(new Object[]{"sws", new OrderReq("u01", null)}));
+    }
+
+    @Test
+    public void test_parameterName() throws NoSuchMethodException {
+        RoutePlan plan = plan("queryByParamName", String.class);
+        Assert.assertEquals("u02", plan.extract(new Object[]{"u02"}));
+    }
+
+    @Test
+    public void test_nestedPath() throws NoSuchMethodException {
+        RoutePlan plan = plan("queryByNestedPath", OrderReq.class);
+        Assert.assertEquals("u03", plan.extract(new Object[]{new OrderReq("u01", new BaseReq("u03"))}));
+        Assert.assertNull(plan.extract(new Object[]{new OrderReq("u01", null)}));
+    }
+
+    @Test
+    public void test_runtimeType() throws NoSuchMethodException {
+        RoutePlan plan = plan("queryByRuntimeType", Object.class);
+        Assert.assertEquals("u04", plan.extract(new Object[]{new BaseReq("u04")}));
+        Assert.assertNull(plan.extract(new Object[]{"u04"}));
+    }
+
+    private RoutePlan plan(String name, Class<?>... parameterTypes) throws NoSuchMethodException {
+        Method method = UserService.class.getMethod(name, parameterTypes);
+        return RoutePlan.build(method, UserService.class, null);
+    }
+
+}
@@ -0,0 +1,112 @@
+package fun.wswj.middleware.test;
+
+import fun.wswj.middleware.db.router.DBContextHolder;
+import fun.wswj.middleware.db.router.RouteTarget;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RouteTargetTest {
+
+    @After
+    public void clear() {
+        DBContextHolder.clearRouteTarget();
+    }
+
+    @Test
+    public void test_sharedInstances() {
+        RouteTarget target = RouteTarget.of(1, 3);
+        Assert.assertSame(target, RouteTarget.of(1, 3));
+        Assert.assertEquals("01", target.getDbKey());
+        Assert.assertEquals("db01", target.getLookupKey());
+        Assert.assertEquals("003", target.getTbKey());
+        Assert.assertEquals("_003", target.getTableSuffix());
+
+        // 缓存范围边界：dbIdx < 100、tbIdx < 1000 共享实例
+        Assert.assertSame(RouteTarget.of(99, 999), RouteTarget.of(99, 999));
+        Assert.assertSame(RouteTarget.of(-1, 0), RouteTarget.of(-1, 0));
+    }
+
+    @Test
+    public void test_uncachedRange() {
+        // 超出缓存范围时每次新建，按需格式化，相等性不变
+        RouteTarget db = RouteTarget.of(100, 2);
+        Assert.assertNotSame(db, RouteTarget.of(100, 2));
+        Assert.assertEquals(db, RouteTarget.of(100, 2));
+        Assert.assertEquals(db.hashCode(), RouteTarget.of(100, 2).hashCode());
+        Assert.assertEquals("100", db.getDbKey());
+        Assert.assertEquals("db100", db.getLookupKey());
+        Assert.assertEquals("_002", db.getTableSuffix());
+
+        RouteTarget tb = RouteTarget.of(1, 1000);
+        Assert.assertNotSame(tb, RouteTarget.of(1, 1000));
+        Assert.assertEquals(tb, RouteTarget.of(1, 1000));
+        Assert.assertEquals("db01", tb.getLookupKey());
+        Assert.assertEquals("1000", tb.getTbKey());
+        Assert.assertEquals("_1000", tb.getTableSuffix());
+
+        // 回到缓存范围内时取共享实例
+        Assert.assertSame(RouteTarget.of(1, 3), tb.withTbIdx(3));
+
+        try {
+            RouteTarget.of(-2, 0);
+            Assert.fail();
+        } catch (IllegalArgumentException expected) {
+            // 下标小于 -1
+        }
+    }
+
+    @Test
+    public void test_contextKeys() {
+        // 字符串库表标识按整数解析
+        DBContextHolder.setDBKey("02");
+        Assert.assertEquals(RouteTarget.of(2, -1), DBContextHolder.getRouteTarget());
+        Assert.assertEquals("02", DBContextHolder.getDBKey());
+        Assert.assertNull(DBContextHolder.getTBKey());
+        DBContextHolder.setTBKey("5");
+        Assert.assertSame(RouteTarget.of(2, 5), DBContextHolder.getRouteTarget());
+        Assert.assertEquals("005", DBContextHolder.getTBKey());
+        try {
+            DBContextHolder.setDBKey("db02");
+            Assert.fail();
+        } catch (NumberFormatException expected) {
+            // 非数字库标识
+        }
+        Assert.assertSame(RouteTarget.of(2, 5), DBContextHolder.getRouteTarget());
+
+        // 清除一个下标时保留另一个
+        DBContextHolder.clearDBKey();
+        Assert.assertSame(RouteTarget.of(-1, 5), DBContextHolder.getRouteTarget());
+        Assert.assertNull(DBContextHolder.getDBKey());
+        Assert.assertEquals("005", DBContextHolder.getTBKey());
+        DBContextHolder.setDBKey("03");
+        DBContextHolder.clearTBKey();
+        Assert.assertSame(RouteTarget.of(3, -1), DBContextHolder.getRouteTarget());
+
+        // 传入 null 等同于清除
+        DBContextHolder.setTBKey("1");
+        DBContextHolder.setTBKey(null);
+        Assert.assertSame(RouteTarget.of(3, -1), DBContextHolder.getRouteTarget());
+    }
+
+    @Test
+    public void test_emptyTargetRemoved() {
+        // 两个下标都清除后不保留空路由
+        DBContextHolder.setDBKey("01");
+        DBContextHolder.clearDBKey();
+        Assert.assertNull(DBContextHolder.getRouteTarget());
+
+        DBContextHolder.setRouteTarget(RouteTarget.of(1, 1));
+        DBContextHolder.setRouteTarget(RouteTarget.of(-1, -1));
+        Assert.assertNull(DBContextHolder.getRouteTarget());
+
+        DBContextHolder.setRouteTarget(RouteTarget.of(1, 1));
+        DBContextHolder.setRouteTarget(null);
+        Assert.assertNull(DBContextHolder.getRouteTarget());
+
+        // 没有路由时清除不创建空路由
+        DBContextHolder.clearTBKey();
+        Assert.assertNull(DBContextHolder.getRouteTarget());
+    }
+
+}
@@ -0,0 +1,222 @@
+package fun.wswj.middleware.test;
+
+import fun.wswj.middleware.db.router.DBContextHolder;
+import fun.wswj.middleware.db.router.DBRouterConfig;
+import fun.wswj.middleware.db.router.RouteTarget;
+import fun.wswj.middleware.db.router.strategy.IDBRouterStrategy;
+import fun.wswj.middleware.db.router.strategy.impl.DBRouterStrategyConsistentHash;
+import fun.wswj.middleware.db.router.strategy.impl.DBRouterStrategyFastRange;
+import fun.wswj.middleware.db.router.strategy.impl.DBRouterStrategyHashCode;
+import fun.wswj.middleware.db.router.strategy.impl.DBRouterStrategyJumpHash;
+import fun.wswj.middleware.db.router.strategy.impl.DBRouterStrategyRendezvous;
+import com.google.common.hash.Hashing;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+public class RouterStrategyDistributionTest {
+
+    private static final int KEYS = 200000;
+
+    private static final String[] TYPES = {"hashCode", "fastRange", "consistentHash", "jumpHash", "rendezvous"};
+
+    @Test
+    public void test_distribution() {
+        for (String type : TYPES) {
+            IDBRouterStrategy strategy = create(new DBRouterConfig(4, 8, "userId", type));
+            int[] counts = new int[32];
+            for (int i = 0; i < KEYS; i++) {
+                RouteTarget target = route(strategy, "user_" + i);
+                counts[(target.getDbIdx() - 1) * 8 + target.getTbIdx()]++;
+            }
+            int min = Integer.MAX_VALUE;
+            int max = 0;
+            for (int count : counts) {
+                min = Math.min(min, count);
+                max = Math.max(max, count);
+            }
+            double mean = KEYS / 32.0;
+            System.out.println(type + " 分布 最少：" + min + " 最多：" + max + " 最大偏差：" + String.format("%.2f%%", Math.max(max - mean, mean - min) / mean * 100));
+            if ("fastRange".equals(type) || "jumpHash".equals(type) || "rendezvous".equals(type)) {
+                Assert.assertTrue(type, max < mean * 1.05 && min > mean * 0.95);
+            }
+        }
+    }
+
+    @Test
+    public void test_migrationOnAddDb() {
+        for (String type : TYPES) {
+            IDBRouterStrategy before = create(new DBRouterConfig(4, 8, "userId", type));
+            IDBRouterStrategy after = create(new DBRouterConfig(5, 8, "userId", type));
+            int moved = 0;
+            for (int i = 0; i < KEYS; i++) {
+                String key = "user_" + i;
+                if (!route(before, key).equals(route(after, key))) {
+                    moved++;
+                }
+            }
+            double ratio = (double) moved / KEYS;
+            System.out.println(type + " 4 库扩容到 5 库迁移比例：" + String.format("%.2f%%", ratio * 100));
+            if ("jumpHash".equals(type) || "rendezvous".equals(type)) {
+                // 理论值 1/5
+                Assert.assertEquals(type, 0.2, ratio, 0.02);
+            }
+        }
+    }
+
+    @Test
+    public void test_weightedRendezvous() {
+        DBRouterConfig config = new DBRouterConfig(3, 4, "userId", "rendezvous");
+        config.setDbWeights(new int[]{1, 1, 2});
+        IDBRouterStrategy strategy = create(config);
+        int[] counts = new int[3];
+        for (int i = 0; i < KEYS; i++) {
+            counts[route(strategy, "user_" + i).getDbIdx() - 1]++;
+        }
+        Assert.assertEquals(0.25, (double) counts[0] / KEYS, 0.01);
+        Assert.assertEquals(0.25, (double) counts[1] / KEYS, 0.01);
+        Assert.assertEquals(0.5, (double) counts[2] / KEYS, 0.01);
+    }
+
+    @Test
+    public void test_fastRangeArbitraryTopology() {
+        int[][] topologies = {{1, 3}, {3, 8}, {5, 7}, {6, 10}, {7, 13}, {16, 64}};
+        Random random = new Random(42);
+        for (int[] topology : topologies) {
+            int[] sequential = new int[topology[0] * topology[1]];
+            int[] randomKeys = new int[sequential.length];
+            IDBRouterStrategy strategy = create(new DBRouterConfig(topology[0], topology[1], "userId", "fastRange"));
+            for (int i = 0; i < KEYS; i++) {
+                sequential[slot(route(strategy, "user_" + i), topology[1])]++;
+                randomKeys[slot(route(strategy, Long.toString(random.nextLong() >>> 4, 36)), topology[1])]++;
+            }
+            assertUniform(topology[0] + "x" + topology[1] + " sequential", sequential);
+            assertUniform(topology[0] + "x" + topology[1] + " random", randomKeys);
+        }
+
+        // 对比：hashCode 路由在 3x8 下有表分不到数据
+        IDBRouterStrategy hashCode = create(new DBRouterConfig(3, 8, "userId", "hashCode"));
+        int[] counts = new int[24];
+        for (int i = 0; i < KEYS; i++) {
+            counts[slot(route(hashCode, "user_" + i), 8)]++;
+        }
+        Assert.assertEquals(0, counts[8]);
+    }
+
+    /**
+     * 各分片数量与均值的偏差不超过 5 个标准差
+     */
+    private static void assertUniform(String name, int[] counts) {
+        double mean = (double) KEYS / counts.length;
+        double bound = 5 * Math.sqrt(mean * (1 - 1.0 / counts.length));
+        for (int i = 0; i < counts.length; i++) {
+            Assert.assertTrue(name + " slot " + i + ": " + counts[i], Math.abs(counts[i] - mean) <= bound);
+        }
+    }
+
+    private static int slot(RouteTarget target, int tbCount) {
+        return (target.getDbIdx() - 1) * tbCount + target.getTbIdx();
+    }
+
+    @Test
+    public void test_weightedConsistentHash() {
+        DBRouterConfig config = new DBRouterConfig(3, 4, "userId", "consistentHash");
+        config.setDbWeights(new int[]{1, 1, 2});
+        DBRouterStrategyConsistentHash strategy = new DBRouterStrategyConsistentHash(config);
+        double[] expected = strategy.getExpectedShares();
+        int[] counts = new int[12];
+        for (int i = 0; i < KEYS; i++) {
+            RouteTarget target = route(strategy, "user_" + i);
+            counts[(target.getDbIdx() - 1) * 4 + target.getTbIdx()]++;
+        }
+        double[] dbShares = new double[3];
+        for (int ordinal = 0; ordinal < 12; ordinal++) {
+            // 实际分布与启动时报告的预期占比一致
+            Assert.assertEquals(expected[ordinal], (double) counts[ordinal] / KEYS, 0.005);
+            dbShares[ordinal / 4] += expected[ordinal];
+        }
+        Assert.assertEquals(0.25, dbShares[0], 0.03);
+        Assert.assertEquals(0.25, dbShares[1], 0.03);
+        Assert.assertEquals(0.5, dbShares[2], 0.03);
+
+        // 只调高 db03 的权重，迁移的数据全部进入 db03
+        IDBRouterStrategy unweighted = create(new DBRouterConfig(3, 4, "userId", "consistentHash"));
+        for (int i = 0; i < KEYS; i++) {
+            String key = "user_" + i;
+            RouteTarget after = route(strategy, key);
+            if (!route(unweighted, key).equals(after)) {
+                Assert.assertEquals(key, 3, after.getDbIdx());
+            }
+        }
+    }
+
+    @Test
+    public void test_consistentHashCompatibleWithTreeRing() {
+        // 16x64 约 35 万个虚拟节点，包含若干哈希冲突
+        DBRouterConfig config = new DBRouterConfig(16, 64, "userId", "consistentHash");
+        IDBRouterStrategy strategy = create(config);
+        TreeMap<Long, RouteTarget> treeRing = treeRing(16, 64);
+        for (int i = 0; i < KEYS; i++) {
+            String key = "user_" + i;
+            Map.Entry<Long, RouteTarget> expected = treeRing.ceilingEntry(murmur(key));
+            if (null == expected) {
+                expected = treeRing.firstEntry();
+            }
+            Assert.assertEquals(key, expected.getValue(), route(strategy, key));
+        }
+    }
+
+    /**
+     * 原 TreeMap 实现的哈希环
+     */
+    private static TreeMap<Long, RouteTarget> treeRing(int dbCount, int tbCount) {
+        int virtualNodeCount = Math.max(100, (int) (50 * Math.log(dbCount * tbCount + 1)));
+        TreeMap<Long, RouteTarget> ring = new TreeMap<>();
+        for (int dbIdx = 1; dbIdx <= dbCount; dbIdx++) {
+            for (int tbIdx = 0; tbIdx < tbCount; tbIdx++) {
+                String physicalNodeName = String.format("%02d_%03d", dbIdx, tbIdx);
+                for (int k = 0; k < virtualNodeCount; k++) {
+                    String virtualNodeName = physicalNodeName + "_VN" + k;
+                    long hash = murmur(virtualNodeName);
+                    while (ring.containsKey(hash)) {
+                        virtualNodeName += "'";
+                        hash = murmur(virtualNodeName);
+                    }
+                    ring.put(hash, RouteTarget.of(dbIdx, tbIdx));
+                }
+            }
+        }
+        return ring;
+    }
+
+    private static long murmur(String key) {
+        return Hashing.murmur3_32_fixed().hashString(key, StandardCharsets.UTF_8).asInt() & 0xFFFFFFFFL;
+    }
+
+    private static RouteTarget route(IDBRouterStrategy strategy, String key) {
+        strategy.doRouter(key);
+        RouteTarget target = DBContextHolder.getRouteTarget();
+        strategy.clear();
+        return target;
+    }
+
+    private static IDBRouterStrategy create(DBRouterConfig config) {
+        switch (config.getRouterType()) {
+            case "consistentHash":
+                return new DBRouterStrategyConsistentHash(config);
+            case "jumpHash":
+                return new DBRouterStrategyJumpHash(config);
+            case "rendezvous":
+                return new DBRouterStrategyRendezvous(config);
+            case "fastRange":
+                return new DBRouterStrategyFastRange(config);
+            default:
+                return new DBRouterStrategyHashCode(config);
+        }
+    }
+
+}
@@ -0,0 +1,317 @@
+package fun.wswj.middleware.test;
+
+import com.zaxxer.hikari.HikariDataSource;
+import fun.wswj.middleware.db.router.DBContextHolder;
+import fun.wswj.middleware.db.router.DBRouterConfig;
+import fun.wswj.middleware.db.router.DBRouterJoinPoint;
+import fun.wswj.middleware.db.router.annotation.DBRouter;
+import fun.wswj.middleware.db.router.annotation.RouterKey;
+import fun.wswj.middleware.db.router.config.DataSourceAutoConfig;
+import fun.wswj.middleware.db.router.dynamic.DynamicDataSource;
+import fun.wswj.middleware.db.router.hotkey.HotKeyDetector;
+import fun.wswj.middleware.db.router.limit.ShardLimiters;
+import fun.wswj.middleware.db.router.metrics.DBRouterMetrics;
+import fun.wswj.middleware.db.router.strategy.IDBRouterStrategy;
+import fun.wswj.middleware.db.router.strategy.impl.DBRouterStrategyJumpHash;
+import fun.wswj.middleware.db.router.topology.RoutingSnapshot;
+import fun.wswj.middleware.db.router.topology.RoutingTopology;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.mock.env.MockEnvironment;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+public class RoutingTopologyTest {
+
+    private static final String PREFIX = "mini-db-router.jdbc.datasource.";
+
+    public interface ShardService {
+
+        List<Object> route(String userId, String otherUserId, Runnable midway);
+
+        int dbIdx(String userId);
+
+    }
+
+    public static class ShardServiceImpl implements ShardService {
+
+        private final IDBRouterStrategy strategy;
+
+        private final DataSource dataSource;
+
+        private ShardService self;
+
+        public ShardServiceImpl(IDBRouterStrategy strategy, DataSource dataSource) {
+            this.strategy = strategy;
+            this.dataSource = dataSource;
+        }
+
+        @Override
+        @DBRouter
+        public List<Object> route(@RouterKey String userId, String otherUserId, Runnable midway) {
+            midway.run();
+            List<Object> results = new ArrayList<>();
+            results.add(strategy.dbCount());
+            results.add(self.dbIdx(otherUserId));
+            try {
+                results.add(databaseOf(dataSource));
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+            return results;
+        }
+
+        @Override
+        @DBRouter
+        public int dbIdx(@RouterKey String userId) {
+            return DBContextHolder.getRouteTarget().getDbIdx();
+        }
+
+    }
+
+    @Test
+    public void test_refreshSwapsSnapshot() throws Exception {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty(PREFIX + "dbCount", "2")
+                .withProperty(PREFIX + "tbCount", "4")
+                .withProperty(PREFIX + "routerKey", "userId")
+                .withProperty(PREFIX + "routerType", "jumpHash")
+                .withProperty(PREFIX + "list", "db01,db02")
+                .withProperty(PREFIX + "default", "db00")
+                .withProperty(PREFIX + "topologyReload", "true")
+                .withProperty(PREFIX + "topologyGracePeriod", "300");
+        for (String db : new String[]{"db00", "db01", "db02", "db03"}) {
+            environment.withProperty(PREFIX + db + ".url", "jdbc:h2:mem:topology_" + db + ";DB_CLOSE_DELAY=-1")
+                    .withProperty(PREFIX + db + ".username", "sa")
+                    .withProperty(PREFIX + db + ".password", "sa")
+                    .withProperty(PREFIX + db + ".driver-class-name", "org.h2.Driver");
+        }
+        DataSourceAutoConfig autoConfig = new DataSourceAutoConfig();
+        autoConfig.setEnvironment(environment);
+
+        RoutingTopology topology = autoConfig.routingTopology(provider(HotKeyDetector.class));
+        ObjectProvider<RoutingTopology> topologyProvider = provider(RoutingTopology.class, topology);
+        DBRouterConfig dbRouterConfig = autoConfig.dbRouterConfig(topologyProvider);
+        IDBRouterStrategy strategy = autoConfig.dbRouterStrategy(dbRouterConfig, provider(HotKeyDetector.class), topologyProvider);
+        DynamicDataSource dataSource = (DynamicDataSource) autoConfig.createDataSource(provider(DBRouterMetrics.class), topologyProvider, provider(ShardLimiters.class));
+        dataSource.afterPropertiesSet();
+        try {
+            Assert.assertEquals(2, strategy.dbCount());
+            RoutingSnapshot initial = topology.get();
+            Assert.assertEquals("topology_db00", databaseOf(dataSource));
+
+            // 新增 db03，已有连接池复用
+            Properties overrides = new Properties();
+            overrides.setProperty(PREFIX + "dbCount", "3");
+            overrides.setProperty(PREFIX + "list", "db01,db02,db03");
+            RoutingSnapshot expanded = topology.refresh(overrides);
+            Assert.assertEquals(2, expanded.getVersion());
+            Assert.assertEquals(3, strategy.dbCount());
+            Assert.assertSame(initial.getDataSource("db01"), expanded.getDataSource("db01"));
+            Assert.assertNotSame(initial.getDataSource("db01"), expanded.getDataSource("db03"));
+            strategy.setDBKey(3);
+            Assert.assertEquals("topology_db03", databaseOf(dataSource));
+            strategy.clear();
+
+            // 构建失败时保留当前快照
+            overrides.setProperty(PREFIX + "dbCount", "three");
+            Assert.assertNull(topology.refresh(overrides));
+            Assert.assertSame(expanded, topology.get());
+
+            // 移除 db02：进行中的作用域持有旧快照时仍可获取连接，作用域结束后连接池关闭
+            RoutingSnapshot held = topology.acquire();
+            overrides.setProperty(PREFIX + "dbCount", "2");
+            overrides.setProperty(PREFIX + "list", "db01,db03");
+            topology.refresh(overrides);
+            HikariDataSource removed = (HikariDataSource) expanded.getDataSource("db02");
+            strategy.setDBKey(2);
+            Assert.assertEquals("topology_db02", databaseOf(dataSource));
+            Assert.assertFalse(removed.isClosed());
+            topology.release(held);
+            Thread.sleep(200);
+            Assert.assertTrue(removed.isClosed());
+            Assert.assertTrue(topology.getRetiring().isEmpty());
+            Assert.assertFalse(((HikariDataSource) topology.get().getDataSource("db01")).isClosed());
+            try {
+                databaseOf(dataSource);
+                Assert.fail();
+            } catch (IllegalStateException expected) {
+                // db02 已不在拓扑中
+            }
+            strategy.clear();
+        } finally {
+            DBContextHolder.clearRouteTarget();
+            topology.close();
+            for (DataSource pool : topology.get().getDataSources().values()) {
+                ((HikariDataSource) pool).close();
+            }
+        }
+    }
+
+    @Test
+    public void test_scopeKeepsSnapshot() throws Exception {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty(PREFIX + "dbCount", "2")
+                .withProperty(PREFIX + "tbCount", "4")
+                .withProperty(PREFIX + "routerKey", "userId")
+                .withProperty(PREFIX + "routerType", "jumpHash")
+                .withProperty(PREFIX + "list", "db01,db02")
+                .withProperty(PREFIX + "default", "db00")
+                .withProperty(PREFIX + "topologyReload", "true")
+                .withProperty(PREFIX + "topologyGracePeriod", "60000");
+        for (String db : new String[]{"db00", "db01", "db02", "db03"}) {
+            environment.withProperty(PREFIX + db + ".url", "jdbc:h2:mem:topology_" + db + ";DB_CLOSE_DELAY=-1")
+                    .withProperty(PREFIX + db + ".username", "sa")
+                    .withProperty(PREFIX + db + ".password", "sa")
+                    .withProperty(PREFIX + db + ".driver-class-name", "org.h2.Driver");
+        }
+        DataSourceAutoConfig autoConfig = new DataSourceAutoConfig();
+        autoConfig.setEnvironment(environment);
+
+        RoutingTopology topology = autoConfig.routingTopology(provider(HotKeyDetector.class));
+        ObjectProvider<RoutingTopology> topologyProvider = provider(RoutingTopology.class, topology);
+        DBRouterConfig dbRouterConfig = autoConfig.dbRouterConfig(topologyProvider);
+        IDBRouterStrategy strategy = autoConfig.dbRouterStrategy(dbRouterConfig, provider(HotKeyDetector.class), topologyProvider);
+        DynamicDataSource dataSource = (DynamicDataSource) autoConfig.createDataSource(provider(DBRouterMetrics.class), topologyProvider, provider(ShardLimiters.class));
+        dataSource.afterPropertiesSet();
+
+        DBRouterJoinPoint point = new DBRouterJoinPoint(dbRouterConfig, strategy);
+        point.setRoutingTopology(topology);
+        ShardServiceImpl impl = new ShardServiceImpl(strategy, dataSource);
+        AspectJProxyFactory factory = new AspectJProxyFactory(impl);
+        factory.addInterface(ShardService.class);
+        factory.addAspect(point);
+        ShardService service = factory.getProxy();
+        impl.self = service;
+
+        // 扩容到 3 个库后落到 db03 的路由键
+        DBRouterStrategyJumpHash expanded = new DBRouterStrategyJumpHash(new DBRouterConfig(3, 4, "userId", "jumpHash"));
+        String movedKey = null;
+        for (int i = 0; null == movedKey; i++) {
+            expanded.doRouter("user_" + i);
+            if (DBContextHolder.getRouteTarget().getDbIdx() == 3) {
+                movedKey = "user_" + i;
+            }
+            expanded.clear();
+        }
+
+        Properties overrides = new Properties();
+        overrides.setProperty(PREFIX + "dbCount", "3");
+        overrides.setProperty(PREFIX + "list", "db01,db02,db03");
+        try {
+            // 请求进行中切换拓扑：作用域内的路由策略、嵌套调用与数据源仍使用进入作用域时的快照
+            List<Object> results = service.route("user_1", movedKey, () -> Assert.assertNotNull(topology.refresh(overrides)));
+            Assert.assertEquals(2, results.get(0));
+            Assert.assertTrue((Integer) results.get(1) <= 2);
+            Assert.assertNotEquals("topology_db03", results.get(2));
+            Assert.assertNull(DBContextHolder.getRouteScope());
+
+            // 之后的请求使用新快照
+            Assert.assertEquals(3, strategy.dbCount());
+            Assert.assertEquals(3, service.dbIdx(movedKey));
+            Assert.assertEquals(3, service.route("user_1", movedKey, () -> {}).get(0));
+        } finally {
+            DBContextHolder.clearRouteTarget();
+            topology.close();
+            for (DataSource pool : topology.get().getDataSources().values()) {
+                ((HikariDataSource) pool).close();
+            }
+        }
+    }
+
+    @Test
+    public void test_retiringSnapshots() throws Exception {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty(PREFIX + "dbCount", "2")
+                .withProperty(PREFIX + "tbCount", "4")
+                .withProperty(PREFIX + "routerKey", "userId")
+                .withProperty(PREFIX + "list", "db01,db02")
+                .withProperty(PREFIX + "default", "db00")
+                .withProperty(PREFIX + "topologyReload", "true")
+                .withProperty(PREFIX + "topologyGracePeriod", "300");
+        for (String db : new String[]{"db00", "db01", "db02", "db03"}) {
+            environment.withProperty(PREFIX + db + ".url", "jdbc:h2:mem:topology_" + db + ";DB_CLOSE_DELAY=-1")
+                    .withProperty(PREFIX + db + ".username", "sa")
+                    .withProperty(PREFIX + db + ".password", "sa")
+                    .withProperty(PREFIX + db + ".driver-class-name", "org.h2.Driver");
+        }
+        DataSourceAutoConfig autoConfig = new DataSourceAutoConfig();
+        autoConfig.setEnvironment(environment);
+        RoutingTopology topology = autoConfig.routingTopology(provider(HotKeyDetector.class));
+        List<HikariDataSource> pools = new ArrayList<>();
+        try {
+            // A -> B -> C 连续切换：A 无人使用立即释放，B 仍被作用域持有时其独有的 db03 不关闭
+            RoutingSnapshot a = topology.get();
+            Properties overrides = new Properties();
+            overrides.setProperty(PREFIX + "dbCount", "3");
+            overrides.setProperty(PREFIX + "list", "db01,db02,db03");
+            RoutingSnapshot b = topology.refresh(overrides);
+            RoutingSnapshot held = topology.acquire();
+            Assert.assertSame(b, held);
+            overrides.setProperty(PREFIX + "dbCount", "2");
+            overrides.setProperty(PREFIX + "list", "db01,db02");
+            RoutingSnapshot c = topology.refresh(overrides);
+            HikariDataSource db03 = (HikariDataSource) b.getDataSource("db03");
+            pools.add(db03);
+            Assert.assertFalse(topology.getRetiring().contains(a));
+            Assert.assertTrue(topology.getRetiring().contains(b));
+            Assert.assertFalse(((HikariDataSource) a.getDataSource("db01")).isClosed());
+            Assert.assertFalse(db03.isClosed());
+            Assert.assertSame(db03, topology.getDataSource("db03"));
+
+            // 作用域结束后 B 释放，只关闭 C 不再使用的连接池
+            topology.release(held);
+            Thread.sleep(200);
+            Assert.assertTrue(db03.isClosed());
+            Assert.assertFalse(((HikariDataSource) c.getDataSource("db01")).isClosed());
+            Assert.assertTrue(topology.getRetiring().isEmpty());
+
+            // 宽限期是上限：作用域一直未结束时超过宽限期强制释放
+            topology.acquire();
+            overrides.setProperty(PREFIX + "list", "db01,db03");
+            RoutingSnapshot d = topology.refresh(overrides);
+            HikariDataSource db02 = (HikariDataSource) c.getDataSource("db02");
+            pools.add(db02);
+            Thread.sleep(100);
+            Assert.assertFalse(db02.isClosed());
+            Thread.sleep(700);
+            Assert.assertTrue(db02.isClosed());
+            Assert.assertTrue(topology.getRetiring().isEmpty());
+            Assert.assertSame(d, topology.get());
+        } finally {
+            topology.close();
+            for (DataSource pool : topology.get().getDataSources().values()) {
+                ((HikariDataSource) pool).close();
+            }
+            for (HikariDataSource pool : pools) {
+                pool.close();
+            }
+        }
+    }
+
+    private static String databaseOf(DataSource dataSource) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            String url = connection.getMetaData().getURL();
+            return url.substring(url.indexOf("topology_"));
+        }
+    }
+
+    private static <T> ObjectProvider<T> provider(Class<T> type) {
+        return new StaticListableBeanFactory().getBeanProvider(type);
+    }
+
+    private static <T> ObjectProvider<T> provider(Class<T> type, T bean) {
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        beanFactory.addBean(type.getSimpleName(), bean);
+        return beanFactory.getBeanProvider(type);
+    }
+
+}
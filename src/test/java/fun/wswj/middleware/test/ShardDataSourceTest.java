@@ -0,0 +1,188 @@
+package fun.wswj.middleware.test;
+
+import fun.wswj.middleware.db.router.DBContextHolder;
+import fun.wswj.middleware.db.router.DBRouterConfig;
+import fun.wswj.middleware.db.router.DBRouterJoinPoint;
+import fun.wswj.middleware.db.router.annotation.DBRouter;
+import fun.wswj.middleware.db.router.annotation.RouterKey;
+import fun.wswj.middleware.db.router.dynamic.ReadWriteSplitPlugin;
+import fun.wswj.middleware.db.router.dynamic.ShardDataSource;
+import fun.wswj.middleware.db.router.strategy.impl.DBRouterStrategyHashCode;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.session.Configuration;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ShardDataSourceTest {
+
+    public interface QueryService {
+
+        List<String> writeThenRead(String userId);
+
+    }
+
+    public static class QueryServiceImpl implements QueryService {
+
+        private final DataSource dataSource;
+
+        public QueryServiceImpl(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        @Override
+        @DBRouter(key = "userId")
+        public List<String> writeThenRead(@RouterKey String userId) {
+            try {
+                List<String> names = new ArrayList<>();
+                names.add(nameOf(dataSource.getConnection()));
+                write();
+                names.add(nameOf(dataSource.getConnection()));
+                names.add(nameOf(dataSource.getConnection()));
+                return names;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+    }
+
+    @After
+    public void clear() {
+        DBContextHolder.clearReadWrite();
+    }
+
+    @Test
+    public void test_writeAndReadRouting() throws SQLException {
+        ShardDataSource ds = new ShardDataSource("db01", named("primary"), Arrays.asList(named("r1"), named("r2")), Arrays.asList(1, 1), ShardDataSource.ROUND_ROBIN, 0);
+        Assert.assertEquals("primary", nameOf(ds.getConnection()));
+
+        DBContextHolder.setReadStatement(true);
+        Assert.assertTrue(nameOf(ds.getConnection()).startsWith("r"));
+
+        // 作用域内写入后读主库，作用域结束后恢复
+        DBContextHolder.markWritten(true);
+        Assert.assertEquals("primary", nameOf(ds.getConnection()));
+        DBContextHolder.clearWritten();
+        Assert.assertTrue(nameOf(ds.getConnection()).startsWith("r"));
+
+        // 配置时间窗口时，作用域外的写入在窗口期内读主库
+        DBContextHolder.markWritten(false);
+        Assert.assertTrue(nameOf(ds.getConnection()).startsWith("r"));
+        ShardDataSource windowed = new ShardDataSource("db01", named("primary"), Arrays.asList(named("r1"), named("r2")), Arrays.asList(1, 1), ShardDataSource.ROUND_ROBIN, 1000);
+        DBContextHolder.markWritten(false);
+        Assert.assertEquals("primary", nameOf(windowed.getConnection()));
+    }
+
+    @Test
+    public void test_readYourWritesScope() throws Throwable {
+        ShardDataSource ds = new ShardDataSource("db01", named("primary"), Arrays.asList(named("r1"), named("r2")), Arrays.asList(1, 1), ShardDataSource.ROUND_ROBIN, 0);
+        DBRouterConfig config = new DBRouterConfig(2, 4, "userId");
+        AspectJProxyFactory factory = new AspectJProxyFactory(new QueryServiceImpl(ds));
+        factory.addInterface(QueryService.class);
+        factory.addAspect(new DBRouterJoinPoint(config, new DBRouterStrategyHashCode(config)));
+        QueryService service = factory.getProxy();
+        DBContextHolder.setReadStatement(true);
+
+        // 写入前读从库，写入后直到作用域结束都读主库
+        List<String> names = service.writeThenRead("user_1");
+        Assert.assertTrue(names.get(0).startsWith("r"));
+        Assert.assertEquals(Arrays.asList("primary", "primary"), names.subList(1, 3));
+        // 作用域结束后不残留写入标记
+        Assert.assertFalse(DBContextHolder.isWrittenWithin(Long.MAX_VALUE));
+        Assert.assertTrue(nameOf(ds.getConnection()).startsWith("r"));
+
+        // 作用域外的写入不影响之后的查询
+        write();
+        Assert.assertTrue(nameOf(ds.getConnection()).startsWith("r"));
+
+        // 事务内写入后只读查询读主库，事务结束时清除
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            DBContextHolder.setReadOnly(true);
+            Assert.assertTrue(nameOf(ds.getConnection()).startsWith("r"));
+            write();
+            Assert.assertEquals("primary", nameOf(ds.getConnection()));
+            // 事务内的 @DBRouter 作用域结束时不清除
+            service.writeThenRead("user_1");
+            Assert.assertEquals("primary", nameOf(ds.getConnection()));
+            TransactionSynchronizationUtils.invokeAfterCompletion(TransactionSynchronizationManager.getSynchronizations(), TransactionSynchronization.STATUS_COMMITTED);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        Assert.assertTrue(nameOf(ds.getConnection()).startsWith("r"));
+        DBContextHolder.setReadOnly(false);
+        DBContextHolder.setReadStatement(false);
+        Assert.assertFalse(DBContextHolder.isReadOnly());
+    }
+
+    @Test
+    public void test_weightedRoundRobin() throws SQLException {
+        ShardDataSource ds = new ShardDataSource("db01", named("primary"), Arrays.asList(named("r1"), named("r2")), Arrays.asList(3, 1), ShardDataSource.ROUND_ROBIN, 1000);
+        DBContextHolder.setReadOnly(true);
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 400; i++) {
+            counts.merge(nameOf(ds.getConnection()), 1, Integer::sum);
+        }
+        Assert.assertEquals(Integer.valueOf(300), counts.get("r1"));
+        Assert.assertEquals(Integer.valueOf(100), counts.get("r2"));
+    }
+
+    @Test
+    public void test_leastInFlight() throws SQLException {
+        ShardDataSource ds = new ShardDataSource("db01", named("primary"), Arrays.asList(named("r1"), named("r2")), Arrays.asList(1, 1), ShardDataSource.LEAST_IN_FLIGHT, 1000);
+        DBContextHolder.setReadOnly(true);
+        List<Connection> held = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            held.add(ds.getConnection());
+        }
+        Assert.assertEquals(5, ds.getInFlight(0));
+        Assert.assertEquals(5, ds.getInFlight(1));
+        for (Connection connection : held) {
+            connection.close();
+            connection.close();
+        }
+        Assert.assertEquals(0, ds.getInFlight(0));
+        Assert.assertEquals(0, ds.getInFlight(1));
+    }
+
+    /**
+     * 经 ReadWriteSplitPlugin 执行一条写语句
+     */
+    private static void write() throws Throwable {
+        Configuration configuration = new Configuration();
+        MappedStatement mappedStatement = new MappedStatement.Builder(configuration, "update", new StaticSqlSource(configuration, "UPDATE user SET name = 'a'"), SqlCommandType.UPDATE).build();
+        Executor executor = (Executor) Proxy.newProxyInstance(ShardDataSourceTest.class.getClassLoader(), new Class[]{Executor.class}, (proxy, method, args) -> 1);
+        new ReadWriteSplitPlugin().intercept(new Invocation(executor, Executor.class.getMethod("update", MappedStatement.class, Object.class), new Object[]{mappedStatement, null}));
+    }
+
+    private static String nameOf(Connection connection) throws SQLException {
+        return connection.getCatalog();
+    }
+
+    private static DataSource named(String name) {
+        Connection connection = (Connection) Proxy.newProxyInstance(ShardDataSourceTest.class.getClassLoader(), new Class[]{Connection.class},
+                (proxy, method, args) -> "getCatalog".equals(method.getName()) ? name : null);
+        return (DataSource) Proxy.newProxyInstance(ShardDataSourceTest.class.getClassLoader(), new Class[]{DataSource.class},
+                (proxy, method, args) -> "getConnection".equals(method.getName()) ? connection : null);
+    }
+
+}
@@ -0,0 +1,177 @@
+package fun.wswj.middleware.test;
+
+import fun.wswj.middleware.db.router.DBContextHolder;
+import fun.wswj.middleware.db.router.DBRouterConfig;
+import fun.wswj.middleware.db.router.DBRouterJoinPoint;
+import fun.wswj.middleware.db.router.RouteTarget;
+import fun.wswj.middleware.db.router.annotation.DBRouter;
+import fun.wswj.middleware.db.router.annotation.RouterKey;
+import fun.wswj.middleware.db.router.hotkey.HotKeyDetector;
+import fun.wswj.middleware.db.router.id.ShardIdGenerator;
+import fun.wswj.middleware.db.router.strategy.AbstractDBRouterStrategy;
+import fun.wswj.middleware.db.router.strategy.impl.DBRouterStrategyGene;
+import fun.wswj.middleware.db.router.strategy.impl.DBRouterStrategyHashCode;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class ShardIdGeneratorTest {
+
+    public interface OrderService {
+
+        RouteTarget queryByOrderId(long orderId);
+
+    }
+
+    public static class OrderServiceImpl implements OrderService {
+
+        @Override
+        @DBRouter(key = "orderId", geneKey = true)
+        public RouteTarget queryByOrderId(@RouterKey long orderId) {
+            return DBContextHolder.getRouteTarget();
+        }
+
+    }
+
+    private final DBRouterConfig config = new DBRouterConfig(4, 8, "userId");
+
+    private final DBRouterStrategyHashCode strategy = new DBRouterStrategyHashCode(config);
+
+    @After
+    public void clear() {
+        DBContextHolder.clearRouteTarget();
+        DBContextHolder.setShadowTarget(null);
+    }
+
+    @Test
+    public void test_unique() throws Exception {
+        ShardIdGenerator generator = new ShardIdGenerator(strategy, 3);
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int thread = t;
+                futures.add(pool.submit(() -> {
+                    long last = Long.MIN_VALUE;
+                    for (int i = 0; i < 50000; i++) {
+                        long id = generator.nextId("user_" + (thread * 7 + i % 100));
+                        // 同一线程生成的 ID 递增
+                        Assert.assertTrue(id > last);
+                        last = id;
+                        ids.add(id);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        Assert.assertEquals(8 * 50000, ids.size());
+        long now = System.currentTimeMillis();
+        long timestamp = generator.timestamp(ids.iterator().next());
+        Assert.assertTrue(timestamp <= now + 1000 && timestamp > now - 60000);
+    }
+
+    @Test
+    public void test_geneRouting() {
+        ShardIdGenerator generator = new ShardIdGenerator(strategy, 1);
+        for (int i = 0; i < 1000; i++) {
+            String userId = "user_" + i;
+            long orderId = generator.nextId(userId);
+            strategy.doRouter(userId);
+            Assert.assertEquals(DBContextHolder.getRouteTarget(), generator.route(orderId));
+        }
+
+        // 生成 ID 不改变当前路由
+        DBContextHolder.setRouteTarget(RouteTarget.of(2, 5));
+        long orderId = generator.nextId();
+        generator.nextId("user_1");
+        Assert.assertEquals(RouteTarget.of(2, 5), DBContextHolder.getRouteTarget());
+        DBContextHolder.clearRouteTarget();
+
+        // 按订单号查询与按用户路由落到同一分片
+        DBRouterJoinPoint point = new DBRouterJoinPoint(config, strategy);
+        point.setGeneRouterStrategy(new DBRouterStrategyGene(config, generator));
+        AspectJProxyFactory factory = new AspectJProxyFactory(new OrderServiceImpl());
+        factory.addInterface(OrderService.class);
+        factory.addAspect(point);
+        OrderService orderService = factory.getProxy();
+        Assert.assertEquals(RouteTarget.of(2, 5), orderService.queryByOrderId(orderId));
+        Assert.assertNull(DBContextHolder.getRouteTarget());
+    }
+
+    @Test
+    public void test_ownerKeyKeepsContext() {
+        DBRouterStrategyHashCode detected = new DBRouterStrategyHashCode(config);
+        HotKeyDetector detector = new HotKeyDetector(1024, 16, 1, 60000, 0.05);
+        detected.setHotKeyDetector(detector);
+        ShardIdGenerator generator = new ShardIdGenerator(detected, 1);
+
+        // 按路由键生成 ID 不改变当前路由与影子路由，也不计入热点
+        DBContextHolder.setRouteTarget(RouteTarget.of(2, 5));
+        DBContextHolder.setShadowTarget(RouteTarget.of(3, 1));
+        for (int i = 0; i < 100; i++) {
+            long orderId = generator.nextId("user_" + i);
+            Assert.assertEquals(strategy.locate("user_" + i), generator.route(orderId));
+            Assert.assertEquals(strategy.locate(i), generator.route(generator.nextId(i)));
+        }
+        Assert.assertEquals(RouteTarget.of(2, 5), DBContextHolder.getRouteTarget());
+        Assert.assertEquals(RouteTarget.of(3, 1), DBContextHolder.getShadowTarget());
+        Assert.assertTrue(detector.getTopKeys(16).isEmpty());
+
+        // 自定义策略借用 doRouter 计算，同样恢复上下文
+        AbstractDBRouterStrategy custom = new AbstractDBRouterStrategy(config) {
+            @Override
+            public void doRouter(String dbKeyAttr) {
+                strategy.doRouter(dbKeyAttr);
+                DBContextHolder.setShadowTarget(RouteTarget.of(1, 0));
+            }
+        };
+        long orderId = new ShardIdGenerator(custom, 2).nextId("user_1");
+        Assert.assertEquals(strategy.locate("user_1"), generator.route(orderId));
+        Assert.assertEquals(RouteTarget.of(2, 5), DBContextHolder.getRouteTarget());
+        Assert.assertEquals(RouteTarget.of(3, 1), DBContextHolder.getShadowTarget());
+    }
+
+    @Test
+    public void test_invalid() {
+        ShardIdGenerator generator = new ShardIdGenerator(strategy, 0);
+        try {
+            generator.nextId();
+            Assert.fail();
+        } catch (IllegalStateException ignore) {
+        }
+        // 序列号位数不足
+        try {
+            new ShardIdGenerator(strategy, 0, 10, 4, 2, 3, ShardIdGenerator.DEFAULT_EPOCH);
+            Assert.fail();
+        } catch (IllegalArgumentException ignore) {
+        }
+        // 库表下标位数容纳不下当前库表数
+        try {
+            new ShardIdGenerator(strategy, 0, 5, 2, 1, 3, ShardIdGenerator.DEFAULT_EPOCH);
+            Assert.fail();
+        } catch (IllegalArgumentException ignore) {
+        }
+        // 基因超出库表范围的 ID 不能路由
+        DBRouterStrategyGene gene = new DBRouterStrategyGene(new DBRouterConfig(2, 8, "userId"), generator);
+        try {
+            gene.doRouter(generator.nextId(RouteTarget.of(4, 0)));
+            Assert.fail();
+        } catch (IllegalArgumentException ignore) {
+        }
+    }
+
+}
@@ -0,0 +1,143 @@
+package fun.wswj.middleware.test;
+
+import fun.wswj.middleware.db.router.DBContextHolder;
+import fun.wswj.middleware.db.router.RouteTarget;
+import fun.wswj.middleware.db.router.dynamic.DynamicDataSource;
+import fun.wswj.middleware.db.router.limit.ShardLimiter;
+import fun.wswj.middleware.db.router.limit.ShardLimiters;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class ShardLimiterTest {
+
+    @After
+    public void clear() {
+        DBContextHolder.clearRouteTarget();
+    }
+
+    @Test
+    public void test_aimd() throws InterruptedException {
+        ShardLimiter limiter = new ShardLimiter("db01", 4, 1, 8, 100, 0.5);
+        for (int i = 0; i < 4; i++) {
+            Assert.assertTrue(limiter.tryAcquire(0));
+        }
+        // 达到上限快速失败
+        Assert.assertFalse(limiter.tryAcquire(0));
+        Assert.assertEquals(1, limiter.getRejected());
+
+        // 并发接近上限且耗时正常，上限加 1
+        limiter.release(TimeUnit.MILLISECONDS.toNanos(5), false);
+        Assert.assertEquals(5, limiter.getLimit());
+        // 耗时超过阈值或出错，按比例下调
+        limiter.release(TimeUnit.MILLISECONDS.toNanos(500), false);
+        Assert.assertEquals(2, limiter.getLimit());
+        limiter.release(0, true);
+        Assert.assertEquals(1, limiter.getLimit());
+        Assert.assertEquals(2, limiter.getDrops());
+        // 不低于下限；并发远低于上限时不上调
+        limiter.release(0, true);
+        Assert.assertEquals(1, limiter.getLimit());
+        Assert.assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void test_queueWithTimeout() throws Exception {
+        ShardLimiter limiter = new ShardLimiter("db01", 1, 1, 1, 100, 0.9);
+        Assert.assertTrue(limiter.tryAcquire(0));
+        // 等待超时失败
+        Assert.assertFalse(limiter.tryAcquire(TimeUnit.MILLISECONDS.toNanos(20)));
+
+        // 等待期间许可归还则继续执行
+        CompletableFuture<Boolean> waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return limiter.tryAcquire(TimeUnit.SECONDS.toNanos(5));
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(50);
+        Assert.assertFalse(waiting.isDone());
+        limiter.release(0, false);
+        Assert.assertTrue(waiting.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, limiter.getInFlight());
+    }
+
+    @Test
+    public void test_manyFastStatements() throws SQLException {
+        JdbcDataSource shard = new JdbcDataSource();
+        shard.setURL("jdbc:h2:mem:limit_many;DB_CLOSE_DELAY=-1");
+        try (Connection connection = shard.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("CREATE ALIAS IF NOT EXISTS SLEEP FOR \"java.lang.Thread.sleep\"");
+        }
+        // 阈值 50 毫秒，每条语句 5 毫秒，同一连接上的总耗时远超阈值
+        ShardLimiters limiters = new ShardLimiters(2, 1, 4, 50, 0.5, 0);
+        Connection connection = limiters.getConnection(null, shard::getConnection);
+        try (Statement statement = connection.createStatement()) {
+            for (int i = 0; i < 30; i++) {
+                statement.execute("CALL SLEEP(5)");
+            }
+        }
+        connection.close();
+        ShardLimiter limiter = limiters.get(ShardLimiters.DEFAULT_KEY);
+        Assert.assertEquals(0, limiter.getDrops());
+        Assert.assertTrue(limiter.getLimit() >= 2);
+    }
+
+    @Test
+    public void test_bulkhead() throws SQLException {
+        Map<Object, Object> targets = new HashMap<>();
+        for (int i = 1; i <= 2; i++) {
+            JdbcDataSource shard = new JdbcDataSource();
+            shard.setURL("jdbc:h2:mem:limit_db" + i + ";DB_CLOSE_DELAY=-1");
+            targets.put(String.format("db%02d", i), shard);
+        }
+        DynamicDataSource dataSource = new DynamicDataSource();
+        dataSource.setTargetDataSources(targets);
+        dataSource.setDefaultTargetDataSource(targets.get("db01"));
+        dataSource.afterPropertiesSet();
+        // 耗时阈值为 0，任何语句都视为过载，便于观察下调
+        ShardLimiters limiters = new ShardLimiters(2, 1, 4, 0, 0.5, 0);
+        dataSource.setShardLimiters(limiters);
+
+        DBContextHolder.setRouteTarget(RouteTarget.of(1, 0));
+        Connection first = dataSource.getConnection();
+        Connection second = dataSource.getConnection();
+        try {
+            dataSource.getConnection();
+            Assert.fail();
+        } catch (SQLTransientConnectionException ignore) {
+        }
+        // 其他分库不受影响
+        DBContextHolder.setRouteTarget(RouteTarget.of(2, 0));
+        dataSource.getConnection().close();
+        Assert.assertEquals(1, limiters.get("db01").getRejected());
+        Assert.assertEquals(0, limiters.get("db02").getRejected());
+
+        // 关闭连接归还许可，按语句耗时调整上限
+        try (Statement statement = first.createStatement(); ResultSet resultSet = statement.executeQuery("SELECT 1")) {
+            Assert.assertTrue(resultSet.next());
+        }
+        first.close();
+        first.close();
+        Assert.assertEquals(1, limiters.get("db01").getInFlight());
+        Assert.assertEquals(1, limiters.get("db01").getLimit());
+        second.close();
+        Assert.assertEquals(0, limiters.get("db01").getInFlight());
+
+        DBContextHolder.setRouteTarget(RouteTarget.of(1, 0));
+        dataSource.getConnection().close();
+    }
+
+}
@@ -0,0 +1,98 @@
+package fun.wswj.middleware.test;
+
+import fun.wswj.middleware.db.router.dynamic.SqlTableRewriter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class SqlTableRewriterTest {
+
+    private final SqlTableRewriter allTables = new SqlTableRewriter();
+
+    private final SqlTableRewriter bindingTables = new SqlTableRewriter(Arrays.asList("user", "user_order"));
+
+    @Test
+    public void test_simpleStatements() {
+        Assert.assertEquals("select * from user_003 where id = ?", allTables.rewrite("select * from user where id = ?", "_003"));
+        Assert.assertEquals("INSERT INTO user_003(id, name) VALUES(?, ?)", allTables.rewrite("INSERT INTO user(id, name) VALUES(?, ?)", "_003"));
+        Assert.assertEquals("update user_003 set name = ? where id = ?", allTables.rewrite("update user set name = ? where id = ?", "_003"));
+        Assert.assertEquals("DELETE FROM `user_003` WHERE id = ?", allTables.rewrite("DELETE FROM `user` WHERE id = ?", "_003"));
+        Assert.assertEquals("select * from db.user_003", allTables.rewrite("select * from db.user", "_003"));
+        Assert.assertEquals("DELETE LOW_PRIORITY QUICK FROM user_003 WHERE id = ?", allTables.rewrite("DELETE LOW_PRIORITY QUICK FROM user WHERE id = ?", "_003"));
+    }
+
+    @Test
+    public void test_multiTableDelete() {
+        // DELETE 与 FROM 之间的目标列表是别名时不改写
+        Assert.assertEquals("DELETE u FROM user_004 u WHERE u.id = ?", allTables.rewrite("DELETE u FROM user u WHERE u.id = ?", "_004"));
+        Assert.assertEquals("DELETE u, `o` FROM user_004 u JOIN user_order_004 o ON u.id = o.user_id",
+                allTables.rewrite("DELETE u, `o` FROM user u JOIN user_order o ON u.id = o.user_id", "_004"));
+        // 目标列表是显式配置的逻辑表时与 FROM 中的表名保持一致
+        Assert.assertEquals("DELETE user_004, `user_order_004` FROM user_004 JOIN user_order_004 ON user_004.id = user_order_004.user_id",
+                bindingTables.rewrite("DELETE user, `user_order` FROM user JOIN user_order ON user.id = user_order.user_id", "_004"));
+        Assert.assertEquals("DELETE u FROM user_004 u", bindingTables.rewrite("DELETE u FROM user u", "_004"));
+    }
+
+    @Test
+    public void test_joinAndMultipleTables() {
+        Assert.assertEquals("select * from user_001 u left join user_order_001 o on u.id = o.user_id, user_001 x where u.id = ?",
+                bindingTables.rewrite("select * from user u left join user_order o on u.id = o.user_id, user x where u.id = ?", "_001"));
+        Assert.assertEquals("select * from user_001 u join config c on u.cid = c.id",
+                bindingTables.rewrite("select * from user u join config c on u.cid = c.id", "_001"));
+        Assert.assertEquals("select user_001.id from user_001 where user_001.id in (select user_id from user_order_001 where amount > 0)",
+                bindingTables.rewrite("select user.id from user where user.id in (select user_id from user_order where amount > 0)", "_001"));
+    }
+
+    @Test
+    public void test_literalsAndComments() {
+        Assert.assertEquals("select 'from user' as t, id from user_002 -- from user\n where name = 'update user' /* into user */",
+                allTables.rewrite("select 'from user' as t, id from user -- from user\n where name = 'update user' /* into user */", "_002"));
+        Assert.assertEquals("select extract(year from create_time) from user_002",
+                allTables.rewrite("select extract(year from create_time) from user", "_002"));
+        Assert.assertEquals("insert into user_002(id) values(?) on duplicate key update id = values(id)",
+                allTables.rewrite("insert into user(id) values(?) on duplicate key update id = values(id)", "_002"));
+        Assert.assertEquals("select * from user_002 where id = ? for update",
+                allTables.rewrite("select * from user where id = ? for update", "_002"));
+    }
+
+    @Test
+    public void test_noRewrite() {
+        String sql = "select now()";
+        Assert.assertSame(sql, allTables.rewrite(sql, "_001"));
+        sql = "select * from config where id = ?";
+        Assert.assertSame(sql, bindingTables.rewrite(sql, "_001"));
+    }
+
+    @Test
+    public void test_largeSql() {
+        StringBuilder sql = new StringBuilder("select u.id");
+        for (int i = 0; i < 1000; i++) {
+            sql.append(", sum(case when o.status = '").append(i).append("' then 1 else 0 end) c").append(i);
+        }
+        sql.append(" from user u join user_order o on u.id = o.user_id group by u.id");
+        String rewritten = bindingTables.rewrite(sql.toString(), "_007");
+        Assert.assertTrue(rewritten.endsWith(" from user_007 u join user_order_007 o on u.id = o.user_id group by u.id"));
+        // 单遍扫描，耗时与 SQL 长度线性相关：长度翻 8 倍，耗时不应接近平方增长的 64 倍
+        String large = sql.toString();
+        StringBuilder larger = new StringBuilder(large.substring(0, large.indexOf(" from ")));
+        for (int i = 0; i < 7000; i++) {
+            larger.append(", sum(case when o.status = '").append(i).append("' then 1 else 0 end) d").append(i);
+        }
+        larger.append(large.substring(large.indexOf(" from ")));
+        long small = bestOf(large);
+        long big = bestOf(larger.toString());
+        Assert.assertTrue("small: " + small + " big: " + big, big < small * 32);
+    }
+
+    private long bestOf(String sql) {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 20; i++) {
+            long start = System.nanoTime();
+            bindingTables.rewrite(sql, "_007");
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+}